@@ -0,0 +1,126 @@
+package com.challenge.rp.wallet.benchmark;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.TransferRequest;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.dto.WithdrawRequest;
+import com.challenge.rp.wallet.service.WalletService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of the money-movement operations when every thread works on the same two
+ * wallets, for the {@code @Version} read-modify-write engine against the conditional update. Sample
+ * time mode reports the percentiles (p50, p99, p99.9) next to the throughput, including the time an
+ * operation spends in optimistic lock retries. Operations that still fail are counted in
+ * {@link Outcomes#failures}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class BalanceEngineContentionBenchmark {
+
+    private static final BigDecimal INITIAL_BALANCE = BigDecimal.valueOf(1_000_000_000);
+    private static final DepositRequest DEPOSIT = new DepositRequest(BigDecimal.ONE);
+    private static final WithdrawRequest WITHDRAW = new WithdrawRequest(BigDecimal.ONE);
+
+    @Param({"versioned", "atomic"})
+    public String balanceEngine;
+
+    private ConfigurableApplicationContext context;
+    private WalletService walletService;
+    private String hotWalletId;
+    private TransferRequest transfer;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long failures;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            failures = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:contention;MODE=MySQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--wallet.balance-engine=" + balanceEngine,
+                        "--logging.file.name=",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.web=WARN",
+                        "--logging.level.com.challenge.rp.wallet=WARN");
+        walletService = context.getBean(WalletService.class);
+
+        hotWalletId = walletService.createWallet(new WalletCreateRequest(UUID.randomUUID()));
+        String otherWalletId = walletService.createWallet(new WalletCreateRequest(UUID.randomUUID()));
+        walletService.deposit(hotWalletId, new DepositRequest(INITIAL_BALANCE), UUID.randomUUID());
+        transfer = new TransferRequest(UUID.fromString(hotWalletId), UUID.fromString(otherWalletId), BigDecimal.ONE);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public void deposit(Outcomes outcomes) {
+        try {
+            walletService.deposit(hotWalletId, DEPOSIT, UUID.randomUUID());
+        } catch (RuntimeException e) {
+            outcomes.failures++;
+        }
+    }
+
+    @Benchmark
+    public void withdraw(Outcomes outcomes) {
+        try {
+            walletService.withdraw(hotWalletId, WITHDRAW, UUID.randomUUID());
+        } catch (RuntimeException e) {
+            outcomes.failures++;
+        }
+    }
+
+    @Benchmark
+    public void transfer(Outcomes outcomes) {
+        try {
+            walletService.transfer(transfer, UUID.randomUUID());
+        } catch (RuntimeException e) {
+            outcomes.failures++;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.challenge.rp.wallet.benchmark;
+
+import com.challenge.rp.wallet.model.TimeOrderedUuidGenerator;
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput into a table keyed by a {@code BINARY(16)} primary key, for random version 4
+ * ids against the time-ordered ids the entities use. Random ids land all over the primary key index,
+ * splitting pages across it; time-ordered ones append to its last page. The table is filled with
+ * {@link #prefill} rows first, so the index is larger than a few pages.
+ * <p>
+ * Runs on an embedded H2 database unless {@code url}, {@code user} and {@code password} point at a
+ * MySQL server (for example {@code -p url=jdbc:mysql://localhost:3306/wallet}). There the InnoDB
+ * {@code index_page_splits} counter is printed after every iteration, which needs the privilege to
+ * enable it with {@code innodb_monitor_enable}; H2 has no such counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IdOrderInsertBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final BigDecimal BALANCE = BigDecimal.TEN;
+    private static final UUIDBinaryConverter CONVERTER = new UUIDBinaryConverter();
+
+    @Param({"random", "time-ordered"})
+    public String ids;
+
+    @Param("jdbc:h2:mem:ids;MODE=MySQL;DB_CLOSE_DELAY=-1")
+    public String url;
+
+    @Param("sa")
+    public String user;
+
+    @Param("")
+    public String password;
+
+    @Param("200000")
+    public int prefill;
+
+    private Connection connection;
+    private PreparedStatement insert;
+    private long pageSplitsBefore;
+
+    @Setup(Level.Trial)
+    public void start() throws SQLException {
+        connection = DriverManager.getConnection(url, user, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_id_order");
+            statement.execute("CREATE TABLE bench_id_order (id BINARY(16) NOT NULL PRIMARY KEY, balance DECIMAL(19, 2) NOT NULL)");
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET GLOBAL innodb_monitor_enable = 'index_page_splits'");
+        } catch (SQLException e) {
+            // Not MySQL, or not allowed: page splits are reported as unavailable
+        }
+        connection.setAutoCommit(false);
+        insert = connection.prepareStatement("INSERT INTO bench_id_order (id, balance) VALUES (?, ?)");
+        for (int i = 0; i < prefill; i += BATCH_SIZE) {
+            insertBatch();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE bench_id_order");
+        }
+        connection.commit();
+        connection.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void countPageSplits() throws SQLException {
+        pageSplitsBefore = pageSplits();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportPageSplits() throws SQLException {
+        long after = pageSplits();
+        System.out.println(after < 0 ? "index_page_splits: unavailable" : "index_page_splits: " + (after - pageSplitsBefore));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insert() throws SQLException {
+        insertBatch();
+    }
+
+    private void insertBatch() throws SQLException {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            UUID id = "random".equals(ids) ? UUID.randomUUID() : TimeOrderedUuidGenerator.next();
+            insert.setBytes(1, CONVERTER.convertToDatabaseColumn(id));
+            insert.setBigDecimal(2, BALANCE);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        connection.commit();
+    }
+
+    private long pageSplits() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet splits = statement.executeQuery("SELECT `COUNT` FROM information_schema.INNODB_METRICS WHERE NAME = 'index_page_splits'")) {
+            return splits.next() ? splits.getLong(1) : -1;
+        } catch (SQLException e) {
+            // No InnoDB metrics on this database
+            return -1;
+        }
+    }
+}
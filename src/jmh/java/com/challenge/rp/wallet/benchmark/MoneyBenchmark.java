@@ -0,0 +1,103 @@
+package com.challenge.rp.wallet.benchmark;
+
+import com.challenge.rp.wallet.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Money} against the {@link BigDecimal} arithmetic it replaced, for a balance check followed by
+ * a debit and for summing a wallet's history. Run with {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoneyBenchmark {
+
+    @Param("1000")
+    public int transactions;
+
+    private BigDecimal decimalBalance;
+    private BigDecimal decimalAmount;
+    private BigDecimal[] decimalHistory;
+
+    private Money balance;
+    private Money amount;
+    private Money[] history;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        decimalBalance = new BigDecimal("1000000.00");
+        decimalAmount = new BigDecimal("12.34");
+        decimalHistory = new BigDecimal[transactions];
+        for (int i = 0; i < transactions; i++) {
+            decimalHistory[i] = BigDecimal.valueOf(random.nextInt(-10_000, 10_000), 2);
+        }
+
+        balance = Money.of(decimalBalance);
+        amount = Money.of(decimalAmount);
+        history = Arrays.stream(decimalHistory).map(Money::of).toArray(Money[]::new);
+    }
+
+    @Benchmark
+    public BigDecimal debitBigDecimal() {
+        if (decimalBalance.compareTo(decimalAmount) < 0) {
+            throw new IllegalStateException();
+        }
+        return decimalBalance.subtract(decimalAmount);
+    }
+
+    @Benchmark
+    public Money debitMoney() {
+        if (balance.isLessThan(amount)) {
+            throw new IllegalStateException();
+        }
+        return balance.minus(amount);
+    }
+
+    @Benchmark
+    public BigDecimal sumBigDecimal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal transaction : decimalHistory) {
+            total = total.add(transaction);
+        }
+        return total;
+    }
+
+    // The lossy path the historical balance used before balances were snapshotted
+    @Benchmark
+    public double sumDouble() {
+        return Arrays.stream(decimalHistory).mapToDouble(BigDecimal::doubleValue).sum();
+    }
+
+    @Benchmark
+    public Money sumMoney() {
+        long total = 0;
+        for (Money transaction : history) {
+            total = Math.addExact(total, transaction.minorUnits());
+        }
+        return Money.ofMinor(total);
+    }
+
+    @Benchmark
+    public Money convertFromBigDecimal() {
+        return Money.of(decimalAmount);
+    }
+}
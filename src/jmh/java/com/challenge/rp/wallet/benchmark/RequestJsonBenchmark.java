@@ -0,0 +1,91 @@
+package com.challenge.rp.wallet.benchmark;
+
+import com.challenge.rp.wallet.dto.BatchTransferItem;
+import com.challenge.rp.wallet.dto.BatchTransferMode;
+import com.challenge.rp.wallet.dto.BatchTransferRequest;
+import com.challenge.rp.wallet.dto.HistoricalBalanceRequest;
+import com.challenge.rp.wallet.dto.TransferRequest;
+import com.challenge.rp.wallet.dto.WalletBalanceResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Request and response (de)serialization with an {@link ObjectMapper} configured the way Spring MVC
+ * configures it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestJsonBenchmark {
+
+    private ObjectReader transferReader;
+    private ObjectReader historicalBalanceReader;
+    private ObjectReader batchTransferReader;
+    private ObjectWriter balanceWriter;
+
+    private byte[] transferJson;
+    private byte[] historicalBalanceJson;
+    private byte[] batchTransferJson;
+    private WalletBalanceResponse balance;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        transferReader = objectMapper.readerFor(TransferRequest.class);
+        historicalBalanceReader = objectMapper.readerFor(HistoricalBalanceRequest.class);
+        batchTransferReader = objectMapper.readerFor(BatchTransferRequest.class);
+        balanceWriter = objectMapper.writerFor(WalletBalanceResponse.class);
+
+        transferJson = objectMapper.writeValueAsBytes(
+                new TransferRequest(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("125.50")));
+        historicalBalanceJson = objectMapper.writeValueAsBytes(
+                new HistoricalBalanceRequest(LocalDateTime.now().minusDays(30), LocalDateTime.now()));
+        batchTransferJson = objectMapper.writeValueAsBytes(new BatchTransferRequest(BatchTransferMode.BEST_EFFORT,
+                IntStream.range(0, 100)
+                        .mapToObj(i -> new BatchTransferItem(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), BigDecimal.TEN))
+                        .toList()));
+        balance = new WalletBalanceResponse(new BigDecimal("1024.75"));
+    }
+
+    @Benchmark
+    public TransferRequest readTransferRequest() throws IOException {
+        return transferReader.readValue(transferJson);
+    }
+
+    @Benchmark
+    public HistoricalBalanceRequest readHistoricalBalanceRequest() throws IOException {
+        return historicalBalanceReader.readValue(historicalBalanceJson);
+    }
+
+    @Benchmark
+    public BatchTransferRequest readBatchTransferRequest() throws IOException {
+        return batchTransferReader.readValue(batchTransferJson);
+    }
+
+    @Benchmark
+    public byte[] writeBalanceResponse() throws IOException {
+        return balanceWriter.writeValueAsBytes(balance);
+    }
+}
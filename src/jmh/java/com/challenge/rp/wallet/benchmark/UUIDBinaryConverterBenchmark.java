@@ -0,0 +1,52 @@
+package com.challenge.rp.wallet.benchmark;
+
+import com.challenge.rp.wallet.model.TimeOrderedUuidGenerator;
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping ids to and from their {@code BINARY(16)} column, and of generating them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UUIDBinaryConverterBenchmark {
+
+    private final UUIDBinaryConverter converter = new UUIDBinaryConverter();
+    private final UUID uuid = UUID.randomUUID();
+    private final byte[] bytes = converter.convertToDatabaseColumn(uuid);
+
+    @Benchmark
+    public byte[] convertToDatabaseColumn() {
+        return converter.convertToDatabaseColumn(uuid);
+    }
+
+    @Benchmark
+    public UUID convertToEntityAttribute() {
+        return converter.convertToEntityAttribute(bytes);
+    }
+
+    @Benchmark
+    public UUID randomUuid() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public UUID timeOrderedUuid() {
+        return TimeOrderedUuidGenerator.next();
+    }
+}
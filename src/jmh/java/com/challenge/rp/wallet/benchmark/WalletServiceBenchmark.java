@@ -0,0 +1,255 @@
+package com.challenge.rp.wallet.benchmark;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.HistoricalBalanceRequest;
+import com.challenge.rp.wallet.dto.TransferRequest;
+import com.challenge.rp.wallet.dto.WalletBalanceRequest;
+import com.challenge.rp.wallet.dto.WalletBalanceResponse;
+import com.challenge.rp.wallet.dto.WalletBalancesRequest;
+import com.challenge.rp.wallet.dto.WalletBalancesResponse;
+import com.challenge.rp.wallet.dto.WalletBulkCreateRequest;
+import com.challenge.rp.wallet.dto.WalletBulkCreateResponse;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.dto.WithdrawRequest;
+import com.challenge.rp.wallet.service.WalletBulkService;
+import com.challenge.rp.wallet.service.WalletService;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Throughput of the {@link WalletService} operations against an embedded H2 database in MySQL mode,
+ * with several threads choosing wallets according to {@link Selection}. Operations that fail (for
+ * example on an optimistic lock conflict) are counted in {@link Outcomes#failures} rather than
+ * aborting the run. The bulk benchmarks are reported per wallet, so they compare directly with
+ * their single-wallet counterparts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class WalletServiceBenchmark {
+
+    private static final BigDecimal INITIAL_BALANCE = BigDecimal.valueOf(1_000_000_000);
+    private static final DepositRequest DEPOSIT = new DepositRequest(BigDecimal.ONE);
+    private static final WithdrawRequest WITHDRAW = new WithdrawRequest(BigDecimal.ONE);
+    private static final int BULK_SIZE = 100;
+
+    public enum Selection {
+        /** Every thread works on the same wallet. */
+        HOT,
+        /** Wallets are chosen uniformly at random. */
+        UNIFORM,
+        /** A few wallets receive most of the traffic (Zipf exponent 1). */
+        ZIPFIAN
+    }
+
+    public enum Logging {
+        /** Only warnings, and no log file. */
+        OFF,
+        /** The default profile with debug logging and SQL statements, written synchronously to a file. */
+        VERBOSE,
+        /** The prod profile: asynchronous JSON file logging with sampled operation events. */
+        PROD
+    }
+
+    @Param({"versioned", "atomic", "ledger"})
+    public String balanceEngine;
+
+    @Param({"HOT", "UNIFORM", "ZIPFIAN"})
+    public Selection selection;
+
+    @Param("OFF")
+    public Logging logging;
+
+    @Param("false")
+    public boolean sharded;
+
+    @Param("1000")
+    public int wallets;
+
+    @Param("10")
+    public int transactionsPerWallet;
+
+    private ConfigurableApplicationContext context;
+    private WalletService walletService;
+    private WalletBulkService walletBulkService;
+    private UUID[] walletIds;
+    private double[] zipfCumulative;
+    private HistoricalBalanceRequest history;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long failures;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            failures = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void start() {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.show-sql=false",
+                "--wallet.balance-engine=" + balanceEngine,
+                "--wallet.shards.enabled=" + sharded));
+        switch (logging) {
+            case OFF -> args.addAll(List.of(
+                    "--logging.file.name=",
+                    "--logging.level.root=WARN",
+                    "--logging.level.org.springframework.web=WARN",
+                    "--logging.level.com.challenge.rp.wallet=WARN"));
+            case VERBOSE -> args.addAll(List.of(
+                    "--logging.file.name=target/benchmark-verbose.log",
+                    "--logging.threshold.console=OFF",
+                    "--logging.level.org.hibernate.SQL=DEBUG"));
+            case PROD -> args.addAll(List.of(
+                    "--spring.profiles.active=prod",
+                    "--logging.file.name=target/benchmark-prod.log"));
+        }
+        context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(String[]::new));
+        walletService = context.getBean(WalletService.class);
+        walletBulkService = context.getBean(WalletBulkService.class);
+
+        walletIds = new UUID[wallets];
+        for (int i = 0; i < wallets; i++) {
+            String walletId = walletService.createWallet(new WalletCreateRequest(UUID.randomUUID()));
+            walletService.deposit(walletId, new DepositRequest(INITIAL_BALANCE), UUID.randomUUID());
+            for (int t = 1; t < transactionsPerWallet; t++) {
+                walletService.deposit(walletId, DEPOSIT, UUID.randomUUID());
+            }
+            walletIds[i] = UUID.fromString(walletId);
+        }
+
+        zipfCumulative = new double[wallets];
+        double total = 0;
+        for (int i = 0; i < wallets; i++) {
+            total += 1.0 / (i + 1);
+            zipfCumulative[i] = total;
+        }
+        for (int i = 0; i < wallets; i++) {
+            zipfCumulative[i] /= total;
+        }
+
+        history = new HistoricalBalanceRequest(LocalDateTime.now().minusDays(1), LocalDateTime.now().plusDays(1));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public void deposit(Outcomes outcomes) {
+        try {
+            walletService.deposit(pick().toString(), DEPOSIT, UUID.randomUUID());
+        } catch (RuntimeException e) {
+            outcomes.failures++;
+        }
+    }
+
+    @Benchmark
+    public void withdraw(Outcomes outcomes) {
+        try {
+            walletService.withdraw(pick().toString(), WITHDRAW, UUID.randomUUID());
+        } catch (RuntimeException e) {
+            outcomes.failures++;
+        }
+    }
+
+    @Benchmark
+    public void transfer(Outcomes outcomes) {
+        int source = pickIndex();
+        int target = (source + 1 + ThreadLocalRandom.current().nextInt(wallets - 1)) % wallets;
+        try {
+            walletService.transfer(new TransferRequest(walletIds[source], walletIds[target], BigDecimal.ONE), UUID.randomUUID());
+        } catch (RuntimeException e) {
+            outcomes.failures++;
+        }
+    }
+
+    @Benchmark
+    public WalletBalanceResponse getBalance() {
+        return walletService.getBalance(pick());
+    }
+
+    @Benchmark
+    public WalletBalanceResponse getHistoricalBalance() {
+        return walletService.getHistoricalBalance(pick().toString(), history);
+    }
+
+    @Benchmark
+    public String createWallet() {
+        return walletService.createWallet(new WalletCreateRequest(UUID.randomUUID()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK_SIZE)
+    public WalletBulkCreateResponse createWallets() {
+        return walletBulkService.createWallets(new WalletBulkCreateRequest(IntStream.range(0, BULK_SIZE)
+                .mapToObj(i -> new WalletCreateRequest(UUID.randomUUID()))
+                .toList()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK_SIZE)
+    public WalletBalancesResponse getBalances() {
+        return walletBulkService.getBalances(new WalletBalancesRequest(IntStream.range(0, BULK_SIZE)
+                .mapToObj(i -> new WalletBalanceRequest(pick()))
+                .toList()));
+    }
+
+    private UUID pick() {
+        return walletIds[pickIndex()];
+    }
+
+    private int pickIndex() {
+        return switch (selection) {
+            case HOT -> 0;
+            case UNIFORM -> ThreadLocalRandom.current().nextInt(wallets);
+            case ZIPFIAN -> {
+                int index = Arrays.binarySearch(zipfCumulative, ThreadLocalRandom.current().nextDouble());
+                yield Math.min(index < 0 ? -index - 1 : index, wallets - 1);
+            }
+        };
+    }
+}
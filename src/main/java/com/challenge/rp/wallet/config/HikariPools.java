@@ -0,0 +1,42 @@
+package com.challenge.rp.wallet.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+
+/**
+ * Builds the connection pools that replace Boot's single pool when there is more than one database.
+ * Pools are started on first use, so a database that is down does not stop the application.
+ */
+final class HikariPools {
+
+    private HikariPools() {
+    }
+
+    /**
+     * The pool configured in {@code spring.datasource.*}, publishing Hikari metrics under the name.
+     */
+    static HikariDataSource configured(DataSourceProperties properties, Environment environment, MeterRegistry meterRegistry,
+                                       String name) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return pool;
+    }
+
+    /**
+     * A pool with the settings of another, credentials included, for a different database.
+     */
+    static HikariDataSource copyOf(HikariDataSource template, String url, String name) {
+        HikariDataSource pool = new HikariDataSource();
+        template.copyStateTo(pool);
+        pool.setJdbcUrl(url);
+        pool.setPoolName(name);
+        return pool;
+    }
+}
@@ -0,0 +1,65 @@
+package com.challenge.rp.wallet.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Puts every {@link DataSource} behind the {@link JdbcAdmissionGate}. The pool itself is left
+ * untouched, so its own metrics keep working.
+ */
+@Configuration
+@ConditionalOnProperty(name = "wallet.jdbc-gate.enabled", havingValue = "true", matchIfMissing = true)
+public class JdbcAdmissionConfig {
+
+    @Bean
+    public JdbcAdmissionGate jdbcAdmissionGate(
+            @Value("${wallet.jdbc-gate.permits:${spring.datasource.hikari.maximum-pool-size:10}}") int permits,
+            @Value("${wallet.jdbc-gate.max-wait:30s}") Duration maxWait,
+            MeterRegistry meterRegistry) {
+        return new JdbcAdmissionGate(permits, maxWait, meterRegistry);
+    }
+
+    @Bean
+    public static BeanPostProcessor jdbcAdmissionGatePostProcessor(ObjectProvider<JdbcAdmissionGate> gate) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof GatedDataSource)) {
+                    return new GatedDataSource(dataSource, gate.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    static class GatedDataSource extends DelegatingDataSource {
+
+        private final JdbcAdmissionGate gate;
+
+        GatedDataSource(DataSource target, JdbcAdmissionGate gate) {
+            super(target);
+            this.gate = gate;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return gate.admit(() -> obtainTargetDataSource().getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return gate.admit(() -> obtainTargetDataSource().getConnection(username, password));
+        }
+    }
+}
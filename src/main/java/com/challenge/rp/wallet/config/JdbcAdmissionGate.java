@@ -0,0 +1,124 @@
+package com.challenge.rp.wallet.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fair semaphore in front of the connection pool, sized to it by default.
+ * <p>
+ * With requests on virtual threads there is no longer a small worker pool limiting how many
+ * requests reach the database at once, so callers wait here (a parked virtual thread is cheap)
+ * and are admitted in arrival order as connections are returned. A permit is held from the
+ * moment a connection is borrowed until it is closed. Queue depth, permits in use, wait time and
+ * timeouts are published under {@code wallet.jdbc.gate.*}.
+ */
+@Slf4j
+public class JdbcAdmissionGate {
+
+    private final int permits;
+    private final Semaphore semaphore;
+    private final Duration maxWait;
+    private final Timer waitTimer;
+    private final Counter timeouts;
+
+    public JdbcAdmissionGate(int permits, Duration maxWait, MeterRegistry meterRegistry) {
+        this.permits = permits;
+        this.semaphore = new Semaphore(permits, true);
+        this.maxWait = maxWait;
+
+        Gauge.builder("wallet.jdbc.gate.queued", semaphore, Semaphore::getQueueLength)
+                .description("Callers waiting for a database connection")
+                .register(meterRegistry);
+        Gauge.builder("wallet.jdbc.gate.active", semaphore, s -> permits - s.availablePermits())
+                .description("Database connections currently admitted")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("wallet.jdbc.gate.wait")
+                .description("Time spent waiting for a database connection")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.timeouts = Counter.builder("wallet.jdbc.gate.timeouts")
+                .description("Callers that gave up waiting for a database connection")
+                .register(meterRegistry);
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    /**
+     * Waits for a permit, then borrows a connection that gives the permit back when it is closed.
+     */
+    public Connection admit(ConnectionSource source) throws SQLException {
+        long start = System.nanoTime();
+        boolean admitted;
+        try {
+            admitted = semaphore.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        if (!admitted) {
+            timeouts.increment();
+            log.warn("No database connection available after {} ({} callers waiting)", maxWait, semaphore.getQueueLength());
+            throw new SQLTransientConnectionException("No database connection available after " + maxWait);
+        }
+
+        try {
+            return releasingOnClose(source.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    private Connection releasingOnClose(Connection target) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                new Class<?>[]{ConnectionProxy.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getTargetConnection" -> target;
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "toString" -> "Admitted connection [" + target + "]";
+                    case "close" -> {
+                        try {
+                            target.close();
+                        } finally {
+                            if (released.compareAndSet(false, true)) {
+                                semaphore.release();
+                            }
+                        }
+                        yield null;
+                    }
+                    default -> {
+                        try {
+                            yield method.invoke(target, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    }
+                });
+    }
+
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+}
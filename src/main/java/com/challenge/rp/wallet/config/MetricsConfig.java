@@ -0,0 +1,35 @@
+package com.challenge.rp.wallet.config;
+
+import com.challenge.rp.wallet.service.WalletOperationMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.util.function.SingletonSupplier;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds repository call times into {@link WalletOperationMetrics}.
+ * Per-method repository timers ({@code spring.data.repository.invocations}) and the connection pool
+ * metrics ({@code hikaricp.connections.*}) come from Spring Boot.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public static BeanPostProcessor repositoryCallMetricsPostProcessor(ObjectProvider<WalletOperationMetrics> metrics) {
+        SingletonSupplier<WalletOperationMetrics> operationMetrics = SingletonSupplier.of(metrics::getObject);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> repositoryFactory) {
+                    repositoryFactory.addRepositoryFactoryCustomizer(factory -> factory.addInvocationListener(invocation ->
+                            operationMetrics.obtain().recordRepositoryCall(invocation.getDuration(TimeUnit.NANOSECONDS))));
+                }
+                return bean;
+            }
+        };
+    }
+}
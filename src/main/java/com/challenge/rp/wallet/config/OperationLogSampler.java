@@ -0,0 +1,38 @@
+package com.challenge.rp.wallet.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logback filter that keeps one in {@code sampleEvery} events marked {@link #OPERATION}, so a
+ * busy instance logs a representative share of its deposits, withdrawals and transfers instead of
+ * every one. Warnings and errors are always kept.
+ */
+public class OperationLogSampler extends Filter<ILoggingEvent> {
+
+    public static final Marker OPERATION = MarkerFactory.getMarker("OPERATION");
+
+    private int sampleEvery = 1;
+
+    public void setSampleEvery(int sampleEvery) {
+        this.sampleEvery = sampleEvery;
+    }
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        if (sampleEvery <= 1 || event.getLevel().isGreaterOrEqual(Level.WARN) || !isOperation(event)) {
+            return FilterReply.NEUTRAL;
+        }
+        return ThreadLocalRandom.current().nextInt(sampleEvery) == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    private static boolean isOperation(ILoggingEvent event) {
+        return event.getMarkerList() != null && event.getMarkerList().contains(OPERATION);
+    }
+}
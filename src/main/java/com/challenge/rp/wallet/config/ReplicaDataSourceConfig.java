@@ -0,0 +1,52 @@
+package com.challenge.rp.wallet.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the single pool with a {@link ReplicaRoutingDataSource} over the primary configured in
+ * {@code spring.datasource.*} and the replicas in {@code wallet.replicas.urls}. Replica pools copy
+ * the primary's settings, credentials included. The pools are not beans of their own, so the
+ * {@link JdbcAdmissionGate} sits once in front of all of them.
+ */
+@Configuration
+@ConditionalOnProperty(name = "wallet.replicas.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    public ReplicaSet replicaSet(DataSourceProperties properties,
+                                 Environment environment,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${wallet.replicas.urls}") List<String> urls,
+                                 @Value("${wallet.replicas.heartbeat-interval:200ms}") Duration heartbeatInterval,
+                                 @Value("${wallet.replicas.max-lag:1s}") Duration maxLag) {
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("wallet.replicas.urls is required with wallet.replicas.enabled");
+        }
+
+        HikariDataSource primary = HikariPools.configured(properties, environment, meterRegistry, ReplicaSet.PRIMARY);
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            replicas.put("replica-" + i, HikariPools.copyOf(primary, urls.get(i), "replica-" + i));
+        }
+        return new ReplicaSet(primary, replicas, heartbeatInterval, maxLag, meterRegistry);
+    }
+
+    @Bean
+    public DataSource dataSource(ReplicaSet replicaSet, MeterRegistry meterRegistry) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(replicaSet, meterRegistry));
+    }
+}
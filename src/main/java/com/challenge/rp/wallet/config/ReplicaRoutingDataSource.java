@@ -0,0 +1,71 @@
+package com.challenge.rp.wallet.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections borrowed by read-only transactions to the usable replicas of the
+ * {@link ReplicaSet} in turn, and everything else to the primary. Reads run through
+ * {@link #onPrimary} go to the primary as well, so a caller can read its own recent writes.
+ * <p>
+ * The choice is made when the connection is borrowed, so this must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: transactions only
+ * borrow a connection on their first statement, once they are known to be read-only. Connections
+ * per target are counted as {@code wallet.replicas.connections}.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private final ReplicaSet replicaSet;
+    private final Map<String, Counter> connections = new HashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(ReplicaSet replicaSet, MeterRegistry meterRegistry) {
+        this.replicaSet = replicaSet;
+
+        Map<Object, Object> targets = new HashMap<>(replicaSet.replicas());
+        targets.put(ReplicaSet.PRIMARY, replicaSet.primary());
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(replicaSet.primary());
+        targets.keySet().forEach(target -> connections.put((String) target,
+                Counter.builder("wallet.replicas.connections").tag("target", (String) target).register(meterRegistry)));
+        afterPropertiesSet();
+    }
+
+    /**
+     * Runs the read with any connection it borrows taken from the primary.
+     */
+    public static <T> T onPrimary(Supplier<T> read) {
+        Boolean previous = PRIMARY_REQUIRED.get();
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_REQUIRED.remove();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String target = ReplicaSet.PRIMARY;
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && PRIMARY_REQUIRED.get() == null) {
+            List<String> usable = replicaSet.usableReplicas();
+            if (!usable.isEmpty()) {
+                target = usable.get(Math.floorMod(next.getAndIncrement(), usable.size()));
+            }
+        }
+        connections.get(target).increment();
+        return target;
+    }
+}
@@ -0,0 +1,159 @@
+package com.challenge.rp.wallet.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The primary and the read replicas, and how far behind the primary each replica is.
+ * <p>
+ * Lag is measured with a heartbeat: every {@code wallet.replicas.heartbeat-interval} the primary's
+ * row in {@code tb_replica_heartbeat} is set to the current time, and each replica's copy of the
+ * row is read back. The difference overstates the real lag by up to one interval. A replica is
+ * usable while its lag is within {@code wallet.replicas.max-lag}; one that cannot be reached, or
+ * has no heartbeat yet, is not. Lag per replica is published as {@code wallet.replicas.lag}.
+ */
+@Slf4j
+public class ReplicaSet {
+
+    static final String PRIMARY = "primary";
+
+    private static final long UNREACHABLE = Long.MAX_VALUE;
+
+    private final DataSource primary;
+    private final Map<String, DataSource> replicas;
+    private final long maxLagMillis;
+    private final Map<String, Long> lagMillis = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat;
+
+    private volatile List<String> usable = List.of();
+    // The table is created by the first heartbeat that reaches the primary, not on every beat
+    private volatile boolean heartbeatTableCreated;
+
+    public ReplicaSet(DataSource primary, Map<String, DataSource> replicas, Duration heartbeatInterval, Duration maxLag,
+                      MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.maxLagMillis = maxLag.toMillis();
+        replicas.keySet().forEach(name -> {
+            lagMillis.put(name, UNREACHABLE);
+            Gauge.builder("wallet.replicas.lag", lagMillis, lags -> lags.get(name) == UNREACHABLE ? Double.NaN : lags.get(name) / 1000.0)
+                    .tag("replica", name)
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        });
+
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("wallet-replica-heartbeat").factory());
+        heartbeat.scheduleWithFixedDelay(this::beat, heartbeatInterval.toMillis(), heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public DataSource primary() {
+        return primary;
+    }
+
+    public Map<String, DataSource> replicas() {
+        return replicas;
+    }
+
+    /**
+     * Replicas currently within the allowed lag, in a stable order.
+     */
+    public List<String> usableReplicas() {
+        return usable;
+    }
+
+    public void close() {
+        heartbeat.shutdownNow();
+        closeQuietly(primary);
+        replicas.values().forEach(ReplicaSet::closeQuietly);
+    }
+
+    /**
+     * Writes a new heartbeat on the primary and measures every replica against it.
+     */
+    void beat() {
+        long now = System.currentTimeMillis();
+        try (Connection connection = primary.getConnection()) {
+            writeHeartbeat(connection, now);
+        } catch (SQLException e) {
+            // Without a fresh heartbeat every replica would look increasingly behind
+            log.atWarn().setCause(e).log("Failed to write the replica heartbeat");
+            return;
+        }
+
+        List<String> next = new ArrayList<>(replicas.size());
+        replicas.forEach((name, replica) -> {
+            long lag = measure(replica, now);
+            long previous = lagMillis.put(name, lag);
+            boolean within = lag <= maxLagMillis;
+            if (within) {
+                next.add(name);
+            }
+            if (within != (previous <= maxLagMillis)) {
+                (within ? log.atInfo() : log.atWarn()).addKeyValue("replica", name).addKeyValue("lagMillis", lag == UNREACHABLE ? null : lag)
+                        .log(within ? "Replica back within the allowed lag" : "Replica behind or unreachable, reads go elsewhere");
+            }
+        });
+        usable = List.copyOf(next);
+    }
+
+    private void writeHeartbeat(Connection connection, long now) throws SQLException {
+        if (!heartbeatTableCreated) {
+            try (Statement create = connection.createStatement()) {
+                create.execute("CREATE TABLE IF NOT EXISTS tb_replica_heartbeat (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)");
+            }
+            heartbeatTableCreated = true;
+        }
+        try (PreparedStatement update = connection.prepareStatement("UPDATE tb_replica_heartbeat SET beat_at = ? WHERE id = 1")) {
+            update.setLong(1, now);
+            if (update.executeUpdate() == 0) {
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO tb_replica_heartbeat (id, beat_at) VALUES (1, ?)")) {
+                    insert.setLong(1, now);
+                    insert.executeUpdate();
+                }
+            }
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    private static long measure(DataSource replica, long now) {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet beat = statement.executeQuery("SELECT beat_at FROM tb_replica_heartbeat WHERE id = 1")) {
+            long lag = beat.next() ? Math.max(0, now - beat.getLong(1)) : UNREACHABLE;
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            return lag;
+        } catch (SQLException e) {
+            return UNREACHABLE;
+        }
+    }
+
+    private static void closeQuietly(DataSource dataSource) {
+        if (dataSource instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.atWarn().setCause(e).log("Failed to close data source");
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.challenge.rp.wallet.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.relational.SchemaManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replaces the single pool with a {@link ShardRoutingDataSource} over the database shards: shard 0
+ * is the database configured in {@code spring.datasource.*} and the others are the databases in
+ * {@code wallet.database-shards.urls}, with the same settings and credentials. The pools are not
+ * beans of their own, so the {@link JdbcAdmissionGate} sits once in front of all of them.
+ * <p>
+ * Hibernate only generates the schema of the database it starts on, so with
+ * {@code spring.jpa.hibernate.ddl-auto} set to {@code create} or {@code create-drop} the schema is
+ * recreated on the other shards once the entity manager factory is built. With any other setting
+ * their schemas are managed outside the application.
+ */
+@Configuration
+@ConditionalOnProperty(name = "wallet.database-shards.enabled", havingValue = "true")
+@Slf4j
+public class ShardDataSourceConfig {
+
+    private static final Set<String> CREATE_SCHEMA = Set.of("create", "create-drop");
+
+    @Bean
+    public ShardSet shardSet(DataSourceProperties properties,
+                             Environment environment,
+                             MeterRegistry meterRegistry,
+                             @Value("${wallet.database-shards.urls}") List<String> urls) {
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("wallet.database-shards.urls is required with wallet.database-shards.enabled");
+        }
+
+        HikariDataSource first = HikariPools.configured(properties, environment, meterRegistry, "shard-0");
+        List<DataSource> shards = new ArrayList<>(urls.size() + 1);
+        shards.add(first);
+        for (int i = 0; i < urls.size(); i++) {
+            shards.add(HikariPools.copyOf(first, urls.get(i), "shard-" + (i + 1)));
+        }
+        return new ShardSet(shards);
+    }
+
+    @Bean
+    public DataSource dataSource(ShardSet shardSet, MeterRegistry meterRegistry) {
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shardSet.shards(), meterRegistry));
+    }
+
+    @Bean
+    static BeanPostProcessor shardSchemaExporter(ObjectProvider<ShardSet> shardSet, Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof EntityManagerFactory entityManagerFactory
+                        && CREATE_SCHEMA.contains(environment.getProperty("spring.jpa.hibernate.ddl-auto", "none"))) {
+                    SchemaManager schemaManager = entityManagerFactory.unwrap(SessionFactory.class).getSchemaManager();
+                    for (int shard = 1; shard < shardSet.getObject().shards().size(); shard++) {
+                        ShardRoutingDataSource.on(shard, () -> {
+                            schemaManager.dropMappedObjects(false);
+                            schemaManager.exportMappedObjects(false);
+                            return null;
+                        });
+                        log.atInfo().addKeyValue("shard", shard).log("Shard schema created");
+                    }
+                }
+                return bean;
+            }
+        };
+    }
+}
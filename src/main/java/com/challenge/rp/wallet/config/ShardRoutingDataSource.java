@@ -0,0 +1,73 @@
+package com.challenge.rp.wallet.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Sends connections to the database shard bound to the current thread with {@link #on}, and to
+ * shard 0, which also holds the wallet directory, when none is bound.
+ * <p>
+ * The shard is chosen when the connection is borrowed, so this must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: a transaction borrows
+ * its connection on its first statement and keeps it until it ends, so the shard bound at that
+ * statement is the one the whole transaction runs on. Connections per shard are counted as
+ * {@code wallet.database-shards.connections}.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+    private final Counter[] connections;
+
+    public ShardRoutingDataSource(List<DataSource> shards, MeterRegistry meterRegistry) {
+        Map<Object, Object> targets = new HashMap<>();
+        this.connections = new Counter[shards.size()];
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+            connections[i] = Counter.builder("wallet.database-shards.connections").tag("shard", String.valueOf(i)).register(meterRegistry);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        afterPropertiesSet();
+    }
+
+    /**
+     * Runs the work with any connection it borrows taken from the shard.
+     */
+    public static <T> T on(int shard, Supplier<T> work) {
+        Integer previous = bind(shard);
+        try {
+            return work.get();
+        } finally {
+            bind(previous);
+        }
+    }
+
+    /**
+     * Binds the shard, or unbinds with {@code null}, and returns the previous binding to restore.
+     */
+    public static Integer bind(Integer shard) {
+        Integer previous = SHARD.get();
+        if (shard == null) {
+            SHARD.remove();
+        } else {
+            SHARD.set(shard);
+        }
+        return previous;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = SHARD.get();
+        int target = shard != null ? shard : 0;
+        connections[target].increment();
+        return target;
+    }
+}
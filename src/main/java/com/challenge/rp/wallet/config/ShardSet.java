@@ -0,0 +1,35 @@
+package com.challenge.rp.wallet.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * The connection pools of the database shards, in shard order.
+ */
+@Slf4j
+public class ShardSet {
+
+    private final List<DataSource> shards;
+
+    public ShardSet(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+    }
+
+    public List<DataSource> shards() {
+        return shards;
+    }
+
+    public void close() {
+        for (DataSource shard : shards) {
+            if (shard instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.atWarn().setCause(e).log("Failed to close data source");
+                }
+            }
+        }
+    }
+}
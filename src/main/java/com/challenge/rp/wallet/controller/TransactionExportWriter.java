@@ -0,0 +1,73 @@
+package com.challenge.rp.wallet.controller;
+
+import com.challenge.rp.wallet.dto.TransactionExportFormat;
+import com.challenge.rp.wallet.dto.TransactionResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Writes transactions to the response as they are read. The first row is flushed straight away so
+ * the client starts receiving data immediately, then output is flushed every {@value #FLUSH_EVERY} rows.
+ */
+class TransactionExportWriter implements Consumer<TransactionResponse> {
+
+    private static final int FLUSH_EVERY = 1000;
+    private static final String CSV_HEADER = "id,transactionType,amount,referenceId,createdAt";
+
+    private final TransactionExportFormat format;
+    private final ObjectWriter jsonWriter;
+    private final Writer out;
+    private long written;
+
+    TransactionExportWriter(TransactionExportFormat format, OutputStream outputStream, ObjectMapper objectMapper) {
+        this.format = format;
+        // The writer is shared by every row, so Jackson must neither close nor flush it
+        this.jsonWriter = objectMapper.writerFor(TransactionResponse.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    void start() throws IOException {
+        if (format == TransactionExportFormat.CSV) {
+            out.write(CSV_HEADER);
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    @Override
+    public void accept(TransactionResponse transaction) {
+        try {
+            if (format == TransactionExportFormat.CSV) {
+                out.write(String.join(",", transaction.id().toString(), transaction.transactionType().name(),
+                        transaction.amount().toPlainString(), transaction.referenceId().toString(),
+                        transaction.createdAt().toString()));
+            } else {
+                jsonWriter.writeValue(out, transaction);
+            }
+            out.write('\n');
+
+            if (++written == 1 || written % FLUSH_EVERY == 0) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void finish() throws IOException {
+        out.flush();
+    }
+}
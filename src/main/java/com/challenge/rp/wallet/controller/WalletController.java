@@ -1,11 +1,20 @@
 package com.challenge.rp.wallet.controller;
 
 import com.challenge.rp.wallet.dto.*;
+import com.challenge.rp.wallet.service.BatchTransferService;
+import com.challenge.rp.wallet.service.TransactionHistoryService;
+import com.challenge.rp.wallet.service.WalletBulkService;
+import com.challenge.rp.wallet.service.WalletEventSubscriptions;
 import com.challenge.rp.wallet.service.WalletService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Instant;
 import java.util.UUID;
 
 @RestController
@@ -13,9 +22,22 @@ import java.util.UUID;
 public class WalletController {
 
     private WalletService walletService;
-
-    public WalletController(WalletService walletService) {
+    private BatchTransferService batchTransferService;
+    private WalletBulkService walletBulkService;
+    private TransactionHistoryService transactionHistoryService;
+    private WalletEventSubscriptions walletEventSubscriptions;
+    private ObjectMapper objectMapper;
+
+    public WalletController(WalletService walletService, BatchTransferService batchTransferService,
+                            WalletBulkService walletBulkService,
+                            TransactionHistoryService transactionHistoryService,
+                            WalletEventSubscriptions walletEventSubscriptions, ObjectMapper objectMapper) {
         this.walletService = walletService;
+        this.batchTransferService = batchTransferService;
+        this.walletBulkService = walletBulkService;
+        this.transactionHistoryService = transactionHistoryService;
+        this.walletEventSubscriptions = walletEventSubscriptions;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -25,6 +47,13 @@ public class WalletController {
         return  walletService.createWallet(requestBody);
     }
 
+    @PostMapping("/bulk")
+    @ResponseStatus(HttpStatus.CREATED)
+    public WalletBulkCreateResponse createBulk(@RequestBody WalletBulkCreateRequest request) {
+
+        return walletBulkService.createWallets(request);
+    }
+
     @GetMapping("/{id}/balance")
     public ResponseEntity<WalletBalanceResponse> retrieveBalance(@PathVariable String id) {
 
@@ -33,6 +62,12 @@ public class WalletController {
     }
 
 
+    @PostMapping("/balances")
+    public ResponseEntity<WalletBalancesResponse> retrieveBalances(@RequestBody WalletBalancesRequest request) {
+
+        return ResponseEntity.ok(walletBulkService.getBalances(request));
+    }
+
     @GetMapping("/{id}/historic-balance")
     public ResponseEntity<WalletBalanceResponse> retrieveHistoricalBalance(@PathVariable String id,
                                                                        @RequestBody HistoricalBalanceRequest request){
@@ -41,6 +76,38 @@ public class WalletController {
 
     }
 
+    @GetMapping("/{id}/transactions")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(@PathVariable String id,
+                                                                    @RequestParam(defaultValue = "ndjson") String format,
+                                                                    @RequestParam(required = false) Instant afterCreatedAt,
+                                                                    @RequestParam(required = false) UUID afterId,
+                                                                    @RequestParam(required = false) Integer limit) {
+        UUID walletId = UUID.fromString(id);
+        TransactionExportFormat exportFormat = TransactionExportFormat.of(format);
+        TransactionHistoryRequest request = new TransactionHistoryRequest(afterCreatedAt, afterId, limit);
+        transactionHistoryService.validate(walletId, request);
+        TransactionHistoryService.ExportSlot slot = transactionHistoryService.reserveExport();
+
+        return ResponseEntity.ok()
+                .contentType(exportFormat.getMediaType())
+                .body(outputStream -> {
+                    try (slot) {
+                        TransactionExportWriter writer = new TransactionExportWriter(exportFormat, outputStream, objectMapper);
+                        writer.start();
+                        transactionHistoryService.export(walletId, request, writer);
+                        writer.finish();
+                    }
+                });
+    }
+
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(@PathVariable String id,
+                                   @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                   @RequestParam(required = false) Long after) {
+
+        return walletEventSubscriptions.subscribe(UUID.fromString(id), lastEventId != null ? lastEventId : after);
+    }
+
     @PostMapping("/{id}/withdraw")
     public ResponseEntity<String> withdraw(@RequestHeader(value = "Reference-id") UUID referenceId, @PathVariable String id, @RequestBody WithdrawRequest request) {
         walletService.withdraw(id, request, referenceId);
@@ -61,4 +128,10 @@ public class WalletController {
         walletService.transfer(request, referenceId);
         return ResponseEntity.ok("Transfer successful");
     }
+
+    @PostMapping("/transfers/batch")
+    public ResponseEntity<BatchTransferResponse> transferBatch(@RequestBody BatchTransferRequest request) {
+
+        return ResponseEntity.ok(batchTransferService.transfer(request));
+    }
 }
@@ -0,0 +1,7 @@
+package com.challenge.rp.wallet.dto;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+public record BatchTransferItem(UUID referenceId, UUID sourceWalletId, UUID targetWalletId, BigDecimal amount) {
+}
@@ -0,0 +1,9 @@
+package com.challenge.rp.wallet.dto;
+
+public enum BatchTransferMode {
+
+    // Any rejected item aborts the whole batch
+    ALL_OR_NOTHING,
+    // Rejected items are skipped and the remaining transfers are applied
+    BEST_EFFORT
+}
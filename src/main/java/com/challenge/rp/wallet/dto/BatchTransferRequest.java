@@ -0,0 +1,6 @@
+package com.challenge.rp.wallet.dto;
+
+import java.util.List;
+
+public record BatchTransferRequest(BatchTransferMode mode, List<BatchTransferItem> transfers) {
+}
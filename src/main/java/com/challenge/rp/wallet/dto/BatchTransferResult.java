@@ -0,0 +1,6 @@
+package com.challenge.rp.wallet.dto;
+
+import java.util.UUID;
+
+public record BatchTransferResult(UUID referenceId, BatchTransferStatus status, String message) {
+}
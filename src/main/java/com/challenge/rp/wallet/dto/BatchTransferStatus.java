@@ -0,0 +1,6 @@
+package com.challenge.rp.wallet.dto;
+
+public enum BatchTransferStatus {
+
+    APPLIED, REJECTED, ABORTED
+}
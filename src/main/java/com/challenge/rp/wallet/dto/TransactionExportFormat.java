@@ -0,0 +1,30 @@
+package com.challenge.rp.wallet.dto;
+
+import org.springframework.http.MediaType;
+
+public enum TransactionExportFormat {
+
+    // One JSON object per line
+    NDJSON(MediaType.parseMediaType("application/x-ndjson")),
+    // Header line followed by one row per transaction
+    CSV(MediaType.parseMediaType("text/csv"));
+
+    private final MediaType mediaType;
+
+    TransactionExportFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public static TransactionExportFormat of(String format) {
+        for (TransactionExportFormat value : values()) {
+            if (value.name().equalsIgnoreCase(format)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported export format: " + format);
+    }
+}
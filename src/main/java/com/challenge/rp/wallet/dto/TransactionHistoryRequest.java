@@ -0,0 +1,8 @@
+package com.challenge.rp.wallet.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// The cursor is the createdAt and id of the last transaction already received; both or neither are set
+public record TransactionHistoryRequest(Instant afterCreatedAt, UUID afterId, Integer limit) {
+}
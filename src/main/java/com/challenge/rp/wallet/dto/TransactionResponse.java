@@ -0,0 +1,17 @@
+package com.challenge.rp.wallet.dto;
+
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+public record TransactionResponse(UUID id, TransactionType transactionType, BigDecimal amount, UUID referenceId,
+                                  Instant createdAt) {
+
+    // Used by the repository projection, which reads the amount as stored in the entity
+    public TransactionResponse(UUID id, TransactionType transactionType, Money amount, UUID referenceId, Instant createdAt) {
+        this(id, transactionType, amount.toBigDecimal(), referenceId, createdAt);
+    }
+}
@@ -0,0 +1,7 @@
+package com.challenge.rp.wallet.dto;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+public record WalletBalanceResult(UUID walletId, BigDecimal balance, String message) {
+}
@@ -0,0 +1,6 @@
+package com.challenge.rp.wallet.dto;
+
+import java.util.UUID;
+
+public record WalletBulkCreateResult(UUID userId, UUID walletId, WalletBulkCreateStatus status, String message) {
+}
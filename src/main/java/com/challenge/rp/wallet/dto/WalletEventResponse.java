@@ -0,0 +1,24 @@
+package com.challenge.rp.wallet.dto;
+
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.WalletEvent;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+public record WalletEventResponse(UUID walletId, long sequence, TransactionType transactionType, BigDecimal amount,
+                                  BigDecimal balance, UUID referenceId, Instant createdAt) {
+
+    // Used by the repository projection, which reads the amounts as stored in the entity
+    public WalletEventResponse(UUID walletId, long sequence, TransactionType transactionType, Money amount, Money balance,
+                               UUID referenceId, Instant createdAt) {
+        this(walletId, sequence, transactionType, amount.toBigDecimal(), balance.toBigDecimal(), referenceId, createdAt);
+    }
+
+    public static WalletEventResponse of(WalletEvent event) {
+        return new WalletEventResponse(event.getWalletId(), event.getSequence(), event.getTransactionType(), event.getAmount(),
+                event.getBalance(), event.getReferenceId(), event.getCreatedAt());
+    }
+}
@@ -0,0 +1,11 @@
+package com.challenge.rp.wallet.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class DepositOutcomeUnknownException extends RuntimeException {
+    public DepositOutcomeUnknownException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,105 @@
+package com.challenge.rp.wallet.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A calendar month (UTC) of a shard's transactions that has been written to an archive segment.
+ * From the moment it is recorded, reads take the month's transactions from the segment rather than
+ * from {@code tb_transaction}, whose rows for it are then purged.
+ */
+@Entity
+@Table(name = "tb_transaction_archive")
+public class ArchivedMonth implements Persistable<String> {
+    @Id
+    @Column(name = "archive_month", length = 7)
+    private String month;
+
+    @Column(name = "segment", nullable = false)
+    private String segment;
+
+    @Column(name = "transaction_count", nullable = false)
+    private long transactionCount;
+
+    @Column(name = "wallet_count", nullable = false)
+    private long walletCount;
+
+    @Column(name = "archived_at", nullable = false)
+    private Instant archivedAt;
+
+    // Whether the month's rows have been deleted from tb_transaction
+    @Column(name = "purged", nullable = false)
+    private boolean purged;
+
+    // Keyed by the month, so a save must insert: archiving a month twice is a conflict
+    @Transient
+    private boolean isNew = true;
+
+    public ArchivedMonth() {
+    }
+
+    public ArchivedMonth(YearMonth month, String segment, long transactionCount, long walletCount) {
+        this.month = month.toString();
+        this.segment = segment;
+        this.transactionCount = transactionCount;
+        this.walletCount = walletCount;
+        this.archivedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    public YearMonth getMonth() {
+        return YearMonth.parse(month);
+    }
+
+    public Instant getStart() {
+        return getMonth().atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    public Instant getEnd() {
+        return getMonth().plusMonths(1).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    public String getSegment() {
+        return segment;
+    }
+
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public long getWalletCount() {
+        return walletCount;
+    }
+
+    public Instant getArchivedAt() {
+        return archivedAt;
+    }
+
+    public boolean isPurged() {
+        return purged;
+    }
+
+    public void setPurged(boolean purged) {
+        this.purged = purged;
+    }
+
+    @Override
+    public String getId() {
+        return month;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+}
@@ -0,0 +1,40 @@
+package com.challenge.rp.wallet.model;
+
+import jakarta.persistence.*;
+
+import java.util.UUID;
+
+/**
+ * The {@code Reference-id} of a transaction purged from {@code tb_transaction} once its month was
+ * archived, kept with the wallet, counterparty and amount it was applied with, so a repeated request
+ * is still told apart from a reused key.
+ */
+@Entity
+@Table(name = "tb_archived_reference", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"reference_id", "transaction_type"})
+})
+public class ArchivedReference {
+    // The id of the purged transaction
+    @Id
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID id;
+
+    @Column(name = "reference_id", nullable = false)
+    private UUID referenceId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "transaction_type", nullable = false)
+    private TransactionType transactionType;
+
+    @Column(name = "wallet_id", nullable = false)
+    private UUID walletId;
+
+    @Column(name = "counterparty_wallet_id")
+    private UUID counterpartyWalletId;
+
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private Money amount;
+
+    public ArchivedReference() {
+    }
+}
@@ -0,0 +1,62 @@
+package com.challenge.rp.wallet.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Table(name = "tb_balance_snapshot", indexes = {
+        @Index(name = "idx_balance_snapshot_wallet_taken_at", columnList = "wallet_id, taken_at")
+})
+public class BalanceSnapshot {
+    @Id
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID id;
+
+    @Column(name = "wallet_id", nullable = false)
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID walletId;
+
+    @Column(name = "balance", nullable = false, precision = 19, scale = 2)
+    private Money balance;
+
+    @Column(name = "transaction_count", nullable = false)
+    private long transactionCount;
+
+    // Creation time of the last transaction included in the balance
+    @Column(name = "taken_at", nullable = false)
+    private Instant takenAt;
+
+    public BalanceSnapshot() {
+    }
+
+    public BalanceSnapshot(UUID walletId, Money balance, long transactionCount, Instant takenAt) {
+        this.walletId = walletId;
+        this.balance = balance;
+        this.transactionCount = transactionCount;
+        this.takenAt = takenAt;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getWalletId() {
+        return walletId;
+    }
+
+    public Money getBalance() {
+        return balance;
+    }
+
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public Instant getTakenAt() {
+        return takenAt;
+    }
+}
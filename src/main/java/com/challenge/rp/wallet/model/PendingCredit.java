@@ -0,0 +1,87 @@
+package com.challenge.rp.wallet.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * Credit leg of a transfer between wallets on different database shards, recorded on the source
+ * wallet's shard in the transaction that debits it and removed once the target is credited.
+ */
+@Entity
+@Table(name = "tb_pending_credit", indexes = {
+        @Index(name = "idx_pending_credit_created", columnList = "created_at")
+})
+public class PendingCredit implements Persistable<UUID> {
+    @Id
+    @Column(name = "reference_id")
+    private UUID referenceId;
+
+    @Column(name = "source_wallet_id", nullable = false)
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID sourceWalletId;
+
+    @Column(name = "target_wallet_id", nullable = false)
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID targetWalletId;
+
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private Money amount;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    // Keyed by the reference id, so a save must insert: a second pending credit for it is a bug
+    @Transient
+    private boolean isNew = true;
+
+    public PendingCredit() {
+    }
+
+    public PendingCredit(UUID referenceId, UUID sourceWalletId, UUID targetWalletId, Money amount) {
+        this.referenceId = referenceId;
+        this.sourceWalletId = sourceWalletId;
+        this.targetWalletId = targetWalletId;
+        this.amount = amount;
+        this.createdAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    public UUID getReferenceId() {
+        return referenceId;
+    }
+
+    public UUID getSourceWalletId() {
+        return sourceWalletId;
+    }
+
+    public UUID getTargetWalletId() {
+        return targetWalletId;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public UUID getId() {
+        return referenceId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+}
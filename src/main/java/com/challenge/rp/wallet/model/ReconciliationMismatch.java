@@ -0,0 +1,84 @@
+package com.challenge.rp.wallet.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * A wallet whose balance did not match the signed sum of its transactions during a reconciliation
+ * run. Rows are only inserted, one per wallet and run, and kept for whoever investigates them.
+ */
+@Entity
+@Table(name = "tb_reconciliation_mismatch", indexes = {
+        @Index(name = "idx_reconciliation_mismatch_run", columnList = "run_id, wallet_id")
+})
+public class ReconciliationMismatch {
+
+    @Id
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID id;
+
+    @Column(name = "run_id", nullable = false)
+    private UUID runId;
+
+    @Column(name = "wallet_id", nullable = false)
+    private UUID walletId;
+
+    // As stored on the wallet row
+    @Column(name = "wallet_balance", nullable = false, precision = 19, scale = 2)
+    private Money walletBalance;
+
+    // Signed sum of the transactions up to the wallet's transaction count
+    @Column(name = "ledger_balance", nullable = false, precision = 19, scale = 2)
+    private Money ledgerBalance;
+
+    @Column(name = "transaction_count", nullable = false)
+    private long transactionCount;
+
+    @Column(name = "detected_at", nullable = false)
+    private Instant detectedAt;
+
+    public ReconciliationMismatch() {
+    }
+
+    public ReconciliationMismatch(UUID runId, UUID walletId, Money walletBalance, Money ledgerBalance, long transactionCount) {
+        this.runId = runId;
+        this.walletId = walletId;
+        this.walletBalance = walletBalance;
+        this.ledgerBalance = ledgerBalance;
+        this.transactionCount = transactionCount;
+        this.detectedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getRunId() {
+        return runId;
+    }
+
+    public UUID getWalletId() {
+        return walletId;
+    }
+
+    public Money getWalletBalance() {
+        return walletBalance;
+    }
+
+    public Money getLedgerBalance() {
+        return ledgerBalance;
+    }
+
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public Instant getDetectedAt() {
+        return detectedAt;
+    }
+}
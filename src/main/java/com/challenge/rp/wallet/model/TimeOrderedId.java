@@ -0,0 +1,18 @@
+package com.challenge.rp.wallet.model;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * An id generated by {@link TimeOrderedUuidGenerator} on insert, unless the entity was given one.
+ */
+@IdGeneratorType(TimeOrderedIdGenerator.class)
+@Retention(RUNTIME)
+@Target(FIELD)
+public @interface TimeOrderedId {
+}
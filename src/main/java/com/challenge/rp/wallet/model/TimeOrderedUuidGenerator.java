@@ -0,0 +1,51 @@
+package com.challenge.rp.wallet.model;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.uuid.UuidValueGenerator;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates version 7 UUIDs in-process: a 48-bit Unix millisecond timestamp, a 12-bit counter that
+ * keeps ids monotonic within the same millisecond, and 62 random bits. Stored big-endian by
+ * {@link UUIDBinaryConverter}, new rows are appended at the end of the clustered index instead of
+ * landing on random pages.
+ */
+public class TimeOrderedUuidGenerator implements UuidValueGenerator {
+
+    // Unix millis in the upper 52 bits, per-millisecond counter in the lower 12
+    private static final AtomicLong LAST_TICK = new AtomicLong();
+
+    public static UUID next() {
+        long tick = nextTick();
+        long mostSigBits = (tick >>> 12) << 16 | 0x7000L | (tick & 0xFFFL);
+        long leastSigBits = ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Lowest id that can be generated at the given instant, so ids generated before it sort lower.
+     */
+    public static UUID lowestAt(Instant instant) {
+        return new UUID(instant.toEpochMilli() << 16 | 0x7000L, 0x8000000000000000L);
+    }
+
+    private static long nextTick() {
+        while (true) {
+            long last = LAST_TICK.get();
+            // When the counter overflows it carries into the timestamp, borrowing from the next millisecond
+            long next = Math.max(System.currentTimeMillis() << 12, last + 1);
+            if (LAST_TICK.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    @Override
+    public UUID generateUuid(SharedSessionContractImplementor session) {
+        return next();
+    }
+}
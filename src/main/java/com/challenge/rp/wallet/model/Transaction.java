@@ -1,19 +1,28 @@
 package com.challenge.rp.wallet.model;
 
 import jakarta.persistence.*;
-import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UuidGenerator;
 
-import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.UUID;
 
 @Entity
 @Table(name = "tb_transaction", uniqueConstraints = {
-        @UniqueConstraint(columnNames = {"reference_id", "transaction_type"})
+        @UniqueConstraint(columnNames = {"reference_id", "transaction_type"}),
+        // Two writers can never record the same position in a wallet's log
+        @UniqueConstraint(name = Transaction.SEQUENCE_CONSTRAINT, columnNames = {"wallet_id", "sequence_number"})
+}, indexes = {
+        // Serves the per-wallet range reads in (created_at, id) order, and covers the
+        // historic-balance aggregate so it never reads the table rows
+        @Index(name = "idx_transaction_wallet_created", columnList = "wallet_id, created_at, id, transaction_type, amount")
 })
 public class Transaction {
+
+    public static final String SEQUENCE_CONSTRAINT = "uk_transaction_wallet_sequence";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
     @Convert(converter = UUIDBinaryConverter.class)
     private UUID id;
 
@@ -26,31 +35,58 @@ public class Transaction {
     private TransactionType transactionType;
 
     @Column(name = "amount", nullable = false, precision = 19, scale = 2)
-    private BigDecimal amount;
+    private Money amount;
 
     @Column(name = "reference_id", nullable = false)
     private UUID referenceId;
 
     @Column(name = "created_at")
-    @CreationTimestamp
     private Instant createdAt;
 
+    // Position in the wallet's log, starting at 1: the wallet's transaction count once this one is applied
+    @Column(name = "sequence_number", nullable = false)
+    private long sequence;
+
+    // The other wallet of a transfer leg, null for a plain deposit or withdrawal
+    @Column(name = "counterparty_wallet_id")
+    private UUID counterpartyWalletId;
+
     public Transaction() {
     }
 
-    public Transaction(Wallet wallet, TransactionType transactionType, BigDecimal amount) {
+    public Transaction(Wallet wallet, TransactionType transactionType, Money amount) {
         this.wallet = wallet;
         this.transactionType = transactionType;
         this.amount = amount;
     }
 
-    public Transaction(Wallet wallet, TransactionType transactionType, BigDecimal amount, UUID referenceId) {
+    public Transaction(Wallet wallet, TransactionType transactionType, Money amount, UUID referenceId) {
         this.wallet = wallet;
         this.transactionType = transactionType;
         this.amount = amount;
         this.referenceId = referenceId;
     }
 
+    public Transaction(Wallet wallet, TransactionType transactionType, Money amount, UUID referenceId, long sequence) {
+        this(wallet, transactionType, amount, referenceId);
+        this.sequence = sequence;
+    }
+
+    public Transaction(Wallet wallet, TransactionType transactionType, Money amount, UUID referenceId, long sequence,
+                       UUID counterpartyWalletId) {
+        this(wallet, transactionType, amount, referenceId, sequence);
+        this.counterpartyWalletId = counterpartyWalletId;
+    }
+
+    // Assigned at persist time (rather than at flush) so the service can checkpoint against it
+    // within the same unit of work; truncated to the precision the column stores.
+    @PrePersist
+    void onCreate() {
+        if (createdAt == null) {
+            createdAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        }
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
@@ -59,11 +95,27 @@ public class Transaction {
         this.createdAt = createdAt;
     }
 
-    public BigDecimal getAmount() {
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public UUID getCounterpartyWalletId() {
+        return counterpartyWalletId;
+    }
+
+    public void setCounterpartyWalletId(UUID counterpartyWalletId) {
+        this.counterpartyWalletId = counterpartyWalletId;
+    }
+
+    public Money getAmount() {
         return amount;
     }
 
-    public void setAmount(BigDecimal amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 
@@ -75,6 +127,14 @@ public class Transaction {
         this.transactionType = transactionType;
     }
 
+    public UUID getReferenceId() {
+        return referenceId;
+    }
+
+    public void setReferenceId(UUID referenceId) {
+        this.referenceId = referenceId;
+    }
+
     public Wallet getWallet() {
         return wallet;
     }
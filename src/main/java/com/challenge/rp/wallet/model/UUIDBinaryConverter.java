@@ -3,11 +3,17 @@ package com.challenge.rp.wallet.model;
 import jakarta.persistence.AttributeConverter;
 import jakarta.persistence.Converter;
 import java.nio.ByteBuffer;
+import java.util.Comparator;
 import java.util.UUID;
 
 @Converter(autoApply = true)
 public class UUIDBinaryConverter implements AttributeConverter<UUID, byte[]> {
 
+    // Order of the stored bytes, i.e. the order the database sorts and locks these ids in
+    public static final Comparator<UUID> BINARY_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
     @Override
     public byte[] convertToDatabaseColumn(UUID uuid) {
         if (uuid == null) {
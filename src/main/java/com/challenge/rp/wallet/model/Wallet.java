@@ -3,7 +3,6 @@ package com.challenge.rp.wallet.model;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.UUID;
 
@@ -11,7 +10,7 @@ import java.util.UUID;
 @Table(name = "tb_wallet")
 public class Wallet {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TimeOrderedId
     @Convert(converter = UUIDBinaryConverter.class)
     private UUID id;
 
@@ -19,12 +18,15 @@ public class Wallet {
      @Convert(converter = UUIDBinaryConverter.class)
      private UUID userId;
     @Column(name = "balance", precision = 19, scale = 2)
-    private BigDecimal balance;
+    private Money balance;
 
     @Column(name = "created_at")
     @CreationTimestamp
     private Instant  createdAt;
 
+    @Column(name = "transaction_count", nullable = false)
+    private long transactionCount; // Drives balance snapshot checkpoints
+
     @Version
     private Long version; // Used for optimistic locking
 
@@ -33,7 +35,7 @@ public class Wallet {
 
     public Wallet(UUID userId) {
         this.userId = userId;
-        this.balance = BigDecimal.ZERO;
+        this.balance = Money.ZERO;
     }
 
     public UUID getId() {
@@ -48,14 +50,22 @@ public class Wallet {
     }
 
 
-    public BigDecimal getBalance() {
+    public Money getBalance() {
         return balance;
     }
 
-    public void setBalance(BigDecimal balance) {
+    public void setBalance(Money balance) {
         this.balance = balance;
     }
 
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public void setTransactionCount(long transactionCount) {
+        this.transactionCount = transactionCount;
+    }
+
 
 
 
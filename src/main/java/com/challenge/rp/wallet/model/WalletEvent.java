@@ -0,0 +1,96 @@
+package com.challenge.rp.wallet.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Outbox row for a change to a wallet's balance, inserted in the same database transaction as the
+ * {@link Transaction} it describes and read back by the event relay. Rows are deleted once older
+ * than the event retention.
+ */
+@Entity
+@Table(name = "tb_wallet_event", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_wallet_event_sequence", columnNames = {"wallet_id", "sequence_number"})
+}, indexes = {
+        // The relay tails the outbox in (created_at, id) order and retention deletes from its head
+        @Index(name = "idx_wallet_event_created", columnList = "created_at, id")
+})
+public class WalletEvent {
+
+    @Id
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID id;
+
+    @Column(name = "wallet_id", nullable = false)
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID walletId;
+
+    @Column(name = "sequence_number", nullable = false)
+    private long sequence;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "transaction_type", nullable = false)
+    private TransactionType transactionType;
+
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private Money amount;
+
+    // The wallet's balance once the transaction is applied
+    @Column(name = "balance", nullable = false, precision = 19, scale = 2)
+    private Money balance;
+
+    @Column(name = "reference_id", nullable = false)
+    private UUID referenceId;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public WalletEvent() {
+    }
+
+    public WalletEvent(Transaction transaction, Money balance) {
+        this.walletId = transaction.getWallet().getId();
+        this.sequence = transaction.getSequence();
+        this.transactionType = transaction.getTransactionType();
+        this.amount = transaction.getAmount();
+        this.balance = balance;
+        this.referenceId = transaction.getReferenceId();
+        this.createdAt = transaction.getCreatedAt();
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getWalletId() {
+        return walletId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public TransactionType getTransactionType() {
+        return transactionType;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public Money getBalance() {
+        return balance;
+    }
+
+    public UUID getReferenceId() {
+        return referenceId;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,67 @@
+package com.challenge.rp.wallet.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.util.UUID;
+
+/**
+ * Entry of the wallet directory: the wallet a user owns and the database shard it was placed on.
+ * The user id is the key, so a user owns one wallet across all shards.
+ */
+@Entity
+@Table(name = "tb_wallet_directory")
+public class WalletPlacement implements Persistable<UUID> {
+    @Id
+    @Column(name = "user_id")
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID userId;
+
+    @Column(name = "wallet_id", nullable = false)
+    @Convert(converter = UUIDBinaryConverter.class)
+    private UUID walletId;
+
+    @Column(name = "shard", nullable = false)
+    private int shard;
+
+    // Saved with an assigned key, so saving inserts rather than merging over a concurrent insert
+    @Transient
+    private boolean isNew = true;
+
+    public WalletPlacement() {
+    }
+
+    public WalletPlacement(UUID userId, UUID walletId, int shard) {
+        this.userId = userId;
+        this.walletId = walletId;
+        this.shard = shard;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public UUID getWalletId() {
+        return walletId;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    @Override
+    public UUID getId() {
+        return userId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+}
@@ -0,0 +1,11 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.ArchivedMonth;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ArchivedMonthRepository extends JpaRepository<ArchivedMonth, String> {
+
+    List<ArchivedMonth> findAllByOrderByMonth();
+}
@@ -0,0 +1,41 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.ArchivedReference;
+import com.challenge.rp.wallet.model.TransactionType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+public interface ArchivedReferenceRepository extends JpaRepository<ArchivedReference, UUID> {
+
+    // Must run in the transaction that deletes the transactions
+    @Modifying
+    @Query("INSERT INTO ArchivedReference (id, referenceId, transactionType, walletId, counterpartyWalletId, amount) " +
+            "SELECT t.id, t.referenceId, t.transactionType, t.wallet.id, t.counterpartyWalletId, t.amount " +
+            "FROM Transaction t WHERE t.id IN :transactionIds")
+    int copyFrom(@Param("transactionIds") Collection<UUID> transactionIds);
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.RecordedOperation(r.referenceId, r.walletId, r.counterpartyWalletId, r.amount) " +
+            "FROM ArchivedReference r WHERE r.referenceId = :referenceId AND r.transactionType = :transactionType")
+    Optional<RecordedOperation> findRecordedOperation(
+            @Param("referenceId") UUID referenceId,
+            @Param("transactionType") TransactionType transactionType
+    );
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.RecordedOperation(r.referenceId, r.walletId, r.counterpartyWalletId, r.amount) " +
+            "FROM ArchivedReference r WHERE r.referenceId IN :referenceIds AND r.transactionType = :transactionType")
+    List<RecordedOperation> findRecordedOperations(
+            @Param("referenceIds") Collection<UUID> referenceIds,
+            @Param("transactionType") TransactionType transactionType
+    );
+
+    @Query("SELECT DISTINCT r.referenceId FROM ArchivedReference r WHERE r.referenceId IN :referenceIds")
+    Set<UUID> findExistingReferenceIds(@Param("referenceIds") Collection<UUID> referenceIds);
+}
@@ -0,0 +1,13 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.BalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface BalanceSnapshotRepository extends JpaRepository<BalanceSnapshot, UUID> {
+
+    Optional<BalanceSnapshot> findFirstByWalletIdAndTakenAtLessThanEqualOrderByTakenAtDesc(UUID walletId, Instant takenAt);
+}
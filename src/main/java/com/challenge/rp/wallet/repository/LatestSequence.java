@@ -0,0 +1,9 @@
+package com.challenge.rp.wallet.repository;
+
+import java.util.UUID;
+
+/**
+ * Sequence of the newest event in a wallet's outbox.
+ */
+public record LatestSequence(UUID walletId, long sequence) {
+}
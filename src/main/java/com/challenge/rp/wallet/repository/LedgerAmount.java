@@ -0,0 +1,16 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+
+import java.util.UUID;
+
+/**
+ * Position of a transaction in its wallet's log and its signed amount in minor units.
+ */
+public record LedgerAmount(UUID walletId, long sequence, long signedMinorUnits) {
+
+    public LedgerAmount(UUID walletId, long sequence, TransactionType transactionType, Money amount) {
+        this(walletId, sequence, transactionType == TransactionType.DEPOSIT ? amount.minorUnits() : -amount.minorUnits());
+    }
+}
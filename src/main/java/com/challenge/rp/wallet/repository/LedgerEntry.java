@@ -0,0 +1,23 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.dto.TransactionResponse;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A transaction with everything needed to archive it.
+ */
+public record LedgerEntry(UUID id, UUID walletId, long sequence, TransactionType transactionType, Money amount,
+                          UUID referenceId, Instant createdAt) {
+
+    public Money signedAmount() {
+        return transactionType == TransactionType.DEPOSIT ? amount : amount.negate();
+    }
+
+    public TransactionResponse toResponse() {
+        return new TransactionResponse(id, transactionType, amount, referenceId, createdAt);
+    }
+}
@@ -0,0 +1,16 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.Money;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Balance and last sequence number of a wallet, folded from its whole log or as projected on its row.
+ */
+public record LedgerPosition(UUID walletId, Money balance, long lastSequence) {
+
+    public LedgerPosition(UUID walletId, BigDecimal balance, Long lastSequence) {
+        this(walletId, Money.of(balance), lastSequence);
+    }
+}
@@ -0,0 +1,16 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.Money;
+
+import java.math.BigDecimal;
+
+/**
+ * Net amount of the transactions recorded in a wallet's log after a given position, and the
+ * position of the last one (the given position if there are none).
+ */
+public record LedgerTail(Money balanceChange, long lastSequence) {
+
+    public LedgerTail(BigDecimal balanceChange, Long lastSequence) {
+        this(Money.of(balanceChange), lastSequence);
+    }
+}
@@ -0,0 +1,14 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.PendingCredit;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface PendingCreditRepository extends JpaRepository<PendingCredit, UUID> {
+
+    List<PendingCredit> findByCreatedAtBeforeOrderByCreatedAt(Instant createdAt, Limit limit);
+}
@@ -0,0 +1,12 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.ReconciliationMismatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface ReconciliationMismatchRepository extends JpaRepository<ReconciliationMismatch, UUID> {
+
+    List<ReconciliationMismatch> findByRunId(UUID runId);
+}
@@ -0,0 +1,19 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.Money;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Wallet, transfer counterparty and amount a reference id was applied with, used to tell a replay
+ * from a reused key. The counterparty is null for a plain deposit or withdrawal, so a transfer and a
+ * withdrawal never replay each other.
+ */
+public record RecordedOperation(UUID referenceId, UUID walletId, UUID counterpartyWalletId, Money amount) {
+
+    public boolean matches(UUID walletId, UUID counterpartyWalletId, Money amount) {
+        return this.walletId.equals(walletId) && Objects.equals(this.counterpartyWalletId, counterpartyWalletId)
+                && this.amount.equals(amount);
+    }
+}
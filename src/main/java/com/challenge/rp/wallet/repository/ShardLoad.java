@@ -0,0 +1,7 @@
+package com.challenge.rp.wallet.repository;
+
+/**
+ * Number of wallets the directory has placed on a database shard.
+ */
+public record ShardLoad(int shard, long wallets) {
+}
@@ -1,20 +1,85 @@
 package com.challenge.rp.wallet.repository;
 
 import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
-import java.time.LocalDateTime;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
-public interface TransactionRepository extends JpaRepository<Transaction, UUID> {
-    @Query("SELECT t FROM Transaction t WHERE t.wallet.id = :id AND t.createdAt BETWEEN :beginDateTime AND :endDateTime")
-    List<Transaction> findAllTransactionsBetween(
+public interface TransactionRepository extends JpaRepository<Transaction, UUID>, TransactionStreams {
+    @Query("SELECT COALESCE(SUM(CASE WHEN t.transactionType = com.challenge.rp.wallet.model.TransactionType.DEPOSIT " +
+            "THEN t.amount ELSE -t.amount END), 0) " +
+            "FROM Transaction t WHERE t.wallet.id = :id AND t.createdAt > :after AND t.createdAt <= :upTo")
+    BigDecimal sumSignedAmountBetween(
             @Param("id") UUID id,
-            @Param("beginDateTime") LocalDateTime beginDateTime,
-            @Param("endDateTime") LocalDateTime endDateTime
+            @Param("after") Instant after,
+            @Param("upTo") Instant upTo
     );
 
+    @Query("SELECT new com.challenge.rp.wallet.repository.LedgerTail(" +
+            "COALESCE(SUM(CASE WHEN t.transactionType = com.challenge.rp.wallet.model.TransactionType.DEPOSIT " +
+            "THEN t.amount ELSE -t.amount END), 0), COALESCE(MAX(t.sequence), :after)) " +
+            "FROM Transaction t WHERE t.wallet.id = :walletId AND t.sequence > :after")
+    LedgerTail findLedgerTail(@Param("walletId") UUID walletId, @Param("after") long after);
+
+    @Query("SELECT COALESCE(MAX(t.sequence), 0) FROM Transaction t WHERE t.wallet.id = :walletId")
+    long findLastSequence(@Param("walletId") UUID walletId);
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.LedgerPosition(t.wallet.id, " +
+            "SUM(CASE WHEN t.transactionType = com.challenge.rp.wallet.model.TransactionType.DEPOSIT " +
+            "THEN t.amount ELSE -t.amount END), MAX(t.sequence)) " +
+            "FROM Transaction t WHERE t.createdAt >= :from GROUP BY t.wallet.id")
+    List<LedgerPosition> findLedgerPositions(@Param("from") Instant from);
+
+    @Query("SELECT DISTINCT t.referenceId FROM Transaction t WHERE t.referenceId IN :referenceIds")
+    Set<UUID> findExistingReferenceIds(@Param("referenceIds") Collection<UUID> referenceIds);
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.RecordedOperation(t.referenceId, t.wallet.id, t.counterpartyWalletId, t.amount) " +
+            "FROM Transaction t WHERE t.referenceId = :referenceId AND t.transactionType = :transactionType")
+    Optional<RecordedOperation> findRecordedOperation(
+            @Param("referenceId") UUID referenceId,
+            @Param("transactionType") TransactionType transactionType
+    );
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.RecordedOperation(t.referenceId, t.wallet.id, t.counterpartyWalletId, t.amount) " +
+            "FROM Transaction t WHERE t.referenceId IN :referenceIds AND t.transactionType = :transactionType")
+    List<RecordedOperation> findRecordedOperations(
+            @Param("referenceIds") Collection<UUID> referenceIds,
+            @Param("transactionType") TransactionType transactionType
+    );
+
+    @Query("SELECT t.createdAt FROM Transaction t WHERE t.id >= :fromId AND t.createdAt >= :from ORDER BY t.id")
+    List<Instant> findOldestCreatedAt(@Param("fromId") UUID fromId, @Param("from") Instant from, Limit limit);
+
+    @Query("SELECT t.id FROM Transaction t WHERE t.id > :afterId AND t.id < :toId AND t.createdAt < :before ORDER BY t.id")
+    List<UUID> findIdsCreatedBefore(
+            @Param("afterId") UUID afterId,
+            @Param("toId") UUID toId,
+            @Param("before") Instant before,
+            Limit limit
+    );
+
+    // Transactions of the wallets in the id range, grouped by wallet; archived ones are skipped with the from bound
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.challenge.rp.wallet.repository.LedgerAmount(t.wallet.id, t.sequence, t.transactionType, t.amount) " +
+            "FROM Transaction t WHERE t.wallet.id >= :fromId AND t.wallet.id <= :toId AND t.createdAt >= :from " +
+            "ORDER BY t.wallet.id")
+    Stream<LedgerAmount> streamAmounts(
+            @Param("fromId") UUID fromId,
+            @Param("toId") UUID toId,
+            @Param("from") Instant from
+    );
 }
@@ -0,0 +1,23 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.dto.TransactionResponse;
+import org.springframework.data.domain.Limit;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Reads of unbounded numbers of transactions, streamed from the database row by row instead of
+ * being fetched whole. The stream keeps its connection busy until it is closed, so nothing else may
+ * run on the transaction while it is open.
+ */
+public interface TransactionStreams {
+
+    Stream<TransactionResponse> streamByWallet(UUID walletId, Limit limit);
+
+    Stream<TransactionResponse> streamByWalletAfter(UUID walletId, Instant afterCreatedAt, UUID afterId, Limit limit);
+
+    // Ids are time ordered, so the id bounds narrow the scan to the month's primary key range
+    Stream<LedgerEntry> streamBetween(UUID fromId, UUID toId, Instant from, Instant to);
+}
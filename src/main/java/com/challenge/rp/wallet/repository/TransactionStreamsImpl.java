@@ -0,0 +1,79 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.dto.TransactionResponse;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * MySQL Connector/J reads a whole result set into memory unless the connection enables
+ * {@code useCursorFetch} for every query, or the statement asks for row-by-row streaming with a
+ * fetch size of {@link Integer#MIN_VALUE}. Only these queries ask for it; other drivers are given an
+ * ordinary fetch size.
+ */
+class TransactionStreamsImpl implements TransactionStreams {
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String RESPONSE = "SELECT new com.challenge.rp.wallet.dto.TransactionResponse(t.id, t.transactionType, "
+            + "t.amount, t.referenceId, t.createdAt) FROM Transaction t ";
+
+    private final EntityManager entityManager;
+    private Integer fetchSize;
+
+    TransactionStreamsImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Stream<TransactionResponse> streamByWallet(UUID walletId, Limit limit) {
+        return stream(entityManager.createQuery(RESPONSE + "WHERE t.wallet.id = :walletId ORDER BY t.createdAt, t.id",
+                        TransactionResponse.class)
+                .setParameter("walletId", walletId), limit);
+    }
+
+    @Override
+    public Stream<TransactionResponse> streamByWalletAfter(UUID walletId, Instant afterCreatedAt, UUID afterId, Limit limit) {
+        return stream(entityManager.createQuery(RESPONSE + "WHERE t.wallet.id = :walletId "
+                                + "AND (t.createdAt > :afterCreatedAt OR (t.createdAt = :afterCreatedAt AND t.id > :afterId)) "
+                                + "ORDER BY t.createdAt, t.id", TransactionResponse.class)
+                .setParameter("walletId", walletId)
+                .setParameter("afterCreatedAt", afterCreatedAt)
+                .setParameter("afterId", afterId), limit);
+    }
+
+    @Override
+    public Stream<LedgerEntry> streamBetween(UUID fromId, UUID toId, Instant from, Instant to) {
+        return stream(entityManager.createQuery("SELECT new com.challenge.rp.wallet.repository.LedgerEntry(t.id, t.wallet.id, "
+                                + "t.sequence, t.transactionType, t.amount, t.referenceId, t.createdAt) "
+                                + "FROM Transaction t WHERE t.id >= :fromId AND t.id < :toId AND t.createdAt >= :from AND t.createdAt < :to "
+                                + "ORDER BY t.wallet.id, t.createdAt, t.id", LedgerEntry.class)
+                .setParameter("fromId", fromId)
+                .setParameter("toId", toId)
+                .setParameter("from", from)
+                .setParameter("to", to), Limit.unlimited());
+    }
+
+    private <T> Stream<T> stream(TypedQuery<T> query, Limit limit) {
+        if (limit.isLimited()) {
+            query.setMaxResults(limit.max());
+        }
+        return query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize()).getResultStream();
+    }
+
+    // Resolved on first use, once the session factory is built
+    private int fetchSize() {
+        if (fetchSize == null) {
+            fetchSize = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices().getDialect() instanceof MySQLDialect ? Integer.MIN_VALUE : FETCH_SIZE;
+        }
+        return fetchSize;
+    }
+}
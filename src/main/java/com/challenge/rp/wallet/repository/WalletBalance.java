@@ -0,0 +1,17 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.Money;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Current balance of a wallet, optionally read as its projected balance plus the net amount of
+ * the transactions recorded after the projection.
+ */
+public record WalletBalance(UUID walletId, Money balance) {
+
+    public WalletBalance(UUID walletId, Money projected, BigDecimal tailChange) {
+        this(walletId, projected.plus(Money.of(tailChange)));
+    }
+}
@@ -0,0 +1,40 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.dto.WalletEventResponse;
+import com.challenge.rp.wallet.model.WalletEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface WalletEventRepository extends JpaRepository<WalletEvent, UUID> {
+
+    @Query("SELECT e FROM WalletEvent e WHERE e.walletId IN :walletIds " +
+            "AND (e.createdAt > :afterCreatedAt OR (e.createdAt = :afterCreatedAt AND e.id > :afterId)) " +
+            "ORDER BY e.createdAt, e.id")
+    List<WalletEvent> findForWalletsAfter(
+            @Param("walletIds") Collection<UUID> walletIds,
+            @Param("afterCreatedAt") Instant afterCreatedAt,
+            @Param("afterId") UUID afterId,
+            Limit limit
+    );
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.LatestSequence(e.walletId, MAX(e.sequence)) " +
+            "FROM WalletEvent e WHERE e.walletId IN :walletIds GROUP BY e.walletId")
+    List<LatestSequence> findLatestSequences(@Param("walletIds") Collection<UUID> walletIds);
+
+    @Query("SELECT new com.challenge.rp.wallet.dto.WalletEventResponse(e.walletId, e.sequence, e.transactionType, e.amount, " +
+            "e.balance, e.referenceId, e.createdAt) " +
+            "FROM WalletEvent e WHERE e.walletId = :walletId AND e.sequence > :after ORDER BY e.sequence")
+    List<WalletEventResponse> findByWalletAfter(@Param("walletId") UUID walletId, @Param("after") long after, Limit limit);
+
+    @Modifying
+    @Query("DELETE FROM WalletEvent e WHERE e.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") Instant before);
+}
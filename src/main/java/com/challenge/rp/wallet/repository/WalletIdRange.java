@@ -0,0 +1,9 @@
+package com.challenge.rp.wallet.repository;
+
+import java.util.UUID;
+
+/**
+ * Lowest and highest wallet id of a shard, both null when it has no wallets.
+ */
+public record WalletIdRange(UUID first, UUID last) {
+}
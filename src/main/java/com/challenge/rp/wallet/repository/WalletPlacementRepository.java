@@ -0,0 +1,14 @@
+package com.challenge.rp.wallet.repository;
+
+import com.challenge.rp.wallet.model.WalletPlacement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface WalletPlacementRepository extends JpaRepository<WalletPlacement, UUID> {
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.ShardLoad(p.shard, COUNT(p)) FROM WalletPlacement p GROUP BY p.shard")
+    List<ShardLoad> findShardLoads();
+}
@@ -1,9 +1,79 @@
 package com.challenge.rp.wallet.repository;
 
+import com.challenge.rp.wallet.model.Money;
 import com.challenge.rp.wallet.model.Wallet;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 public interface WalletRepository extends JpaRepository<Wallet, UUID> {
+
+    // Rows are locked in primary key order, so concurrent callers cannot deadlock on each other
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM Wallet w WHERE w.id IN :ids ORDER BY w.id")
+    List<Wallet> findAllByIdForUpdate(@Param("ids") Collection<UUID> ids);
+
+    // Changes made to the returned wallet are not flushed, unless it was already loaded in the transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT w FROM Wallet w WHERE w.id = :id")
+    Optional<Wallet> findReadOnlyById(@Param("id") UUID id);
+
+    @Query("SELECT w.userId FROM Wallet w WHERE w.userId IN :userIds")
+    Set<UUID> findExistingUserIds(@Param("userIds") Collection<UUID> userIds);
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.WalletBalance(w.id, w.balance) FROM Wallet w WHERE w.id IN :ids")
+    List<WalletBalance> findBalances(@Param("ids") Collection<UUID> ids);
+
+    // The projection and the transactions after it are read in one statement, so a projection moving in between cannot skew the sum
+    @Query("SELECT new com.challenge.rp.wallet.repository.WalletBalance(w.id, w.balance, " +
+            "COALESCE(SUM(CASE WHEN t.transactionType = com.challenge.rp.wallet.model.TransactionType.DEPOSIT " +
+            "THEN t.amount ELSE -t.amount END), 0)) " +
+            "FROM Wallet w LEFT JOIN Transaction t ON t.wallet = w AND t.sequence > w.transactionCount " +
+            "WHERE w.id IN :ids GROUP BY w.id, w.balance")
+    List<WalletBalance> findLedgerBalances(@Param("ids") Collection<UUID> ids);
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.WalletIdRange(MIN(w.id), MAX(w.id)) FROM Wallet w")
+    WalletIdRange findIdRange();
+
+    @Query("SELECT new com.challenge.rp.wallet.repository.LedgerPosition(w.id, w.balance, w.transactionCount) " +
+            "FROM Wallet w WHERE w.id > :afterId AND w.id <= :toId ORDER BY w.id")
+    List<LedgerPosition> findPositionsAfter(@Param("afterId") UUID afterId, @Param("toId") UUID toId, Limit limit);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Wallet w SET w.balance = w.balance - :amount, w.transactionCount = w.transactionCount + 1, " +
+            "w.version = w.version + 1 WHERE w.id = :id AND w.balance >= :amount")
+    int debit(@Param("id") UUID id, @Param("amount") Money amount);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Wallet w SET w.balance = w.balance + :amount, w.transactionCount = w.transactionCount + 1, " +
+            "w.version = w.version + 1 WHERE w.id = :id")
+    int credit(@Param("id") UUID id, @Param("amount") Money amount);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Wallet w SET w.balance = w.balance + :amount, w.transactionCount = w.transactionCount + :count, " +
+            "w.version = w.version + 1 WHERE w.id = :id")
+    int credit(@Param("id") UUID id, @Param("amount") Money amount, @Param("count") int count);
+
+    // Moves the projection forward only if no one else moved it since it was read at :from
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Wallet w SET w.balance = :balance, w.transactionCount = :to, w.version = w.version + 1 " +
+            "WHERE w.id = :id AND w.transactionCount = :from")
+    int advanceProjection(@Param("id") UUID id, @Param("from") long from, @Param("to") long to, @Param("balance") Money balance);
+
+    @Modifying
+    @Query("UPDATE Wallet w SET w.balance = :balance, w.transactionCount = :to, w.version = w.version + 1 WHERE w.id = :id")
+    int resetProjection(@Param("id") UUID id, @Param("to") long to, @Param("balance") Money balance);
 }
@@ -0,0 +1,70 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.InsufficientBalanceException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.WalletBalance;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Applies each change as one conditional {@code UPDATE}, so the balance check and the write happen
+ * under the row lock the database takes for the statement. Concurrent writers queue on that lock
+ * instead of failing the version check and retrying. The wallet is read back after the update to
+ * record the transaction against it. The bulk update bypasses the persistence context, so a wallet
+ * the transaction loaded before, such as one locked by a pessimistic transfer, is refreshed rather
+ * than returned with its old balance and transaction count.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.balance-engine", havingValue = "atomic")
+public class AtomicBalanceEngine implements BalanceEngine {
+
+    private final WalletRepository walletRepository;
+    private final EntityManager entityManager;
+
+    public AtomicBalanceEngine(WalletRepository walletRepository, EntityManager entityManager) {
+        this.walletRepository = walletRepository;
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Wallet debit(UUID walletId, Money amount) {
+        if (walletRepository.debit(walletId, amount) == 0) {
+            // Nothing matched: either the wallet does not exist or its balance is too low
+            if (!walletRepository.existsById(walletId)) {
+                throw new WalletNotFoundException("Wallet not found for ID: " + walletId);
+            }
+            throw new InsufficientBalanceException("Insufficient balance in wallet " + walletId);
+        }
+        return reload(walletId);
+    }
+
+    @Override
+    public Wallet credit(UUID walletId, Money amount) {
+        if (walletRepository.credit(walletId, amount) == 0) {
+            throw new WalletNotFoundException("Wallet not found for ID: " + walletId);
+        }
+        return reload(walletId);
+    }
+
+    @Override
+    public Map<UUID, Money> balancesOf(Collection<UUID> walletIds) {
+        return walletRepository.findBalances(walletIds).stream()
+                .collect(Collectors.toMap(WalletBalance::walletId, WalletBalance::balance));
+    }
+
+    // The update matched the row, so it exists; one read either way, whether or not it was loaded before
+    private Wallet reload(UUID walletId) {
+        Wallet wallet = entityManager.getReference(Wallet.class, walletId);
+        entityManager.refresh(wallet);
+        return wallet;
+    }
+}
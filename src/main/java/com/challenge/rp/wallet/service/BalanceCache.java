@@ -0,0 +1,147 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.Money;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of committed wallet balances, evicted once a transaction that changed
+ * the wallet commits. Hit, miss and eviction counts are published as {@code cache.*} metrics
+ * tagged {@code cache=wallet.balance}.
+ * <p>
+ * Evicted wallets are also remembered as {@linkplain #changedRecently changed recently} for
+ * {@code wallet.replicas.read-your-writes-window}, so their reads can skip replicas that may not
+ * have the change yet.
+ */
+@Component
+public class BalanceCache {
+
+    private static final int STRIPES = 1024;
+
+    private final Cache<UUID, Money> cache;
+    // Eviction counts per stripe of wallet ids, used to discard loads that raced an eviction
+    private final AtomicLongArray evictions = new AtomicLongArray(STRIPES);
+    private final Cache<UUID, Boolean> recentlyChanged;
+
+    public BalanceCache(@Value("${wallet.balance-cache.maximum-size:100000}") long maximumSize,
+                        @Value("${wallet.balance-cache.ttl:30s}") Duration ttl,
+                        @Value("${wallet.replicas.read-your-writes-window:5s}") Duration readYourWritesWindow,
+                        MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.recentlyChanged = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(readYourWritesWindow)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "wallet.balance");
+    }
+
+    /**
+     * Returns the cached balance, loading it on a miss. The load runs outside the cache so an
+     * eviction never waits on it (an eviction runs while the writing transaction still holds its
+     * connection, and the load may be waiting for one). Instead, a load that overlaps an eviction
+     * of the same stripe is not kept, so a balance read before a commit is never left behind
+     * after it.
+     */
+    public Money get(UUID walletId, Function<UUID, Money> loader) {
+        Money cached = cache.getIfPresent(walletId);
+        if (cached != null) {
+            return cached;
+        }
+
+        int stripe = stripe(walletId);
+        long generation = evictions.get(stripe);
+        Money loaded = loader.apply(walletId);
+        if (evictions.get(stripe) == generation) {
+            cache.asMap().putIfAbsent(walletId, loaded);
+            // An eviction may have slipped in between the check and the put
+            if (evictions.get(stripe) != generation) {
+                cache.asMap().remove(walletId, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the cached balances of the wallets, loading the missing ones with a single call to
+     * the loader. Wallets the loader does not return are left out. Loads that overlap an eviction
+     * are not kept, as in {@link #get}.
+     */
+    public Map<UUID, Money> getAll(Collection<UUID> walletIds, Function<Set<UUID>, Map<UUID, Money>> loader) {
+        Map<UUID, Money> balances = new HashMap<>(cache.getAllPresent(walletIds));
+        Map<UUID, Long> generations = new HashMap<>();
+        for (UUID walletId : walletIds) {
+            if (!balances.containsKey(walletId)) {
+                generations.put(walletId, evictions.get(stripe(walletId)));
+            }
+        }
+        if (generations.isEmpty()) {
+            return balances;
+        }
+
+        Map<UUID, Money> loaded = loader.apply(generations.keySet());
+        loaded.forEach((walletId, balance) -> {
+            long generation = generations.get(walletId);
+            if (evictions.get(stripe(walletId)) == generation) {
+                cache.asMap().putIfAbsent(walletId, balance);
+                if (evictions.get(stripe(walletId)) != generation) {
+                    cache.asMap().remove(walletId, balance);
+                }
+            }
+        });
+        balances.putAll(loaded);
+        return balances;
+    }
+
+    /**
+     * Evicts the wallet once the current transaction commits, or immediately when there is none.
+     */
+    public void evictAfterCommit(UUID walletId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(walletId);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(walletId);
+            }
+        });
+    }
+
+    /**
+     * Whether a change to the wallet committed within the read-your-writes window.
+     */
+    public boolean changedRecently(UUID walletId) {
+        return recentlyChanged.getIfPresent(walletId) != null;
+    }
+
+    private void evict(UUID walletId) {
+        recentlyChanged.put(walletId, Boolean.TRUE);
+        evictions.incrementAndGet(stripe(walletId));
+        cache.invalidate(walletId);
+    }
+
+    private static int stripe(UUID walletId) {
+        return walletId.hashCode() & (STRIPES - 1);
+    }
+}
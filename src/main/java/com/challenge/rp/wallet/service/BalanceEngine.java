@@ -0,0 +1,57 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Applies balance changes to a wallet. Selected with {@code wallet.balance-engine}:
+ * {@code versioned} (default) reads, mutates and saves the wallet row under the {@code @Version}
+ * check, {@code atomic} issues a single conditional {@code UPDATE} and never conflicts, and
+ * {@code ledger} leaves the row to be projected from the transaction log later.
+ * Each call counts as one transaction on the wallet: the returned wallet's transaction count is
+ * the sequence number the caller records the transaction with.
+ */
+public interface BalanceEngine {
+
+    /**
+     * Removes the amount from the wallet balance.
+     *
+     * @return the wallet with its updated balance
+     * @throws com.challenge.rp.wallet.exception.WalletNotFoundException      if the wallet does not exist
+     * @throws com.challenge.rp.wallet.exception.InsufficientBalanceException if the balance is lower than the amount
+     */
+    Wallet debit(UUID walletId, Money amount);
+
+    /**
+     * Adds the amount to the wallet balance.
+     *
+     * @return the wallet with its updated balance
+     * @throws com.challenge.rp.wallet.exception.WalletNotFoundException if the wallet does not exist
+     */
+    Wallet credit(UUID walletId, Money amount);
+
+    /**
+     * The current balance of a wallet read outside a change. Engines that keep the wallet row
+     * current return its balance.
+     */
+    default Money balanceOf(Wallet wallet) {
+        return wallet.getBalance();
+    }
+
+    /**
+     * The current balances of the wallets among the ids that exist, read in one query.
+     */
+    Map<UUID, Money> balancesOf(Collection<UUID> walletIds);
+
+    /**
+     * Brings a wallet the caller has locked for update up to date before the caller changes it
+     * directly rather than through this engine. Engines that keep the wallet row current have
+     * nothing to do.
+     */
+    default void catchUp(Wallet lockedWallet) {
+    }
+}
@@ -0,0 +1,82 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.BalanceSnapshot;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.BalanceSnapshotRepository;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Maintains periodic balance checkpoints so a historical balance is resolved from the nearest
+ * snapshot plus at most {@code interval} transactions, instead of scanning the wallet's whole history.
+ * Transactions older than the {@link TransactionArchive} boundary are summed from the archive.
+ */
+@Service
+@Slf4j
+public class BalanceSnapshotService {
+
+    private final BalanceSnapshotRepository balanceSnapshotRepository;
+    private final TransactionRepository transactionRepository;
+    private final TransactionArchive transactionArchive;
+    private final long interval;
+
+    public BalanceSnapshotService(BalanceSnapshotRepository balanceSnapshotRepository,
+                                  TransactionRepository transactionRepository,
+                                  TransactionArchive transactionArchive,
+                                  @Value("${wallet.snapshot.interval:100}") long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be greater than zero");
+        }
+        this.balanceSnapshotRepository = balanceSnapshotRepository;
+        this.transactionRepository = transactionRepository;
+        this.transactionArchive = transactionArchive;
+        this.interval = interval;
+    }
+
+    /**
+     * Called in the same transaction that applied {@code applied} transactions to the wallet.
+     * Writes a checkpoint whenever the wallet's transaction count crosses a multiple of the interval.
+     *
+     * @param wallet  wallet with its balance and transaction count already updated
+     * @param applied number of transactions just applied to the wallet
+     * @param at      creation time of the last applied transaction
+     */
+    public void onTransactions(Wallet wallet, int applied, Instant at) {
+        long count = wallet.getTransactionCount();
+        if (count / interval == (count - applied) / interval) {
+            return;
+        }
+
+        balanceSnapshotRepository.save(new BalanceSnapshot(wallet.getId(), wallet.getBalance(), count, at));
+        log.debug("Balance snapshot taken for wallet {} at transaction {}", wallet.getId(), count);
+    }
+
+    /**
+     * Resolves the balance of a wallet at the given instant from the latest snapshot taken at or
+     * before it, plus the signed amounts of the transactions recorded after that snapshot.
+     */
+    public Money balanceAt(UUID walletId, Instant at) {
+        Optional<BalanceSnapshot> snapshot = balanceSnapshotRepository
+                .findFirstByWalletIdAndTakenAtLessThanEqualOrderByTakenAtDesc(walletId, at);
+
+        Money base = snapshot.map(BalanceSnapshot::getBalance).orElse(Money.ZERO);
+        Instant after = snapshot.map(BalanceSnapshot::getTakenAt).orElse(Instant.EPOCH);
+
+        Instant boundary = transactionArchive.boundary(walletId);
+        if (boundary != null && after.isBefore(boundary)) {
+            base = base.plus(transactionArchive.sumBetween(walletId, after, at));
+            // Timestamps are stored in microseconds, so this leaves the table's rows from the boundary on
+            after = boundary.minus(1, ChronoUnit.MICROS);
+        }
+
+        return base.plus(Money.of(transactionRepository.sumSignedAmountBetween(walletId, after, at)));
+    }
+}
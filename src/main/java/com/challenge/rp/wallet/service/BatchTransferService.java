@@ -0,0 +1,238 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.config.OperationLogSampler;
+import com.challenge.rp.wallet.dto.*;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.RecordedOperation;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Applies many transfers in a single database transaction.
+ * <p>
+ * Every wallet involved is locked up front with one {@code SELECT ... FOR UPDATE} in primary key
+ * order, so concurrent batches cannot deadlock. Transfers are then evaluated in request order
+ * against in-memory balances, and only the accepted ones are written back as one batch of wallet
+ * updates and one batch of transaction inserts. With {@link DatabaseShards} all wallets of a batch
+ * must be on the same shard.
+ * <p>
+ * A transfer whose reference id was already recorded for the same wallets and amount is reported as
+ * applied without being repeated, so retrying a batch that committed gets the same answer.
+ */
+@Service
+@Slf4j
+public class BatchTransferService {
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final BalanceEngine balanceEngine;
+    private final BalanceSnapshotService balanceSnapshotService;
+    private final BalanceCache balanceCache;
+    private final TransactionArchive transactionArchive;
+    private final DatabaseShards databaseShards;
+    private final WalletEventOutbox walletEventOutbox;
+    private final int maxBatchSize;
+
+    public BatchTransferService(WalletRepository walletRepository,
+                                TransactionRepository transactionRepository,
+                                BalanceEngine balanceEngine,
+                                BalanceSnapshotService balanceSnapshotService,
+                                BalanceCache balanceCache,
+                                TransactionArchive transactionArchive,
+                                DatabaseShards databaseShards,
+                                WalletEventOutbox walletEventOutbox,
+                                @Value("${wallet.batch-transfer.max-size:1000}") int maxBatchSize) {
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.balanceEngine = balanceEngine;
+        this.balanceSnapshotService = balanceSnapshotService;
+        this.balanceCache = balanceCache;
+        this.transactionArchive = transactionArchive;
+        this.databaseShards = databaseShards;
+        this.walletEventOutbox = walletEventOutbox;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Transactional
+    public BatchTransferResponse transfer(BatchTransferRequest request) {
+        List<BatchTransferItem> items = request.transfers();
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least one transfer");
+        }
+        if (items.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch cannot contain more than " + maxBatchSize + " transfers");
+        }
+
+        BatchTransferMode mode = request.mode() != null ? request.mode() : BatchTransferMode.ALL_OR_NOTHING;
+        Set<UUID> walletIds = new HashSet<>();
+        Set<UUID> referenceIds = new HashSet<>();
+        for (BatchTransferItem item : items) {
+            Optional.ofNullable(item.sourceWalletId()).ifPresent(walletIds::add);
+            Optional.ofNullable(item.targetWalletId()).ifPresent(walletIds::add);
+            Optional.ofNullable(item.referenceId()).ifPresent(referenceIds::add);
+        }
+
+        // The batch commits as one transaction, which cannot span database shards
+        Map<Integer, Set<UUID>> shards = databaseShards.group(walletIds);
+        if (shards.size() > 1) {
+            throw new IllegalArgumentException("Batch cannot contain wallets on different database shards");
+        }
+        int shard = shards.isEmpty() ? 0 : shards.keySet().iterator().next();
+
+        // The transaction takes its connection with its first statement, so this binds all of it to the shard
+        Map<UUID, Wallet> wallets = databaseShards.on(shard, () -> walletRepository.findAllByIdForUpdate(walletIds)).stream()
+                .collect(Collectors.toMap(Wallet::getId, Function.identity()));
+        wallets.values().forEach(balanceEngine::catchUp);
+        Set<UUID> usedReferenceIds = new HashSet<>(transactionRepository.findExistingReferenceIds(referenceIds));
+        usedReferenceIds.addAll(transactionArchive.findExistingReferenceIds(shard, referenceIds));
+        // A transfer is keyed by its withdraw leg, which records the target as its counterparty
+        Map<UUID, RecordedOperation> recordedTransfers = new HashMap<>();
+        if (!usedReferenceIds.isEmpty()) {
+            Stream.concat(transactionRepository.findRecordedOperations(usedReferenceIds, TransactionType.WITHDRAW).stream(),
+                            transactionArchive.findRecordedOperations(shard, usedReferenceIds, TransactionType.WITHDRAW).stream())
+                    .forEach(recorded -> recordedTransfers.put(recorded.referenceId(), recorded));
+        }
+
+        // Working balances reflect the transfers accepted so far, in request order
+        Map<UUID, Money> balances = new HashMap<>();
+        wallets.forEach((id, wallet) -> balances.put(id, wallet.getBalance()));
+
+        List<BatchTransferResult> results = new ArrayList<>(items.size());
+        List<AcceptedTransfer> accepted = new ArrayList<>(items.size());
+        int replayed = 0;
+        int rejected = 0;
+        for (BatchTransferItem item : items) {
+            Money amount = toMoney(item.amount());
+            // Removed once replayed, so a repeat of the item later in the batch is still rejected
+            RecordedOperation recorded = recordedTransfers.remove(item.referenceId());
+            if (recorded != null && recorded.matches(item.sourceWalletId(), item.targetWalletId(), amount)) {
+                replayed++;
+                results.add(new BatchTransferResult(item.referenceId(), BatchTransferStatus.APPLIED, "Already applied"));
+                continue;
+            }
+
+            String rejection = validate(item, amount, wallets, balances, usedReferenceIds);
+            if (rejection != null) {
+                rejected++;
+                results.add(new BatchTransferResult(item.referenceId(), BatchTransferStatus.REJECTED, rejection));
+                continue;
+            }
+
+            balances.merge(item.sourceWalletId(), amount, Money::minus);
+            balances.merge(item.targetWalletId(), amount, Money::plus);
+            usedReferenceIds.add(item.referenceId());
+            accepted.add(new AcceptedTransfer(item, amount, results.size()));
+            results.add(new BatchTransferResult(item.referenceId(), BatchTransferStatus.APPLIED, null));
+        }
+
+        if (mode == BatchTransferMode.ALL_OR_NOTHING && rejected > 0) {
+            log.atWarn().addKeyValue("mode", mode).addKeyValue("size", items.size())
+                    .addKeyValue("rejected", rejected).log("Batch aborted");
+            // Replayed transfers committed with an earlier request and stay applied
+            for (AcceptedTransfer transfer : accepted) {
+                results.set(transfer.result(), new BatchTransferResult(transfer.item().referenceId(), BatchTransferStatus.ABORTED,
+                        "Batch aborted"));
+            }
+            return new BatchTransferResponse(results);
+        }
+
+        apply(accepted, wallets, balances);
+        log.atInfo().addMarker(OperationLogSampler.OPERATION).addKeyValue("mode", mode).addKeyValue("size", items.size())
+                .addKeyValue("applied", accepted.size()).addKeyValue("replayed", replayed).log("Batch applied");
+
+        return new BatchTransferResponse(results);
+    }
+
+    // Null when the amount is missing, not positive or has more than two decimal places
+    private static Money toMoney(BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            return null;
+        }
+        try {
+            return Money.of(amount);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String validate(BatchTransferItem item, Money amount, Map<UUID, Wallet> wallets, Map<UUID, Money> balances,
+                            Set<UUID> usedReferenceIds) {
+        if (item.referenceId() == null) {
+            return "Reference id is required";
+        }
+        if (usedReferenceIds.contains(item.referenceId())) {
+            return "Reference id already used";
+        }
+        if (amount == null) {
+            return "Transfer amount must be greater than zero, with at most " + Money.SCALE + " decimal places";
+        }
+        if (item.sourceWalletId() == null || !wallets.containsKey(item.sourceWalletId())) {
+            return "Source wallet not found for ID: " + item.sourceWalletId();
+        }
+        if (item.targetWalletId() == null || !wallets.containsKey(item.targetWalletId())) {
+            return "Destination wallet not found for ID: " + item.targetWalletId();
+        }
+        if (item.sourceWalletId().equals(item.targetWalletId())) {
+            return "Source and destination wallets cannot be the same";
+        }
+        if (balances.get(item.sourceWalletId()).isLessThan(amount)) {
+            return "Insufficient balance in source wallet";
+        }
+        return null;
+    }
+
+    private void apply(List<AcceptedTransfer> accepted, Map<UUID, Wallet> wallets, Map<UUID, Money> balances) {
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        List<Transaction> transactions = new ArrayList<>(accepted.size() * 2);
+        Map<UUID, Integer> legsPerWallet = new HashMap<>();
+        for (AcceptedTransfer transfer : accepted) {
+            BatchTransferItem item = transfer.item();
+            Wallet source = wallets.get(item.sourceWalletId());
+            Wallet target = wallets.get(item.targetWalletId());
+            // Each leg takes the next position in its wallet's log
+            int sourceLeg = legsPerWallet.merge(source.getId(), 1, Integer::sum);
+            int targetLeg = legsPerWallet.merge(target.getId(), 1, Integer::sum);
+            transactions.add(new Transaction(source, TransactionType.WITHDRAW, transfer.amount(), item.referenceId(),
+                    source.getTransactionCount() + sourceLeg, target.getId()));
+            transactions.add(new Transaction(target, TransactionType.DEPOSIT, transfer.amount(), item.referenceId(),
+                    target.getTransactionCount() + targetLeg, source.getId()));
+        }
+
+        List<Wallet> touched = legsPerWallet.keySet().stream().map(wallets::get).toList();
+        for (Wallet wallet : touched) {
+            wallet.setBalance(balances.get(wallet.getId()));
+            wallet.setTransactionCount(wallet.getTransactionCount() + legsPerWallet.get(wallet.getId()));
+        }
+        walletRepository.saveAll(touched);
+        transactionRepository.saveAll(transactions);
+        walletEventOutbox.append(transactions);
+
+        Map<UUID, Instant> lastTransactionAt = new HashMap<>();
+        transactions.forEach(t -> lastTransactionAt.put(t.getWallet().getId(), t.getCreatedAt()));
+        for (Wallet wallet : touched) {
+            balanceSnapshotService.onTransactions(wallet, legsPerWallet.get(wallet.getId()), lastTransactionAt.get(wallet.getId()));
+            balanceCache.evictAfterCommit(wallet.getId());
+        }
+    }
+
+    // result is the position of the transfer's result in the response
+    private record AcceptedTransfer(BatchTransferItem item, Money amount, int result) {
+    }
+}
@@ -0,0 +1,142 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.Transaction;
+import jakarta.persistence.OptimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries {@link RetryOnConflict} operations that lost a concurrent update of a wallet (an
+ * optimistic lock conflict, a lock timeout or deadlock in pessimistic mode, or a ledger sequence
+ * number taken by another writer), each attempt in a new transaction.
+ * <p>
+ * Attempts are limited by {@code wallet.retry.<operation>.max-attempts}, falling back to
+ * {@code wallet.retry.max-attempts}. Between attempts the caller sleeps for a random time of up to
+ * {@code wallet.retry.initial-backoff}, doubling per attempt up to {@code wallet.retry.max-backoff},
+ * so callers that collided do not collide again in lockstep. Every conflict is reported to the
+ * {@link WalletConflictTracker}, and writes to wallets it has serialized wait for the wallet's lane
+ * before starting their transaction.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@Slf4j
+public class ConflictRetry {
+
+    private final WalletConflictTracker conflictTracker;
+    private final WalletOperationMetrics operationMetrics;
+    private final Environment environment;
+    private final int defaultMaxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private final Map<String, Integer> maxAttempts = new ConcurrentHashMap<>();
+    private final OperationWallets operationWallets = new OperationWallets();
+
+    public ConflictRetry(WalletConflictTracker conflictTracker,
+                         WalletOperationMetrics operationMetrics,
+                         Environment environment,
+                         @Value("${wallet.retry.max-attempts:5}") int defaultMaxAttempts,
+                         @Value("${wallet.retry.initial-backoff:2ms}") Duration initialBackoff,
+                         @Value("${wallet.retry.max-backoff:100ms}") Duration maxBackoff) {
+        this.conflictTracker = conflictTracker;
+        this.operationMetrics = operationMetrics;
+        this.environment = environment;
+        this.defaultMaxAttempts = defaultMaxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+    }
+
+    @Around("@annotation(retryOnConflict)")
+    public Object retry(ProceedingJoinPoint joinPoint, RetryOnConflict retryOnConflict) throws Throwable {
+        // Inside a caller's transaction a conflict dooms that transaction, so only the caller can retry
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+
+        String operation = joinPoint.getSignature().getName();
+        List<UUID> walletIds = operationWallets.of(joinPoint, retryOnConflict);
+        int attempts = maxAttempts(operation);
+
+        for (int attempt = 1; ; attempt++) {
+            try (WalletConflictTracker.Lanes lanes = conflictTracker.enter(walletIds)) {
+                Object result = joinPoint.proceed();
+                operationMetrics.recordRetryOutcome(attempt - 1, null);
+                return result;
+            } catch (Throwable e) {
+                if (!isConflict(e) || attempt >= attempts) {
+                    operationMetrics.recordRetryOutcome(attempt, e);
+                    throw e;
+                }
+                for (UUID walletId : conflicted(e, walletIds)) {
+                    conflictTracker.recordConflict(operation, walletId);
+                }
+                log.atDebug().addKeyValue("operation", operation).addKeyValue("walletIds", walletIds)
+                        .addKeyValue("attempt", attempt).log("Concurrent update lost, retrying");
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    static boolean isConflict(Throwable e) {
+        return e instanceof ConcurrencyFailureException || e instanceof OptimisticLockException
+                || e instanceof DataIntegrityViolationException && isSequenceCollision(e);
+    }
+
+    // In ledger mode two writers that read the same position append the same sequence number
+    private static boolean isSequenceCollision(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null
+                    && violation.getConstraintName().toLowerCase(Locale.ROOT).contains(Transaction.SEQUENCE_CONSTRAINT)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Full jitter: a random delay up to the exponential bound
+    private void backOff(int attempt, Throwable conflict) throws Throwable {
+        long bound = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, 30));
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+
+    private int maxAttempts(String operation) {
+        return maxAttempts.computeIfAbsent(operation, op ->
+                environment.getProperty("wallet.retry." + op + ".max-attempts", Integer.class, defaultMaxAttempts));
+    }
+
+    // The wallet named by the exception if it is one of the operation's, otherwise all of them
+    private static List<UUID> conflicted(Throwable e, List<UUID> walletIds) {
+        if (e instanceof ObjectOptimisticLockingFailureException lockFailure
+                && lockFailure.getIdentifier() instanceof UUID walletId && walletIds.contains(walletId)) {
+            return List.of(walletId);
+        }
+        return walletIds;
+    }
+}
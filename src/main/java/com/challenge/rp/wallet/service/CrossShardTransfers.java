@@ -0,0 +1,220 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.PendingCredit;
+import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.PendingCreditRepository;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers between wallets on different {@link DatabaseShards}, in two legs keyed by the
+ * {@code Reference-id}.
+ * <p>
+ * The debit leg commits on the source shard together with a {@link PendingCredit}; the credit leg
+ * then commits on the target shard, and the pending credit is removed once it has. A failure after
+ * the debit leaves the credit pending: a retry of the request with the same reference id completes
+ * it, and so does the recovery task, which every {@code wallet.database-shards.recovery-interval}
+ * completes the credits pending for longer than that. Either leg recognizes its own reference id,
+ * so completing a credit twice applies it once. Credits completed by recovery are counted as
+ * {@code wallet.database-shards.recovered}.
+ */
+@Service
+@Slf4j
+public class CrossShardTransfers {
+
+    private static final int RECOVERY_BATCH = 100;
+
+    private final DatabaseShards databaseShards;
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final PendingCreditRepository pendingCreditRepository;
+    private final BalanceEngine balanceEngine;
+    private final BalanceSnapshotService balanceSnapshotService;
+    private final BalanceCache balanceCache;
+    private final IdempotencyService idempotencyService;
+    private final WalletEventOutbox walletEventOutbox;
+    private final TransferConcurrencyMode transferConcurrencyMode;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration recoveryInterval;
+    private final Counter recovered;
+    private ScheduledExecutorService recovery;
+
+    public CrossShardTransfers(DatabaseShards databaseShards,
+                               WalletRepository walletRepository,
+                               TransactionRepository transactionRepository,
+                               PendingCreditRepository pendingCreditRepository,
+                               BalanceEngine balanceEngine,
+                               BalanceSnapshotService balanceSnapshotService,
+                               BalanceCache balanceCache,
+                               IdempotencyService idempotencyService,
+                               WalletEventOutbox walletEventOutbox,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${wallet.transfer.concurrency-mode:optimistic}") TransferConcurrencyMode transferConcurrencyMode,
+                               @Value("${wallet.database-shards.recovery-interval:10s}") Duration recoveryInterval) {
+        this.databaseShards = databaseShards;
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.pendingCreditRepository = pendingCreditRepository;
+        this.balanceEngine = balanceEngine;
+        this.balanceSnapshotService = balanceSnapshotService;
+        this.balanceCache = balanceCache;
+        this.idempotencyService = idempotencyService;
+        this.walletEventOutbox = walletEventOutbox;
+        this.transferConcurrencyMode = transferConcurrencyMode;
+        // Each leg commits on its own shard, outside the caller's transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.recoveryInterval = recoveryInterval;
+        this.recovered = Counter.builder("wallet.database-shards.recovered").register(meterRegistry);
+    }
+
+    /**
+     * Debits the source wallet and credits the target wallet. Once this returns both legs have
+     * committed; if it throws after the debit committed, the credit is left pending.
+     *
+     * @throws WalletNotFoundException if either wallet does not exist
+     * @throws com.challenge.rp.wallet.exception.InsufficientBalanceException if the source balance is lower than the amount
+     */
+    public void transfer(UUID sourceWalletId, UUID targetWalletId, Money amount, UUID referenceId) {
+        // Checked up front: a debit towards a missing wallet could never be completed
+        if (!Boolean.TRUE.equals(databaseShards.on(targetWalletId, () -> transactionTemplate.execute(status ->
+                walletRepository.existsById(targetWalletId))))) {
+            log.atError().addKeyValue("walletId", targetWalletId).log("Destination wallet not found");
+            throw new WalletNotFoundException("Destination wallet not found for ID: " + targetWalletId);
+        }
+
+        int sourceShard = databaseShards.shardOf(sourceWalletId);
+        PendingCredit credit = databaseShards.on(sourceShard, () -> transactionTemplate.execute(status ->
+                debit(sourceWalletId, targetWalletId, amount, referenceId)));
+        if (credit != null) {
+            complete(sourceShard, credit);
+        }
+    }
+
+    /**
+     * Completes the credits pending on every shard for longer than the recovery interval.
+     *
+     * @return number of credits completed
+     */
+    public int recover() {
+        Instant before = Instant.now().minus(recoveryInterval);
+        int completed = 0;
+        for (int shard = 0; shard < databaseShards.count(); shard++) {
+            int sourceShard = shard;
+            List<PendingCredit> credits = databaseShards.on(sourceShard, () -> transactionTemplate.execute(status ->
+                    pendingCreditRepository.findByCreatedAtBeforeOrderByCreatedAt(before, Limit.of(RECOVERY_BATCH))));
+            for (PendingCredit credit : credits) {
+                try {
+                    complete(sourceShard, credit);
+                    recovered.increment();
+                    completed++;
+                } catch (RuntimeException e) {
+                    log.atWarn().addKeyValue("referenceId", credit.getReferenceId()).addKeyValue("shard", sourceShard)
+                            .setCause(e).log("Pending credit not completed");
+                }
+            }
+        }
+        if (completed > 0) {
+            log.atInfo().addKeyValue("credits", completed).log("Pending credits recovered");
+        }
+        return completed;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void startRecovery() {
+        if (!databaseShards.isEnabled()) {
+            return;
+        }
+        recovery = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("wallet-shard-recovery").factory());
+        recovery.scheduleWithFixedDelay(this::recoverQuietly, recoveryInterval.toMillis(), recoveryInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (recovery != null) {
+            recovery.shutdown();
+        }
+    }
+
+    // Runs in a transaction on the source shard; the pending credit it returns is completed by the caller
+    PendingCredit debit(UUID sourceWalletId, UUID targetWalletId, Money amount, UUID referenceId) {
+        // A repeated request finds the debit done, and completes the credit if it is still pending
+        if (idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, sourceWalletId, targetWalletId, amount)) {
+            return pendingCreditRepository.findById(referenceId).orElse(null);
+        }
+
+        lockIfPessimistic(sourceWalletId);
+        Wallet wallet = balanceEngine.debit(sourceWalletId, amount);
+        balanceCache.evictAfterCommit(sourceWalletId);
+        Transaction transaction = new Transaction(wallet, TransactionType.WITHDRAW, amount, referenceId, wallet.getTransactionCount(),
+                targetWalletId);
+        transactionRepository.save(transaction);
+        walletEventOutbox.append(List.of(transaction));
+        balanceSnapshotService.onTransactions(wallet, 1, transaction.getCreatedAt());
+        return pendingCreditRepository.save(new PendingCredit(referenceId, sourceWalletId, targetWalletId, amount));
+    }
+
+    private void complete(int sourceShard, PendingCredit credit) {
+        UUID targetWalletId = credit.getTargetWalletId();
+        databaseShards.on(targetWalletId, () -> transactionTemplate.execute(status -> {
+            if (idempotencyService.isReplay(credit.getReferenceId(), TransactionType.DEPOSIT, targetWalletId, credit.getSourceWalletId(),
+                    credit.getAmount())) {
+                return null;
+            }
+            lockIfPessimistic(targetWalletId);
+            Wallet wallet = balanceEngine.credit(targetWalletId, credit.getAmount());
+            balanceCache.evictAfterCommit(targetWalletId);
+            Transaction transaction = new Transaction(wallet, TransactionType.DEPOSIT, credit.getAmount(), credit.getReferenceId(),
+                    wallet.getTransactionCount(), credit.getSourceWalletId());
+            transactionRepository.save(transaction);
+            walletEventOutbox.append(List.of(transaction));
+            balanceSnapshotService.onTransactions(wallet, 1, transaction.getCreatedAt());
+            return null;
+        }));
+        databaseShards.on(sourceShard, () -> transactionTemplate.execute(status -> {
+            pendingCreditRepository.deleteById(credit.getReferenceId());
+            return null;
+        }));
+    }
+
+    // Pessimistic transfers on the shard lock the wallet before inserting its next transaction, while a
+    // leg left to the engine inserts first; taking the lock first too keeps them from waiting on each other
+    private void lockIfPessimistic(UUID walletId) {
+        if (transferConcurrencyMode == TransferConcurrencyMode.PESSIMISTIC) {
+            walletRepository.findAllByIdForUpdate(List.of(walletId));
+        }
+    }
+
+    private void recoverQuietly() {
+        try {
+            recover();
+        } catch (RuntimeException e) {
+            log.atWarn().setCause(e).log("Pending credit recovery failed");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.config.ShardRoutingDataSource;
+import com.challenge.rp.wallet.model.TimeOrderedUuidGenerator;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Places wallets on database shards, enabled with {@code wallet.database-shards.enabled}.
+ * <p>
+ * A wallet and its transactions live on the shard given by a stable hash of its id, so any
+ * instance finds them without a lookup; the shard count cannot change without moving wallets. A
+ * {@link RetryOnConflict} write runs with its connections taken from the shard of its wallets,
+ * bound before its transaction starts. A transfer between shards gets no binding and is handed to
+ * {@link CrossShardTransfers} by the operation itself. Reads bind the shard with {@link #on}.
+ * Without sharding there is a single shard and nothing is bound.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
+public class DatabaseShards {
+
+    private final int count;
+    private final OperationWallets operationWallets = new OperationWallets();
+
+    public DatabaseShards(@Value("${wallet.database-shards.enabled:false}") boolean enabled,
+                          @Value("${wallet.database-shards.urls:}") List<String> urls,
+                          @Value("${wallet.shards.enabled:false}") boolean writeShards,
+                          @Value("${wallet.replicas.enabled:false}") boolean replicas) {
+        // Single-writer shards commit writes to many wallets together, which cannot span databases
+        if (enabled && writeShards) {
+            throw new IllegalStateException("wallet.shards.enabled cannot be used with wallet.database-shards.enabled");
+        }
+        if (enabled && replicas) {
+            throw new IllegalStateException("wallet.replicas.enabled cannot be used with wallet.database-shards.enabled");
+        }
+        this.count = enabled ? urls.size() + 1 : 1;
+    }
+
+    public boolean isEnabled() {
+        return count > 1;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int shardOf(UUID walletId) {
+        // The low bits of a time-ordered id are random, unlike the timestamp in the high bits
+        return (int) Long.remainderUnsigned(walletId.getLeastSignificantBits(), count);
+    }
+
+    public boolean spans(UUID walletId, UUID otherWalletId) {
+        return shardOf(walletId) != shardOf(otherWalletId);
+    }
+
+    /**
+     * The wallet ids grouped by shard, in shard order.
+     */
+    public Map<Integer, Set<UUID>> group(Collection<UUID> walletIds) {
+        return walletIds.stream().collect(Collectors.groupingBy(this::shardOf, TreeMap::new, Collectors.toSet()));
+    }
+
+    /**
+     * A new time-ordered wallet id placed on the shard.
+     */
+    public UUID newWalletId(int shard) {
+        UUID walletId;
+        do {
+            walletId = TimeOrderedUuidGenerator.next();
+        } while (shardOf(walletId) != shard);
+        return walletId;
+    }
+
+    /**
+     * Runs the work with any connection it borrows taken from the wallet's shard.
+     */
+    public <T> T on(UUID walletId, Supplier<T> work) {
+        return on(shardOf(walletId), work);
+    }
+
+    public <T> T on(int shard, Supplier<T> work) {
+        return isEnabled() ? ShardRoutingDataSource.on(shard, work) : work.get();
+    }
+
+    @Around("@annotation(retryOnConflict)")
+    public Object route(ProceedingJoinPoint joinPoint, RetryOnConflict retryOnConflict) throws Throwable {
+        if (!isEnabled()) {
+            return joinPoint.proceed();
+        }
+
+        int[] shards = operationWallets.of(joinPoint, retryOnConflict).stream().mapToInt(this::shardOf).distinct().toArray();
+        if (shards.length != 1) {
+            return joinPoint.proceed();
+        }
+        Integer previous = ShardRoutingDataSource.bind(shards[0]);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ShardRoutingDataSource.bind(previous);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.DepositOutcomeUnknownException;
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.model.Money;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local write-ahead journal of deposits, enabled with {@code wallet.journal.enabled}.
+ * <p>
+ * A deposit is appended to a memory-mapped segment file in {@code wallet.journal.directory} and
+ * acknowledged once the segment has been forced to disk, before it is applied to the database.
+ * A single writer thread appends whatever deposits arrived during the previous flush and forces
+ * them with one call, so concurrent deposits share the cost of the sync. Each record is a fixed
+ * 52 bytes carrying a CRC32C checksum; segments of {@code wallet.journal.segment-size} are
+ * preallocated, and a new one is started when the current one is full.
+ * <p>
+ * Durable deposits are handed to the {@link JournalApplier}, which applies them to the database
+ * and reports them back through {@link #markApplied}. The last applied sequence number is kept in
+ * a checkpoint file, and segments entirely before it are deleted. On startup the deposits after
+ * the checkpoint are read back, stopping at the first record that is empty or fails its checksum,
+ * and applied again. Application is at least once; a deposit applied twice is recognized by its
+ * {@code Reference-id} and skipped.
+ * <p>
+ * When an append fails, the deposits already forced are acknowledged, and the records written after
+ * them are zeroed, forced and written over by the next append, so they fail without coming back
+ * after a restart. If even that cannot be forced, those deposits fail with a
+ * {@link DepositOutcomeUnknownException}: they may still be applied after a restart, and a retry
+ * with the same {@code Reference-id} is then skipped.
+ * <p>
+ * Sync time and deposits per sync are recorded as {@code wallet.journal.sync} and
+ * {@code wallet.journal.batch.size}, and deposits not yet applied as {@code wallet.journal.unapplied}.
+ */
+@Component
+@Slf4j
+public class DepositJournal {
+
+    static final int RECORD_SIZE = 52;
+
+    private static final String CHECKPOINT = "applied";
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final int maxBatchSize;
+    private final Timer syncTimer;
+    private final DistributionSummary batchSizes;
+
+    private final BlockingQueue<PendingDeposit> appends = new LinkedBlockingQueue<>();
+    private final BlockingQueue<JournalEntry> durable = new LinkedBlockingQueue<>();
+    private final Map<UUID, PendingDeposit> unapplied = new ConcurrentHashMap<>();
+    private final Deque<Long> segments = new ArrayDeque<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence = 1;
+    private Thread writer;
+
+    public DepositJournal(@Value("${wallet.journal.enabled:false}") boolean enabled,
+                          @Value("${wallet.journal.directory:data/journal}") Path directory,
+                          @Value("${wallet.journal.segment-size:64MB}") DataSize segmentSize,
+                          @Value("${wallet.journal.max-batch-size:1000}") int maxBatchSize,
+                          @Value("${wallet.shards.enabled:false}") boolean sharded,
+                          MeterRegistry meterRegistry) throws IOException {
+        // A shard would wait for every sync one deposit at a time instead of sharing it
+        if (enabled && sharded) {
+            throw new IllegalStateException("wallet.shards.enabled cannot be used with wallet.journal.enabled");
+        }
+        this.enabled = enabled;
+        this.directory = directory;
+        this.recordsPerSegment = (int) Math.min(segmentSize.toBytes() / RECORD_SIZE, Integer.MAX_VALUE / RECORD_SIZE);
+        this.maxBatchSize = maxBatchSize;
+        this.syncTimer = Timer.builder("wallet.journal.sync").register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("wallet.journal.batch.size").register(meterRegistry);
+        Gauge.builder("wallet.journal.unapplied", unapplied, Map::size).register(meterRegistry);
+
+        if (enabled) {
+            recover();
+            writer = Thread.ofPlatform().name("wallet-journal").start(this::write);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the deposit and blocks until it is durable. A deposit with the reference id of one
+     * still waiting to be applied is acknowledged with it instead of being appended again.
+     *
+     * @throws IdempotencyConflictException   if the reference id is waiting to be applied with a
+     *                                         different wallet or amount
+     * @throws DepositOutcomeUnknownException if the journal failed after the deposit was written,
+     *                                         and it may still be applied after a restart
+     */
+    public void deposit(UUID walletId, Money amount, UUID referenceId) {
+        PendingDeposit deposit = new PendingDeposit(walletId, amount, referenceId, new CompletableFuture<>());
+        PendingDeposit previous = unapplied.putIfAbsent(referenceId, deposit);
+        if (previous != null) {
+            if (!previous.walletId().equals(walletId) || !previous.amount().equals(amount)) {
+                throw new IdempotencyConflictException("Reference ID " + referenceId + " was already used for a different operation");
+            }
+            deposit = previous;
+        } else {
+            appends.add(deposit);
+        }
+
+        try {
+            deposit.durable().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for durable deposits that have not been handed out yet, returning up to {@code max}.
+     */
+    public List<JournalEntry> take(int max) throws InterruptedException {
+        List<JournalEntry> entries = new ArrayList<>();
+        entries.add(durable.take());
+        durable.drainTo(entries, max - 1);
+        return entries;
+    }
+
+    /**
+     * Records that the entries, which must be the oldest ones handed out, are applied.
+     */
+    public synchronized void markApplied(List<JournalEntry> entries) {
+        long applied = entries.get(entries.size() - 1).sequence();
+        entries.forEach(entry -> unapplied.remove(entry.referenceId()));
+
+        // Losing the checkpoint only means applying some deposits again after a restart
+        try {
+            Path next = directory.resolve(CHECKPOINT + ".tmp");
+            Files.write(next, ByteBuffer.allocate(Long.BYTES).putLong(applied).array());
+            Files.move(next, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // A segment is done with once the one after it starts at or before the next unapplied deposit
+            while (segments.size() > 1 && secondSegment() <= applied + 1) {
+                Files.deleteIfExists(segmentPath(segments.removeFirst()));
+            }
+        } catch (IOException e) {
+            log.atWarn().addKeyValue("applied", applied).setCause(e).log("Failed to checkpoint the journal");
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (writer != null) {
+            writer.interrupt();
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private void write() {
+        List<PendingDeposit> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (true) {
+                batch.add(appends.take());
+                appends.drainTo(batch, maxBatchSize - 1);
+                append(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeSegment();
+    }
+
+    private void append(List<PendingDeposit> batch) {
+        List<JournalEntry> entries = new ArrayList<>(batch.size());
+        // Everything before start, and the first forced entries, are durable
+        int start = segment.position();
+        long startSequence = nextSequence;
+        int forced = 0;
+        try {
+            for (PendingDeposit deposit : batch) {
+                if (!segment.hasRemaining()) {
+                    segment.force(start, segment.position() - start);
+                    start = segment.position();
+                    startSequence = nextSequence;
+                    forced = entries.size();
+                    startSegment(nextSequence);
+                    start = 0;
+                }
+                JournalEntry entry = new JournalEntry(nextSequence++, deposit.walletId(), deposit.amount(), deposit.referenceId());
+                writeRecord(segment, entry);
+                entries.add(entry);
+            }
+
+            long startedAt = System.nanoTime();
+            segment.force(start, segment.position() - start);
+            syncTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            batchSizes.record(batch.size());
+        } catch (IOException | RuntimeException e) {
+            log.atError().addKeyValue("size", batch.size()).addKeyValue("forced", forced).setCause(e).log("Journal append failed");
+            durable.addAll(entries.subList(0, forced));
+            batch.subList(0, forced).forEach(deposit -> deposit.durable().complete(null));
+
+            RuntimeException failure = discard(start, startSequence)
+                    ? e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e
+                    : new DepositOutcomeUnknownException("Deposit may have been recorded, retry with the same Reference-id", e);
+            batch.subList(forced, batch.size()).forEach(deposit -> {
+                unapplied.remove(deposit.referenceId(), deposit);
+                deposit.durable().completeExceptionally(failure);
+            });
+            return;
+        }
+
+        durable.addAll(entries);
+        batch.forEach(deposit -> deposit.durable().complete(null));
+    }
+
+    // Zeroes the records written since start so a restart cannot read them back, and reuses their
+    // slots and sequence numbers for the next append; false if the zeroes could not be forced
+    private boolean discard(int start, long startSequence) {
+        int end = segment.position();
+        segment.put(start, new byte[end - start]);
+        segment.position(start);
+        nextSequence = startSequence;
+        try {
+            segment.force(start, end - start);
+            return true;
+        } catch (RuntimeException e) {
+            log.atError().addKeyValue("records", (end - start + RECORD_SIZE - 1) / RECORD_SIZE).setCause(e)
+                    .log("Failed to discard journal records");
+            return false;
+        }
+    }
+
+    // Reads back what was not applied before the last shutdown and starts a fresh segment after it
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        long applied = Files.exists(checkpoint) ? ByteBuffer.wrap(Files.readAllBytes(checkpoint)).getLong() : 0;
+
+        List<Long> existing;
+        try (Stream<Path> files = Files.list(directory)) {
+            existing = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name, SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length(), 10))
+                    .sorted()
+                    .toList();
+        }
+
+        long last = applied;
+        for (long first : existing) {
+            boolean empty = true;
+            try (FileChannel file = FileChannel.open(segmentPath(first), StandardOpenOption.READ)) {
+                MappedByteBuffer records = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+                JournalEntry entry;
+                while ((entry = readRecord(records)) != null) {
+                    empty = false;
+                    last = Math.max(last, entry.sequence());
+                    if (entry.sequence() > applied) {
+                        durable.add(entry);
+                        unapplied.put(entry.referenceId(), new PendingDeposit(entry.walletId(), entry.amount(),
+                                entry.referenceId(), CompletableFuture.completedFuture(null)));
+                    }
+                }
+            }
+            if (empty) {
+                // Started but never written to before the shutdown
+                Files.delete(segmentPath(first));
+            } else {
+                segments.add(first);
+            }
+        }
+
+        nextSequence = last + 1;
+        startSegment(nextSequence);
+        if (!durable.isEmpty()) {
+            log.atInfo().addKeyValue("deposits", durable.size()).addKeyValue("applied", applied)
+                    .log("Recovered unapplied deposits from the journal");
+        }
+    }
+
+    private void startSegment(long firstSequence) throws IOException {
+        closeSegment();
+        channel = FileChannel.open(segmentPath(firstSequence), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+        synchronized (this) {
+            segments.add(firstSequence);
+        }
+    }
+
+    private void closeSegment() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.atWarn().setCause(e).log("Failed to close journal segment");
+            }
+        }
+    }
+
+    private long secondSegment() {
+        var it = segments.iterator();
+        it.next();
+        return it.next();
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    static void writeRecord(ByteBuffer buffer, JournalEntry entry) {
+        int start = buffer.position();
+        buffer.position(start + Integer.BYTES);
+        buffer.putLong(entry.sequence())
+                .putLong(entry.walletId().getMostSignificantBits())
+                .putLong(entry.walletId().getLeastSignificantBits())
+                .putLong(entry.amount().minorUnits())
+                .putLong(entry.referenceId().getMostSignificantBits())
+                .putLong(entry.referenceId().getLeastSignificantBits());
+        buffer.putInt(start, checksum(buffer, start + Integer.BYTES));
+    }
+
+    // Null at the end of the written records: an unused slot, a torn write or the end of the segment
+    static JournalEntry readRecord(ByteBuffer buffer) {
+        if (buffer.remaining() < RECORD_SIZE) {
+            return null;
+        }
+        int start = buffer.position();
+        int stored = buffer.getInt(start);
+        long sequence = buffer.getLong(start + Integer.BYTES);
+        if (sequence == 0 || stored != checksum(buffer, start + Integer.BYTES)) {
+            return null;
+        }
+        buffer.position(start + Integer.BYTES + Long.BYTES);
+        UUID walletId = new UUID(buffer.getLong(), buffer.getLong());
+        Money amount = Money.ofMinor(buffer.getLong());
+        UUID referenceId = new UUID(buffer.getLong(), buffer.getLong());
+        return new JournalEntry(sequence, walletId, amount, referenceId);
+    }
+
+    private static int checksum(ByteBuffer buffer, int from) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(from, RECORD_SIZE - Integer.BYTES));
+        return (int) crc.getValue();
+    }
+
+    private record PendingDeposit(UUID walletId, Money amount, UUID referenceId, CompletableFuture<Void> durable) {
+    }
+}
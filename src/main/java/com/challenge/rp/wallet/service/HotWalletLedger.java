@@ -0,0 +1,238 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.RecordedOperation;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Write-combining deposit path for wallets listed in {@code wallet.hot-wallets}.
+ * <p>
+ * Deposits are queued per wallet and a single drainer per wallet applies whatever has accumulated
+ * as one batch: one {@code UPDATE} of the wallet row plus a batched insert of the transactions, in a
+ * single database transaction. Callers are released only once their batch has committed, so every
+ * acknowledged {@code Reference-id} is durable. If a batch fails (for example on a duplicate
+ * reference id) its deposits are re-applied one by one so only the offending caller sees the error.
+ * Reference ids already recorded are looked up for the whole batch in one query: replays are
+ * acknowledged without being applied again and reused keys are rejected.
+ */
+@Service
+@Slf4j
+public class HotWalletLedger {
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final BalanceSnapshotService balanceSnapshotService;
+    private final BalanceCache balanceCache;
+    private final TransactionArchive transactionArchive;
+    private final DatabaseShards databaseShards;
+    private final WalletEventOutbox walletEventOutbox;
+    private final TransactionTemplate transactionTemplate;
+    private final Set<UUID> hotWallets;
+    private final int maxBatchSize;
+
+    private final Map<UUID, Lane> lanes = new ConcurrentHashMap<>();
+    private final ExecutorService drainers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public HotWalletLedger(WalletRepository walletRepository,
+                           TransactionRepository transactionRepository,
+                           BalanceSnapshotService balanceSnapshotService,
+                           BalanceCache balanceCache,
+                           TransactionArchive transactionArchive,
+                           DatabaseShards databaseShards,
+                           WalletEventOutbox walletEventOutbox,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${wallet.hot-wallets:}") Set<UUID> hotWallets,
+                           @Value("${wallet.hot-wallet.max-batch-size:500}") int maxBatchSize) {
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.balanceSnapshotService = balanceSnapshotService;
+        this.balanceCache = balanceCache;
+        this.transactionArchive = transactionArchive;
+        this.databaseShards = databaseShards;
+        this.walletEventOutbox = walletEventOutbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hotWallets = Set.copyOf(hotWallets);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public boolean isHot(UUID walletId) {
+        return hotWallets.contains(walletId);
+    }
+
+    /**
+     * Queues the deposit and blocks until the batch containing it has committed.
+     */
+    public void deposit(UUID walletId, Money amount, UUID referenceId) {
+        try {
+            submit(walletId, amount, referenceId).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    CompletableFuture<Void> submit(UUID walletId, Money amount, UUID referenceId) {
+        Lane lane = lanes.computeIfAbsent(walletId, Lane::new);
+        PendingDeposit deposit = new PendingDeposit(amount, referenceId, new CompletableFuture<>());
+        lane.queue.add(deposit);
+        scheduleDrain(lane);
+        return deposit.result();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        drainers.shutdown();
+    }
+
+    private void scheduleDrain(Lane lane) {
+        if (lane.draining.compareAndSet(false, true)) {
+            drainers.execute(() -> drain(lane));
+        }
+    }
+
+    private void drain(Lane lane) {
+        try {
+            List<PendingDeposit> batch = nextBatch(lane);
+            while (!batch.isEmpty()) {
+                applyBatch(lane.walletId, batch);
+                batch = nextBatch(lane);
+            }
+        } finally {
+            lane.draining.set(false);
+        }
+
+        // A deposit may have been queued after the last poll but before the flag was cleared
+        if (!lane.queue.isEmpty()) {
+            scheduleDrain(lane);
+        }
+    }
+
+    private List<PendingDeposit> nextBatch(Lane lane) {
+        List<PendingDeposit> batch = new ArrayList<>();
+        PendingDeposit deposit;
+        while (batch.size() < maxBatchSize && (deposit = lane.queue.poll()) != null) {
+            batch.add(deposit);
+        }
+        return batch;
+    }
+
+    private void applyBatch(UUID walletId, List<PendingDeposit> batch) {
+        try {
+            Map<PendingDeposit, RuntimeException> rejected = databaseShards.on(walletId,
+                    () -> transactionTemplate.execute(status -> apply(walletId, batch)));
+            for (PendingDeposit deposit : batch) {
+                RuntimeException rejection = rejected.get(deposit);
+                if (rejection != null) {
+                    deposit.result().completeExceptionally(rejection);
+                } else {
+                    deposit.result().complete(null);
+                }
+            }
+            log.debug("Applied batch of {} deposits to hot wallet {}", batch.size(), walletId);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result().completeExceptionally(e);
+                return;
+            }
+
+            log.warn("Batch of {} deposits to hot wallet {} failed, applying individually", batch.size(), walletId, e);
+            for (PendingDeposit deposit : batch) {
+                applyBatch(walletId, List.of(deposit));
+            }
+        }
+    }
+
+    // Applies the batch and returns the deposits rejected for reusing a reference id
+    private Map<PendingDeposit, RuntimeException> apply(UUID walletId, List<PendingDeposit> batch) {
+        List<UUID> referenceIds = batch.stream().map(PendingDeposit::referenceId).toList();
+        Map<UUID, RecordedOperation> recorded = Stream.concat(
+                        transactionRepository.findRecordedOperations(referenceIds, TransactionType.DEPOSIT).stream(),
+                        transactionArchive.findRecordedOperations(databaseShards.shardOf(walletId), referenceIds, TransactionType.DEPOSIT).stream())
+                .collect(Collectors.toMap(RecordedOperation::referenceId, Function.identity()));
+
+        Map<PendingDeposit, RuntimeException> rejected = new IdentityHashMap<>();
+        List<PendingDeposit> fresh = new ArrayList<>();
+        for (PendingDeposit deposit : batch) {
+            RecordedOperation previous = recorded.get(deposit.referenceId());
+            if (previous == null) {
+                recorded.put(deposit.referenceId(), new RecordedOperation(deposit.referenceId(), walletId, null, deposit.amount()));
+                fresh.add(deposit);
+            } else if (!previous.matches(walletId, null, deposit.amount())) {
+                rejected.put(deposit, new IdempotencyConflictException(
+                        "Reference ID " + deposit.referenceId() + " was already used for a different operation"));
+            }
+            // Otherwise it replays a deposit that is applied, and is acknowledged without applying it again
+        }
+
+        if (fresh.isEmpty()) {
+            return rejected;
+        }
+
+        Money total = Money.ofMinor(fresh.stream().mapToLong(deposit -> deposit.amount().minorUnits()).reduce(0, Math::addExact));
+
+        if (walletRepository.credit(walletId, total, fresh.size()) == 0) {
+            throw new WalletNotFoundException("Wallet not found for ID: " + walletId);
+        }
+
+        Wallet wallet = walletRepository.findById(walletId)
+                .orElseThrow(() -> new WalletNotFoundException("Wallet not found for ID: " + walletId));
+
+        // The batch took the last fresh.size() positions of the wallet's log
+        long firstSequence = wallet.getTransactionCount() - fresh.size() + 1;
+        List<Transaction> transactions = IntStream.range(0, fresh.size())
+                .mapToObj(i -> new Transaction(wallet, TransactionType.DEPOSIT, fresh.get(i).amount(),
+                        fresh.get(i).referenceId(), firstSequence + i))
+                .toList();
+        transactionRepository.saveAll(transactions);
+        walletEventOutbox.append(transactions);
+        balanceSnapshotService.onTransactions(wallet, transactions.size(), transactions.get(transactions.size() - 1).getCreatedAt());
+        balanceCache.evictAfterCommit(walletId);
+        return rejected;
+    }
+
+    private record PendingDeposit(Money amount, UUID referenceId, CompletableFuture<Void> result) {
+    }
+
+    private static final class Lane {
+        private final UUID walletId;
+        private final Queue<PendingDeposit> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Lane(UUID walletId) {
+            this.walletId = walletId;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.repository.RecordedOperation;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects repeated {@code Reference-id}s before any wallet row is touched.
+ * <p>
+ * Recently committed keys are held in a bounded in-memory index, with the
+ * {@code (reference_id, transaction_type)} unique key in the database as the fallback for keys
+ * that were evicted or committed before a restart, and the keys the {@link TransactionArchive} kept
+ * for transactions purged from the table. A key that is still being processed by another
+ * request is rejected straight away instead of racing it to the unique constraint.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionArchive transactionArchive;
+    private final Cache<Key, RecordedOperation> recentKeys;
+    private final Set<Key> inFlight = ConcurrentHashMap.newKeySet();
+
+    public IdempotencyService(TransactionRepository transactionRepository,
+                              TransactionArchive transactionArchive,
+                              @Value("${wallet.idempotency.recent-keys:100000}") long maximumSize,
+                              @Value("${wallet.idempotency.retention:24h}") Duration retention,
+                              MeterRegistry meterRegistry) {
+        this.transactionRepository = transactionRepository;
+        this.transactionArchive = transactionArchive;
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(retention)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recentKeys, "wallet.idempotency");
+    }
+
+    /**
+     * Must be called inside the transaction that is about to apply the operation.
+     *
+     * @return {@code true} if the reference id was already applied to the same wallet and amount,
+     * in which case the caller returns the original result without doing anything
+     * @throws IdempotencyConflictException if the reference id is being processed by another request
+     *                                      or was applied with a different wallet or amount
+     */
+    public boolean isReplay(UUID referenceId, TransactionType transactionType, UUID walletId, Money amount) {
+        return isReplay(referenceId, transactionType, walletId, null, amount);
+    }
+
+    /**
+     * Same as {@link #isReplay(UUID, TransactionType, UUID, Money)} for one leg of a transfer, which
+     * only replays a leg recorded against the same counterparty wallet.
+     *
+     * @param counterpartyWalletId the other wallet of the transfer, or {@code null} for a plain
+     *                             deposit or withdrawal
+     */
+    public boolean isReplay(UUID referenceId, TransactionType transactionType, UUID walletId, UUID counterpartyWalletId,
+                            Money amount) {
+        Key key = new Key(referenceId, transactionType);
+
+        RecordedOperation recorded = recentKeys.getIfPresent(key);
+        if (recorded != null) {
+            return verify(key, recorded, walletId, counterpartyWalletId, amount);
+        }
+
+        if (!inFlight.add(key)) {
+            throw new IdempotencyConflictException("Request with reference ID " + referenceId + " is already in progress");
+        }
+        releaseOnCompletion(key, new RecordedOperation(referenceId, walletId, counterpartyWalletId, amount));
+
+        Optional<RecordedOperation> stored = findRecordedOperation(referenceId, transactionType, walletId);
+        if (stored.isPresent()) {
+            recentKeys.put(key, stored.get());
+            return verify(key, stored.get(), walletId, counterpartyWalletId, amount);
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the reference id was already applied, without claiming it: a deposit accepted
+     * into the {@link DepositJournal} is applied later, on another thread, by a transaction that
+     * runs {@link #isReplay} itself.
+     *
+     * @return {@code true} if the reference id was already applied to the same wallet and amount
+     * @throws IdempotencyConflictException if the reference id was applied with a different wallet or amount
+     */
+    public boolean isApplied(UUID referenceId, TransactionType transactionType, UUID walletId, Money amount) {
+        Key key = new Key(referenceId, transactionType);
+
+        RecordedOperation recorded = recentKeys.getIfPresent(key);
+        if (recorded == null) {
+            recorded = findRecordedOperation(referenceId, transactionType, walletId).orElse(null);
+            if (recorded == null) {
+                return false;
+            }
+            recentKeys.put(key, recorded);
+        }
+        return verify(key, recorded, walletId, null, amount);
+    }
+
+    // A key missing from the table may belong to a transaction purged once its month was archived
+    private Optional<RecordedOperation> findRecordedOperation(UUID referenceId, TransactionType transactionType, UUID walletId) {
+        return transactionRepository.findRecordedOperation(referenceId, transactionType)
+                .or(() -> transactionArchive.findRecordedOperation(walletId, referenceId, transactionType));
+    }
+
+    private boolean verify(Key key, RecordedOperation recorded, UUID walletId, UUID counterpartyWalletId, Money amount) {
+        if (!recorded.matches(walletId, counterpartyWalletId, amount)) {
+            log.atWarn().addKeyValue("referenceId", key.referenceId()).addKeyValue("transactionType", key.transactionType())
+                    .log("Reference ID reused for a different operation");
+            throw new IdempotencyConflictException("Reference ID " + key.referenceId() + " was already used for a different operation");
+        }
+        log.atInfo().addKeyValue("referenceId", key.referenceId()).addKeyValue("transactionType", key.transactionType())
+                .log("Reference ID already processed");
+        return true;
+    }
+
+    private void releaseOnCompletion(Key key, RecordedOperation operation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            inFlight.remove(key);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    recentKeys.asMap().putIfAbsent(key, operation);
+                }
+                inFlight.remove(key);
+            }
+        });
+    }
+
+    private record Key(UUID referenceId, TransactionType transactionType) {
+    }
+}
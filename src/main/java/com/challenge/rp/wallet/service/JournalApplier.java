@@ -0,0 +1,150 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Applies the deposits made durable by the {@link DepositJournal} to the database, in batches of up
+ * to {@code wallet.journal.apply-batch-size} applied concurrently, and moves the journal's
+ * checkpoint past each batch once all of it is applied.
+ * <p>
+ * A deposit that fails for a reason retrying cannot fix (its wallet is gone, or its reference id
+ * still conflicts after a few attempts) is logged and counted as {@code wallet.journal.rejected}; any
+ * other failure, such as the database being unavailable, is retried every
+ * {@code wallet.journal.retry-delay} until it succeeds, holding the checkpoint back. A batch that
+ * fails as a whole is counted as {@code wallet.journal.apply.failures} and applied again after a
+ * delay that doubles up to a minute; the deposits of it that were applied are skipped by their
+ * {@code Reference-id}.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.journal.enabled", havingValue = "true")
+@Slf4j
+public class JournalApplier {
+
+    private static final int MAX_CONFLICT_ATTEMPTS = 3;
+    private static final Duration MAX_BATCH_RETRY_DELAY = Duration.ofMinutes(1);
+
+    private final DepositJournal journal;
+    private final WalletService walletService;
+    private final int batchSize;
+    private final Duration retryDelay;
+    private final Counter rejected;
+    private final Counter failures;
+
+    private final ExecutorService appliers = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Thread thread;
+
+    public JournalApplier(DepositJournal journal,
+                          WalletService walletService,
+                          MeterRegistry meterRegistry,
+                          @Value("${wallet.journal.apply-batch-size:256}") int batchSize,
+                          @Value("${wallet.journal.retry-delay:1s}") Duration retryDelay) {
+        this.journal = journal;
+        this.walletService = walletService;
+        this.batchSize = batchSize;
+        this.retryDelay = retryDelay;
+        this.rejected = Counter.builder("wallet.journal.rejected").register(meterRegistry);
+        this.failures = Counter.builder("wallet.journal.apply.failures").register(meterRegistry);
+    }
+
+    // Deposits recovered from the journal are applied once the application can serve them
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        thread = Thread.ofPlatform().name("wallet-journal-applier").start(this::run);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(retryDelay.toMillis() + 5_000);
+        }
+        appliers.shutdown();
+    }
+
+    void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<JournalEntry> batch = journal.take(batchSize);
+                for (Duration delay = retryDelay; !applyBatch(batch); delay = min(delay.multipliedBy(2), MAX_BATCH_RETRY_DELAY)) {
+                    Thread.sleep(delay);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Whatever was not applied yet is applied again after the restart
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // False if the batch failed, once none of its deposits is still being applied
+    private boolean applyBatch(List<JournalEntry> batch) throws InterruptedException {
+        List<Future<?>> applying = batch.stream().<Future<?>>map(entry -> appliers.submit(() -> {
+            apply(entry);
+            return null;
+        })).toList();
+
+        Throwable failure = null;
+        for (Future<?> future : applying) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            }
+        }
+        if (failure == null) {
+            try {
+                journal.markApplied(batch);
+                return true;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        log.atError().addKeyValue("size", batch.size()).addKeyValue("firstSequence", batch.get(0).sequence())
+                .setCause(failure).log("Journal batch failed, retrying");
+        failures.increment();
+        return false;
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    void apply(JournalEntry entry) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                walletService.applyJournaledDeposit(entry.walletId(), entry.amount(), entry.referenceId());
+                return;
+            } catch (WalletNotFoundException | IdempotencyConflictException e) {
+                // A reference id conflict may only be a retry of the same deposit still in progress
+                if (e instanceof WalletNotFoundException || attempt >= MAX_CONFLICT_ATTEMPTS) {
+                    log.atError().addKeyValue("sequence", entry.sequence()).addKeyValue("walletId", entry.walletId())
+                            .addKeyValue("referenceId", entry.referenceId()).setCause(e).log("Journaled deposit rejected");
+                    rejected.increment();
+                    return;
+                }
+                Thread.sleep(retryDelay);
+            } catch (RuntimeException e) {
+                log.atWarn().addKeyValue("sequence", entry.sequence()).addKeyValue("referenceId", entry.referenceId())
+                        .setCause(e).log("Journaled deposit failed, retrying");
+                Thread.sleep(retryDelay);
+            }
+        }
+    }
+}
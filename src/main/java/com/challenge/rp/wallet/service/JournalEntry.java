@@ -0,0 +1,11 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.Money;
+
+import java.util.UUID;
+
+/**
+ * A deposit made durable by the {@link DepositJournal}, at its position in the journal.
+ */
+public record JournalEntry(long sequence, UUID walletId, Money amount, UUID referenceId) {
+}
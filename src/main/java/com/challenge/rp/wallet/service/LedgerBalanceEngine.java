@@ -0,0 +1,104 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.InsufficientBalanceException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.LedgerTail;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletBalance;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Event-sourced engine: the transaction log is the source of truth, and the wallet row is a
+ * projection of it (balance as of its {@code transactionCount}) that the {@link LedgerProjector}
+ * moves forward after the change commits.
+ * <p>
+ * A change reads the projection plus the transactions recorded after it, checks the balance and
+ * returns the wallet as of the new transaction without writing its row, so the caller appends the
+ * transaction with the next sequence number. Two changes that read the same position append the
+ * same sequence number and only one of them commits; the other fails on the unique key and is
+ * retried by {@link ConflictRetry}. Balances read through {@link #balanceOf} add the transactions
+ * not yet projected, so a committed change is visible straight away.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.balance-engine", havingValue = "ledger")
+public class LedgerBalanceEngine implements BalanceEngine {
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final LedgerProjector projector;
+
+    public LedgerBalanceEngine(WalletRepository walletRepository,
+                               TransactionRepository transactionRepository,
+                               LedgerProjector projector,
+                               @Value("${wallet.hot-wallets:}") Set<UUID> hotWallets) {
+        // Hot wallet batches update the row directly; appends already avoid the contention they work around
+        if (!hotWallets.isEmpty()) {
+            throw new IllegalStateException("wallet.hot-wallets cannot be used with the ledger balance engine");
+        }
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.projector = projector;
+    }
+
+    @Override
+    public Wallet debit(UUID walletId, Money amount) {
+        Wallet wallet = findWallet(walletId);
+        LedgerTail tail = transactionRepository.findLedgerTail(walletId, wallet.getTransactionCount());
+        Money balance = wallet.getBalance().plus(tail.balanceChange());
+
+        if (balance.isLessThan(amount)) {
+            throw new InsufficientBalanceException("Insufficient balance in wallet " + walletId);
+        }
+        return append(wallet, tail, balance.minus(amount));
+    }
+
+    @Override
+    public Wallet credit(UUID walletId, Money amount) {
+        Wallet wallet = findWallet(walletId);
+        LedgerTail tail = transactionRepository.findLedgerTail(walletId, wallet.getTransactionCount());
+
+        return append(wallet, tail, wallet.getBalance().plus(tail.balanceChange()).plus(amount));
+    }
+
+    @Override
+    public Money balanceOf(Wallet wallet) {
+        return wallet.getBalance().plus(transactionRepository.findLedgerTail(wallet.getId(), wallet.getTransactionCount()).balanceChange());
+    }
+
+    @Override
+    public Map<UUID, Money> balancesOf(Collection<UUID> walletIds) {
+        return walletRepository.findLedgerBalances(walletIds).stream()
+                .collect(Collectors.toMap(WalletBalance::walletId, WalletBalance::balance));
+    }
+
+    @Override
+    public void catchUp(Wallet lockedWallet) {
+        LedgerTail tail = transactionRepository.findLedgerTail(lockedWallet.getId(), lockedWallet.getTransactionCount());
+        lockedWallet.setBalance(lockedWallet.getBalance().plus(tail.balanceChange()));
+        lockedWallet.setTransactionCount(tail.lastSequence());
+    }
+
+    // The wallet is read-only, so this only changes what the caller sees, not the row
+    private Wallet append(Wallet wallet, LedgerTail tail, Money balance) {
+        wallet.setBalance(balance);
+        wallet.setTransactionCount(tail.lastSequence() + 1);
+        projector.projectAfterCommit(wallet.getId());
+        return wallet;
+    }
+
+    private Wallet findWallet(UUID walletId) {
+        return walletRepository.findReadOnlyById(walletId)
+                .orElseThrow(() -> new WalletNotFoundException("Wallet not found for ID: " + walletId));
+    }
+}
@@ -0,0 +1,185 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.ArchivedMonth;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.LedgerPosition;
+import com.challenge.rp.wallet.repository.LedgerTail;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the wallet rows of the {@link LedgerBalanceEngine} up to date with the transaction log.
+ * <p>
+ * Wallets are queued once a transaction that appended to them commits, and a single background
+ * drainer projects them one at a time, each in its own short transaction: it sums the transactions
+ * recorded after the row's {@code transactionCount} and moves balance and count forward with an
+ * {@code UPDATE} that only matches if nobody moved them in the meantime. The row is a cache of the
+ * log, so a skipped projection only leaves a longer tail for the next read. The number of wallets
+ * waiting is published as {@code wallet.ledger.pending}.
+ * <p>
+ * {@link #rebuild()} recomputes every wallet from its whole log in one aggregate query per shard, plus the
+ * sums kept in the {@link TransactionArchive} index, and runs at startup when
+ * {@code wallet.ledger.rebuild-on-startup} is set.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.balance-engine", havingValue = "ledger")
+@Slf4j
+public class LedgerProjector {
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final DatabaseShards databaseShards;
+    private final TransactionArchive transactionArchive;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean rebuildOnStartup;
+
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final ExecutorService drainer = Executors.newVirtualThreadPerTaskExecutor();
+
+    public LedgerProjector(WalletRepository walletRepository,
+                           TransactionRepository transactionRepository,
+                           DatabaseShards databaseShards,
+                           TransactionArchive transactionArchive,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${wallet.ledger.rebuild-on-startup:false}") boolean rebuildOnStartup) {
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.databaseShards = databaseShards;
+        this.transactionArchive = transactionArchive;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rebuildOnStartup = rebuildOnStartup;
+        Gauge.builder("wallet.ledger.pending", pending, Set::size).register(meterRegistry);
+    }
+
+    /**
+     * Queues the wallet for projection once the current transaction commits, or immediately when
+     * there is none.
+     */
+    public void projectAfterCommit(UUID walletId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(walletId);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                enqueue(walletId);
+            }
+        });
+    }
+
+    /**
+     * Folds the transactions recorded after the wallet's projection into it.
+     *
+     * @return {@code true} if the projection moved forward
+     */
+    public boolean project(UUID walletId) {
+        return Boolean.TRUE.equals(databaseShards.on(walletId, () -> transactionTemplate.execute(status -> {
+            Wallet wallet = walletRepository.findById(walletId).orElse(null);
+            if (wallet == null) {
+                return false;
+            }
+
+            LedgerTail tail = transactionRepository.findLedgerTail(walletId, wallet.getTransactionCount());
+            if (tail.lastSequence() == wallet.getTransactionCount()) {
+                return false;
+            }
+            return walletRepository.advanceProjection(walletId, wallet.getTransactionCount(), tail.lastSequence(),
+                    wallet.getBalance().plus(tail.balanceChange())) == 1;
+        })));
+    }
+
+    /**
+     * Recomputes the projection of every wallet with transactions from its whole log, one database
+     * shard at a time.
+     *
+     * @return number of wallets rebuilt
+     */
+    public int rebuild() {
+        int rebuilt = 0;
+        for (int shard = 0; shard < databaseShards.count(); shard++) {
+            // Archived months are summed from the archive index, only later transactions from the table.
+            // A wallet with no transaction since keeps its projection, which the archive cannot change
+            List<ArchivedMonth> archived = transactionArchive.months(shard);
+            Instant from = archived.isEmpty() ? Instant.EPOCH : archived.get(archived.size() - 1).getEnd();
+
+            // Read in the same transaction as the reset, so the positions come from the primary
+            List<LedgerPosition> positions = databaseShards.on(shard, () -> transactionTemplate.execute(status -> {
+                List<LedgerPosition> read = transactionRepository.findLedgerPositions(from);
+                read.forEach(position -> walletRepository.resetProjection(position.walletId(), position.lastSequence(),
+                        archived.isEmpty() ? position.balance()
+                                : position.balance().plus(transactionArchive.sumBetween(position.walletId(), null, null))));
+                return read;
+            }));
+            rebuilt += positions.size();
+        }
+        log.atInfo().addKeyValue("wallets", rebuilt).log("Ledger projections rebuilt");
+        return rebuilt;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void rebuildOnStartup() {
+        if (rebuildOnStartup) {
+            rebuild();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        drainer.shutdown();
+    }
+
+    private void enqueue(UUID walletId) {
+        pending.add(walletId);
+        if (draining.compareAndSet(false, true)) {
+            drainer.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            for (Iterator<UUID> it = pending.iterator(); it.hasNext(); ) {
+                UUID walletId = it.next();
+                it.remove();
+                try {
+                    project(walletId);
+                } catch (RuntimeException e) {
+                    log.atWarn().addKeyValue("walletId", walletId).setCause(e).log("Ledger projection failed");
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        // A wallet may have been queued after the iteration ended but before the flag was cleared
+        if (!pending.isEmpty() && draining.compareAndSet(false, true)) {
+            drainer.execute(this::drain);
+        }
+    }
+}
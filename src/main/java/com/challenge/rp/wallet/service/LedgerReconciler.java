@@ -0,0 +1,335 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.ArchivedMonth;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.ReconciliationMismatch;
+import com.challenge.rp.wallet.model.TimeOrderedUuidGenerator;
+import com.challenge.rp.wallet.repository.LedgerAmount;
+import com.challenge.rp.wallet.repository.LedgerPosition;
+import com.challenge.rp.wallet.repository.ReconciliationMismatchRepository;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletIdRange;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the balance of every wallet equals the signed sum of its transactions, and records each
+ * wallet where it does not as a {@link ReconciliationMismatch}.
+ * <p>
+ * The ids between the lowest and highest wallet id of every shard are split into ranges checked side by
+ * side by a fork-join pool of {@code wallet.reconciliation.parallelism} workers. Ids are time ordered, so
+ * the ranges divide the time the shard's wallets were created over; the first and last range also take
+ * any id below or above them, such as a wallet created during the run. A worker walks its range {@code chunk-size} wallets at
+ * a time, each chunk in its own short transaction without locks: it reads the wallets' balances and
+ * transaction counts, then streams the transactions of the same id range in wallet order and folds them
+ * into arrays of longs, so memory is bounded by the chunk rather than by the tables. A wallet only sums the
+ * transactions up to its transaction count, as later ones were committed after its row was read, or are
+ * not projected yet by the ledger engine. Months moved to the {@link TransactionArchive} are summed from its
+ * index.
+ * <p>
+ * With {@code wallet.reconciliation.enabled} a run starts every {@code wallet.reconciliation.interval}.
+ * Wallets and transactions checked are counted as {@code wallet.reconciliation.wallets} and
+ * {@code wallet.reconciliation.transactions} and mismatches as {@code wallet.reconciliation.mismatches};
+ * the share of the current run done is published as {@code wallet.reconciliation.progress} and its rate,
+ * in wallets per second, as {@code wallet.reconciliation.throughput}.
+ */
+@Service
+@Slf4j
+public class LedgerReconciler {
+
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final ReconciliationMismatchRepository reconciliationMismatchRepository;
+    private final TransactionArchive transactionArchive;
+    private final DatabaseShards databaseShards;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration interval;
+    private final int chunkSize;
+    // Each shard's id range is split in two this many times
+    private final int splits;
+    private final ForkJoinPool pool;
+    private final Counter walletsChecked;
+    private final Counter transactionsChecked;
+    private final Counter mismatchesFound;
+
+    private final AtomicLong rangesDone = new AtomicLong();
+    private volatile Tally run;
+    private volatile long rangesTotal;
+    private volatile long runStarted;
+    private volatile long runEnded;
+    private ScheduledExecutorService scheduler;
+
+    public LedgerReconciler(WalletRepository walletRepository,
+                            TransactionRepository transactionRepository,
+                            ReconciliationMismatchRepository reconciliationMismatchRepository,
+                            TransactionArchive transactionArchive,
+                            DatabaseShards databaseShards,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${wallet.reconciliation.enabled:false}") boolean enabled,
+                            @Value("${wallet.reconciliation.interval:24h}") Duration interval,
+                            @Value("${wallet.reconciliation.parallelism:4}") int parallelism,
+                            @Value("${wallet.reconciliation.chunk-size:1000}") int chunkSize) {
+        if (parallelism <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Reconciliation parallelism and chunk size must be greater than zero");
+        }
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.reconciliationMismatchRepository = reconciliationMismatchRepository;
+        this.transactionArchive = transactionArchive;
+        this.databaseShards = databaseShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.interval = interval;
+        this.chunkSize = chunkSize;
+        // Several ranges per worker, so one holding more wallets than the others does not leave the rest idle
+        this.splits = 32 - Integer.numberOfLeadingZeros(parallelism * 8 - 1);
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("wallet-reconciliation-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.walletsChecked = Counter.builder("wallet.reconciliation.wallets").register(meterRegistry);
+        this.transactionsChecked = Counter.builder("wallet.reconciliation.transactions").register(meterRegistry);
+        this.mismatchesFound = Counter.builder("wallet.reconciliation.mismatches").register(meterRegistry);
+        Gauge.builder("wallet.reconciliation.progress", this, LedgerReconciler::progress).register(meterRegistry);
+        Gauge.builder("wallet.reconciliation.throughput", this, LedgerReconciler::throughput).register(meterRegistry);
+    }
+
+    /**
+     * Checks every wallet of every shard.
+     */
+    public synchronized Result reconcile() {
+        UUID runId = TimeOrderedUuidGenerator.next();
+        rangesTotal = (long) databaseShards.count() << splits;
+        rangesDone.set(0);
+        Tally tally = new Tally();
+        run = tally;
+        runStarted = System.nanoTime();
+        runEnded = 0;
+
+        List<RangeTask> shards = new ArrayList<>();
+        for (int shard = 0; shard < databaseShards.count(); shard++) {
+            WalletIdRange ids = databaseShards.on(shard, () -> transactionTemplate.execute(status -> walletRepository.findIdRange()));
+            if (ids == null || ids.first() == null) {
+                rangesDone.addAndGet(1L << splits);
+                continue;
+            }
+            shards.add(new RangeTask(runId, shard, ids.first().getMostSignificantBits(), ids.last().getMostSignificantBits(),
+                    true, true, splits, tally));
+        }
+        try {
+            pool.submit(() -> ForkJoinTask.invokeAll(shards)).join();
+        } finally {
+            runEnded = System.nanoTime();
+        }
+
+        Result result = new Result(runId, tally.wallets.sum(), tally.transactions.sum(), tally.mismatches.sum(),
+                tally.rangesWithWallets.sum(), Duration.ofNanos(runEnded - runStarted));
+        log.atInfo().addKeyValue("runId", runId).addKeyValue("wallets", result.wallets())
+                .addKeyValue("rangesWithWallets", result.rangesWithWallets())
+                .addKeyValue("transactions", result.transactions()).addKeyValue("mismatches", result.mismatches())
+                .addKeyValue("elapsed", result.elapsed()).log("Ledger reconciled");
+        return result;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("wallet-reconciliation").factory());
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                log.atWarn().setCause(e).log("Ledger reconciliation failed");
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        pool.shutdown();
+    }
+
+    private double progress() {
+        long total = rangesTotal;
+        return total == 0 ? 0 : (double) rangesDone.get() / total;
+    }
+
+    private double throughput() {
+        Tally current = run;
+        long started = runStarted;
+        if (current == null) {
+            return 0;
+        }
+        long ended = runEnded;
+        long elapsed = (ended != 0 ? ended : System.nanoTime()) - started;
+        return elapsed <= 0 ? 0 : current.wallets.sum() * 1e9 / elapsed;
+    }
+
+    // Wallet ids from (low, 0) to (high, -1), in the unsigned order the database sorts them in
+    private void checkRange(UUID runId, int shard, long low, long high, Tally tally) {
+        UUID afterId = low == 0 ? FIRST_ID : new UUID(low - 1, -1L);
+        UUID toId = new UUID(high, -1L);
+        long before = tally.wallets.sum();
+        while (afterId != null) {
+            UUID after = afterId;
+            afterId = databaseShards.on(shard, () -> transactionTemplate.execute(status ->
+                    checkChunk(runId, shard, after, toId, tally)));
+        }
+        if (tally.wallets.sum() > before) {
+            tally.rangesWithWallets.increment();
+        }
+    }
+
+    // Returns the id of the chunk's last wallet, or null once the range is done
+    private UUID checkChunk(UUID runId, int shard, UUID afterId, UUID toId, Tally tally) {
+        List<LedgerPosition> wallets = walletRepository.findPositionsAfter(afterId, toId, Limit.of(chunkSize));
+        if (wallets.isEmpty()) {
+            return null;
+        }
+
+        int size = wallets.size();
+        long[] mostSigBits = new long[size];
+        long[] leastSigBits = new long[size];
+        long[] counts = new long[size];
+        long[] sums = new long[size];
+        for (int i = 0; i < size; i++) {
+            mostSigBits[i] = wallets.get(i).walletId().getMostSignificantBits();
+            leastSigBits[i] = wallets.get(i).walletId().getLeastSignificantBits();
+            counts[i] = wallets.get(i).lastSequence();
+        }
+
+        // Archived transactions are still in the table until purged, so the table is only read from the boundary on
+        List<ArchivedMonth> archived = transactionArchive.months(shard);
+        Instant from = archived.isEmpty() ? Instant.EPOCH : archived.get(archived.size() - 1).getEnd();
+        long transactions = 0;
+        try (Stream<LedgerAmount> amounts = transactionRepository.streamAmounts(wallets.get(0).walletId(),
+                wallets.get(size - 1).walletId(), from)) {
+            int i = 0;
+            for (Iterator<LedgerAmount> iterator = amounts.iterator(); iterator.hasNext(); ) {
+                LedgerAmount amount = iterator.next();
+                long msb = amount.walletId().getMostSignificantBits();
+                long lsb = amount.walletId().getLeastSignificantBits();
+                // Skips wallets without transactions, and ones created in the range after the chunk was read
+                while (i < size && compare(mostSigBits[i], leastSigBits[i], msb, lsb) < 0) {
+                    i++;
+                }
+                if (i < size && mostSigBits[i] == msb && leastSigBits[i] == lsb && amount.sequence() <= counts[i]) {
+                    sums[i] += amount.signedMinorUnits();
+                    transactions++;
+                }
+            }
+        }
+
+        List<ReconciliationMismatch> mismatches = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            LedgerPosition wallet = wallets.get(i);
+            long ledger = archived.isEmpty() ? sums[i]
+                    : sums[i] + transactionArchive.sumBetween(wallet.walletId(), null, null).minorUnits();
+            if (ledger != wallet.balance().minorUnits()) {
+                log.atWarn().addKeyValue("walletId", wallet.walletId()).addKeyValue("balance", wallet.balance())
+                        .addKeyValue("ledgerBalance", Money.ofMinor(ledger)).log("Wallet balance does not match its transactions");
+                mismatches.add(new ReconciliationMismatch(runId, wallet.walletId(), wallet.balance(), Money.ofMinor(ledger),
+                        wallet.lastSequence()));
+            }
+        }
+        reconciliationMismatchRepository.saveAll(mismatches);
+
+        tally.wallets.add(size);
+        tally.transactions.add(transactions);
+        tally.mismatches.add(mismatches.size());
+        walletsChecked.increment(size);
+        transactionsChecked.increment(transactions);
+        mismatchesFound.increment(mismatches.size());
+        return size < chunkSize ? null : wallets.get(size - 1).walletId();
+    }
+
+    private static int compare(long msb, long lsb, long otherMsb, long otherLsb) {
+        int compared = Long.compareUnsigned(msb, otherMsb);
+        return compared != 0 ? compared : Long.compareUnsigned(lsb, otherLsb);
+    }
+
+    public record Result(UUID runId, long wallets, long transactions, long mismatches, long rangesWithWallets,
+                         Duration elapsed) {
+    }
+
+    private static final class Tally {
+        private final LongAdder rangesWithWallets = new LongAdder();
+        private final LongAdder wallets = new LongAdder();
+        private final LongAdder transactions = new LongAdder();
+        private final LongAdder mismatches = new LongAdder();
+    }
+
+    // Halves its range of wallet id prefixes until no splits are left, or it is down to one prefix, then
+    // checks it. The shard's first and last range are open below and above
+    private final class RangeTask extends RecursiveAction {
+        private final UUID runId;
+        private final int shard;
+        private final long low;
+        private final long high;
+        private final boolean first;
+        private final boolean last;
+        private final int splits;
+        private final Tally tally;
+
+        private RangeTask(UUID runId, int shard, long low, long high, boolean first, boolean last, int splits, Tally tally) {
+            this.runId = runId;
+            this.shard = shard;
+            this.low = low;
+            this.high = high;
+            this.first = first;
+            this.last = last;
+            this.splits = splits;
+            this.tally = tally;
+        }
+
+        @Override
+        protected void compute() {
+            if (splits > 0 && low != high) {
+                long mid = low + ((high - low) >>> 1);
+                invokeAll(new RangeTask(runId, shard, low, mid, first, false, splits - 1, tally),
+                        new RangeTask(runId, shard, mid + 1, high, false, last, splits - 1, tally));
+                return;
+            }
+            checkRange(runId, shard, first ? 0 : low, last ? -1L : high, tally);
+            rangesDone.addAndGet(1L << splits);
+        }
+    }
+}
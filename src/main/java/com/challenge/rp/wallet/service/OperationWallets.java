@@ -0,0 +1,52 @@
+package com.challenge.rp.wallet.service;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Evaluates the {@link RetryOnConflict#wallets()} expressions of an intercepted write, giving the
+ * ids of the wallets it writes. Parsed expressions are cached per method.
+ */
+final class OperationWallets {
+
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+    private static final ParameterNameDiscoverer PARAMETER_NAMES = new DefaultParameterNameDiscoverer();
+
+    private final Map<Method, List<Expression>> walletExpressions = new ConcurrentHashMap<>();
+
+    List<UUID> of(ProceedingJoinPoint joinPoint, RetryOnConflict retryOnConflict) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        List<Expression> expressions = walletExpressions.computeIfAbsent(method, m ->
+                Arrays.stream(retryOnConflict.wallets()).map(PARSER::parseExpression).toList());
+
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, joinPoint.getArgs(), PARAMETER_NAMES);
+        List<UUID> walletIds = new ArrayList<>(expressions.size());
+        for (Expression expression : expressions) {
+            Object value = expression.getValue(context);
+            if (value instanceof UUID walletId) {
+                walletIds.add(walletId);
+            } else if (value != null) {
+                // A malformed id is left for the operation itself to reject
+                try {
+                    walletIds.add(UUID.fromString(value.toString()));
+                } catch (IllegalArgumentException e) {
+                    // not a wallet id
+                }
+            }
+        }
+        return walletIds;
+    }
+}
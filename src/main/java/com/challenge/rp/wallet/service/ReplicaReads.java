@@ -0,0 +1,42 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.config.ReplicaRoutingDataSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Runs balance and history reads in a single read-only transaction, which takes its connection
+ * from a replica when {@code wallet.replicas.enabled} is set. Reads of a wallet this instance
+ * changed within the read-your-writes window go to the primary instead, since a replica may not
+ * have the change yet; this also keeps such reads from putting a stale balance back in the
+ * {@link BalanceCache}.
+ */
+@Component
+public class ReplicaReads {
+
+    private final TransactionTemplate readOnly;
+    private final BalanceCache balanceCache;
+
+    public ReplicaReads(PlatformTransactionManager transactionManager, BalanceCache balanceCache) {
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.balanceCache = balanceCache;
+    }
+
+    public <T> T read(UUID walletId, Supplier<T> read) {
+        return read(List.of(walletId), read);
+    }
+
+    public <T> T read(Collection<UUID> walletIds, Supplier<T> read) {
+        Supplier<T> inTransaction = () -> readOnly.execute(status -> read.get());
+        return walletIds.stream().anyMatch(balanceCache::changedRecently)
+                ? ReplicaRoutingDataSource.onPrimary(inTransaction)
+                : inTransaction.get();
+    }
+}
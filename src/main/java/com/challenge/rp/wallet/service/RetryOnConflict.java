@@ -0,0 +1,24 @@
+package com.challenge.rp.wallet.service;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Retries the annotated write in a new transaction when it loses a concurrent update of a wallet,
+ * see {@link ConflictRetry}. With {@code wallet.shards.enabled} the write also runs on the shard
+ * owning its wallets, see {@link WalletShards}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RetryOnConflict {
+
+    /**
+     * SpEL expressions, evaluated against the method arguments, giving the ids ({@code UUID} or
+     * {@code String}) of the wallets the operation writes, e.g. {@code "#request.sourceWalletId"}.
+     */
+    String[] wallets();
+}
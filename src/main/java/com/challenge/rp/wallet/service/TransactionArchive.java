@@ -0,0 +1,254 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.dto.TransactionResponse;
+import com.challenge.rp.wallet.model.ArchivedMonth;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import com.challenge.rp.wallet.repository.ArchivedMonthRepository;
+import com.challenge.rp.wallet.repository.ArchivedReferenceRepository;
+import com.challenge.rp.wallet.repository.LedgerEntry;
+import com.challenge.rp.wallet.repository.RecordedOperation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reads the transactions that the {@link TransactionArchiver} moved out of {@code tb_transaction}.
+ * <p>
+ * Each shard archives whole calendar months, oldest first, so a wallet's archived transactions are
+ * exactly those created before the end of its shard's last archived month: its {@link #boundary}.
+ * Callers read older transactions from here and newer ones from the table. The list of archived
+ * months is kept in memory, loaded at startup and reloaded every minute, so instances pick up months
+ * archived elsewhere. Segment files are opened on first use and stay open.
+ * <p>
+ * The {@code Reference-id}s of purged transactions are kept in {@code tb_archived_reference}; they
+ * are only looked up on shards with archived months, so a shard that never archived pays nothing.
+ */
+@Component
+@Slf4j
+public class TransactionArchive {
+
+    private final ArchivedMonthRepository archivedMonthRepository;
+    private final ArchivedReferenceRepository archivedReferenceRepository;
+    private final DatabaseShards databaseShards;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+
+    private final Map<Path, TransactionSegment> segments = new ConcurrentHashMap<>();
+    // Archived months of every shard, oldest first
+    private volatile List<List<ArchivedMonth>> catalog = List.of();
+    private ScheduledExecutorService refresher;
+
+    public TransactionArchive(ArchivedMonthRepository archivedMonthRepository,
+                              ArchivedReferenceRepository archivedReferenceRepository,
+                              DatabaseShards databaseShards,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${wallet.archive.directory:data/archive}") Path directory) {
+        this.archivedMonthRepository = archivedMonthRepository;
+        this.archivedReferenceRepository = archivedReferenceRepository;
+        this.databaseShards = databaseShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.directory = directory;
+    }
+
+    /**
+     * Reloads the archived months of every shard.
+     */
+    @PostConstruct
+    public void refresh() {
+        List<List<ArchivedMonth>> loaded = new ArrayList<>(databaseShards.count());
+        for (int shard = 0; shard < databaseShards.count(); shard++) {
+            loaded.add(List.copyOf(databaseShards.on(shard, () -> transactionTemplate.execute(status ->
+                    archivedMonthRepository.findAllByOrderByMonth()))));
+        }
+        catalog = loaded;
+    }
+
+    public List<ArchivedMonth> months(int shard) {
+        List<List<ArchivedMonth>> current = catalog;
+        return shard < current.size() ? current.get(shard) : List.of();
+    }
+
+    /**
+     * @return the instant before which the wallet's transactions are archived, or {@code null} if none are
+     */
+    public Instant boundary(UUID walletId) {
+        List<ArchivedMonth> months = months(databaseShards.shardOf(walletId));
+        return months.isEmpty() ? null : months.get(months.size() - 1).getEnd();
+    }
+
+    /**
+     * The operation recorded under the reference id by a purged transaction of the wallet's shard.
+     * Must be called in a transaction on that shard.
+     */
+    public Optional<RecordedOperation> findRecordedOperation(UUID walletId, UUID referenceId, TransactionType transactionType) {
+        if (months(databaseShards.shardOf(walletId)).isEmpty()) {
+            return Optional.empty();
+        }
+        return archivedReferenceRepository.findRecordedOperation(referenceId, transactionType);
+    }
+
+    /**
+     * Same as {@link #findRecordedOperation} for many reference ids, in a transaction on the shard.
+     */
+    public List<RecordedOperation> findRecordedOperations(int shard, Collection<UUID> referenceIds, TransactionType transactionType) {
+        if (months(shard).isEmpty() || referenceIds.isEmpty()) {
+            return List.of();
+        }
+        return archivedReferenceRepository.findRecordedOperations(referenceIds, transactionType);
+    }
+
+    /**
+     * The reference ids used by purged transactions of the shard, of any type, in a transaction on the shard.
+     */
+    public Set<UUID> findExistingReferenceIds(int shard, Collection<UUID> referenceIds) {
+        if (months(shard).isEmpty() || referenceIds.isEmpty()) {
+            return Set.of();
+        }
+        return archivedReferenceRepository.findExistingReferenceIds(referenceIds);
+    }
+
+    public Path segmentPath(int shard, YearMonth month) {
+        return directory.resolve("shard-" + shard).resolve("transactions-" + month + ".seg");
+    }
+
+    /**
+     * Sums the signed amounts of the wallet's archived transactions created after {@code after} and
+     * up to {@code upTo}, both of which may be {@code null} for no bound.
+     */
+    public Money sumBetween(UUID walletId, Instant after, Instant upTo) {
+        Money sum = Money.ZERO;
+        for (ArchivedMonth month : months(databaseShards.shardOf(walletId))) {
+            if ((after != null && !month.getEnd().isAfter(after)) || (upTo != null && month.getStart().isAfter(upTo))) {
+                continue;
+            }
+            TransactionSegment segment = segment(walletId, month);
+            TransactionSegment.Group group = segment.find(walletId);
+            if (group == null) {
+                continue;
+            }
+            boolean covered = (after == null || group.minCreatedAt().isAfter(after))
+                    && (upTo == null || !group.maxCreatedAt().isAfter(upTo));
+            if (covered) {
+                sum = sum.plus(group.signedSum());
+                continue;
+            }
+            for (LedgerEntry entry : read(segment, group)) {
+                if ((after == null || entry.createdAt().isAfter(after)) && (upTo == null || !entry.createdAt().isAfter(upTo))) {
+                    sum = sum.plus(entry.signedAmount());
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Passes the wallet's archived transactions after the given one to {@code sink}, oldest first,
+     * and returns how many were passed.
+     *
+     * @param afterCreatedAt creation time of the transaction to continue after, or {@code null} to start at the first
+     * @param afterId        id of the transaction to continue after, or {@code null} to start at the first
+     * @param limit          maximum number of transactions to pass
+     */
+    public long export(UUID walletId, Instant afterCreatedAt, UUID afterId, long limit, Consumer<TransactionResponse> sink) {
+        long count = 0;
+        for (ArchivedMonth month : months(databaseShards.shardOf(walletId))) {
+            if (count == limit) {
+                break;
+            }
+            if (afterCreatedAt != null && !month.getEnd().isAfter(afterCreatedAt)) {
+                continue;
+            }
+            TransactionSegment segment = segment(walletId, month);
+            TransactionSegment.Group group = segment.find(walletId);
+            if (group == null || (afterCreatedAt != null && group.maxCreatedAt().isBefore(afterCreatedAt))) {
+                continue;
+            }
+            for (LedgerEntry entry : read(segment, group)) {
+                if (count == limit) {
+                    break;
+                }
+                if (afterCreatedAt == null || isAfter(entry, afterCreatedAt, afterId)) {
+                    sink.accept(entry.toResponse());
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void startRefresh() {
+        refresher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("wallet-archive-catalog").factory());
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                log.atWarn().setCause(e).log("Transaction archive refresh failed");
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (refresher != null) {
+            refresher.shutdown();
+        }
+        for (TransactionSegment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.atWarn().setCause(e).log("Transaction segment could not be closed");
+            }
+        }
+    }
+
+    private static boolean isAfter(LedgerEntry entry, Instant afterCreatedAt, UUID afterId) {
+        int compared = entry.createdAt().compareTo(afterCreatedAt);
+        return compared > 0 || (compared == 0 && UUIDBinaryConverter.BINARY_ORDER.compare(entry.id(), afterId) > 0);
+    }
+
+    private TransactionSegment segment(UUID walletId, ArchivedMonth month) {
+        Path file = directory.resolve("shard-" + databaseShards.shardOf(walletId)).resolve(month.getSegment());
+        return segments.computeIfAbsent(file, path -> {
+            try {
+                return TransactionSegment.open(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Transaction segment could not be opened: " + path, e);
+            }
+        });
+    }
+
+    private static List<LedgerEntry> read(TransactionSegment segment, TransactionSegment.Group group) {
+        try {
+            return segment.read(group);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.ArchivedMonth;
+import com.challenge.rp.wallet.model.TimeOrderedUuidGenerator;
+import com.challenge.rp.wallet.repository.ArchivedMonthRepository;
+import com.challenge.rp.wallet.repository.ArchivedReferenceRepository;
+import com.challenge.rp.wallet.repository.LedgerEntry;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Moves the calendar months of transactions before the latest {@code wallet.archive.hot-months} out of
+ * {@code tb_transaction} into {@link TransactionSegment} files, so the table only holds recent history.
+ * <p>
+ * Transaction ids are time ordered, so a month is a contiguous range of the primary key: it is read
+ * by id range and deleted in batches of ids, without a scan of {@code created_at}. Each shard archives
+ * its months oldest first, one segment per month, and records each in {@link ArchivedMonth} once the
+ * file is on disk; from then on reads take the month from the {@link TransactionArchive}. Its rows are
+ * deleted {@code wallet.archive.purge-delay} later, once every instance has reloaded the list of
+ * archived months, in batches of {@code wallet.archive.purge-batch-size} each in its own transaction.
+ * The transaction deleting a batch moves its reference ids to {@code tb_archived_reference}, where
+ * they keep being recognized as used.
+ * <p>
+ * When {@code wallet.archive.enabled} is set this runs every {@code wallet.archive.interval}.
+ * Transactions archived are published as {@code wallet.archive.transactions} and rows deleted as
+ * {@code wallet.archive.purged}.
+ */
+@Service
+@Slf4j
+public class TransactionArchiver {
+
+    private static final UUID FIRST_ID = new UUID(0, 0);
+    // Ids take their time before created_at does, so the id range of a month reaches a little past it
+    private static final Duration ID_SLACK = Duration.ofMinutes(1);
+
+    private final TransactionRepository transactionRepository;
+    private final ArchivedMonthRepository archivedMonthRepository;
+    private final ArchivedReferenceRepository archivedReferenceRepository;
+    private final TransactionArchive transactionArchive;
+    private final DatabaseShards databaseShards;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int hotMonths;
+    private final Duration interval;
+    private final Duration purgeDelay;
+    private final int purgeBatchSize;
+    private final Counter archived;
+    private final Counter purged;
+
+    private ScheduledExecutorService archiver;
+
+    public TransactionArchiver(TransactionRepository transactionRepository,
+                               ArchivedMonthRepository archivedMonthRepository,
+                               ArchivedReferenceRepository archivedReferenceRepository,
+                               TransactionArchive transactionArchive,
+                               DatabaseShards databaseShards,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${wallet.archive.enabled:false}") boolean enabled,
+                               @Value("${wallet.archive.hot-months:3}") int hotMonths,
+                               @Value("${wallet.archive.interval:1h}") Duration interval,
+                               @Value("${wallet.archive.purge-delay:2m}") Duration purgeDelay,
+                               @Value("${wallet.archive.purge-batch-size:5000}") int purgeBatchSize) {
+        if (hotMonths < 1) {
+            throw new IllegalArgumentException("At least the current month must stay in the transaction table");
+        }
+        this.transactionRepository = transactionRepository;
+        this.archivedMonthRepository = archivedMonthRepository;
+        this.archivedReferenceRepository = archivedReferenceRepository;
+        this.transactionArchive = transactionArchive;
+        this.databaseShards = databaseShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.hotMonths = hotMonths;
+        this.interval = interval;
+        this.purgeDelay = purgeDelay;
+        this.purgeBatchSize = purgeBatchSize;
+        this.archived = Counter.builder("wallet.archive.transactions").register(meterRegistry);
+        this.purged = Counter.builder("wallet.archive.purged").register(meterRegistry);
+    }
+
+    /**
+     * Archives, on every shard, the months not archived yet that are older than the {@code hot-months} most
+     * recent ones, the current month included.
+     *
+     * @return number of months archived
+     */
+    public synchronized int archive() {
+        YearMonth cutoff = YearMonth.now(ZoneOffset.UTC).minusMonths(hotMonths - 1);
+        int months = 0;
+        for (int shard = 0; shard < databaseShards.count(); shard++) {
+            YearMonth next;
+            while ((next = nextMonth(shard)) != null && next.isBefore(cutoff)) {
+                archiveMonth(shard, next);
+                months++;
+            }
+        }
+        if (months > 0) {
+            transactionArchive.refresh();
+        }
+        return months;
+    }
+
+    /**
+     * Deletes from {@code tb_transaction} the rows of the months archived at least {@code purge-delay} ago.
+     *
+     * @return number of rows deleted
+     */
+    public synchronized long purge() {
+        Instant ready = Instant.now().minus(purgeDelay);
+        long deleted = 0;
+        for (int shard = 0; shard < databaseShards.count(); shard++) {
+            int current = shard;
+            List<ArchivedMonth> months = databaseShards.on(shard, () -> transactionTemplate.execute(status ->
+                    archivedMonthRepository.findAllByOrderByMonth()));
+            for (ArchivedMonth month : months) {
+                if (month.isPurged() || month.getArchivedAt().isAfter(ready)) {
+                    continue;
+                }
+                deleted += purgeMonth(current, month);
+            }
+        }
+        return deleted;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        archiver = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("wallet-archiver").factory());
+        archiver.scheduleWithFixedDelay(this::run, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (archiver != null) {
+            archiver.shutdown();
+        }
+    }
+
+    private void run() {
+        try {
+            purge();
+            archive();
+        } catch (RuntimeException e) {
+            log.atWarn().setCause(e).log("Transaction archiving failed");
+        }
+    }
+
+    // The month after the last archived one, or the month of the oldest transaction; null if there is nothing to archive
+    private YearMonth nextMonth(int shard) {
+        return databaseShards.on(shard, () -> transactionTemplate.execute(status -> {
+            List<ArchivedMonth> months = archivedMonthRepository.findAllByOrderByMonth();
+            if (!months.isEmpty()) {
+                return months.get(months.size() - 1).getMonth().plusMonths(1);
+            }
+            return transactionRepository.findOldestCreatedAt(FIRST_ID, Instant.EPOCH, Limit.of(1)).stream()
+                    .map(createdAt -> YearMonth.from(createdAt.atOffset(ZoneOffset.UTC)))
+                    .findFirst()
+                    .orElse(null);
+        }));
+    }
+
+    private void archiveMonth(int shard, YearMonth month) {
+        Instant from = month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+        Instant to = month.plusMonths(1).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+        Path file = transactionArchive.segmentPath(shard, month);
+
+        TransactionSegment.Summary summary = databaseShards.on(shard, () -> transactionTemplate.execute(status -> {
+            try (Stream<LedgerEntry> entries = transactionRepository.streamBetween(TimeOrderedUuidGenerator.lowestAt(from.minus(ID_SLACK)),
+                    TimeOrderedUuidGenerator.lowestAt(to.plus(ID_SLACK)), from, to)) {
+                Files.createDirectories(file.getParent());
+                return TransactionSegment.write(file, entries.iterator());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Transaction segment could not be written: " + file, e);
+            }
+        }));
+        databaseShards.on(shard, () -> transactionTemplate.execute(status -> archivedMonthRepository.save(
+                new ArchivedMonth(month, file.getFileName().toString(), summary.transactions(), summary.wallets()))));
+
+        archived.increment(summary.transactions());
+        log.atInfo().addKeyValue("shard", shard).addKeyValue("month", month).addKeyValue("transactions", summary.transactions())
+                .addKeyValue("wallets", summary.wallets()).log("Transactions archived");
+    }
+
+    // Everything created before the month's end is archived, as months are archived in order
+    private long purgeMonth(int shard, ArchivedMonth month) {
+        UUID toId = TimeOrderedUuidGenerator.lowestAt(month.getEnd().plus(ID_SLACK));
+        UUID afterId = FIRST_ID;
+        long deleted = 0;
+        List<UUID> ids;
+        do {
+            UUID batchAfter = afterId;
+            ids = databaseShards.on(shard, () -> transactionTemplate.execute(status -> {
+                List<UUID> batch = transactionRepository.findIdsCreatedBefore(batchAfter, toId, month.getEnd(), Limit.of(purgeBatchSize));
+                if (!batch.isEmpty()) {
+                    archivedReferenceRepository.copyFrom(batch);
+                }
+                transactionRepository.deleteAllByIdInBatch(batch);
+                return batch;
+            }));
+            if (!ids.isEmpty()) {
+                afterId = ids.get(ids.size() - 1);
+                deleted += ids.size();
+                purged.increment(ids.size());
+            }
+        } while (ids.size() == purgeBatchSize);
+
+        month.setPurged(true);
+        databaseShards.on(shard, () -> transactionTemplate.execute(status -> archivedMonthRepository.save(month)));
+        log.atInfo().addKeyValue("shard", shard).addKeyValue("month", month.getMonth()).addKeyValue("transactions", deleted)
+                .log("Archived transactions purged");
+        return deleted;
+    }
+}
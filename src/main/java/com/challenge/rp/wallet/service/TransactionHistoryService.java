@@ -0,0 +1,165 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.dto.TransactionHistoryRequest;
+import com.challenge.rp.wallet.dto.TransactionResponse;
+import com.challenge.rp.wallet.exception.TooManyExportsException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Reads a wallet's transactions oldest first, ordered by {@code (created_at, id)}.
+ * <p>
+ * Rows are projected straight into {@link TransactionResponse} and handed to the caller one at a
+ * time while the cursor is open, so neither entities nor the result set accumulate in memory.
+ * Pages are keyset based: the next page starts after the last row of the previous one. Transactions
+ * older than the {@link TransactionArchive} boundary come from the archive, ahead of the table's.
+ * <p>
+ * An export holds a database connection, and its admission permit, for as long as the client keeps
+ * reading. At most {@code wallet.export.max-concurrent} exports run at once, so slow downloads
+ * cannot take the connections writes need, and each is cut off after
+ * {@code wallet.export.max-duration}; a client continues from the last row it received.
+ */
+@Service
+@Slf4j
+public class TransactionHistoryService {
+
+    private static final UUID LAST_ID = new UUID(-1L, -1L);
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final ReplicaReads replicaReads;
+    private final DatabaseShards databaseShards;
+    private final TransactionArchive transactionArchive;
+    private final Semaphore exportSlots;
+    private final Duration maxExportDuration;
+
+    public TransactionHistoryService(WalletRepository walletRepository, TransactionRepository transactionRepository,
+                                     ReplicaReads replicaReads, DatabaseShards databaseShards,
+                                     TransactionArchive transactionArchive,
+                                     @Value("${wallet.export.max-concurrent:2}") int maxConcurrentExports,
+                                     @Value("${wallet.export.max-duration:5m}") Duration maxExportDuration) {
+        if (maxConcurrentExports <= 0) {
+            throw new IllegalArgumentException("wallet.export.max-concurrent must be greater than zero");
+        }
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.replicaReads = replicaReads;
+        this.databaseShards = databaseShards;
+        this.transactionArchive = transactionArchive;
+        this.exportSlots = new Semaphore(maxConcurrentExports);
+        this.maxExportDuration = maxExportDuration;
+    }
+
+    /**
+     * Checks the request before anything is written, so errors can still be reported with a status code.
+     */
+    public void validate(UUID walletId, TransactionHistoryRequest request) {
+        if ((request.afterCreatedAt() == null) != (request.afterId() == null)) {
+            throw new IllegalArgumentException("Both afterCreatedAt and afterId are required to continue after a transaction");
+        }
+        if (request.limit() != null && request.limit() <= 0) {
+            throw new IllegalArgumentException("Limit must be greater than zero");
+        }
+        if (!databaseShards.on(walletId, () -> replicaReads.read(walletId, () -> walletRepository.existsById(walletId)))) {
+            log.error("Wallet not found for ID: {}", walletId);
+            throw new WalletNotFoundException("Wallet not found for ID: " + walletId);
+        }
+    }
+
+    /**
+     * Takes one of the export slots, to be closed once the export is done. Called before the response
+     * is started, so a full house can still be answered with a status code.
+     *
+     * @throws TooManyExportsException if {@code wallet.export.max-concurrent} exports are running
+     */
+    public ExportSlot reserveExport() {
+        if (!exportSlots.tryAcquire()) {
+            log.warn("Transaction export rejected, too many running");
+            throw new TooManyExportsException("Too many transaction exports in progress, retry later");
+        }
+        return new ExportSlot(exportSlots);
+    }
+
+    /**
+     * Passes each transaction of the page to {@code sink} and returns how many were passed.
+     *
+     * @throws QueryTimeoutException if the export runs for longer than {@code wallet.export.max-duration}
+     */
+    public long export(UUID walletId, TransactionHistoryRequest request, Consumer<TransactionResponse> sink) {
+        long limit = request.limit() != null ? request.limit() : Long.MAX_VALUE;
+        long deadline = System.nanoTime() + maxExportDuration.toNanos();
+        Consumer<TransactionResponse> bounded = transaction -> {
+            // Checked between rows: a write blocked on the client is bounded by the server's write timeout
+            if (System.nanoTime() - deadline > 0) {
+                log.atWarn().addKeyValue("walletId", walletId).addKeyValue("maxDuration", maxExportDuration)
+                        .log("Transaction export cut off");
+                throw new QueryTimeoutException("Export of wallet " + walletId + " ran for longer than " + maxExportDuration);
+            }
+            sink.accept(transaction);
+        };
+
+        long exported = databaseShards.on(walletId, () -> replicaReads.read(walletId, () -> {
+            long count = 0;
+            Instant afterCreatedAt = request.afterCreatedAt();
+            UUID afterId = request.afterId();
+
+            Instant boundary = transactionArchive.boundary(walletId);
+            if (boundary != null && (afterCreatedAt == null || afterCreatedAt.isBefore(boundary))) {
+                count = transactionArchive.export(walletId, afterCreatedAt, afterId, limit, bounded);
+                // Continues after every archived transaction, whatever its id
+                afterCreatedAt = boundary.minus(1, ChronoUnit.MICROS);
+                afterId = LAST_ID;
+            }
+            if (count == limit) {
+                return count;
+            }
+
+            Limit remaining = limit == Long.MAX_VALUE ? Limit.unlimited() : Limit.of((int) (limit - count));
+            try (Stream<TransactionResponse> transactions = afterId == null
+                    ? transactionRepository.streamByWallet(walletId, remaining)
+                    : transactionRepository.streamByWalletAfter(walletId, afterCreatedAt, afterId, remaining)) {
+                for (var iterator = transactions.iterator(); iterator.hasNext(); count++) {
+                    bounded.accept(iterator.next());
+                }
+            }
+            return count;
+        }));
+
+        log.info("Exported {} transactions of wallet {}", exported, walletId);
+        return exported;
+    }
+
+    /**
+     * One running export; closing it more than once gives the slot back once.
+     */
+    public static final class ExportSlot implements AutoCloseable {
+        private final Semaphore slots;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private ExportSlot(Semaphore slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                slots.release();
+            }
+        }
+    }
+}
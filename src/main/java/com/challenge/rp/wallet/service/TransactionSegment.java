@@ -0,0 +1,367 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import com.challenge.rp.wallet.repository.LedgerEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Read-only file holding one month of a shard's transactions, written by the {@link TransactionArchiver}.
+ * <p>
+ * Transactions are grouped by wallet, and each group is stored column by column (ids, creation
+ * times and sequences as deltas, types, amounts, reference ids) and deflated on its own, so reading
+ * a wallet inflates only its group. A 64-byte header gives the number of transactions and wallets and
+ * the earliest and latest creation time. The wallet index at the end of the file is sorted by wallet id
+ * and holds, per group, its position, size, time range, signed sum and last sequence, so a sum over a
+ * window covering the whole group needs no inflating. The index is memory mapped and searched in place.
+ */
+final class TransactionSegment implements Closeable {
+
+    static final int HEADER_SIZE = 64;
+    static final int ENTRY_SIZE = 64;
+
+    private static final int MAGIC = 0x57545853;
+    private static final int VERSION = 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer index;
+    private final long transactionCount;
+    private final int walletCount;
+    private final Instant minCreatedAt;
+    private final Instant maxCreatedAt;
+
+    private TransactionSegment(FileChannel channel, MappedByteBuffer index, long transactionCount, int walletCount,
+                               Instant minCreatedAt, Instant maxCreatedAt) {
+        this.channel = channel;
+        this.index = index;
+        this.transactionCount = transactionCount;
+        this.walletCount = walletCount;
+        this.minCreatedAt = minCreatedAt;
+        this.maxCreatedAt = maxCreatedAt;
+    }
+
+    /**
+     * Writes the entries, which must be ordered by wallet id (in {@link UUIDBinaryConverter#BINARY_ORDER})
+     * and then by creation time and id, to {@code file}. The file only appears once complete and on disk.
+     */
+    static Summary write(Path file, Iterator<LedgerEntry> entries) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Path indexFile = file.resolveSibling(file.getFileName() + ".index.tmp");
+        long transactions = 0;
+        int wallets = 0;
+        long minCreated = Long.MAX_VALUE;
+        long maxCreated = Long.MIN_VALUE;
+
+        try {
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+                 DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+                out.position(HEADER_SIZE);
+                GroupWriter group = null;
+                while (entries.hasNext()) {
+                    LedgerEntry entry = entries.next();
+                    if (group != null && !group.walletId.equals(entry.walletId())) {
+                        if (UUIDBinaryConverter.BINARY_ORDER.compare(group.walletId, entry.walletId()) > 0) {
+                            throw new IllegalStateException("Segment entries are not ordered by wallet id");
+                        }
+                        group.writeTo(out, indexOut);
+                        group = null;
+                    }
+                    if (group == null) {
+                        group = new GroupWriter(entry.walletId());
+                        wallets++;
+                    }
+                    group.add(entry);
+                    transactions++;
+                    minCreated = Math.min(minCreated, toMicros(entry.createdAt()));
+                    maxCreated = Math.max(maxCreated, toMicros(entry.createdAt()));
+                }
+                if (group != null) {
+                    group.writeTo(out, indexOut);
+                }
+                if ((long) wallets * ENTRY_SIZE > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Segment index is too large to map: " + wallets + " wallets");
+                }
+
+                indexOut.flush();
+                long indexOffset = out.position();
+                try (FileChannel in = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                    for (long copied = 0; copied < in.size(); ) {
+                        copied += in.transferTo(copied, in.size() - copied, out);
+                    }
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                        .putInt(MAGIC)
+                        .putInt(VERSION)
+                        .putLong(transactions)
+                        .putInt(wallets)
+                        .putInt(0)
+                        .putLong(transactions == 0 ? 0 : minCreated)
+                        .putLong(transactions == 0 ? 0 : maxCreated)
+                        .putLong(indexOffset)
+                        .position(0);
+                out.write(header, 0);
+                out.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(indexFile);
+            Files.deleteIfExists(temporary);
+        }
+        return new Summary(transactions, wallets);
+    }
+
+    static TransactionSegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a transaction segment: " + file);
+            }
+            long transactions = header.getLong();
+            int wallets = header.getInt();
+            header.getInt();
+            Instant minCreatedAt = ofMicros(header.getLong());
+            Instant maxCreatedAt = ofMicros(header.getLong());
+            long indexOffset = header.getLong();
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) wallets * ENTRY_SIZE);
+            return new TransactionSegment(channel, index, transactions, wallets, minCreatedAt, maxCreatedAt);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long getTransactionCount() {
+        return transactionCount;
+    }
+
+    int getWalletCount() {
+        return walletCount;
+    }
+
+    Instant getMinCreatedAt() {
+        return minCreatedAt;
+    }
+
+    Instant getMaxCreatedAt() {
+        return maxCreatedAt;
+    }
+
+    /**
+     * @return the wallet's group, or {@code null} if it has no transactions in this segment
+     */
+    Group find(UUID walletId) {
+        int low = 0;
+        int high = walletCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int at = mid * ENTRY_SIZE;
+            int compared = Long.compareUnsigned(index.getLong(at), walletId.getMostSignificantBits());
+            if (compared == 0) {
+                compared = Long.compareUnsigned(index.getLong(at + 8), walletId.getLeastSignificantBits());
+            }
+            if (compared < 0) {
+                low = mid + 1;
+            } else if (compared > 0) {
+                high = mid - 1;
+            } else {
+                return new Group(walletId, index.getLong(at + 16), index.getInt(at + 24), index.getInt(at + 28),
+                        ofMicros(index.getLong(at + 32)), ofMicros(index.getLong(at + 40)),
+                        Money.ofMinor(index.getLong(at + 48)), index.getLong(at + 56));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the group's transactions, ordered by creation time and id.
+     */
+    List<LedgerEntry> read(Group group) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(group.length());
+        readFully(channel, compressed, group.offset());
+
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed.array())))) {
+            int rows = group.rows();
+            UUID[] ids = new UUID[rows];
+            for (int i = 0; i < rows; i++) {
+                ids[i] = new UUID(in.readLong(), in.readLong());
+            }
+            long[] created = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                created[i] = (i == 0 ? 0 : created[i - 1]) + readVarLong(in);
+            }
+            long[] sequences = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                long delta = readVarLong(in);
+                sequences[i] = (i == 0 ? 0 : sequences[i - 1]) + ((delta >>> 1) ^ -(delta & 1));
+            }
+            TransactionType[] types = new TransactionType[rows];
+            for (int i = 0; i < rows; i++) {
+                types[i] = TransactionType.values()[in.readUnsignedByte()];
+            }
+            long[] amounts = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                amounts[i] = readVarLong(in);
+            }
+
+            List<LedgerEntry> entries = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                UUID referenceId = new UUID(in.readLong(), in.readLong());
+                entries.add(new LedgerEntry(ids[i], group.walletId(), sequences[i], types[i], Money.ofMinor(amounts[i]),
+                        referenceId, ofMicros(created[i])));
+            }
+            return entries;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static long toMicros(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1000);
+    }
+
+    static Instant ofMicros(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1000L);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Transaction segment is truncated");
+            }
+        }
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int next = in.readUnsignedByte();
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * A wallet's transactions in a segment, as described by the index.
+     */
+    record Group(UUID walletId, long offset, int length, int rows, Instant minCreatedAt, Instant maxCreatedAt,
+                 Money signedSum, long lastSequence) {
+    }
+
+    record Summary(long transactions, int wallets) {
+    }
+
+    // Buffers one wallet's columns until the next wallet starts
+    private static final class GroupWriter {
+        private final UUID walletId;
+        private final ByteArrayOutputStream ids = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream created = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream sequences = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream types = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream amounts = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream referenceIds = new ByteArrayOutputStream();
+        private int rows;
+        private long minCreated;
+        private long lastCreated;
+        private long lastSequence;
+        private long signedSum;
+
+        private GroupWriter(UUID walletId) {
+            this.walletId = walletId;
+        }
+
+        private void add(LedgerEntry entry) throws IOException {
+            long createdMicros = toMicros(entry.createdAt());
+            if (rows == 0) {
+                minCreated = createdMicros;
+            } else if (createdMicros < lastCreated) {
+                throw new IllegalStateException("Segment entries of wallet " + walletId + " are not ordered by creation time");
+            }
+            writeUuid(new DataOutputStream(ids), entry.id());
+            writeVarLong(new DataOutputStream(created), rows == 0 ? createdMicros : createdMicros - lastCreated);
+            long delta = entry.sequence() - (rows == 0 ? 0 : lastSequence);
+            writeVarLong(new DataOutputStream(sequences), (delta << 1) ^ (delta >> 63));
+            types.write(entry.transactionType().ordinal());
+            writeVarLong(new DataOutputStream(amounts), entry.amount().minorUnits());
+            writeUuid(new DataOutputStream(referenceIds), entry.referenceId());
+
+            signedSum = Math.addExact(signedSum, entry.signedAmount().minorUnits());
+            lastCreated = createdMicros;
+            lastSequence = entry.sequence();
+            rows++;
+        }
+
+        private void writeTo(FileChannel out, DataOutputStream index) throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+                ids.writeTo(deflater);
+                created.writeTo(deflater);
+                sequences.writeTo(deflater);
+                types.writeTo(deflater);
+                amounts.writeTo(deflater);
+                referenceIds.writeTo(deflater);
+            }
+
+            long offset = out.position();
+            ByteBuffer buffer = ByteBuffer.wrap(compressed.toByteArray());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+
+            writeUuid(index, walletId);
+            index.writeLong(offset);
+            index.writeInt(compressed.size());
+            index.writeInt(rows);
+            index.writeLong(minCreated);
+            index.writeLong(lastCreated);
+            index.writeLong(signedSum);
+            index.writeLong(lastSequence);
+        }
+
+        private static void writeUuid(DataOutput out, UUID uuid) throws IOException {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.challenge.rp.wallet.service;
+
+/**
+ * How {@link WalletService#transfer} protects the two wallet rows, set with
+ * {@code wallet.transfer.concurrency-mode}.
+ */
+public enum TransferConcurrencyMode {
+
+    // Legs go through the configured BalanceEngine; conflicts are detected at write time
+    OPTIMISTIC,
+    // Both rows are locked up front with a single SELECT ... FOR UPDATE ordered by id
+    PESSIMISTIC
+}
@@ -0,0 +1,63 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.InsufficientBalanceException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.WalletBalance;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Read-modify-write on the managed entity; concurrent writers are detected by the
+ * {@code @Version} check at flush and surface as {@link jakarta.persistence.OptimisticLockException}.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.balance-engine", havingValue = "versioned", matchIfMissing = true)
+public class VersionedBalanceEngine implements BalanceEngine {
+
+    private final WalletRepository walletRepository;
+
+    public VersionedBalanceEngine(WalletRepository walletRepository) {
+        this.walletRepository = walletRepository;
+    }
+
+    @Override
+    public Wallet debit(UUID walletId, Money amount) {
+        Wallet wallet = findWallet(walletId);
+
+        if (wallet.getBalance().isLessThan(amount)) {
+            throw new InsufficientBalanceException("Insufficient balance in wallet " + walletId);
+        }
+
+        wallet.setBalance(wallet.getBalance().minus(amount));
+        wallet.setTransactionCount(wallet.getTransactionCount() + 1);
+        return walletRepository.save(wallet);
+    }
+
+    @Override
+    public Wallet credit(UUID walletId, Money amount) {
+        Wallet wallet = findWallet(walletId);
+
+        wallet.setBalance(wallet.getBalance().plus(amount));
+        wallet.setTransactionCount(wallet.getTransactionCount() + 1);
+        return walletRepository.save(wallet);
+    }
+
+    @Override
+    public Map<UUID, Money> balancesOf(Collection<UUID> walletIds) {
+        return walletRepository.findBalances(walletIds).stream()
+                .collect(Collectors.toMap(WalletBalance::walletId, WalletBalance::balance));
+    }
+
+    private Wallet findWallet(UUID walletId) {
+        return walletRepository.findById(walletId)
+                .orElseThrow(() -> new WalletNotFoundException("Wallet not found for ID: " + walletId));
+    }
+}
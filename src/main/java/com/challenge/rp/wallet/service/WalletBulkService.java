@@ -0,0 +1,139 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.config.OperationLogSampler;
+import com.challenge.rp.wallet.dto.*;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Creates and reads many wallets per call.
+ * <p>
+ * A bulk creation checks every user id against existing wallets with one {@code IN} query and
+ * inserts the accepted wallets in JDBC batches in a single transaction; user ids that already have
+ * a wallet, or appear twice in the request, are rejected per item. A bulk balance lookup serves
+ * what it can from the {@link BalanceCache} and reads the rest with one query through the
+ * {@link BalanceEngine}. With {@link DatabaseShards} the {@link WalletDirectory} creates the wallets,
+ * and balances are read with one query per shard.
+ */
+@Service
+@Slf4j
+public class WalletBulkService {
+
+    private final WalletRepository walletRepository;
+    private final BalanceEngine balanceEngine;
+    private final BalanceCache balanceCache;
+    private final ReplicaReads replicaReads;
+    private final DatabaseShards databaseShards;
+    private final WalletDirectory walletDirectory;
+    private final int maxSize;
+
+    public WalletBulkService(WalletRepository walletRepository,
+                             BalanceEngine balanceEngine,
+                             BalanceCache balanceCache,
+                             ReplicaReads replicaReads,
+                             DatabaseShards databaseShards,
+                             WalletDirectory walletDirectory,
+                             @Value("${wallet.bulk.max-size:1000}") int maxSize) {
+        this.walletRepository = walletRepository;
+        this.balanceEngine = balanceEngine;
+        this.balanceCache = balanceCache;
+        this.replicaReads = replicaReads;
+        this.databaseShards = databaseShards;
+        this.walletDirectory = walletDirectory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * A user id taken by a concurrent request between the check and the insert fails the whole
+     * request on the unique key; retrying it rejects just that item.
+     */
+    @Transactional
+    public WalletBulkCreateResponse createWallets(WalletBulkCreateRequest request) {
+        List<WalletCreateRequest> items = checkSize(request.wallets(), "wallets");
+
+        Set<UUID> userIds = new HashSet<>();
+        items.forEach(item -> Optional.ofNullable(item.userId()).ifPresent(userIds::add));
+        // With database shards the directory checks the users while it creates their wallets
+        Set<UUID> taken = walletDirectory.isEnabled() ? new HashSet<>() : new HashSet<>(walletRepository.findExistingUserIds(userIds));
+
+        List<Wallet> wallets = new ArrayList<>(items.size());
+        List<WalletBulkCreateResult> results = new ArrayList<>(items.size());
+        for (WalletCreateRequest item : items) {
+            String rejection = item.userId() == null ? "User id is required"
+                    : !taken.add(item.userId()) ? "User already has a wallet"
+                    : null;
+            if (rejection != null) {
+                results.add(new WalletBulkCreateResult(item.userId(), null, WalletBulkCreateStatus.REJECTED, rejection));
+                continue;
+            }
+            Wallet wallet = item.toModel();
+            wallets.add(wallet);
+            results.add(new WalletBulkCreateResult(item.userId(), null, WalletBulkCreateStatus.CREATED, null));
+        }
+
+        // The directory reports users found owning a wallet only once it looked them up on their shards
+        Set<UUID> owners = walletDirectory.isEnabled() ? walletDirectory.create(wallets) : Set.of();
+        if (!walletDirectory.isEnabled()) {
+            // Ids are generated on persist; the inserts themselves are batched at flush
+            walletRepository.saveAll(wallets);
+        }
+        Iterator<Wallet> created = wallets.iterator();
+        List<WalletBulkCreateResult> response = results.stream()
+                .map(r -> {
+                    if (r.status() != WalletBulkCreateStatus.CREATED) {
+                        return r;
+                    }
+                    Wallet wallet = created.next();
+                    if (owners.contains(wallet.getUserId())) {
+                        return new WalletBulkCreateResult(r.userId(), null, WalletBulkCreateStatus.REJECTED, "User already has a wallet");
+                    }
+                    balanceCache.evictAfterCommit(wallet.getId());
+                    return new WalletBulkCreateResult(r.userId(), wallet.getId(), r.status(), null);
+                })
+                .toList();
+
+        log.atInfo().addMarker(OperationLogSampler.OPERATION).addKeyValue("size", items.size())
+                .addKeyValue("created", wallets.size() - owners.size()).log("Wallets created");
+        return new WalletBulkCreateResponse(response);
+    }
+
+    public WalletBalancesResponse getBalances(WalletBalancesRequest request) {
+        List<WalletBalanceRequest> items = checkSize(request.wallets(), "wallets");
+
+        Set<UUID> walletIds = new HashSet<>();
+        items.forEach(item -> Optional.ofNullable(item.walletId()).ifPresent(walletIds::add));
+        // One query per database shard holding any of the wallets
+        Map<UUID, Money> balances = balanceCache.getAll(walletIds, missing -> {
+            Map<UUID, Money> loaded = new HashMap<>();
+            databaseShards.group(missing).forEach((shard, shardWallets) -> loaded.putAll(databaseShards.on(shard,
+                    () -> replicaReads.read(shardWallets, () -> balanceEngine.balancesOf(shardWallets)))));
+            return loaded;
+        });
+
+        return new WalletBalancesResponse(items.stream()
+                .map(item -> {
+                    Money balance = item.walletId() == null ? null : balances.get(item.walletId());
+                    return balance == null
+                            ? new WalletBalanceResult(item.walletId(), null, "Wallet not found for ID: " + item.walletId())
+                            : new WalletBalanceResult(item.walletId(), balance.toBigDecimal(), null);
+                })
+                .toList());
+    }
+
+    private <T> List<T> checkSize(List<T> items, String name) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Request must contain at least one item in " + name);
+        }
+        if (items.size() > maxSize) {
+            throw new IllegalArgumentException("Request cannot contain more than " + maxSize + " " + name);
+        }
+        return items;
+    }
+}
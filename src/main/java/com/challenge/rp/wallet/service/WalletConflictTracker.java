@@ -0,0 +1,183 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts lost concurrent updates per wallet and decides which wallets are serialized.
+ * <p>
+ * A wallet that sees {@code wallet.retry.serialize-after} conflicts within
+ * {@code wallet.retry.conflict-window} is serialized for {@code wallet.retry.serialize-for}: its
+ * writes on this instance take turns on the wallet's lane instead of racing and retrying, and the
+ * period is extended for as long as writers keep queueing on the lane.
+ * <p>
+ * Conflicts are counted as {@code wallet.conflicts} per operation. Wallets that have been
+ * serialized also get a {@code wallet.conflicts.hot} counter tagged with the wallet id, so the
+ * conflict rate of hot wallets can be graphed without a time series for every wallet, and
+ * {@code wallet.conflicts.serialized} is the number of wallets currently serialized.
+ */
+@Component
+public class WalletConflictTracker {
+
+    private static final long MAX_TRACKED_WALLETS = 100_000;
+
+    private final int serializeAfter;
+    private final long windowNanos;
+    private final long serializeForNanos;
+    private final MeterRegistry meterRegistry;
+    private final Cache<UUID, WalletConflicts> wallets;
+
+    public WalletConflictTracker(@Value("${wallet.retry.serialize-after:3}") int serializeAfter,
+                                 @Value("${wallet.retry.conflict-window:1s}") Duration conflictWindow,
+                                 @Value("${wallet.retry.serialize-for:30s}") Duration serializeFor,
+                                 MeterRegistry meterRegistry) {
+        this.serializeAfter = serializeAfter;
+        this.windowNanos = conflictWindow.toNanos();
+        this.serializeForNanos = serializeFor.toNanos();
+        this.meterRegistry = meterRegistry;
+        // A lane held for longer than this may be replaced by a new one; conflicts are still
+        // caught by the version check, the wallet is just briefly not serialized
+        this.wallets = Caffeine.newBuilder()
+                .maximumSize(MAX_TRACKED_WALLETS)
+                .expireAfterAccess(serializeFor.compareTo(conflictWindow) > 0 ? serializeFor : conflictWindow)
+                .removalListener((UUID walletId, WalletConflicts conflicts, RemovalCause cause) -> {
+                    if (conflicts != null) {
+                        conflicts.unregister(meterRegistry);
+                    }
+                })
+                .build();
+        Gauge.builder("wallet.conflicts.serialized", this, WalletConflictTracker::serializedCount)
+                .register(meterRegistry);
+    }
+
+    public void recordConflict(String operation, UUID walletId) {
+        Counter.builder("wallet.conflicts")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .increment();
+
+        WalletConflicts conflicts = wallets.get(walletId, id -> new WalletConflicts());
+        if (conflicts.record(System.nanoTime(), windowNanos, serializeAfter, serializeForNanos)) {
+            conflicts.register(walletId, meterRegistry);
+        }
+    }
+
+    public boolean isSerialized(UUID walletId) {
+        WalletConflicts conflicts = wallets.getIfPresent(walletId);
+        return conflicts != null && conflicts.isSerialized(System.nanoTime());
+    }
+
+    /**
+     * Waits for and holds the lanes of those wallets that are serialized until the returned
+     * {@link Lanes} are closed. Lanes are taken in the order rows are locked in, so two transfers
+     * between the same wallets cannot deadlock.
+     */
+    public Lanes enter(Collection<UUID> walletIds) {
+        long now = System.nanoTime();
+        List<WalletConflicts> serialized = walletIds.stream()
+                .distinct()
+                .sorted(UUIDBinaryConverter.BINARY_ORDER)
+                .map(wallets::getIfPresent)
+                .filter(Objects::nonNull)
+                .filter(conflicts -> conflicts.isSerialized(now))
+                .toList();
+
+        for (WalletConflicts conflicts : serialized) {
+            if (!conflicts.lane.tryLock()) {
+                conflicts.extend(now + serializeForNanos);
+                conflicts.lane.lock();
+            }
+        }
+        return new Lanes(serialized);
+    }
+
+    private long serializedCount() {
+        long now = System.nanoTime();
+        return wallets.asMap().values().stream().filter(conflicts -> conflicts.isSerialized(now)).count();
+    }
+
+    /**
+     * Lanes held by an operation; closing them lets the next writer of each wallet in.
+     */
+    public static final class Lanes implements AutoCloseable {
+
+        private final List<WalletConflicts> held;
+
+        private Lanes(List<WalletConflicts> held) {
+            this.held = held;
+        }
+
+        @Override
+        public void close() {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).lane.unlock();
+            }
+        }
+    }
+
+    private static final class WalletConflicts {
+        private final ReentrantLock lane = new ReentrantLock(true);
+        private final AtomicLong total = new AtomicLong();
+        private long windowStart;
+        private int inWindow;
+        private volatile boolean serialized;
+        private volatile long serializedUntil;
+        private Meter meter;
+
+        // Returns true when the conflict (re)starts the serialized period
+        private synchronized boolean record(long now, long windowNanos, int serializeAfter, long serializeForNanos) {
+            total.incrementAndGet();
+            if (inWindow == 0 || now - windowStart > windowNanos) {
+                windowStart = now;
+                inWindow = 0;
+            }
+            if (++inWindow < serializeAfter) {
+                return false;
+            }
+            serializedUntil = now + serializeForNanos;
+            serialized = true;
+            return true;
+        }
+
+        private boolean isSerialized(long now) {
+            return serialized && serializedUntil - now > 0;
+        }
+
+        private void extend(long until) {
+            if (until - serializedUntil > 0) {
+                serializedUntil = until;
+            }
+        }
+
+        private synchronized void register(UUID walletId, MeterRegistry meterRegistry) {
+            if (meter == null) {
+                meter = FunctionCounter.builder("wallet.conflicts.hot", total, AtomicLong::get)
+                        .tag("wallet", walletId.toString())
+                        .register(meterRegistry);
+            }
+        }
+
+        private synchronized void unregister(MeterRegistry meterRegistry) {
+            if (meter != null) {
+                meterRegistry.remove(meter);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.model.WalletPlacement;
+import com.challenge.rp.wallet.repository.ShardLoad;
+import com.challenge.rp.wallet.repository.WalletPlacementRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * Creates wallets when they are spread over {@link DatabaseShards}.
+ * <p>
+ * The directory on shard 0 records the wallet each user owns and its shard, keyed by user id, so a
+ * user owns one wallet across all shards. A new wallet is placed on the shard with the fewest
+ * wallets and given an id that hashes to it. Its entry is committed before the wallet itself, so a
+ * creation interrupted in between leaves an entry without a wallet; the next creation for the user
+ * reuses it. Wallets per shard are counted from the directory at startup and then by this instance
+ * only, published as {@code wallet.database-shards.wallets}.
+ */
+@Service
+@Slf4j
+public class WalletDirectory {
+
+    private final DatabaseShards databaseShards;
+    private final WalletRepository walletRepository;
+    private final WalletPlacementRepository walletPlacementRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicLongArray wallets;
+
+    public WalletDirectory(DatabaseShards databaseShards,
+                           WalletRepository walletRepository,
+                           WalletPlacementRepository walletPlacementRepository,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry) {
+        this.databaseShards = databaseShards;
+        this.walletRepository = walletRepository;
+        this.walletPlacementRepository = walletPlacementRepository;
+        // Each step runs on its own shard, whatever the caller's transaction
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.wallets = new AtomicLongArray(databaseShards.count());
+        for (int shard = 0; shard < databaseShards.count(); shard++) {
+            int index = shard;
+            Gauge.builder("wallet.database-shards.wallets", wallets, counts -> counts.get(index))
+                    .tag("shard", String.valueOf(shard))
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return databaseShards.isEnabled();
+    }
+
+    /**
+     * Creates the wallets of users that do not own one yet, each on its shard.
+     *
+     * @return the users among the wallets' that already own a wallet, whose wallets were not created
+     * @throws org.springframework.dao.DataIntegrityViolationException if another request is creating a
+     *                                                                 wallet for one of the users
+     */
+    public Set<UUID> create(Collection<Wallet> newWallets) {
+        Set<UUID> userIds = newWallets.stream().map(Wallet::getUserId).collect(Collectors.toSet());
+        Map<UUID, WalletPlacement> placed = databaseShards.on(0, () -> transactionTemplate.execute(status ->
+                walletPlacementRepository.findAllById(userIds))).stream()
+                .collect(Collectors.toMap(WalletPlacement::getUserId, placement -> placement));
+
+        // Entries whose wallet exists are owned; the others were left by an interrupted creation
+        Set<UUID> owners = new HashSet<>();
+        placed.values().stream().collect(Collectors.groupingBy(WalletPlacement::getShard)).forEach((shard, placements) ->
+                owners.addAll(databaseShards.on(shard, () -> transactionTemplate.execute(status ->
+                        walletRepository.findExistingUserIds(placements.stream().map(WalletPlacement::getUserId).toList())))));
+
+        List<WalletPlacement> placements = new ArrayList<>();
+        Map<Integer, List<Wallet>> byShard = new HashMap<>();
+        for (Wallet wallet : newWallets) {
+            if (owners.contains(wallet.getUserId())) {
+                continue;
+            }
+            WalletPlacement placement = placed.get(wallet.getUserId());
+            if (placement == null) {
+                int shard = leastLoaded();
+                placement = new WalletPlacement(wallet.getUserId(), databaseShards.newWalletId(shard), shard);
+                placements.add(placement);
+                wallets.incrementAndGet(shard);
+            }
+            wallet.setId(placement.getWalletId());
+            byShard.computeIfAbsent(placement.getShard(), shard -> new ArrayList<>()).add(wallet);
+        }
+
+        databaseShards.on(0, () -> transactionTemplate.execute(status -> walletPlacementRepository.saveAll(placements)));
+        byShard.forEach((shard, shardWallets) ->
+                databaseShards.on(shard, () -> transactionTemplate.execute(status -> walletRepository.saveAll(shardWallets))));
+        log.atDebug().addKeyValue("created", newWallets.size() - owners.size()).addKeyValue("shards", byShard.keySet())
+                .log("Wallets placed");
+        return owners;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void countWallets() {
+        if (!isEnabled()) {
+            return;
+        }
+        List<ShardLoad> loads = databaseShards.on(0, () -> transactionTemplate.execute(status -> walletPlacementRepository.findShardLoads()));
+        loads.forEach(load -> wallets.set(load.shard(), load.wallets()));
+    }
+
+    private int leastLoaded() {
+        int least = 0;
+        for (int shard = 1; shard < wallets.length(); shard++) {
+            if (wallets.get(shard) < wallets.get(least)) {
+                least = shard;
+            }
+        }
+        return least;
+    }
+}
@@ -0,0 +1,50 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.WalletEvent;
+import com.challenge.rp.wallet.repository.WalletEventRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes the {@link WalletEvent} of each recorded transaction into the current database transaction,
+ * so an event exists exactly when its transaction committed. {@link WalletEventRelay} delivers them.
+ */
+@Component
+public class WalletEventOutbox {
+
+    private final WalletEventRepository walletEventRepository;
+
+    public WalletEventOutbox(WalletEventRepository walletEventRepository) {
+        this.walletEventRepository = walletEventRepository;
+    }
+
+    /**
+     * Records an event per transaction. Each wallet's transactions must be in sequence order, and
+     * its entity must hold the balance after the last of them.
+     */
+    public void append(List<Transaction> transactions) {
+        // Walks back from each wallet's final balance to the balance after every earlier transaction
+        Map<UUID, Money> balanceAfter = new HashMap<>();
+        List<WalletEvent> events = new ArrayList<>(transactions.size());
+        for (int i = transactions.size() - 1; i >= 0; i--) {
+            Transaction transaction = transactions.get(i);
+            UUID walletId = transaction.getWallet().getId();
+            Money balance = balanceAfter.getOrDefault(walletId, transaction.getWallet().getBalance());
+            events.add(new WalletEvent(transaction, balance));
+            balanceAfter.put(walletId, transaction.getTransactionType() == TransactionType.DEPOSIT
+                    ? balance.minus(transaction.getAmount())
+                    : balance.plus(transaction.getAmount()));
+        }
+        Collections.reverse(events);
+        walletEventRepository.saveAll(events);
+    }
+}
@@ -0,0 +1,207 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import com.challenge.rp.wallet.model.WalletEvent;
+import com.challenge.rp.wallet.repository.LatestSequence;
+import com.challenge.rp.wallet.repository.WalletEventRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails the {@link WalletEvent} outbox of every database shard and hands new events to the
+ * {@link WalletEventSubscriptions}.
+ * <p>
+ * Every {@code wallet.events.poll-interval} the relay reads the events of the wallets subscribed on
+ * this instance created since the newest one it has seen, in {@code (created_at, id)} order.
+ * Creation times are taken before commit, so an event can become visible after the relay read past
+ * its time: each poll therefore reads the last {@code wallet.events.settle-window} again, and
+ * subscribers drop what they already sent. For an event committing later than that, every
+ * {@code wallet.events.catch-up-interval} the relay looks up the latest sequence of each subscribed
+ * wallet, and subscribers behind it fill in from the outbox. Nothing is read while this instance has
+ * no subscribers. Once a minute events older than {@code wallet.events.retention} are deleted;
+ * resuming from before that skips them.
+ */
+@Service
+@Slf4j
+public class WalletEventRelay {
+
+    private static final int PAGE_SIZE = 500;
+    // Subscribed wallets are passed to the queries in chunks of this many ids
+    private static final int WALLETS_PER_QUERY = 500;
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final WalletEventRepository walletEventRepository;
+    private final WalletEventSubscriptions walletEventSubscriptions;
+    private final DatabaseShards databaseShards;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration pollInterval;
+    private final Duration settleWindow;
+    private final Duration catchUpInterval;
+    private final Duration retention;
+
+    // Creation time and id of the newest event read per shard, null until there are subscribers
+    private final Instant[] newestRead;
+    private final UUID[] newestReadId;
+    private ScheduledExecutorService relay;
+
+    public WalletEventRelay(WalletEventRepository walletEventRepository,
+                            WalletEventSubscriptions walletEventSubscriptions,
+                            DatabaseShards databaseShards,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${wallet.events.poll-interval:100ms}") Duration pollInterval,
+                            @Value("${wallet.events.settle-window:500ms}") Duration settleWindow,
+                            @Value("${wallet.events.catch-up-interval:5s}") Duration catchUpInterval,
+                            @Value("${wallet.events.retention:1h}") Duration retention) {
+        this.walletEventRepository = walletEventRepository;
+        this.walletEventSubscriptions = walletEventSubscriptions;
+        this.databaseShards = databaseShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pollInterval = pollInterval;
+        this.settleWindow = settleWindow;
+        this.catchUpInterval = catchUpInterval;
+        this.retention = retention;
+        this.newestRead = new Instant[databaseShards.count()];
+        this.newestReadId = new UUID[databaseShards.count()];
+    }
+
+    /**
+     * Publishes the events of subscribed wallets created since the last poll, plus those of the
+     * settle window.
+     *
+     * @return number of events read
+     */
+    public synchronized int poll() {
+        Map<Integer, Set<UUID>> subscribed = databaseShards.group(walletEventSubscriptions.subscribedWallets());
+        Instant settled = Instant.now().minus(settleWindow);
+        int read = 0;
+        for (int shard = 0; shard < newestRead.length; shard++) {
+            if (!subscribed.containsKey(shard)) {
+                // Subscribers catch up from the outbox themselves, so there is nothing to resume from
+                newestRead[shard] = null;
+                continue;
+            }
+
+            boolean settling = newestRead[shard] == null || newestRead[shard].isAfter(settled);
+            Instant from = settling ? settled : newestRead[shard];
+            UUID fromId = settling ? FIRST_ID : newestReadId[shard];
+            Instant newest = from;
+            UUID newestId = fromId;
+            for (List<UUID> walletIds : chunks(subscribed.get(shard))) {
+                Instant afterCreatedAt = from;
+                UUID afterId = fromId;
+                List<WalletEvent> events;
+                do {
+                    Instant pageCreatedAt = afterCreatedAt;
+                    UUID pageId = afterId;
+                    events = databaseShards.on(shard, () -> transactionTemplate.execute(status ->
+                            walletEventRepository.findForWalletsAfter(walletIds, pageCreatedAt, pageId, Limit.of(PAGE_SIZE))));
+                    events.forEach(walletEventSubscriptions::publish);
+                    read += events.size();
+                    if (!events.isEmpty()) {
+                        WalletEvent last = events.get(events.size() - 1);
+                        afterCreatedAt = last.getCreatedAt();
+                        afterId = last.getId();
+                    }
+                } while (events.size() == PAGE_SIZE);
+                if (afterCreatedAt.isAfter(newest)
+                        || afterCreatedAt.equals(newest) && UUIDBinaryConverter.BINARY_ORDER.compare(afterId, newestId) > 0) {
+                    newest = afterCreatedAt;
+                    newestId = afterId;
+                }
+            }
+            newestRead[shard] = newest;
+            newestReadId[shard] = newestId;
+        }
+        return read;
+    }
+
+    /**
+     * Hands the latest outbox sequence of every subscribed wallet to its subscribers, which fill in
+     * an event that became visible only after the polls had moved past it.
+     *
+     * @return number of wallets checked
+     */
+    public int catchUp() {
+        int checked = 0;
+        for (Map.Entry<Integer, Set<UUID>> shard : databaseShards.group(walletEventSubscriptions.subscribedWallets()).entrySet()) {
+            for (List<UUID> walletIds : chunks(shard.getValue())) {
+                List<LatestSequence> latest = databaseShards.on(shard.getKey(), () -> transactionTemplate.execute(status ->
+                        walletEventRepository.findLatestSequences(walletIds)));
+                latest.forEach(sequence -> walletEventSubscriptions.catchUp(sequence.walletId(), sequence.sequence()));
+                checked += walletIds.size();
+            }
+        }
+        return checked;
+    }
+
+    /**
+     * Deletes the events older than the retention from every shard.
+     *
+     * @return number of events deleted
+     */
+    public int prune() {
+        Instant before = Instant.now().minus(retention);
+        int deleted = 0;
+        for (int shard = 0; shard < databaseShards.count(); shard++) {
+            Integer count = databaseShards.on(shard, () -> transactionTemplate.execute(status ->
+                    walletEventRepository.deleteCreatedBefore(before)));
+            deleted += count != null ? count : 0;
+        }
+        if (deleted > 0) {
+            log.atDebug().addKeyValue("events", deleted).log("Wallet events pruned");
+        }
+        return deleted;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        relay = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("wallet-event-relay").factory());
+        relay.scheduleWithFixedDelay(() -> quietly(this::poll, "Wallet event relay failed"),
+                pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        relay.scheduleWithFixedDelay(() -> quietly(this::catchUp, "Wallet event catch-up failed"),
+                catchUpInterval.toMillis(), catchUpInterval.toMillis(), TimeUnit.MILLISECONDS);
+        relay.scheduleWithFixedDelay(() -> quietly(this::prune, "Wallet event pruning failed"), 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (relay != null) {
+            relay.shutdown();
+        }
+    }
+
+    private static List<List<UUID>> chunks(Set<UUID> walletIds) {
+        List<UUID> ids = List.copyOf(walletIds);
+        List<List<UUID>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += WALLETS_PER_QUERY) {
+            chunks.add(ids.subList(from, Math.min(from + WALLETS_PER_QUERY, ids.size())));
+        }
+        return chunks;
+    }
+
+    private void quietly(Runnable task, String failure) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.atWarn().setCause(e).log(failure);
+        }
+    }
+}
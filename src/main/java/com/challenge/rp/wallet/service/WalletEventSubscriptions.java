@@ -0,0 +1,311 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.dto.WalletEventResponse;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.WalletEvent;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletEventRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-Sent Event subscriptions to the balance changes of a wallet.
+ * <p>
+ * Every event carries the wallet's transaction sequence as its id, and a subscription resumes after
+ * the sequence given as {@code Last-Event-ID} by replaying the outbox; without one it starts at the
+ * wallet's latest transaction. Events published by the {@link WalletEventRelay} are queued per
+ * subscriber and written by a virtual thread only while there is something to send, so an idle
+ * subscription holds no thread. Each subscriber sees every sequence once and in order: repeats are
+ * dropped, and a jump, or a sequence the relay's catch-up check finds unsent, is filled from the
+ * outbox first. A subscriber more than {@code wallet.events.max-queued} events behind is closed,
+ * and resumes when it reconnects.
+ * Idle streams receive a comment every {@code wallet.events.heartbeat-interval} so dead connections
+ * are noticed.
+ * <p>
+ * Open subscriptions are published as {@code wallet.events.subscribers}, events written as
+ * {@code wallet.events.delivered} and subscribers closed for falling behind as
+ * {@code wallet.events.overflows}.
+ */
+@Service
+@Slf4j
+public class WalletEventSubscriptions {
+
+    public static final String EVENT_NAME = "balance";
+
+    private static final int REPLAY_BATCH = 500;
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final WalletEventRepository walletEventRepository;
+    private final DatabaseShards databaseShards;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxQueued;
+    private final Duration heartbeatInterval;
+    private final Counter delivered;
+    private final Counter overflows;
+
+    private final Map<UUID, Set<Subscriber>> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private ScheduledExecutorService heartbeat;
+
+    public WalletEventSubscriptions(WalletRepository walletRepository,
+                                    TransactionRepository transactionRepository,
+                                    WalletEventRepository walletEventRepository,
+                                    DatabaseShards databaseShards,
+                                    PlatformTransactionManager transactionManager,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${wallet.events.max-queued:1000}") int maxQueued,
+                                    @Value("${wallet.events.heartbeat-interval:15s}") Duration heartbeatInterval) {
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.walletEventRepository = walletEventRepository;
+        this.databaseShards = databaseShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxQueued = maxQueued;
+        this.heartbeatInterval = heartbeatInterval;
+        this.delivered = Counter.builder("wallet.events.delivered").register(meterRegistry);
+        this.overflows = Counter.builder("wallet.events.overflows").register(meterRegistry);
+        Gauge.builder("wallet.events.subscribers", subscribers, AtomicInteger::get).register(meterRegistry);
+    }
+
+    /**
+     * Opens a subscription to the wallet's balance changes after the given sequence, or after its
+     * latest transaction when {@code lastEventId} is {@code null}.
+     *
+     * @throws WalletNotFoundException if the wallet does not exist
+     */
+    public SseEmitter subscribe(UUID walletId, Long lastEventId) {
+        Long after = databaseShards.on(walletId, () -> transactionTemplate.execute(status -> {
+            if (!walletRepository.existsById(walletId)) {
+                log.atError().addKeyValue("walletId", walletId).log("Wallet not found");
+                throw new WalletNotFoundException("Wallet not found for ID: " + walletId);
+            }
+            return lastEventId != null ? lastEventId : transactionRepository.findLastSequence(walletId);
+        }));
+
+        // No timeout of its own: the stream stays open until the client leaves or falls behind
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscriber subscriber = new Subscriber(walletId, emitter, after);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        channels.computeIfAbsent(walletId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscribers.incrementAndGet();
+
+        // Registered before catching up, so an event committed meanwhile is either replayed or queued
+        schedule(subscriber);
+        log.atDebug().addKeyValue("walletId", walletId).addKeyValue("after", after).log("Wallet events subscribed");
+        return emitter;
+    }
+
+    /**
+     * Queues the event for the wallet's subscribers, if it has any.
+     */
+    public void publish(WalletEvent event) {
+        Set<Subscriber> channel = channels.get(event.getWalletId());
+        if (channel == null) {
+            return;
+        }
+
+        WalletEventResponse response = WalletEventResponse.of(event);
+        for (Subscriber subscriber : channel) {
+            if (subscriber.queued.incrementAndGet() > maxQueued) {
+                overflows.increment();
+                log.atWarn().addKeyValue("walletId", subscriber.walletId).log("Wallet event subscriber fell behind");
+                close(subscriber);
+                continue;
+            }
+            subscriber.queue.add(response);
+            schedule(subscriber);
+        }
+    }
+
+    /**
+     * Fills in the wallet's subscribers that have not sent the given sequence yet from the outbox.
+     */
+    public void catchUp(UUID walletId, long sequence) {
+        Set<Subscriber> channel = channels.get(walletId);
+        if (channel == null) {
+            return;
+        }
+
+        for (Subscriber subscriber : channel) {
+            if (sequence > subscriber.lastSequence) {
+                subscriber.outboxSequence.accumulateAndGet(sequence, Math::max);
+                schedule(subscriber);
+            }
+        }
+    }
+
+    /**
+     * The wallets with at least one subscriber on this instance.
+     */
+    public Set<UUID> subscribedWallets() {
+        return Set.copyOf(channels.keySet());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void startHeartbeat() {
+        heartbeat = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("wallet-event-heartbeat").factory());
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval.toMillis(), heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Before the web server stops: its graceful shutdown would otherwise wait on the open streams.
+    // Clients reconnect to another instance and resume
+    @EventListener(ContextClosedEvent.class)
+    void closeSubscriptions() {
+        channels.values().forEach(channel -> channel.forEach(this::close));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (heartbeat != null) {
+            heartbeat.shutdown();
+        }
+        senders.shutdown();
+    }
+
+    private void heartbeat() {
+        for (Set<Subscriber> channel : channels.values()) {
+            for (Subscriber subscriber : channel) {
+                subscriber.heartbeatDue = true;
+                schedule(subscriber);
+            }
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        do {
+            try {
+                if (subscriber.catchingUp) {
+                    // Starts the response, which the client otherwise only sees with the first event
+                    subscriber.emitter.send(SseEmitter.event().comment("subscribed"));
+                    replay(subscriber);
+                    subscriber.catchingUp = false;
+                }
+                WalletEventResponse event;
+                while (!subscriber.closed && (event = subscriber.queue.poll()) != null) {
+                    subscriber.queued.decrementAndGet();
+                    // A jump means an event the relay has not published yet, or will not: read it from the outbox
+                    if (event.sequence() > subscriber.lastSequence + 1) {
+                        replay(subscriber);
+                    }
+                    if (event.sequence() > subscriber.lastSequence) {
+                        send(subscriber, event);
+                    }
+                }
+                if (subscriber.outboxSequence.get() > subscriber.lastSequence && !subscriber.closed) {
+                    replay(subscriber);
+                }
+                if (subscriber.heartbeatDue && !subscriber.closed) {
+                    subscriber.heartbeatDue = false;
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+            } catch (IOException | RuntimeException e) {
+                // The client went away, or the outbox could not be read: it reconnects and resumes
+                log.atDebug().addKeyValue("walletId", subscriber.walletId).setCause(e).log("Wallet event subscriber closed");
+                close(subscriber);
+                return;
+            } finally {
+                subscriber.draining.set(false);
+            }
+        } while ((!subscriber.queue.isEmpty() || subscriber.heartbeatDue || subscriber.outboxSequence.get() > subscriber.lastSequence)
+                && !subscriber.closed
+                && subscriber.draining.compareAndSet(false, true));
+    }
+
+    private void replay(Subscriber subscriber) throws IOException {
+        List<WalletEventResponse> events;
+        do {
+            long after = subscriber.lastSequence;
+            events = databaseShards.on(subscriber.walletId, () -> transactionTemplate.execute(status ->
+                    walletEventRepository.findByWalletAfter(subscriber.walletId, after, Limit.of(REPLAY_BATCH))));
+            for (WalletEventResponse event : events) {
+                send(subscriber, event);
+            }
+        } while (events.size() == REPLAY_BATCH);
+    }
+
+    private void send(Subscriber subscriber, WalletEventResponse event) throws IOException {
+        subscriber.emitter.send(SseEmitter.event()
+                .id(Long.toString(event.sequence()))
+                .name(EVENT_NAME)
+                .data(event, MediaType.APPLICATION_JSON));
+        subscriber.lastSequence = event.sequence();
+        delivered.increment();
+    }
+
+    private void close(Subscriber subscriber) {
+        remove(subscriber);
+        subscriber.emitter.complete();
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscriber.closed = true;
+        channels.computeIfPresent(subscriber.walletId, (walletId, channel) -> {
+            if (channel.remove(subscriber)) {
+                subscribers.decrementAndGet();
+            }
+            return channel.isEmpty() ? null : channel;
+        });
+    }
+
+    private static final class Subscriber {
+        private final UUID walletId;
+        private final SseEmitter emitter;
+        private final Queue<WalletEventResponse> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile boolean heartbeatDue;
+        // Latest sequence the relay found in the outbox, which the drainer fills in up to
+        private final AtomicLong outboxSequence = new AtomicLong();
+        // Only written by the drainer holding the draining flag
+        private volatile long lastSequence;
+        // Only read and written by the drainer holding the draining flag
+        private boolean catchingUp = true;
+
+        private Subscriber(UUID walletId, SseEmitter emitter, long lastSequence) {
+            this.walletId = walletId;
+            this.emitter = emitter;
+            this.lastSequence = lastSequence;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.challenge.rp.wallet.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every public {@link WalletService} operation as {@code wallet.operation}, tagged with the
+ * operation and the exception it ended with ({@code none} on success), so insufficient balances,
+ * missing wallets and lock conflicts can be counted per operation.
+ * <p>
+ * The timer wraps the retries and the commit. Repository calls made on the same thread while an
+ * operation runs are added up and recorded as {@code wallet.operation.db} (time) and
+ * {@code wallet.operation.db.calls} (round trips), including those made on a {@link WalletShards} thread
+ * on its behalf. Retries after a conflict are counted as
+ * {@code wallet.operation.retries}, and conflicts that still failed after the last attempt as
+ * {@code wallet.operation.retries.exhausted}.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class WalletOperationMetrics {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+
+    public WalletOperationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * com.challenge.rp.wallet.service.WalletService.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (CURRENT.get() != null) {
+            return joinPoint.proceed();
+        }
+
+        Scope scope = new Scope(joinPoint.getSignature().getName());
+        CURRENT.set(scope);
+        long start = System.nanoTime();
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            CURRENT.remove();
+            Timer.builder("wallet.operation")
+                    .tag("operation", scope.operation)
+                    .tag("exception", exception)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            Timer.builder("wallet.operation.db")
+                    .tag("operation", scope.operation)
+                    .register(meterRegistry)
+                    .record(scope.dbNanos, TimeUnit.NANOSECONDS);
+            DistributionSummary.builder("wallet.operation.db.calls")
+                    .tag("operation", scope.operation)
+                    .register(meterRegistry)
+                    .record(scope.dbCalls);
+        }
+    }
+
+    /**
+     * Adds a repository call to the operation running on this thread, if any.
+     */
+    public void recordRepositoryCall(long nanos) {
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope.dbNanos += nanos;
+            scope.dbCalls++;
+        }
+    }
+
+    /**
+     * Wraps work the operation running on this thread hands to another thread, so the repository
+     * calls made there are still added to it.
+     */
+    WalletShards.Operation onCurrentOperation(WalletShards.Operation operation) {
+        Scope scope = CURRENT.get();
+        if (scope == null) {
+            return operation;
+        }
+        return () -> {
+            CURRENT.set(scope);
+            try {
+                return operation.run();
+            } finally {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * @param attempts number of failed attempts
+     * @param failure  the exception the operation finally failed with, or {@code null} if it succeeded
+     */
+    public void recordRetryOutcome(int attempts, Throwable failure) {
+        String operation = currentOperation();
+        int retries = failure == null ? attempts : attempts - 1;
+        if (retries > 0) {
+            Counter.builder("wallet.operation.retries")
+                    .tag("operation", operation)
+                    .register(meterRegistry)
+                    .increment(retries);
+        }
+        if (ConflictRetry.isConflict(failure)) {
+            Counter.builder("wallet.operation.retries.exhausted")
+                    .tag("operation", operation)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    private static String currentOperation() {
+        Scope scope = CURRENT.get();
+        return scope == null ? "unknown" : scope.operation;
+    }
+
+    private static final class Scope {
+        private final String operation;
+        private long dbNanos;
+        private int dbCalls;
+
+        private Scope(String operation) {
+            this.operation = operation;
+        }
+    }
+}
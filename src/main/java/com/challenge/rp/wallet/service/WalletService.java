@@ -1,23 +1,31 @@
 package com.challenge.rp.wallet.service;
 
+import com.challenge.rp.wallet.config.OperationLogSampler;
+import com.challenge.rp.wallet.config.ReplicaRoutingDataSource;
 import com.challenge.rp.wallet.dto.*;
 import com.challenge.rp.wallet.exception.InsufficientBalanceException;
 import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
 import com.challenge.rp.wallet.model.Transaction;
 import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
 import com.challenge.rp.wallet.model.Wallet;
 import com.challenge.rp.wallet.repository.TransactionRepository;
 import com.challenge.rp.wallet.repository.WalletRepository;
-import jakarta.persistence.OptimisticLockException;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -25,175 +33,301 @@ public class WalletService {
 
     private final WalletRepository walletRepository;
     private final TransactionRepository transactionRepository;
-
-    public WalletService(WalletRepository walletRepository, TransactionRepository transactionRepository) {
+    private final BalanceEngine balanceEngine;
+    private final BalanceSnapshotService balanceSnapshotService;
+    private final HotWalletLedger hotWalletLedger;
+    private final BalanceCache balanceCache;
+    private final ReplicaReads replicaReads;
+    private final IdempotencyService idempotencyService;
+    private final DepositJournal depositJournal;
+    private final DatabaseShards databaseShards;
+    private final WalletDirectory walletDirectory;
+    private final CrossShardTransfers crossShardTransfers;
+    private final WalletEventOutbox walletEventOutbox;
+    private final TransferConcurrencyMode transferConcurrencyMode;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTemplate;
+
+    public WalletService(WalletRepository walletRepository, TransactionRepository transactionRepository,
+                         BalanceEngine balanceEngine, BalanceSnapshotService balanceSnapshotService,
+                         HotWalletLedger hotWalletLedger, BalanceCache balanceCache, ReplicaReads replicaReads,
+                         IdempotencyService idempotencyService, DepositJournal depositJournal,
+                         DatabaseShards databaseShards, WalletDirectory walletDirectory, CrossShardTransfers crossShardTransfers,
+                         WalletEventOutbox walletEventOutbox, PlatformTransactionManager transactionManager,
+                         @Value("${wallet.transfer.concurrency-mode:optimistic}") TransferConcurrencyMode transferConcurrencyMode) {
         this.walletRepository = walletRepository;
         this.transactionRepository = transactionRepository;
+        this.balanceEngine = balanceEngine;
+        this.balanceSnapshotService = balanceSnapshotService;
+        this.hotWalletLedger = hotWalletLedger;
+        this.balanceCache = balanceCache;
+        this.replicaReads = replicaReads;
+        this.idempotencyService = idempotencyService;
+        this.depositJournal = depositJournal;
+        this.databaseShards = databaseShards;
+        this.walletDirectory = walletDirectory;
+        this.crossShardTransfers = crossShardTransfers;
+        this.walletEventOutbox = walletEventOutbox;
+        this.transferConcurrencyMode = transferConcurrencyMode;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
     }
 
     @Transactional
     public String createWallet(WalletCreateRequest requestBody) {
-        log.info("Creating wallet for user with ID: {}", requestBody.userId());
-
-        var walletId = walletRepository.save(requestBody.toModel()).getId().toString();
-        log.info("Wallet created with ID: {}", walletId);
+        Wallet wallet = requestBody.toModel();
+        if (walletDirectory.isEnabled()) {
+            // The directory places the wallet on a shard and keeps users unique across shards
+            if (!walletDirectory.create(List.of(wallet)).isEmpty()) {
+                throw new DataIntegrityViolationException("User " + requestBody.userId() + " already has a wallet");
+            }
+        } else {
+            wallet = walletRepository.save(wallet);
+        }
+        var walletId = wallet.getId().toString();
+        // Reads of the new wallet stay on the primary until replicas have caught up with it
+        balanceCache.evictAfterCommit(UUID.fromString(walletId));
+        log.atInfo().addKeyValue("walletId", walletId).addKeyValue("userId", requestBody.userId()).log("Wallet created");
 
         return walletId;
 
     }
 
     public WalletBalanceResponse getBalance(UUID walletId) {
-        log.info("Fetching balance for wallet with ID: {}", walletId);
-
-       return walletRepository.findById(walletId)
-               .map(w -> new WalletBalanceResponse(w.getBalance())).orElseThrow(() -> {
-                   log.error("Wallet not found for ID: {}", walletId);
+       Money balance = balanceCache.get(walletId, id -> databaseShards.on(id, () -> replicaReads.read(id, () -> walletRepository.findById(id)
+               .map(balanceEngine::balanceOf).orElseThrow(() -> {
+                   log.atError().addKeyValue("walletId", walletId).log("Wallet not found");
                    return new WalletNotFoundException("Wallet not found for ID " + walletId);
-               });
+               }))));
+
+       return new WalletBalanceResponse(balance.toBigDecimal());
     }
 
     public WalletBalanceResponse getHistoricalBalance(String id, HistoricalBalanceRequest request) {
         UUID walletId = UUID.fromString(id);
 
-        // Check if the wallet exists
-        if (!walletRepository.existsById(walletId)) {
-            log.error("Wallet not found for ID: {}", walletId);
-            throw new WalletNotFoundException("Wallet not found for ID: " + walletId);
-        }
+        Money historicalBalance = databaseShards.on(walletId, () -> replicaReads.read(walletId, () -> {
+            // Check if the wallet exists
+            if (!walletRepository.existsById(walletId)) {
+                log.atError().addKeyValue("walletId", walletId).log("Wallet not found");
+                throw new WalletNotFoundException("Wallet not found for ID: " + walletId);
+            }
 
-        log.info("Fetching historical balance for wallet {} from {} to {}", id, request.beginDateTime(), request.endDateTime());
+            // The balance at the end of the window: nearest snapshot plus the transactions recorded after it
+            return balanceSnapshotService.balanceAt(walletId, request.endDateTime().toInstant(ZoneOffset.UTC));
+        }));
 
-        // Retrieve transactions in the specified time range
-        List<Transaction> transactions = transactionRepository.findAllTransactionsBetween(walletId, request.beginDateTime(), request.endDateTime());
+        log.atDebug().addKeyValue("walletId", walletId).addKeyValue("endDateTime", request.endDateTime())
+                .addKeyValue("balance", historicalBalance).log("Historical balance computed");
 
-        // Calculate the historical balance
-        BigDecimal historicalBalance = BigDecimal.valueOf(
-                transactions.stream().mapToDouble(t -> t.getWallet().getBalance().doubleValue()).sum()
-        );
-
-        log.debug("Historical balance for wallet {} is {}", walletId, historicalBalance);
-
-        return new WalletBalanceResponse(historicalBalance);
+        return new WalletBalanceResponse(historicalBalance.toBigDecimal());
 
     }
 
     @Transactional
-    @Retryable(
-            value = { OptimisticLockException.class }, // Exception to retry on
-            maxAttempts = 3,                          // Number of retry attempts
-            backoff = @Backoff(delay = 1000)          // Delay between retries (in ms)
-    )
+    @RetryOnConflict(wallets = "#id")
     public void withdraw(String id, WithdrawRequest request, UUID referenceId) {
 
-        log.info("Processing withdrawal of {} from wallet {}", request.amount(), id);
-
         var walletId = UUID.fromString(id);
 
-        if (request.amount().compareTo(BigDecimal.ZERO) <= 0) {
+        Money amount = Money.of(request.amount());
+        if (amount.signum() <= 0) {
             throw new IllegalArgumentException("Withdrawal amount must be greater than zero");
         }
 
-        Wallet wallet = walletRepository.findById(walletId)
-                .orElseThrow(() -> new WalletNotFoundException("Wallet not found for ID: " + walletId));
-
-        // Validate sufficient balance
-        if (wallet.getBalance().compareTo(request.amount()) < 0) {
-            throw new InsufficientBalanceException("Insufficient balance for withdrawal");
+        if (idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, walletId, amount)) {
+            return;
         }
 
-        // Update the balance
-        wallet.setBalance(wallet.getBalance().subtract(request.amount()));
-        walletRepository.save(wallet);
-
-        log.info("Withdrawal of {} from wallet {} successful", request.amount(), walletId);
-
+        // Validate sufficient balance and update it
+        Wallet wallet = balanceEngine.debit(walletId, amount);
+        balanceCache.evictAfterCommit(walletId);
 
         // Record the transaction
-        Transaction transaction = new Transaction(wallet, TransactionType.WITHDRAW,  request.amount(), referenceId);
+        Transaction transaction = new Transaction(wallet, TransactionType.WITHDRAW, amount, referenceId, wallet.getTransactionCount());
         transactionRepository.save(transaction);
+        walletEventOutbox.append(List.of(transaction));
+        balanceSnapshotService.onTransactions(wallet, 1, transaction.getCreatedAt());
 
-        log.info("Transaction recorded with reference ID: {}", referenceId);
+        log.atInfo().addMarker(OperationLogSampler.OPERATION).addKeyValue("walletId", walletId)
+                .addKeyValue("amount", request.amount()).addKeyValue("referenceId", referenceId).log("Withdrawal applied");
+    }
 
+    // Transactions are started inside: a journaled deposit must not hold a connection while it waits for the sync
+    @RetryOnConflict(wallets = "#id")
+    public void deposit(String id, DepositRequest request, UUID referenceId) {
+        Money amount = Money.of(request.amount());
+        if (amount.signum() <= 0) {
+            throw new IllegalArgumentException("Deposit amount must be greater than zero");
+        }
 
+        var  walletId = UUID.fromString(id);
+
+        // Journaled deposits are acknowledged once durable in the local journal and applied later
+        if (depositJournal.isEnabled()) {
+            // Checked on the primary: a wallet created moments ago may not have reached the replicas.
+            // The reference id is only looked up here; the applier claims it when it applies the deposit
+            boolean applied = ReplicaRoutingDataSource.onPrimary(() -> readTemplate.execute(status -> {
+                if (idempotencyService.isApplied(referenceId, TransactionType.DEPOSIT, walletId, amount)) {
+                    return true;
+                }
+                if (!walletRepository.existsById(walletId)) {
+                    log.atError().addKeyValue("walletId", walletId).log("Wallet not found");
+                    throw new WalletNotFoundException("Wallet not found for ID: " + walletId);
+                }
+                return false;
+            }));
+            if (applied) {
+                return;
+            }
+            depositJournal.deposit(walletId, amount, referenceId);
+            log.atInfo().addMarker(OperationLogSampler.OPERATION).addKeyValue("walletId", walletId).addKeyValue("journaled", true)
+                    .addKeyValue("amount", request.amount()).addKeyValue("referenceId", referenceId).log("Deposit accepted");
+            return;
+        }
 
+        transactionTemplate.executeWithoutResult(status -> applyDeposit(walletId, amount, referenceId));
+        log.atInfo().addMarker(OperationLogSampler.OPERATION).addKeyValue("walletId", walletId)
+                .addKeyValue("amount", request.amount()).addKeyValue("referenceId", referenceId).log("Deposit applied");
     }
 
+    /**
+     * Applies a deposit the {@link DepositJournal} acknowledged. A deposit that was already applied
+     * is recognized by its reference id and skipped.
+     */
     @Transactional
-    @Retryable(
-            value = { OptimisticLockException.class }, // Exception to retry on
-            maxAttempts = 3,                          // Number of retry attempts
-            backoff = @Backoff(delay = 1000)          // Delay between retries (in ms)
-    )
-    public void deposit(String id, DepositRequest request, UUID referenceId) {
-        log.info("Processing deposit of {} to wallet {}", request.amount(), id);
+    @RetryOnConflict(wallets = "#walletId")
+    public void applyJournaledDeposit(UUID walletId, Money amount, UUID referenceId) {
+        applyDeposit(walletId, amount, referenceId);
+    }
 
-        if (request.amount().compareTo(BigDecimal.ZERO) <= 0) {
-            throw new IllegalArgumentException("Deposit amount must be greater than zero");
+    private void applyDeposit(UUID walletId, Money amount, UUID referenceId) {
+        // Hot wallets are credited in batches by a single drainer; this returns once the batch committed.
+        // The drainer checks reference ids for the whole batch, so no connection is held while waiting
+        if (hotWalletLedger.isHot(walletId)) {
+            hotWalletLedger.deposit(walletId, amount, referenceId);
+            log.atDebug().addKeyValue("walletId", walletId).addKeyValue("hot", true).log("Deposit batched");
+            return;
         }
 
-        var  walletId = UUID.fromString(id);
-        Wallet wallet = walletRepository.findById(walletId)
-                .orElseThrow(() -> new WalletNotFoundException("Wallet not found for ID: " + walletId));
+        if (idempotencyService.isReplay(referenceId, TransactionType.DEPOSIT, walletId, amount)) {
+            return;
+        }
 
         // Update the balance
-        wallet.setBalance(wallet.getBalance().add(request.amount()));
-        walletRepository.save(wallet);
+        Wallet wallet = balanceEngine.credit(walletId, amount);
+        balanceCache.evictAfterCommit(walletId);
 
         // Record the transaction
-        Transaction transaction = new Transaction(wallet, TransactionType.DEPOSIT,  request.amount(), referenceId);
+        Transaction transaction = new Transaction(wallet, TransactionType.DEPOSIT, amount, referenceId, wallet.getTransactionCount());
         transactionRepository.save(transaction);
-        log.info("Deposit of {} to wallet {} successful", request.amount(), walletId);
-
-
+        walletEventOutbox.append(List.of(transaction));
+        balanceSnapshotService.onTransactions(wallet, 1, transaction.getCreatedAt());
     }
 
     @Transactional
-    @Retryable(
-            value = { OptimisticLockException.class }, // Exception to retry on
-            maxAttempts = 3,                          // Number of retry attempts
-            backoff = @Backoff(delay = 1000)          // Delay between retries (in ms)
-    )
+    @RetryOnConflict(wallets = {"#request?.sourceWalletId()", "#request?.targetWalletId()"})
     public void transfer(TransferRequest request, UUID referenceId) {
-        log.info("Processing transfer of {} from wallet {} to wallet {}", request.amount(), request.sourceWalletId(), request.targetWalletId());
-
-        if (request.amount().compareTo(BigDecimal.ZERO) <= 0) {
-            log.warn("Invalid transfer amount: {}", request.amount());
+        Money amount = Money.of(request.amount());
+        if (amount.signum() <= 0) {
+            log.atWarn().addKeyValue("amount", request.amount()).log("Invalid transfer amount");
             throw new IllegalArgumentException("Transfer amount must be greater than zero");
         }
 
         if (request.sourceWalletId().equals(request.targetWalletId())) {
-            log.warn("Source and destination wallets are the same. Wallet ID: {}", request.sourceWalletId());
+            log.atWarn().addKeyValue("walletId", request.sourceWalletId()).log("Source and destination wallets are the same");
             throw new IllegalArgumentException("Source and destination wallets cannot be the same");
         }
 
-        Wallet sourceWallet = walletRepository.findById(request.sourceWalletId())
-                .orElseThrow(() -> {
-                    log.error("Source wallet not found. Wallet ID: {}", request.sourceWalletId());
-                    return new WalletNotFoundException("Source wallet not found for ID: " + request.sourceWalletId());
-                });
+        // Wallets on different database shards cannot be changed in one transaction
+        if (databaseShards.spans(request.sourceWalletId(), request.targetWalletId())) {
+            crossShardTransfers.transfer(request.sourceWalletId(), request.targetWalletId(), amount, referenceId);
+            log.atInfo().addMarker(OperationLogSampler.OPERATION).addKeyValue("sourceWalletId", request.sourceWalletId())
+                    .addKeyValue("targetWalletId", request.targetWalletId()).addKeyValue("amount", request.amount())
+                    .addKeyValue("referenceId", referenceId).addKeyValue("crossShard", true).log("Transfer applied");
+            return;
+        }
+
+        // A transfer is keyed by its withdraw leg, which records the target as its counterparty
+        if (idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, request.sourceWalletId(), request.targetWalletId(),
+                amount)) {
+            return;
+        }
 
-        if (sourceWallet.getBalance().compareTo(request.amount()) < 0) {
-            log.error("Insufficient balance in source wallet {}. Requested: {}, Available: {}", request.sourceWalletId(), request.amount(), sourceWallet.getBalance());
+        // A failure on either leg rolls back the whole transfer
+        TransferLegs legs = transferConcurrencyMode == TransferConcurrencyMode.PESSIMISTIC
+                ? applyLocked(request, amount)
+                : applyInIdOrder(request, amount);
+        Wallet sourceWallet = legs.source();
+        Wallet destinationWallet = legs.destination();
+        balanceCache.evictAfterCommit(request.sourceWalletId());
+        balanceCache.evictAfterCommit(request.targetWalletId());
+
+        Transaction debitTransaction = new Transaction(sourceWallet, TransactionType.WITHDRAW, amount, referenceId,
+                sourceWallet.getTransactionCount(), request.targetWalletId());
+        Transaction creditTransaction = new Transaction(destinationWallet, TransactionType.DEPOSIT, amount, referenceId,
+                destinationWallet.getTransactionCount(), request.sourceWalletId());
+        // Inserted in id order too: each insert takes the next sequence key of its wallet, and a concurrent
+        // transfer inserting the same key waits for this one
+        transactionRepository.saveAll(UUIDBinaryConverter.BINARY_ORDER.compare(request.sourceWalletId(), request.targetWalletId()) < 0
+                ? List.of(debitTransaction, creditTransaction)
+                : List.of(creditTransaction, debitTransaction));
+        walletEventOutbox.append(List.of(debitTransaction, creditTransaction));
+        balanceSnapshotService.onTransactions(sourceWallet, 1, debitTransaction.getCreatedAt());
+        balanceSnapshotService.onTransactions(destinationWallet, 1, creditTransaction.getCreatedAt());
+        log.atInfo().addMarker(OperationLogSampler.OPERATION).addKeyValue("sourceWalletId", request.sourceWalletId())
+                .addKeyValue("targetWalletId", request.targetWalletId()).addKeyValue("amount", request.amount())
+                .addKeyValue("referenceId", referenceId).log("Transfer applied");
+
+    }
+
+    // Locks both rows with one query ordered by id, then checks and updates them
+    private TransferLegs applyLocked(TransferRequest request, Money amount) {
+        Map<UUID, Wallet> wallets = walletRepository.findAllByIdForUpdate(List.of(request.sourceWalletId(), request.targetWalletId()))
+                .stream().collect(Collectors.toMap(Wallet::getId, Function.identity()));
+
+        Wallet sourceWallet = wallets.get(request.sourceWalletId());
+        if (sourceWallet == null) {
+            log.atError().addKeyValue("walletId", request.sourceWalletId()).log("Source wallet not found");
+            throw new WalletNotFoundException("Source wallet not found for ID: " + request.sourceWalletId());
+        }
+
+        Wallet destinationWallet = wallets.get(request.targetWalletId());
+        if (destinationWallet == null) {
+            log.atError().addKeyValue("walletId", request.targetWalletId()).log("Destination wallet not found");
+            throw new WalletNotFoundException("Destination wallet not found for ID: " + request.targetWalletId());
+        }
+
+        balanceEngine.catchUp(sourceWallet);
+        balanceEngine.catchUp(destinationWallet);
+        if (sourceWallet.getBalance().isLessThan(amount)) {
+            log.atError().addKeyValue("walletId", request.sourceWalletId()).addKeyValue("requested", request.amount())
+                    .addKeyValue("available", sourceWallet.getBalance()).log("Insufficient balance in source wallet");
             throw new InsufficientBalanceException("Insufficient balance in source wallet");
         }
 
-        Wallet destinationWallet = walletRepository.findById(request.targetWalletId())
-                .orElseThrow(() -> {
-                    log.error("Destination wallet not found. Wallet ID: {}", request.targetWalletId());
-                    return new WalletNotFoundException("Destination wallet not found for ID: " + request.targetWalletId());
-                });
+        sourceWallet.setBalance(sourceWallet.getBalance().minus(amount));
+        sourceWallet.setTransactionCount(sourceWallet.getTransactionCount() + 1);
+        destinationWallet.setBalance(destinationWallet.getBalance().plus(amount));
+        destinationWallet.setTransactionCount(destinationWallet.getTransactionCount() + 1);
+        walletRepository.saveAll(List.of(sourceWallet, destinationWallet));
 
-        sourceWallet.setBalance(sourceWallet.getBalance().subtract(request.amount()));
-        walletRepository.save(sourceWallet);
-        destinationWallet.setBalance(destinationWallet.getBalance().add(request.amount()));
-        walletRepository.save(destinationWallet);
-        log.info("Transfer of {} from wallet {} to wallet {} successful", request.amount(), request.sourceWalletId(), request.targetWalletId());
+        return new TransferLegs(sourceWallet, destinationWallet);
+    }
 
-        Transaction debitTransaction = new Transaction(sourceWallet, TransactionType.WITHDRAW, request.amount(), referenceId);
-        Transaction creditTransaction = new Transaction(destinationWallet, TransactionType.DEPOSIT, request.amount(), referenceId);
-        transactionRepository.save(debitTransaction);
-        transactionRepository.save(creditTransaction);
-        log.info("Transactions recorded with reference ID: {}", referenceId);
+    // Applies the legs in the order the database stores the ids (the same order findAllByIdForUpdate
+    // locks in), so opposite transfers between two wallets cannot each hold one row and wait on the other
+    private TransferLegs applyInIdOrder(TransferRequest request, Money amount) {
+        if (UUIDBinaryConverter.BINARY_ORDER.compare(request.sourceWalletId(), request.targetWalletId()) < 0) {
+            Wallet sourceWallet = balanceEngine.debit(request.sourceWalletId(), amount);
+            return new TransferLegs(sourceWallet, balanceEngine.credit(request.targetWalletId(), amount));
+        }
+
+        Wallet destinationWallet = balanceEngine.credit(request.targetWalletId(), amount);
+        return new TransferLegs(balanceEngine.debit(request.sourceWalletId(), amount), destinationWallet);
+    }
 
+    private record TransferLegs(Wallet source, Wallet destination) {
     }
 }
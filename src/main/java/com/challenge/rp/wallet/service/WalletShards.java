@@ -0,0 +1,279 @@
+package com.challenge.rp.wallet.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single-writer execution of wallet writes, enabled with {@code wallet.shards.enabled}.
+ * <p>
+ * Wallets are partitioned by id over {@code wallet.shards.count} shards (one per core by default),
+ * each with a single thread. A {@link RetryOnConflict} write is handed to the shard owning its
+ * wallets and the caller waits for it, so writes to a wallet on this instance never race each other.
+ * A shard applies the writes that queued up while it was busy as one database transaction of up to
+ * {@code wallet.shards.max-batch-size} operations: each still makes its own decisions and
+ * statements, but they share one commit. If an operation fails, the batch is rolled back, the
+ * operations before it are applied again as a batch and the failed one on its own, so only its
+ * caller sees the error.
+ * <p>
+ * A write spanning shards (a transfer) runs on the lowest of them once the others have paused for
+ * it; shards are always claimed in ascending order, so two transfers cannot wait on each other.
+ * Version checks and {@link ConflictRetry} still guard against writers on other instances.
+ * Batch sizes are recorded as {@code wallet.shards.batch.size} and queued writes per shard as
+ * {@code wallet.shards.pending}.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+@Slf4j
+public class WalletShards {
+
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final Shard[] shards;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final WalletOperationMetrics operationMetrics;
+    private final DistributionSummary batchSizes;
+    private final OperationWallets operationWallets = new OperationWallets();
+
+    public WalletShards(EntityManager entityManager,
+                        PlatformTransactionManager transactionManager,
+                        WalletOperationMetrics operationMetrics,
+                        MeterRegistry meterRegistry,
+                        @Value("${wallet.shards.enabled:false}") boolean enabled,
+                        @Value("${wallet.shards.count:0}") int count,
+                        @Value("${wallet.shards.max-batch-size:64}") int maxBatchSize,
+                        @Value("${wallet.hot-wallets:}") Set<UUID> hotWallets) {
+        // Hot wallet deposits are applied by their own drainer, which would stall the shard waiting for it
+        if (enabled && !hotWallets.isEmpty()) {
+            throw new IllegalStateException("wallet.hot-wallets cannot be used with wallet.shards.enabled");
+        }
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.operationMetrics = operationMetrics;
+        this.batchSizes = DistributionSummary.builder("wallet.shards.batch.size").register(meterRegistry);
+
+        int shardCount = !enabled ? 0 : count > 0 ? count : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+            Gauge.builder("wallet.shards.pending", shards[i].queue, Queue::size)
+                    .tag("shard", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+    }
+
+    @Around("@annotation(retryOnConflict)")
+    public Object route(ProceedingJoinPoint joinPoint, RetryOnConflict retryOnConflict) throws Throwable {
+        // A caller's transaction cannot move to the shard's thread
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+
+        List<UUID> walletIds = operationWallets.of(joinPoint, retryOnConflict);
+        if (walletIds.isEmpty()) {
+            return joinPoint.proceed();
+        }
+        return execute(walletIds, operationMetrics.onCurrentOperation(joinPoint::proceed));
+    }
+
+    /**
+     * Runs the operation on the shard owning the wallets, and waits for it to commit.
+     */
+    Object execute(Collection<UUID> walletIds, Operation operation) throws Throwable {
+        int[] owners = walletIds.stream().mapToInt(this::shardOf).distinct().sorted().toArray();
+        Task task = new Task(operation, owners, new CompletableFuture<>());
+        shards[owners[0]].submit(task);
+        try {
+            return task.result().join();
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+    int shardOf(UUID walletId) {
+        return Math.floorMod(walletId.hashCode(), shards.length);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (Shard shard : shards) {
+            shard.thread.shutdown();
+        }
+    }
+
+    /**
+     * A write handed to a shard.
+     */
+    @FunctionalInterface
+    interface Operation {
+        Object run() throws Throwable;
+    }
+
+    private sealed interface Work permits Task, Hold {
+    }
+
+    private record Task(Operation operation, int[] owners, CompletableFuture<Object> result) implements Work {
+
+        private void run() {
+            try {
+                result.complete(operation.run());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    // Keeps a shard paused while a write spanning it runs on a lower shard
+    private record Hold(CompletableFuture<Void> held, CompletableFuture<Void> released) implements Work {
+    }
+
+    private final class Shard {
+        private final Queue<Work> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final ExecutorService thread;
+
+        private Shard(int index) {
+            this.thread = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("wallet-shard-" + index).factory());
+        }
+
+        private void submit(Work work) {
+            queue.add(work);
+            if (draining.compareAndSet(false, true)) {
+                thread.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                List<Task> batch = new ArrayList<>();
+                Work work;
+                while ((work = queue.poll()) != null) {
+                    switch (work) {
+                        case Task task when task.owners().length == 1 -> {
+                            batch.add(task);
+                            if (batch.size() >= maxBatchSize) {
+                                applyBatch(batch);
+                                batch = new ArrayList<>();
+                            }
+                        }
+                        case Task task -> {
+                            applyBatch(batch);
+                            batch = new ArrayList<>();
+                            runSpanning(task);
+                        }
+                        case Hold hold -> {
+                            applyBatch(batch);
+                            batch = new ArrayList<>();
+                            hold.held().complete(null);
+                            hold.released().join();
+                        }
+                    }
+                }
+                applyBatch(batch);
+            } finally {
+                draining.set(false);
+            }
+
+            // Work may have been queued after the last poll but before the flag was cleared
+            if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+                thread.execute(this::drain);
+            }
+        }
+    }
+
+    // Pauses the other shards of the task in ascending order, then runs it in its own transaction
+    private void runSpanning(Task task) {
+        List<Hold> holds = new ArrayList<>(task.owners().length - 1);
+        try {
+            for (int i = 1; i < task.owners().length; i++) {
+                Hold hold = new Hold(new CompletableFuture<>(), new CompletableFuture<>());
+                holds.add(hold);
+                shards[task.owners()[i]].submit(hold);
+                hold.held().join();
+            }
+            task.run();
+        } finally {
+            holds.forEach(hold -> hold.released().complete(null));
+        }
+    }
+
+    private void applyBatch(List<Task> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            batch.get(0).run();
+            return;
+        }
+
+        List<Object> results = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (Task task : batch) {
+                    try {
+                        Object result = task.operation().run();
+                        // Each operation sees the database as it would on its own, not the entities an earlier one left behind
+                        entityManager.flush();
+                        entityManager.clear();
+                        results.add(result);
+                    } catch (Throwable e) {
+                        throw new BatchFailure(e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            int failed = results.size();
+            log.atDebug().addKeyValue("size", batch.size()).addKeyValue("failedAt", failed).log("Shard batch rolled back");
+            if (failed == batch.size()) {
+                // The commit itself failed, so it is unknown which operation caused it
+                batch.forEach(Task::run);
+                return;
+            }
+            applyBatch(batch.subList(0, failed));
+            batch.get(failed).run();
+            applyBatch(batch.subList(failed + 1, batch.size()));
+            return;
+        }
+
+        batchSizes.record(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(results.get(i));
+        }
+    }
+
+    private static final class BatchFailure extends RuntimeException {
+        private BatchFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+}
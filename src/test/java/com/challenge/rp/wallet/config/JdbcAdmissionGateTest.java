@@ -0,0 +1,61 @@
+package com.challenge.rp.wallet.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class JdbcAdmissionGateTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private JdbcAdmissionGate gate;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        gate = new JdbcAdmissionGate(1, Duration.ofMillis(50), meterRegistry);
+    }
+
+    @Test
+    void testAdmit_ReleasesPermitOnClose() throws SQLException {
+        Connection target = mock(Connection.class);
+
+        Connection first = gate.admit(() -> target);
+        assertEquals(1.0, meterRegistry.get("wallet.jdbc.gate.active").gauge().value());
+        assertSame(target, ((ConnectionProxy) first).getTargetConnection());
+
+        first.close();
+        first.close();
+        verify(target, times(2)).close();
+
+        // Closing twice gives back a single permit
+        gate.admit(() -> target);
+        assertThrows(SQLTransientConnectionException.class, () -> gate.admit(() -> target));
+    }
+
+    @Test
+    void testAdmit_TimesOutWhenNoPermitIsFree() throws SQLException {
+        gate.admit(() -> mock(Connection.class));
+
+        assertThrows(SQLTransientConnectionException.class, () -> gate.admit(() -> mock(Connection.class)));
+        assertEquals(1.0, meterRegistry.get("wallet.jdbc.gate.timeouts").counter().count());
+        assertEquals(2, meterRegistry.get("wallet.jdbc.gate.wait").timer().count());
+    }
+
+    @Test
+    void testAdmit_ReleasesPermitWhenBorrowFails() throws SQLException {
+        assertThrows(SQLException.class, () -> gate.admit(() -> {
+            throw new SQLException("Pool exhausted");
+        }));
+
+        assertNotNull(gate.admit(() -> mock(Connection.class)));
+    }
+}
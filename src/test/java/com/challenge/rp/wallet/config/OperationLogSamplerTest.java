@@ -0,0 +1,59 @@
+package com.challenge.rp.wallet.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationLogSamplerTest {
+
+    private final Logger logger = new LoggerContext().getLogger(OperationLogSamplerTest.class);
+    private OperationLogSampler sampler;
+
+    @BeforeEach
+    void setUp() {
+        sampler = new OperationLogSampler();
+        sampler.setSampleEvery(10);
+    }
+
+    @Test
+    void testDecide_SamplesOperationEvents() {
+        long kept = IntStream.range(0, 10_000)
+                .filter(i -> sampler.decide(event(Level.INFO, true)) == FilterReply.NEUTRAL)
+                .count();
+
+        assertTrue(kept > 700 && kept < 1300, "kept " + kept);
+    }
+
+    @Test
+    void testDecide_KeepsUnmarkedEventsAndWarnings() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(FilterReply.NEUTRAL, sampler.decide(event(Level.INFO, false)));
+            assertEquals(FilterReply.NEUTRAL, sampler.decide(event(Level.WARN, true)));
+        }
+    }
+
+    @Test
+    void testDecide_KeepsEverythingWhenSamplingIsOff() {
+        sampler.setSampleEvery(1);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(FilterReply.NEUTRAL, sampler.decide(event(Level.INFO, true)));
+        }
+    }
+
+    private LoggingEvent event(Level level, boolean operation) {
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, level, "Deposit applied", null, null);
+        if (operation) {
+            event.addMarker(OperationLogSampler.OPERATION);
+        }
+        return event;
+    }
+}
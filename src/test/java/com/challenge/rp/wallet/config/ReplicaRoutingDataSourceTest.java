@@ -0,0 +1,122 @@
+package com.challenge.rp.wallet.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.Driver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two in-memory databases stand in for the primary and a replica; replication is done by hand by
+ * copying the heartbeat row.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private JdbcTemplate primaryJdbc;
+    private JdbcTemplate replicaJdbc;
+    private ReplicaSet replicaSet;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+    private JdbcTemplate routed;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = new SimpleDriverDataSource(new Driver(), "jdbc:h2:mem:primary-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        DataSource replica = new SimpleDriverDataSource(new Driver(), "jdbc:h2:mem:replica-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        primaryJdbc = new JdbcTemplate(primary);
+        replicaJdbc = new JdbcTemplate(replica);
+
+        // Heartbeats are driven by the test
+        replicaSet = new ReplicaSet(primary, Map.of("replica-0", replica), Duration.ofHours(1), Duration.ofSeconds(1), meterRegistry);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(replicaSet, meterRegistry));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+        routed = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicaSet.close();
+        primaryJdbc.execute("SHUTDOWN");
+        replicaJdbc.execute("SHUTDOWN");
+    }
+
+    @Test
+    void testReadOnly_ReplicaWithoutHeartbeatIsNotUsed() {
+        replicaSet.beat();
+
+        assertEquals(Double.NaN, meterRegistry.get("wallet.replicas.lag").gauge().value());
+        assertEquals("primary", readOnly.execute(status -> connectedTo()));
+    }
+
+    @Test
+    void testReadOnly_GoesToReplicaWithinLag() {
+        replicaSet.beat();
+        replicate();
+        replicaSet.beat();
+
+        assertEquals("replica", readOnly.execute(status -> connectedTo()));
+        assertEquals("primary", readWrite.execute(status -> connectedTo()));
+        assertEquals(1.0, meterRegistry.get("wallet.replicas.connections").tag("target", "replica-0").counter().count());
+    }
+
+    @Test
+    void testReadOnly_StaleReplicaIsNotUsed() {
+        replicaSet.beat();
+        replicate();
+        replicaJdbc.update("UPDATE tb_replica_heartbeat SET beat_at = beat_at - 10000");
+        replicaSet.beat();
+
+        assertEquals(List.of(), replicaSet.usableReplicas());
+        assertEquals("primary", readOnly.execute(status -> connectedTo()));
+    }
+
+    @Test
+    void testOnPrimary_PinsReadOnlyTransactionToPrimary() {
+        replicaSet.beat();
+        replicate();
+        replicaSet.beat();
+
+        assertEquals("primary", ReplicaRoutingDataSource.onPrimary(() -> readOnly.execute(status -> connectedTo())));
+        assertEquals("replica", readOnly.execute(status -> connectedTo()));
+    }
+
+    @Test
+    void testBeat_CreatesTheHeartbeatTableOnlyOnce() {
+        replicaSet.beat();
+        primaryJdbc.execute("DROP TABLE tb_replica_heartbeat");
+        replicaSet.beat();
+
+        assertEquals(0, primaryJdbc.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'TB_REPLICA_HEARTBEAT'", Integer.class));
+    }
+
+    private String connectedTo() {
+        String url = routed.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getURL());
+        return url.substring("jdbc:h2:mem:".length(), url.indexOf('-'));
+    }
+
+    private void replicate() {
+        Long beatAt = primaryJdbc.queryForObject("SELECT beat_at FROM tb_replica_heartbeat WHERE id = 1", Long.class);
+        replicaJdbc.execute("CREATE TABLE IF NOT EXISTS tb_replica_heartbeat (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)");
+        replicaJdbc.update("MERGE INTO tb_replica_heartbeat (id, beat_at) KEY (id) VALUES (1, ?)", beatAt);
+    }
+}
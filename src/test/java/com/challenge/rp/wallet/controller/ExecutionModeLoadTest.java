@@ -0,0 +1,144 @@
+package com.challenge.rp.wallet.controller;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.service.WalletService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Opens {@value #CLIENTS} concurrent connections against the running service, once with requests
+ * on virtual threads and once on the platform-thread pool, and logs throughput, peak platform
+ * threads and peak heap for each. Each client deposits into one of a few hundred wallets and then
+ * reads its balance.
+ * <p>
+ * Too heavy for every build, so it only runs with {@code -Dwallet.load-test=true}, for example
+ * {@code mvn test -Dtest=ExecutionModeLoadTest -Dwallet.load-test=true}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "wallet.load-test", matches = "true")
+class ExecutionModeLoadTest {
+
+    private static final int CLIENTS = 5000;
+    private static final int WALLETS = 500;
+
+    @ParameterizedTest(name = "virtual threads: {0}")
+    @ValueSource(booleans = {true, false})
+    void testConcurrentClients(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = start(virtualThreads)) {
+            WalletService walletService = context.getBean(WalletService.class);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            List<String> walletIds = new ArrayList<>();
+            for (int i = 0; i < WALLETS; i++) {
+                walletIds.add(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+            }
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            threads.resetPeakThreadCount();
+            AtomicLong peakHeap = new AtomicLong();
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                    0, 20, TimeUnit.MILLISECONDS);
+
+            AtomicInteger failed = new AtomicInteger();
+            CountDownLatch go = new CountDownLatch(1);
+            long start;
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+                 HttpClient http = HttpClient.newBuilder()
+                         .executor(clients)
+                         .connectTimeout(Duration.ofSeconds(30))
+                         .build()) {
+                List<Future<?>> calls = new ArrayList<>(CLIENTS);
+                for (int i = 0; i < CLIENTS; i++) {
+                    String walletId = walletIds.get(i % WALLETS);
+                    calls.add(clients.submit(() -> {
+                        go.await();
+                        URI base = URI.create("http://localhost:" + port + "/wallets/");
+                        HttpResponse<Void> deposit = http.send(HttpRequest.newBuilder(base.resolve(walletId + "/deposit"))
+                                .header("Content-Type", "application/json")
+                                .header("Reference-id", UUID.randomUUID().toString())
+                                .POST(HttpRequest.BodyPublishers.ofString("{\"amount\": 1.00}"))
+                                .build(), HttpResponse.BodyHandlers.discarding());
+                        HttpResponse<Void> balance = http.send(HttpRequest.newBuilder(base.resolve(walletId + "/balance")).GET().build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (deposit.statusCode() != 200 || balance.statusCode() != 200) {
+                            failed.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+
+                start = System.nanoTime();
+                go.countDown();
+                for (Future<?> call : calls) {
+                    try {
+                        call.get();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            sampler.shutdownNow();
+
+            Timer gateWait = context.getBean(MeterRegistry.class).get("wallet.jdbc.gate.wait").timer();
+            log.info("virtualThreads={} clients={} requests={} failed={} elapsed={}s throughput={} req/s peakPlatformThreads={} peakHeap={}MB gateWaitMean={}ms gateWaitMax={}ms",
+                    virtualThreads, CLIENTS, CLIENTS * 2, failed.get(), String.format("%.2f", seconds),
+                    String.format("%.0f", CLIENTS * 2 / seconds), threads.getPeakThreadCount(), peakHeap.get() / (1024 * 1024),
+                    String.format("%.1f", gateWait.mean(TimeUnit.MILLISECONDS)), String.format("%.0f", gateWait.max(TimeUnit.MILLISECONDS)));
+
+            assertEquals(0, failed.get());
+        }
+    }
+
+    private static ConfigurableApplicationContext start(boolean virtualThreads) {
+        // Passed as command-line arguments so they take precedence over application.properties
+        return new SpringApplicationBuilder(WalletApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--server.tomcat.accept-count=" + CLIENTS,
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + UUID.randomUUID() + ";MODE=MySQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.org.springframework.web=WARN",
+                        "--logging.level.com.challenge.rp.wallet=WARN",
+                        "--logging.level.com.challenge.rp.wallet.controller.ExecutionModeLoadTest=INFO",
+                        "--wallet.balance-engine=atomic");
+    }
+}
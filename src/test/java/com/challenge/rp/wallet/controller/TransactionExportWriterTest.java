@@ -0,0 +1,52 @@
+package com.challenge.rp.wallet.controller;
+
+import com.challenge.rp.wallet.dto.TransactionExportFormat;
+import com.challenge.rp.wallet.dto.TransactionResponse;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionExportWriterTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private final TransactionResponse transaction = new TransactionResponse(UUID.randomUUID(), TransactionType.WITHDRAW,
+            new BigDecimal("12.50"), UUID.randomUUID(), Instant.parse("2025-01-01T10:15:30.123456Z"));
+
+    @Test
+    void testCsv() throws IOException {
+        String output = export(TransactionExportFormat.CSV);
+
+        assertEquals("id,transactionType,amount,referenceId,createdAt\n"
+                + transaction.id() + ",WITHDRAW,12.50," + transaction.referenceId() + ",2025-01-01T10:15:30.123456Z\n"
+                + transaction.id() + ",WITHDRAW,12.50," + transaction.referenceId() + ",2025-01-01T10:15:30.123456Z\n", output);
+    }
+
+    @Test
+    void testNdjson() throws IOException {
+        String[] lines = export(TransactionExportFormat.NDJSON).split("\n");
+
+        assertEquals(2, lines.length);
+        assertEquals(transaction, OBJECT_MAPPER.readValue(lines[1], TransactionResponse.class));
+    }
+
+    private String export(TransactionExportFormat format) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        TransactionExportWriter writer = new TransactionExportWriter(format, outputStream, OBJECT_MAPPER);
+        writer.start();
+        writer.accept(transaction);
+        writer.accept(transaction);
+        writer.finish();
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+}
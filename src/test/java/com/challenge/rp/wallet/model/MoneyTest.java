@@ -0,0 +1,56 @@
+package com.challenge.rp.wallet.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    private final MoneyConverter converter = new MoneyConverter();
+
+    @Test
+    void testOf_IgnoresTrailingZeros() {
+        assertEquals(Money.ofMinor(1000), Money.of(BigDecimal.TEN));
+        assertEquals(Money.ofMinor(1000), Money.of(new BigDecimal("10.00")));
+        assertEquals(Money.ofMinor(1050), Money.of(new BigDecimal("10.5")));
+    }
+
+    @Test
+    void testOf_RejectsFractionsOfACent() {
+        assertThrows(IllegalArgumentException.class, () -> Money.of(new BigDecimal("0.001")));
+    }
+
+    @Test
+    void testOf_RejectsAmountsThatDoNotFit() {
+        assertThrows(IllegalArgumentException.class, () -> Money.of(new BigDecimal("1e20")));
+    }
+
+    @Test
+    void testArithmetic() {
+        Money balance = Money.ofMinor(10000);
+
+        assertEquals(Money.ofMinor(7000), balance.minus(Money.ofMinor(3000)));
+        assertEquals(Money.ofMinor(13000), balance.plus(Money.ofMinor(3000)));
+        assertEquals(-1, balance.minus(Money.ofMinor(10001)).signum());
+        assertTrue(Money.ofMinor(1).isLessThan(Money.ofMinor(2)));
+    }
+
+    @Test
+    void testArithmetic_OverflowThrows() {
+        Money max = Money.ofMinor(Long.MAX_VALUE);
+
+        assertThrows(ArithmeticException.class, () -> max.plus(Money.ofMinor(1)));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinor(Long.MIN_VALUE).negate());
+    }
+
+    @Test
+    void testConverter_RoundTripsAtColumnScale() {
+        BigDecimal column = converter.convertToDatabaseColumn(Money.ofMinor(12345));
+
+        assertEquals(new BigDecimal("123.45"), column);
+        assertEquals(Money.ofMinor(12345), converter.convertToEntityAttribute(column));
+        assertEquals("123.45", Money.ofMinor(12345).toString());
+    }
+}
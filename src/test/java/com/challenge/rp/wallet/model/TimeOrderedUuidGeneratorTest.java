@@ -0,0 +1,57 @@
+package com.challenge.rp.wallet.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedUuidGeneratorTest {
+
+    private final UUIDBinaryConverter converter = new UUIDBinaryConverter();
+
+    @Test
+    void testNext_IsVersion7() {
+        UUID uuid = TimeOrderedUuidGenerator.next();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+    }
+
+    @Test
+    void testNext_EmbedsCurrentTime() {
+        long before = System.currentTimeMillis();
+        UUID uuid = TimeOrderedUuidGenerator.next();
+
+        long timestamp = uuid.getMostSignificantBits() >>> 16;
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis() + 1);
+    }
+
+    @Test
+    void testNext_BinaryFormIsMonotonic() {
+        byte[] previous = converter.convertToDatabaseColumn(TimeOrderedUuidGenerator.next());
+
+        for (int i = 0; i < 100_000; i++) {
+            byte[] current = converter.convertToDatabaseColumn(TimeOrderedUuidGenerator.next());
+            assertTrue(Arrays.compareUnsigned(previous, current) < 0);
+            previous = current;
+        }
+    }
+
+    @Test
+    void testLowestAt_SortsBetweenEarlierAndLaterIds() throws InterruptedException {
+        UUID earlier = TimeOrderedUuidGenerator.next();
+        Thread.sleep(2);
+        Instant boundary = Instant.now();
+        Thread.sleep(2);
+        UUID later = TimeOrderedUuidGenerator.next();
+
+        UUID lowest = TimeOrderedUuidGenerator.lowestAt(boundary);
+
+        assertTrue(UUIDBinaryConverter.BINARY_ORDER.compare(earlier, lowest) < 0);
+        assertTrue(UUIDBinaryConverter.BINARY_ORDER.compare(lowest, later) < 0);
+        assertEquals(7, lowest.version());
+    }
+}
@@ -0,0 +1,102 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the atomic engine against an embedded database, inside transactions that already loaded the
+ * wallet, as a pessimistic transfer does when it locks the row first.
+ */
+class AtomicBalanceEnginePersistenceTest {
+
+    private static ConfigurableApplicationContext context;
+    private static WalletService walletService;
+    private static BalanceEngine balanceEngine;
+    private static WalletRepository walletRepository;
+    private static TransactionRepository transactionRepository;
+    private static TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void start() {
+        context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:atomic-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--wallet.balance-engine=atomic",
+                        "--logging.level.com.challenge.rp.wallet=ERROR");
+        walletService = context.getBean(WalletService.class);
+        balanceEngine = context.getBean(BalanceEngine.class);
+        walletRepository = context.getBean(WalletRepository.class);
+        transactionRepository = context.getBean(TransactionRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    void testDebit_WalletLoadedBeforeIsReturnedUpdated() {
+        UUID walletId = createWallet(100);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            walletRepository.findAllByIdForUpdate(List.of(walletId));
+
+            Wallet wallet = balanceEngine.debit(walletId, Money.ofMinor(3000));
+
+            assertEquals(Money.ofMinor(7000), wallet.getBalance());
+            assertEquals(2, wallet.getTransactionCount());
+            // The next sequence of the wallet, not the one its deposit already holds
+            transactionRepository.saveAndFlush(new Transaction(wallet, TransactionType.WITHDRAW, Money.ofMinor(3000),
+                    UUID.randomUUID(), wallet.getTransactionCount()));
+        });
+
+        assertEquals(0, new BigDecimal("70.00").compareTo(walletService.getBalance(walletId).balance()));
+    }
+
+    @Test
+    void testCredit_WalletLoadedBeforeIsReturnedUpdated() {
+        UUID walletId = createWallet(100);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            walletRepository.findById(walletId).orElseThrow();
+
+            Wallet wallet = balanceEngine.credit(walletId, Money.ofMinor(500));
+
+            assertEquals(Money.ofMinor(10500), wallet.getBalance());
+            assertEquals(2, wallet.getTransactionCount());
+        });
+    }
+
+    private static UUID createWallet(int balance) {
+        UUID walletId = UUID.fromString(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.valueOf(balance)), UUID.randomUUID());
+        return walletId;
+    }
+}
@@ -0,0 +1,90 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.InsufficientBalanceException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AtomicBalanceEngineTest {
+
+    private static final Money TEN = Money.ofMinor(1000);
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @InjectMocks
+    private AtomicBalanceEngine balanceEngine;
+
+    @Test
+    void testDebit_Success() {
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet();
+        wallet.setBalance(Money.ofMinor(5000));
+
+        when(walletRepository.debit(walletId, TEN)).thenReturn(1);
+        when(entityManager.getReference(Wallet.class, walletId)).thenReturn(wallet);
+
+        assertSame(wallet, balanceEngine.debit(walletId, TEN));
+        verify(entityManager).refresh(wallet);
+        verify(walletRepository, never()).save(any(Wallet.class));
+    }
+
+    @Test
+    void testDebit_InsufficientBalance() {
+        UUID walletId = UUID.randomUUID();
+
+        when(walletRepository.debit(walletId, TEN)).thenReturn(0);
+        when(walletRepository.existsById(walletId)).thenReturn(true);
+
+        assertThrows(InsufficientBalanceException.class, () -> balanceEngine.debit(walletId, TEN));
+        verifyNoInteractions(entityManager);
+    }
+
+    @Test
+    void testDebit_WalletNotFound() {
+        UUID walletId = UUID.randomUUID();
+
+        when(walletRepository.debit(walletId, TEN)).thenReturn(0);
+        when(walletRepository.existsById(walletId)).thenReturn(false);
+
+        assertThrows(WalletNotFoundException.class, () -> balanceEngine.debit(walletId, TEN));
+    }
+
+    @Test
+    void testCredit_Success() {
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet();
+
+        when(walletRepository.credit(walletId, TEN)).thenReturn(1);
+        when(entityManager.getReference(Wallet.class, walletId)).thenReturn(wallet);
+
+        assertSame(wallet, balanceEngine.credit(walletId, TEN));
+        verify(entityManager).refresh(wallet);
+    }
+
+    @Test
+    void testCredit_WalletNotFound() {
+        UUID walletId = UUID.randomUUID();
+
+        when(walletRepository.credit(walletId, TEN)).thenReturn(0);
+
+        assertThrows(WalletNotFoundException.class, () -> balanceEngine.credit(walletId, TEN));
+        verifyNoInteractions(entityManager);
+    }
+}
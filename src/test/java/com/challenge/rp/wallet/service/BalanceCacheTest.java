@@ -0,0 +1,102 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceCacheTest {
+
+    private static final Money ONE = Money.ofMinor(100);
+    private static final Money TEN = Money.ofMinor(1000);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BalanceCache balanceCache;
+
+    @BeforeEach
+    void setUp() {
+        balanceCache = new BalanceCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testGet_LoadsOnce() {
+        UUID walletId = UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+
+        balanceCache.get(walletId, id -> Money.ofMinor(loads.incrementAndGet()));
+        Money balance = balanceCache.get(walletId, id -> Money.ofMinor(loads.incrementAndGet()));
+
+        assertEquals(Money.ofMinor(1), balance);
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "wallet.balance").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void testEvictAfterCommit_WithoutTransaction() {
+        UUID walletId = UUID.randomUUID();
+        balanceCache.get(walletId, id -> ONE);
+
+        balanceCache.evictAfterCommit(walletId);
+
+        assertEquals(TEN, balanceCache.get(walletId, id -> TEN));
+    }
+
+    @Test
+    void testEvictAfterCommit_WaitsForCommit() {
+        UUID walletId = UUID.randomUUID();
+        balanceCache.get(walletId, id -> ONE);
+        TransactionSynchronizationManager.initSynchronization();
+
+        balanceCache.evictAfterCommit(walletId);
+        assertEquals(ONE, balanceCache.get(walletId, id -> TEN));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(TEN, balanceCache.get(walletId, id -> TEN));
+    }
+
+    @Test
+    void testChangedRecently_OnlyAfterCommitAndWithinWindow() throws InterruptedException {
+        balanceCache = new BalanceCache(100, Duration.ofMinutes(1), Duration.ofMillis(50), meterRegistry);
+        UUID walletId = UUID.randomUUID();
+        TransactionSynchronizationManager.initSynchronization();
+
+        balanceCache.evictAfterCommit(walletId);
+        assertFalse(balanceCache.changedRecently(walletId));
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertTrue(balanceCache.changedRecently(walletId));
+
+        Thread.sleep(100);
+        assertFalse(balanceCache.changedRecently(walletId));
+    }
+
+    @Test
+    void testGet_LoadOverlappingEvictionIsNotKept() {
+        UUID walletId = UUID.randomUUID();
+
+        Money loaded = balanceCache.get(walletId, id -> {
+            balanceCache.evictAfterCommit(walletId);
+            return ONE;
+        });
+
+        assertEquals(ONE, loaded);
+        assertEquals(TEN, balanceCache.get(walletId, id -> TEN));
+    }
+}
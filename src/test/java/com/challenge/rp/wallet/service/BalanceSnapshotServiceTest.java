@@ -0,0 +1,120 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.BalanceSnapshot;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.BalanceSnapshotRepository;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceSnapshotServiceTest {
+
+    @Mock
+    private BalanceSnapshotRepository balanceSnapshotRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private TransactionArchive transactionArchive;
+
+    private BalanceSnapshotService balanceSnapshotService;
+
+    @BeforeEach
+    void setUp() {
+        balanceSnapshotService = new BalanceSnapshotService(balanceSnapshotRepository, transactionRepository, transactionArchive, 10);
+    }
+
+    @Test
+    void testOnTransactions_TakesSnapshotWhenIntervalReached() {
+        Wallet wallet = new Wallet(UUID.randomUUID());
+        wallet.setId(UUID.randomUUID());
+        wallet.setBalance(Money.ofMinor(12000));
+        wallet.setTransactionCount(10);
+        Instant at = Instant.now();
+
+        balanceSnapshotService.onTransactions(wallet, 1, at);
+
+        ArgumentCaptor<BalanceSnapshot> captor = ArgumentCaptor.forClass(BalanceSnapshot.class);
+        verify(balanceSnapshotRepository).save(captor.capture());
+        assertEquals(wallet.getId(), captor.getValue().getWalletId());
+        assertEquals(Money.ofMinor(12000), captor.getValue().getBalance());
+        assertEquals(10, captor.getValue().getTransactionCount());
+        assertEquals(at, captor.getValue().getTakenAt());
+    }
+
+    @Test
+    void testOnTransactions_TakesSnapshotWhenBatchCrossesInterval() {
+        Wallet wallet = new Wallet(UUID.randomUUID());
+        wallet.setTransactionCount(23);
+
+        balanceSnapshotService.onTransactions(wallet, 5, Instant.now());
+
+        verify(balanceSnapshotRepository).save(any(BalanceSnapshot.class));
+    }
+
+    @Test
+    void testOnTransactions_NoSnapshotBetweenIntervals() {
+        Wallet wallet = new Wallet(UUID.randomUUID());
+        wallet.setTransactionCount(7);
+
+        balanceSnapshotService.onTransactions(wallet, 1, Instant.now());
+
+        verifyNoInteractions(balanceSnapshotRepository);
+    }
+
+    @Test
+    void testBalanceAt_FromNearestSnapshot() {
+        UUID walletId = UUID.randomUUID();
+        Instant takenAt = Instant.parse("2024-12-26T10:00:00Z");
+        Instant at = Instant.parse("2024-12-26T12:00:00Z");
+        BalanceSnapshot snapshot = new BalanceSnapshot(walletId, Money.ofMinor(10000), 100, takenAt);
+
+        when(balanceSnapshotRepository.findFirstByWalletIdAndTakenAtLessThanEqualOrderByTakenAtDesc(walletId, at))
+                .thenReturn(Optional.of(snapshot));
+        when(transactionRepository.sumSignedAmountBetween(walletId, takenAt, at)).thenReturn(BigDecimal.valueOf(-30.00));
+
+        assertEquals(Money.ofMinor(7000), balanceSnapshotService.balanceAt(walletId, at));
+    }
+
+    @Test
+    void testBalanceAt_WithoutSnapshot() {
+        UUID walletId = UUID.randomUUID();
+        Instant at = Instant.now();
+
+        when(balanceSnapshotRepository.findFirstByWalletIdAndTakenAtLessThanEqualOrderByTakenAtDesc(walletId, at))
+                .thenReturn(Optional.empty());
+        when(transactionRepository.sumSignedAmountBetween(walletId, Instant.EPOCH, at)).thenReturn(BigDecimal.valueOf(25.00));
+
+        assertEquals(Money.ofMinor(2500), balanceSnapshotService.balanceAt(walletId, at));
+    }
+
+    @Test
+    void testBalanceAt_SumsArchivedTransactionsBeforeTheBoundary() {
+        UUID walletId = UUID.randomUUID();
+        Instant boundary = Instant.parse("2024-10-01T00:00:00Z");
+        Instant at = Instant.parse("2024-12-26T12:00:00Z");
+
+        when(balanceSnapshotRepository.findFirstByWalletIdAndTakenAtLessThanEqualOrderByTakenAtDesc(walletId, at))
+                .thenReturn(Optional.empty());
+        when(transactionArchive.boundary(walletId)).thenReturn(boundary);
+        when(transactionArchive.sumBetween(walletId, Instant.EPOCH, at)).thenReturn(Money.ofMinor(4000));
+        when(transactionRepository.sumSignedAmountBetween(walletId, boundary.minusNanos(1000), at)).thenReturn(BigDecimal.valueOf(-15.00));
+
+        assertEquals(Money.ofMinor(2500), balanceSnapshotService.balanceAt(walletId, at));
+    }
+}
@@ -0,0 +1,206 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.dto.*;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.model.WalletEvent;
+import com.challenge.rp.wallet.repository.RecordedOperation;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletEventRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchTransferServiceTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private BalanceSnapshotService balanceSnapshotService;
+
+    @Mock
+    private BalanceCache balanceCache;
+
+    @Mock
+    private TransactionArchive transactionArchive;
+
+    @Mock
+    private WalletEventRepository walletEventRepository;
+
+    private BatchTransferService batchTransferService;
+
+    private Wallet walletA;
+    private Wallet walletB;
+
+    @BeforeEach
+    void setUp() {
+        batchTransferService = new BatchTransferService(walletRepository, transactionRepository,
+                new VersionedBalanceEngine(walletRepository), balanceSnapshotService, balanceCache,
+                transactionArchive, new DatabaseShards(false, List.of(), false, false), new WalletEventOutbox(walletEventRepository), 10);
+        walletA = wallet(BigDecimal.valueOf(100.00));
+        walletB = wallet(BigDecimal.valueOf(20.00));
+    }
+
+    @Test
+    void testTransfer_AppliesInRequestOrder() {
+        when(walletRepository.findAllByIdForUpdate(anySet())).thenReturn(List.of(walletA, walletB));
+
+        // The second transfer is only covered because the first one credited wallet B
+        BatchTransferResponse response = batchTransferService.transfer(new BatchTransferRequest(BatchTransferMode.ALL_OR_NOTHING, List.of(
+                item(walletA, walletB, 50.00),
+                item(walletB, walletA, 60.00))));
+
+        assertTrue(response.results().stream().allMatch(r -> r.status() == BatchTransferStatus.APPLIED));
+        assertEquals(Money.ofMinor(11000), walletA.getBalance());
+        assertEquals(Money.ofMinor(1000), walletB.getBalance());
+        assertEquals(2, walletA.getTransactionCount());
+        verify(transactionRepository).saveAll(argThat((List<Transaction> transactions) -> transactions.size() == 4));
+        verify(balanceCache).evictAfterCommit(walletA.getId());
+        verify(balanceCache).evictAfterCommit(walletB.getId());
+    }
+
+    @Test
+    void testTransfer_RecordsBalanceAfterEachLeg() {
+        when(walletRepository.findAllByIdForUpdate(anySet())).thenReturn(List.of(walletA, walletB));
+
+        batchTransferService.transfer(new BatchTransferRequest(BatchTransferMode.ALL_OR_NOTHING, List.of(
+                item(walletA, walletB, 50.00),
+                item(walletB, walletA, 60.00))));
+
+        // Events follow the transactions: A debit, B credit, B debit, A credit
+        verify(walletEventRepository).saveAll(argThat((List<WalletEvent> events) ->
+                events.stream().map(WalletEvent::getBalance).toList().equals(List.of(
+                        Money.ofMinor(5000), Money.ofMinor(7000), Money.ofMinor(1000), Money.ofMinor(11000)))
+                        && events.stream().map(WalletEvent::getSequence).toList().equals(List.of(1L, 1L, 2L, 2L))));
+    }
+
+    @Test
+    void testTransfer_AllOrNothingAbortsOnRejection() {
+        when(walletRepository.findAllByIdForUpdate(anySet())).thenReturn(List.of(walletA, walletB));
+
+        BatchTransferResponse response = batchTransferService.transfer(new BatchTransferRequest(BatchTransferMode.ALL_OR_NOTHING, List.of(
+                item(walletA, walletB, 50.00),
+                item(walletB, walletA, 500.00))));
+
+        assertEquals(BatchTransferStatus.ABORTED, response.results().get(0).status());
+        assertEquals(BatchTransferStatus.REJECTED, response.results().get(1).status());
+        assertEquals(Money.ofMinor(10000), walletA.getBalance());
+        verify(transactionRepository, never()).saveAll(anyList());
+        verify(walletRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testTransfer_BestEffortSkipsRejected() {
+        when(walletRepository.findAllByIdForUpdate(anySet())).thenReturn(List.of(walletA, walletB));
+
+        BatchTransferResponse response = batchTransferService.transfer(new BatchTransferRequest(BatchTransferMode.BEST_EFFORT, List.of(
+                item(walletB, walletA, 500.00),
+                item(walletA, walletB, 50.00))));
+
+        assertEquals(BatchTransferStatus.REJECTED, response.results().get(0).status());
+        assertEquals(BatchTransferStatus.APPLIED, response.results().get(1).status());
+        assertEquals(Money.ofMinor(5000), walletA.getBalance());
+        verify(transactionRepository).saveAll(argThat((List<Transaction> transactions) -> transactions.size() == 2));
+    }
+
+    @Test
+    void testTransfer_RejectsUsedReferenceIds() {
+        BatchTransferItem recorded = item(walletA, walletB, 10.00);
+        BatchTransferItem fresh = item(walletA, walletB, 10.00);
+        BatchTransferItem repeated = new BatchTransferItem(fresh.referenceId(), walletA.getId(), walletB.getId(), BigDecimal.TEN);
+
+        when(walletRepository.findAllByIdForUpdate(anySet())).thenReturn(List.of(walletA, walletB));
+        when(transactionRepository.findExistingReferenceIds(anySet())).thenReturn(Set.of(recorded.referenceId()));
+
+        BatchTransferResponse response = batchTransferService.transfer(new BatchTransferRequest(BatchTransferMode.BEST_EFFORT,
+                List.of(recorded, fresh, repeated)));
+
+        assertEquals(List.of(BatchTransferStatus.REJECTED, BatchTransferStatus.APPLIED, BatchTransferStatus.REJECTED),
+                response.results().stream().map(BatchTransferResult::status).toList());
+    }
+
+    @Test
+    void testTransfer_RetriedBatchIsReplayed() {
+        BatchTransferItem first = item(walletA, walletB, 10.00);
+        BatchTransferItem second = item(walletB, walletA, 5.00);
+
+        when(walletRepository.findAllByIdForUpdate(anySet())).thenReturn(List.of(walletA, walletB));
+        when(transactionRepository.findExistingReferenceIds(anySet())).thenReturn(Set.of(first.referenceId(), second.referenceId()));
+        when(transactionRepository.findRecordedOperations(anySet(), eq(TransactionType.WITHDRAW))).thenReturn(List.of(
+                recorded(first), recorded(second)));
+
+        BatchTransferResponse response = batchTransferService.transfer(new BatchTransferRequest(BatchTransferMode.ALL_OR_NOTHING,
+                List.of(first, second)));
+
+        assertEquals(List.of(new BatchTransferResult(first.referenceId(), BatchTransferStatus.APPLIED, "Already applied"),
+                new BatchTransferResult(second.referenceId(), BatchTransferStatus.APPLIED, "Already applied")), response.results());
+        assertEquals(Money.ofMinor(10000), walletA.getBalance());
+        verify(transactionRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testTransfer_ReferenceIdRecordedForAnotherTransferAbortsBatch() {
+        BatchTransferItem replayed = item(walletA, walletB, 10.00);
+        BatchTransferItem changed = item(walletA, walletB, 10.00);
+        BatchTransferItem fresh = item(walletA, walletB, 10.00);
+
+        when(walletRepository.findAllByIdForUpdate(anySet())).thenReturn(List.of(walletA, walletB));
+        when(transactionRepository.findExistingReferenceIds(anySet())).thenReturn(Set.of(replayed.referenceId(), changed.referenceId()));
+        when(transactionRepository.findRecordedOperations(anySet(), eq(TransactionType.WITHDRAW))).thenReturn(List.of(
+                recorded(replayed),
+                new RecordedOperation(changed.referenceId(), walletA.getId(), walletB.getId(), Money.ofMinor(2000))));
+
+        BatchTransferResponse response = batchTransferService.transfer(new BatchTransferRequest(BatchTransferMode.ALL_OR_NOTHING,
+                List.of(replayed, changed, fresh)));
+
+        assertEquals(List.of(BatchTransferStatus.APPLIED, BatchTransferStatus.REJECTED, BatchTransferStatus.ABORTED),
+                response.results().stream().map(BatchTransferResult::status).toList());
+        assertEquals("Reference id already used", response.results().get(1).message());
+        verify(transactionRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testTransfer_RejectsOversizedBatch() {
+        List<BatchTransferItem> items = IntStream.range(0, 11)
+                .mapToObj(i -> item(walletA, walletB, 1.00))
+                .toList();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> batchTransferService.transfer(new BatchTransferRequest(BatchTransferMode.BEST_EFFORT, items)));
+        verifyNoInteractions(walletRepository);
+    }
+
+    private static Wallet wallet(BigDecimal balance) {
+        Wallet wallet = new Wallet(UUID.randomUUID());
+        wallet.setId(UUID.randomUUID());
+        wallet.setBalance(Money.of(balance));
+        return wallet;
+    }
+
+    private static RecordedOperation recorded(BatchTransferItem item) {
+        return new RecordedOperation(item.referenceId(), item.sourceWalletId(), item.targetWalletId(), Money.of(item.amount()));
+    }
+
+    private static BatchTransferItem item(Wallet source, Wallet target, double amount) {
+        return new BatchTransferItem(UUID.randomUUID(), source.getId(), target.getId(), BigDecimal.valueOf(amount));
+    }
+}
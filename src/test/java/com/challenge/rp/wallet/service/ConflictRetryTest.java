@@ -0,0 +1,173 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.TransferRequest;
+import com.challenge.rp.wallet.dto.WithdrawRequest;
+import com.challenge.rp.wallet.exception.InsufficientBalanceException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConflictRetryTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private BalanceSnapshotService balanceSnapshotService;
+
+    @Mock
+    private HotWalletLedger hotWalletLedger;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private DepositJournal depositJournal;
+
+    @Mock
+    private WalletDirectory walletDirectory;
+
+    @Mock
+    private CrossShardTransfers crossShardTransfers;
+
+    @Mock
+    private WalletEventOutbox walletEventOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final WalletConflictTracker conflictTracker = new WalletConflictTracker(2, Duration.ofMinutes(1), Duration.ofMinutes(1), meterRegistry);
+
+    private WalletService walletService;
+
+    @BeforeEach
+    void setUp() {
+        BalanceCache balanceCache = new BalanceCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5), new SimpleMeterRegistry());
+        WalletOperationMetrics metrics = new WalletOperationMetrics(meterRegistry);
+        MockEnvironment environment = new MockEnvironment().withProperty("wallet.retry.withdraw.max-attempts", "2");
+        ConflictRetry conflictRetry = new ConflictRetry(conflictTracker, metrics, environment, 4, Duration.ofMillis(1), Duration.ofMillis(5));
+
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new WalletService(walletRepository, transactionRepository,
+                new VersionedBalanceEngine(walletRepository), balanceSnapshotService, hotWalletLedger,
+                balanceCache, new ReplicaReads(transactionManager, balanceCache), idempotencyService, depositJournal,
+                new DatabaseShards(false, List.of(), false, false), walletDirectory, crossShardTransfers, walletEventOutbox, transactionManager,
+                TransferConcurrencyMode.OPTIMISTIC));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(metrics);
+        proxyFactory.addAspect(conflictRetry);
+        walletService = proxyFactory.getProxy();
+    }
+
+    @Test
+    void testRetry_AppliesOperationAfterConflict() {
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = wallet(walletId, 100);
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
+        when(walletRepository.save(wallet))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Wallet.class, walletId))
+                .thenReturn(wallet);
+
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.ONE), UUID.randomUUID());
+
+        verify(walletRepository, times(2)).save(wallet);
+        assertEquals(1, meterRegistry.get("wallet.operation.retries").tag("operation", "deposit").counter().count());
+        assertEquals(1, meterRegistry.get("wallet.conflicts").tag("operation", "deposit").counter().count());
+        assertEquals(1, meterRegistry.get("wallet.operation").tags("operation", "deposit", "exception", "none").timer().count());
+    }
+
+    @Test
+    void testRetry_GivesUpAfterOperationBudget() {
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = wallet(walletId, 10_000);
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
+        when(walletRepository.save(wallet)).thenThrow(new ObjectOptimisticLockingFailureException(Wallet.class, walletId));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> walletService.withdraw(walletId.toString(), new WithdrawRequest(BigDecimal.ONE), UUID.randomUUID()));
+
+        verify(walletRepository, times(2)).save(wallet);
+        assertEquals(1, meterRegistry.get("wallet.operation.retries.exhausted").tag("operation", "withdraw").counter().count());
+    }
+
+    @Test
+    void testRetry_DoesNotRetryOtherFailures() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet(walletId, 0)));
+
+        assertThrows(InsufficientBalanceException.class,
+                () -> walletService.withdraw(walletId.toString(), new WithdrawRequest(BigDecimal.ONE), UUID.randomUUID()));
+
+        verify(walletRepository, times(1)).findById(walletId);
+        assertTrue(meterRegistry.find("wallet.conflicts").counters().isEmpty());
+    }
+
+    @Test
+    void testRetry_ReportsConflictingWalletOfTransfer() {
+        UUID sourceWalletId = UUID.randomUUID();
+        UUID targetWalletId = UUID.randomUUID();
+        Wallet source = wallet(sourceWalletId, 10_000);
+        Wallet target = wallet(targetWalletId, 0);
+        when(walletRepository.findById(sourceWalletId)).thenReturn(Optional.of(source));
+        when(walletRepository.findById(targetWalletId)).thenReturn(Optional.of(target));
+        when(walletRepository.save(any(Wallet.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(walletRepository.save(target))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Wallet.class, targetWalletId))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Wallet.class, targetWalletId))
+                .thenReturn(target);
+
+        walletService.transfer(new TransferRequest(sourceWalletId, targetWalletId, BigDecimal.ONE), UUID.randomUUID());
+
+        assertTrue(conflictTracker.isSerialized(targetWalletId));
+        assertFalse(conflictTracker.isSerialized(sourceWalletId));
+        assertEquals(2, meterRegistry.get("wallet.conflicts.hot").tag("wallet", targetWalletId.toString()).functionCounter().count());
+    }
+
+    @Test
+    void testIsConflict_SequenceCollisionOnly() {
+        ConstraintViolationException sequenceTaken = new ConstraintViolationException("Duplicate entry",
+                new SQLException("Duplicate entry"), Transaction.SEQUENCE_CONSTRAINT.toUpperCase() + "_INDEX_1");
+        ConstraintViolationException referenceTaken = new ConstraintViolationException("Duplicate entry",
+                new SQLException("Duplicate entry"), "uk_transaction_reference");
+
+        assertTrue(ConflictRetry.isConflict(new DataIntegrityViolationException("insert failed", sequenceTaken)));
+        assertFalse(ConflictRetry.isConflict(new DataIntegrityViolationException("insert failed", referenceTaken)));
+    }
+
+    private static Wallet wallet(UUID walletId, long minorUnits) {
+        Wallet wallet = new Wallet();
+        wallet.setId(walletId);
+        wallet.setBalance(Money.ofMinor(minorUnits));
+        return wallet;
+    }
+}
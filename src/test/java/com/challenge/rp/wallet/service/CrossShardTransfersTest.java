@@ -0,0 +1,153 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.TransferRequest;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.dto.WithdrawRequest;
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.repository.PendingCreditRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the service over two embedded databases. A transfer interrupted after its debit is
+ * reproduced by committing only its debit leg, which leaves the credit pending.
+ */
+class CrossShardTransfersTest {
+
+    private static final long RECOVERY_INTERVAL_MILLIS = 200;
+
+    private static ConfigurableApplicationContext context;
+    private static WalletService walletService;
+    private static DatabaseShards databaseShards;
+    private static PendingCreditRepository pendingCreditRepository;
+    private static CrossShardTransfers crossShardTransfers;
+    private static TransactionTemplate transactionTemplate;
+
+    private UUID source;
+    private UUID target;
+
+    @BeforeAll
+    static void start() {
+        context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:shard0-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--logging.level.com.challenge.rp.wallet=WARN",
+                        "--wallet.database-shards.enabled=true",
+                        "--wallet.database-shards.urls=jdbc:h2:mem:shard1-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--wallet.database-shards.recovery-interval=" + RECOVERY_INTERVAL_MILLIS + "ms");
+        walletService = context.getBean(WalletService.class);
+        databaseShards = context.getBean(DatabaseShards.class);
+        pendingCreditRepository = context.getBean(PendingCreditRepository.class);
+        crossShardTransfers = context.getBean(CrossShardTransfers.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        // New wallets go to the emptier shard, so one of the next two is on the other shard
+        source = createWallet();
+        target = createWallet();
+        if (!databaseShards.spans(source, target)) {
+            target = createWallet();
+        }
+        assertTrue(databaseShards.spans(source, target));
+        walletService.deposit(source.toString(), new DepositRequest(BigDecimal.valueOf(100)), UUID.randomUUID());
+    }
+
+    @Test
+    void testTransfer_MovesMoneyBetweenShards() {
+        UUID referenceId = UUID.randomUUID();
+
+        walletService.transfer(new TransferRequest(source, target, BigDecimal.valueOf(30)), referenceId);
+
+        assertEquals(0, new BigDecimal("70.00").compareTo(walletService.getBalance(source).balance()));
+        assertEquals(0, new BigDecimal("30.00").compareTo(walletService.getBalance(target).balance()));
+        assertFalse(pendingCredit(referenceId));
+    }
+
+    @Test
+    void testTransfer_RepeatedRequestCompletesPendingCredit() {
+        UUID referenceId = debitOnly(BigDecimal.valueOf(25));
+
+        walletService.transfer(new TransferRequest(source, target, BigDecimal.valueOf(25)), referenceId);
+        walletService.transfer(new TransferRequest(source, target, BigDecimal.valueOf(25)), referenceId);
+
+        assertEquals(0, new BigDecimal("75.00").compareTo(walletService.getBalance(source).balance()));
+        assertEquals(0, new BigDecimal("25.00").compareTo(walletService.getBalance(target).balance()));
+        assertFalse(pendingCredit(referenceId));
+    }
+
+    @Test
+    void testRecover_CompletesCreditLeftAfterDebit() throws InterruptedException {
+        UUID referenceId = debitOnly(BigDecimal.valueOf(40));
+        assertEquals(0, BigDecimal.ZERO.compareTo(walletService.getBalance(target).balance()));
+
+        // The background task may get to it first; either way the credit is applied once
+        Thread.sleep(RECOVERY_INTERVAL_MILLIS * 2);
+        crossShardTransfers.recover();
+
+        assertEquals(0, new BigDecimal("60.00").compareTo(walletService.getBalance(source).balance()));
+        assertEquals(0, new BigDecimal("40.00").compareTo(walletService.getBalance(target).balance()));
+        assertFalse(pendingCredit(referenceId));
+    }
+
+    @Test
+    void testTransfer_ReferenceIdOfAWithdrawalIsRejected() {
+        UUID referenceId = UUID.randomUUID();
+        walletService.withdraw(source.toString(), new WithdrawRequest(BigDecimal.ONE), referenceId);
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> walletService.transfer(new TransferRequest(source, target, BigDecimal.ONE), referenceId));
+        assertEquals(0, new BigDecimal("99.00").compareTo(walletService.getBalance(source).balance()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(walletService.getBalance(target).balance()));
+    }
+
+    @Test
+    void testCreateWallet_UserOwnsOneWalletAcrossShards() {
+        UUID userId = UUID.randomUUID();
+        walletService.createWallet(new WalletCreateRequest(userId));
+
+        assertThrows(DataIntegrityViolationException.class, () -> walletService.createWallet(new WalletCreateRequest(userId)));
+    }
+
+    private UUID createWallet() {
+        return UUID.fromString(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+    }
+
+    private UUID debitOnly(BigDecimal amount) {
+        UUID referenceId = UUID.randomUUID();
+        databaseShards.on(source, () -> transactionTemplate.execute(status ->
+                crossShardTransfers.debit(source, target, Money.of(amount), referenceId)));
+        return referenceId;
+    }
+
+    private boolean pendingCredit(UUID referenceId) {
+        return databaseShards.on(source, () -> pendingCreditRepository.existsById(referenceId));
+    }
+}
@@ -0,0 +1,101 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Deposits into random wallets from many threads over one, two and four embedded databases and
+ * logs the throughput of each. Every database gets a pool of {@value #CONNECTIONS_PER_DATABASE}
+ * connections, so with one database the pool is the bottleneck and each database added brings its
+ * own connections and locks; the log shows how throughput grows with the number of databases.
+ * <p>
+ * Too heavy for every build, so it only runs with {@code -Dwallet.load-test=true}, for example
+ * {@code mvn test -Dtest=DatabaseShardsLoadTest -Dwallet.load-test=true}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "wallet.load-test", matches = "true")
+class DatabaseShardsLoadTest {
+
+    private static final int WALLETS = 400;
+    private static final int THREADS = 32;
+    private static final int DEPOSITS_PER_THREAD = 500;
+    private static final int CONNECTIONS_PER_DATABASE = 2;
+
+    @ParameterizedTest(name = "databases: {0}")
+    @ValueSource(ints = {1, 2, 4})
+    void testDepositThroughput(int databases) throws Exception {
+        try (ConfigurableApplicationContext context = start(databases)) {
+            WalletService walletService = context.getBean(WalletService.class);
+
+            List<String> walletIds = new ArrayList<>();
+            for (int i = 0; i < WALLETS; i++) {
+                walletIds.add(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+            }
+
+            AtomicInteger succeeded = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            long start = System.nanoTime();
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < DEPOSITS_PER_THREAD; i++) {
+                        walletService.deposit(walletIds.get(random.nextInt(WALLETS)), new DepositRequest(BigDecimal.ONE), UUID.randomUUID());
+                        succeeded.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            executor.shutdown();
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            log.info("databases={} threads={} deposits={} elapsed={}s throughput={} deposits/s", databases, THREADS,
+                    succeeded.get(), String.format("%.2f", seconds), String.format("%.1f", succeeded.get() / seconds));
+            assertEquals(THREADS * DEPOSITS_PER_THREAD, succeeded.get());
+        }
+    }
+
+    private static ConfigurableApplicationContext start(int databases) {
+        List<String> shardUrls = new ArrayList<>();
+        for (int i = 1; i < databases; i++) {
+            shardUrls.add("jdbc:h2:mem:load-shard-" + UUID.randomUUID() + ";MODE=MySQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1");
+        }
+        // Passed as command-line arguments so they take precedence over application.properties
+        return new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + UUID.randomUUID() + ";MODE=MySQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=" + CONNECTIONS_PER_DATABASE,
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--logging.level.com.challenge.rp.wallet=WARN",
+                        "--logging.level.com.challenge.rp.wallet.service.DatabaseShardsLoadTest=INFO",
+                        "--wallet.jdbc-gate.permits=" + CONNECTIONS_PER_DATABASE * databases,
+                        "--wallet.database-shards.enabled=" + (databases > 1),
+                        "--wallet.database-shards.urls=" + String.join(",", shardUrls));
+    }
+}
@@ -0,0 +1,66 @@
+package com.challenge.rp.wallet.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseShardsTest {
+
+    private final DatabaseShards shards = new DatabaseShards(true, List.of("jdbc:h2:mem:one", "jdbc:h2:mem:two"), false, false);
+
+    @Test
+    void testShardOf_IsStableAndWithinRange() {
+        UUID walletId = UUID.randomUUID();
+        DatabaseShards otherInstance = new DatabaseShards(true, List.of("jdbc:h2:mem:one", "jdbc:h2:mem:two"), false, false);
+
+        assertEquals(3, shards.count());
+        assertEquals(shards.shardOf(walletId), otherInstance.shardOf(walletId));
+        for (int i = 0; i < 1000; i++) {
+            int shard = shards.shardOf(UUID.randomUUID());
+            assertTrue(shard >= 0 && shard < 3);
+        }
+    }
+
+    @Test
+    void testNewWalletId_HashesToTheShard() {
+        for (int shard = 0; shard < shards.count(); shard++) {
+            assertEquals(shard, shards.shardOf(shards.newWalletId(shard)));
+        }
+    }
+
+    @Test
+    void testGroup_ByShardInShardOrder() {
+        UUID first = shards.newWalletId(2);
+        UUID second = shards.newWalletId(0);
+        UUID third = shards.newWalletId(2);
+
+        Map<Integer, Set<UUID>> groups = shards.group(List.of(first, second, third));
+
+        assertEquals(List.of(0, 2), List.copyOf(groups.keySet()));
+        assertEquals(Set.of(first, third), groups.get(2));
+        assertTrue(shards.spans(first, second));
+        assertFalse(shards.spans(first, third));
+    }
+
+    @Test
+    void testDisabled_SingleShard() {
+        DatabaseShards disabled = new DatabaseShards(false, List.of("jdbc:h2:mem:one"), false, false);
+
+        assertFalse(disabled.isEnabled());
+        assertEquals(0, disabled.shardOf(UUID.randomUUID()));
+        assertFalse(disabled.spans(UUID.randomUUID(), UUID.randomUUID()));
+    }
+
+    @Test
+    void testConstructor_RejectsWriteShardsAndReplicas() {
+        List<String> urls = List.of("jdbc:h2:mem:one");
+
+        assertThrows(IllegalStateException.class, () -> new DatabaseShards(true, urls, true, false));
+        assertThrows(IllegalStateException.class, () -> new DatabaseShards(true, urls, false, true));
+    }
+}
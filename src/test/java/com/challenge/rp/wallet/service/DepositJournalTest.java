@@ -0,0 +1,153 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.model.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DepositJournalTest {
+
+    @TempDir
+    private Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<DepositJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (DepositJournal journal : journals) {
+            journal.shutdown();
+        }
+    }
+
+    @Test
+    void testRecord_RoundTripsAndStopsAtCorruption() {
+        ByteBuffer buffer = ByteBuffer.allocate(DepositJournal.RECORD_SIZE * 3);
+        JournalEntry first = new JournalEntry(1, UUID.randomUUID(), Money.ofMinor(1050), UUID.randomUUID());
+        JournalEntry second = new JournalEntry(2, UUID.randomUUID(), Money.ofMinor(7), UUID.randomUUID());
+        DepositJournal.writeRecord(buffer, first);
+        DepositJournal.writeRecord(buffer, second);
+        // A torn write: the last byte of the second record never reached the disk
+        buffer.put(DepositJournal.RECORD_SIZE * 2 - 1, (byte) (buffer.get(DepositJournal.RECORD_SIZE * 2 - 1) ^ 1));
+        buffer.flip();
+
+        assertEquals(first, DepositJournal.readRecord(buffer));
+        assertNull(DepositJournal.readRecord(buffer));
+    }
+
+    @Test
+    void testDeposit_RecoveredAfterRestartUntilApplied() throws Exception {
+        DepositJournal journal = journal();
+        UUID walletId = UUID.randomUUID();
+        UUID firstReference = UUID.randomUUID();
+        UUID secondReference = UUID.randomUUID();
+        journal.deposit(walletId, Money.ofMinor(100), firstReference);
+        journal.deposit(walletId, Money.ofMinor(200), secondReference);
+        journal.markApplied(journal.take(1));
+        journal.shutdown();
+
+        DepositJournal restarted = journal();
+        List<JournalEntry> recovered = restarted.take(10);
+        assertEquals(List.of(new JournalEntry(2, walletId, Money.ofMinor(200), secondReference)), recovered);
+
+        // New deposits continue the sequence after the recovered ones
+        restarted.deposit(walletId, Money.ofMinor(300), UUID.randomUUID());
+        assertEquals(3, restarted.take(10).get(0).sequence());
+    }
+
+    @Test
+    void testDeposit_ConcurrentDepositsShareASync() {
+        DepositJournal journal = journal();
+        List<CompletableFuture<Void>> deposits = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            deposits.add(CompletableFuture.runAsync(() -> journal.deposit(UUID.randomUUID(), Money.ofMinor(1), UUID.randomUUID())));
+        }
+        deposits.forEach(CompletableFuture::join);
+
+        assertEquals(200, meterRegistry.get("wallet.journal.unapplied").gauge().value());
+        assertEquals(200, meterRegistry.get("wallet.journal.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    void testDeposit_RetryOfUnappliedDepositIsNotAppendedAgain() throws Exception {
+        DepositJournal journal = journal();
+        UUID walletId = UUID.randomUUID();
+        UUID referenceId = UUID.randomUUID();
+        journal.deposit(walletId, Money.ofMinor(100), referenceId);
+        journal.deposit(walletId, Money.ofMinor(100), referenceId);
+
+        assertThrows(IdempotencyConflictException.class, () -> journal.deposit(walletId, Money.ofMinor(999), referenceId));
+        assertEquals(1, journal.take(10).size());
+    }
+
+    @Test
+    void testDeposit_FailedAppendIsNotRecoveredAndDoesNotHideLaterDeposits() throws Exception {
+        DepositJournal journal = journal();
+        UUID walletId = UUID.randomUUID();
+        UUID referenceId = UUID.randomUUID();
+        // Fails halfway through writing its record
+        assertThrows(NullPointerException.class, () -> journal.deposit(null, Money.ofMinor(100), UUID.randomUUID()));
+        journal.deposit(walletId, Money.ofMinor(200), referenceId);
+        journal.shutdown();
+
+        DepositJournal restarted = journal();
+        assertEquals(List.of(new JournalEntry(1, walletId, Money.ofMinor(200), referenceId)),
+                assertTimeoutPreemptively(Duration.ofSeconds(5), () -> restarted.take(10)));
+    }
+
+    @Test
+    void testMarkApplied_DeletesAppliedSegments() throws Exception {
+        // Two records per segment
+        DepositJournal journal = journal(DataSize.ofBytes(DepositJournal.RECORD_SIZE * 2));
+        for (int i = 0; i < 5; i++) {
+            journal.deposit(UUID.randomUUID(), Money.ofMinor(1), UUID.randomUUID());
+        }
+        assertEquals(3, segmentCount());
+
+        journal.markApplied(journal.take(4));
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    void testConstructor_RejectsShards() {
+        assertThrows(IllegalStateException.class, () -> new DepositJournal(true, directory, DataSize.ofMegabytes(1), 100,
+                true, new SimpleMeterRegistry()));
+    }
+
+    private DepositJournal journal() {
+        return journal(DataSize.ofKilobytes(64));
+    }
+
+    private DepositJournal journal(DataSize segmentSize) {
+        try {
+            DepositJournal journal = new DepositJournal(true, directory, segmentSize, 100, false, meterRegistry);
+            journals.add(journal);
+            return journal;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+}
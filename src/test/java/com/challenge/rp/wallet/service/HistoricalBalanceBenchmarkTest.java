@@ -0,0 +1,143 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Generates a transaction table spread over {@value #WALLETS} wallets and times the historic-balance
+ * path as it grows: the balance at the end of a wallet's history and at a random point in it, with
+ * no snapshots to start from, so every transaction up to that point is aggregated.
+ * <p>
+ * Only runs with {@code -Dwallet.load-test=true}. Row counts default to one million and can be set
+ * with {@code -Dwallet.load-test.rows=1000000,10000000,100000000}; the database is an H2 file under
+ * {@code target/}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "wallet.load-test", matches = "true")
+class HistoricalBalanceBenchmarkTest {
+
+    private static final int WALLETS = 1000;
+    private static final int INSERT_BATCH = 10_000;
+    private static final int SAMPLES = 50;
+    private static final UUIDBinaryConverter UUID_CONVERTER = new UUIDBinaryConverter();
+
+    @Test
+    void testHistoricalBalanceLatency() {
+        long[] sizes = Arrays.stream(System.getProperty("wallet.load-test.rows", "1000000").split(","))
+                .mapToLong(size -> Long.parseLong(size.trim()))
+                .sorted()
+                .toArray();
+
+        try (ConfigurableApplicationContext context = start()) {
+            WalletService walletService = context.getBean(WalletService.class);
+            BalanceSnapshotService balanceSnapshotService = context.getBean(BalanceSnapshotService.class);
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+            List<UUID> walletIds = new ArrayList<>(WALLETS);
+            for (int i = 0; i < WALLETS; i++) {
+                walletIds.add(UUID.fromString(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID()))));
+            }
+
+            Instant start = Instant.parse("2024-01-01T00:00:00Z");
+            long rows = 0;
+            for (long size : sizes) {
+                long generateStart = System.nanoTime();
+                rows = generate(jdbcTemplate, walletIds, start, rows, size);
+                log.info("rows={} generated in {}s", rows, String.format("%.1f", (System.nanoTime() - generateStart) / 1e9));
+
+                // One row per millisecond, so the last row was written at start + rows ms
+                Instant end = start.plusMillis(rows);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < SAMPLES; i++) {
+                    balanceSnapshotService.balanceAt(walletIds.get(random.nextInt(WALLETS)), end);
+                }
+
+                long[] fullHistory = new long[SAMPLES];
+                long[] pointsInTime = new long[SAMPLES];
+                for (int i = 0; i < SAMPLES; i++) {
+                    UUID walletId = walletIds.get(random.nextInt(WALLETS));
+
+                    long t0 = System.nanoTime();
+                    Money balance = balanceSnapshotService.balanceAt(walletId, end);
+                    fullHistory[i] = System.nanoTime() - t0;
+                    assertNotNull(balance);
+
+                    Instant pointInTime = start.plusMillis(random.nextLong(1, rows + 1));
+                    long t1 = System.nanoTime();
+                    balanceSnapshotService.balanceAt(walletId, pointInTime);
+                    pointsInTime[i] = System.nanoTime() - t1;
+                }
+
+                log.info("rows={} rowsPerWallet={} fullHistory p50={}ms p99={}ms pointInTime p50={}ms p99={}ms",
+                        rows, rows / WALLETS, millis(fullHistory, 0.50), millis(fullHistory, 0.99),
+                        millis(pointsInTime, 0.50), millis(pointsInTime, 0.99));
+            }
+        }
+    }
+
+    // Appends rows until the table holds target rows, each wallet getting deposits and some withdrawals
+    private static long generate(JdbcTemplate jdbcTemplate, List<UUID> walletIds, Instant start, long from, long target) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long row = from;
+        while (row < target) {
+            int batchSize = (int) Math.min(INSERT_BATCH, target - row);
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++, row++) {
+                boolean deposit = random.nextInt(4) != 0;
+                batch.add(new Object[]{
+                        UUID_CONVERTER.convertToDatabaseColumn(UUID.randomUUID()),
+                        UUID_CONVERTER.convertToDatabaseColumn(walletIds.get(random.nextInt(walletIds.size()))),
+                        (deposit ? TransactionType.DEPOSIT : TransactionType.WITHDRAW).name(),
+                        BigDecimal.valueOf(deposit ? random.nextInt(100, 1000) : random.nextInt(1, 100), 2),
+                        UUID_CONVERTER.convertToDatabaseColumn(UUID.randomUUID()),
+                        Timestamp.from(start.plusMillis(row + 1))
+                });
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO tb_transaction (id, wallet_id, transaction_type, amount, reference_id, created_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?)", batch);
+        }
+        return row;
+    }
+
+    private static String millis(long[] nanos, double percentile) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("%.2f", sorted[(int) Math.min(sorted.length - 1, Math.floor(percentile * sorted.length))] / 1e6);
+    }
+
+    private static ConfigurableApplicationContext start() {
+        // Passed as command-line arguments so they take precedence over application.properties
+        return new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:file:./target/history-benchmark-" + UUID.randomUUID() + ";MODE=MySQL",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.com.challenge.rp.wallet=WARN",
+                        "--logging.level.com.challenge.rp.wallet.service.HistoricalBalanceBenchmarkTest=INFO");
+    }
+}
@@ -0,0 +1,160 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.RecordedOperation;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HotWalletLedgerTest {
+
+    private static final UUID HOT_WALLET_ID = UUID.randomUUID();
+    private static final Money ONE = Money.ofMinor(100);
+    private static final Money TEN = Money.ofMinor(1000);
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private BalanceSnapshotService balanceSnapshotService;
+
+    @Mock
+    private BalanceCache balanceCache;
+
+    @Mock
+    private TransactionArchive transactionArchive;
+
+    @Mock
+    private WalletEventOutbox walletEventOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private HotWalletLedger hotWalletLedger;
+
+    @BeforeEach
+    void setUp() {
+        hotWalletLedger = new HotWalletLedger(walletRepository, transactionRepository, balanceSnapshotService, balanceCache,
+                transactionArchive, new DatabaseShards(false, List.of(), false, false), walletEventOutbox, transactionManager, Set.of(HOT_WALLET_ID), 100);
+    }
+
+    @Test
+    void testIsHot() {
+        assertTrue(hotWalletLedger.isHot(HOT_WALLET_ID));
+        assertFalse(hotWalletLedger.isHot(UUID.randomUUID()));
+    }
+
+    @Test
+    void testDeposit_Success() {
+        when(walletRepository.credit(HOT_WALLET_ID, TEN, 1)).thenReturn(1);
+        when(walletRepository.findById(HOT_WALLET_ID)).thenReturn(Optional.of(new Wallet()));
+
+        hotWalletLedger.deposit(HOT_WALLET_ID, TEN, UUID.randomUUID());
+
+        verify(transactionRepository).saveAll(argThat((List<Transaction> transactions) -> transactions.size() == 1));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void testDeposit_ReplayIsAcknowledgedWithoutApplying() {
+        UUID referenceId = UUID.randomUUID();
+        when(transactionRepository.findRecordedOperations(List.of(referenceId), TransactionType.DEPOSIT))
+                .thenReturn(List.of(new RecordedOperation(referenceId, HOT_WALLET_ID, null, TEN)));
+
+        hotWalletLedger.deposit(HOT_WALLET_ID, TEN, referenceId);
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> hotWalletLedger.deposit(HOT_WALLET_ID, ONE, referenceId));
+        verify(walletRepository, never()).credit(any(), any(), anyInt());
+        verify(transactionRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testDeposit_CombinesQueuedDeposits() throws Exception {
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+
+        when(walletRepository.credit(eq(HOT_WALLET_ID), any(Money.class), anyInt())).thenAnswer(invocation -> {
+            firstBatchStarted.countDown();
+            releaseFirstBatch.await();
+            return 1;
+        });
+        when(walletRepository.findById(HOT_WALLET_ID)).thenReturn(Optional.of(new Wallet()));
+
+        CompletableFuture<Void> first = hotWalletLedger.submit(HOT_WALLET_ID, ONE, UUID.randomUUID());
+        firstBatchStarted.await();
+
+        // Queued while the first batch is in flight, so they are applied together
+        List<CompletableFuture<Void>> queued = List.of(
+                hotWalletLedger.submit(HOT_WALLET_ID, ONE, UUID.randomUUID()),
+                hotWalletLedger.submit(HOT_WALLET_ID, ONE, UUID.randomUUID()),
+                hotWalletLedger.submit(HOT_WALLET_ID, ONE, UUID.randomUUID()));
+        releaseFirstBatch.countDown();
+
+        first.join();
+        queued.forEach(CompletableFuture::join);
+
+        verify(walletRepository).credit(HOT_WALLET_ID, ONE, 1);
+        verify(walletRepository).credit(HOT_WALLET_ID, Money.ofMinor(300), 3);
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void testDeposit_FailedBatchIsAppliedIndividually() throws Exception {
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        UUID duplicateReferenceId = UUID.randomUUID();
+
+        when(walletRepository.credit(eq(HOT_WALLET_ID), any(Money.class), anyInt())).thenAnswer(invocation -> {
+            firstBatchStarted.countDown();
+            releaseFirstBatch.await();
+            return 1;
+        });
+        when(walletRepository.findById(HOT_WALLET_ID)).thenReturn(Optional.of(new Wallet()));
+        when(transactionRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Transaction> transactions = invocation.getArgument(0);
+            if (transactions.stream().anyMatch(t -> duplicateReferenceId.equals(t.getReferenceId()))) {
+                throw new DataIntegrityViolationException("Duplicate reference id");
+            }
+            return transactions;
+        });
+
+        CompletableFuture<Void> first = hotWalletLedger.submit(HOT_WALLET_ID, ONE, UUID.randomUUID());
+        firstBatchStarted.await();
+        CompletableFuture<Void> valid = hotWalletLedger.submit(HOT_WALLET_ID, ONE, UUID.randomUUID());
+        CompletableFuture<Void> duplicate = hotWalletLedger.submit(HOT_WALLET_ID, ONE, duplicateReferenceId);
+        releaseFirstBatch.countDown();
+
+        first.join();
+        valid.join();
+        CompletionException failure = assertThrows(CompletionException.class, duplicate::join);
+        assertInstanceOf(DataIntegrityViolationException.class, failure.getCause());
+        verify(transactionManager, times(2)).rollback(any());
+    }
+}
@@ -0,0 +1,160 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.repository.RecordedOperation;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    private static final UUID WALLET_ID = UUID.randomUUID();
+    private static final Money TEN = Money.of(BigDecimal.TEN);
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private TransactionArchive transactionArchive;
+
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(transactionRepository, transactionArchive, 100, Duration.ofHours(1), new SimpleMeterRegistry());
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void testIsReplay_NewKey() {
+        UUID referenceId = UUID.randomUUID();
+
+        assertFalse(idempotencyService.isReplay(referenceId, TransactionType.DEPOSIT, WALLET_ID, TEN));
+        verify(transactionRepository).findRecordedOperation(referenceId, TransactionType.DEPOSIT);
+    }
+
+    @Test
+    void testIsReplay_RecordedInDatabase() {
+        UUID referenceId = UUID.randomUUID();
+        when(transactionRepository.findRecordedOperation(referenceId, TransactionType.DEPOSIT))
+                .thenReturn(Optional.of(new RecordedOperation(referenceId, WALLET_ID, null, Money.of(new BigDecimal("10.00")))));
+
+        assertTrue(idempotencyService.isReplay(referenceId, TransactionType.DEPOSIT, WALLET_ID, TEN));
+    }
+
+    @Test
+    void testIsReplay_DifferentAmountConflicts() {
+        UUID referenceId = UUID.randomUUID();
+        when(transactionRepository.findRecordedOperation(referenceId, TransactionType.DEPOSIT))
+                .thenReturn(Optional.of(new RecordedOperation(referenceId, WALLET_ID, null, Money.of(BigDecimal.ONE))));
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> idempotencyService.isReplay(referenceId, TransactionType.DEPOSIT, WALLET_ID, TEN));
+    }
+
+    @Test
+    void testIsReplay_TransferToAnotherWalletConflicts() {
+        UUID referenceId = UUID.randomUUID();
+        when(transactionRepository.findRecordedOperation(referenceId, TransactionType.WITHDRAW))
+                .thenReturn(Optional.of(new RecordedOperation(referenceId, WALLET_ID, UUID.randomUUID(), TEN)));
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, WALLET_ID, UUID.randomUUID(), TEN));
+    }
+
+    @Test
+    void testIsReplay_TransferAndWithdrawalDoNotReplayEachOther() {
+        UUID withdrawal = UUID.randomUUID();
+        UUID transfer = UUID.randomUUID();
+
+        idempotencyService.isReplay(withdrawal, TransactionType.WITHDRAW, WALLET_ID, TEN);
+        idempotencyService.isReplay(transfer, TransactionType.WITHDRAW, WALLET_ID, UUID.randomUUID(), TEN);
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> idempotencyService.isReplay(withdrawal, TransactionType.WITHDRAW, WALLET_ID, UUID.randomUUID(), TEN));
+        assertThrows(IdempotencyConflictException.class,
+                () -> idempotencyService.isReplay(transfer, TransactionType.WITHDRAW, WALLET_ID, TEN));
+    }
+
+    @Test
+    void testIsReplay_InFlightKeyConflicts() {
+        UUID referenceId = UUID.randomUUID();
+
+        idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, WALLET_ID, TEN);
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, WALLET_ID, TEN));
+    }
+
+    @Test
+    void testIsReplay_CommittedKeyIsServedFromMemory() {
+        UUID referenceId = UUID.randomUUID();
+
+        idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, WALLET_ID, TEN);
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertTrue(idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, WALLET_ID, TEN));
+        verify(transactionRepository, times(1)).findRecordedOperation(referenceId, TransactionType.WITHDRAW);
+    }
+
+    @Test
+    void testIsReplay_RolledBackKeyCanBeRetried() {
+        UUID referenceId = UUID.randomUUID();
+
+        idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, WALLET_ID, TEN);
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertFalse(idempotencyService.isReplay(referenceId, TransactionType.WITHDRAW, WALLET_ID, TEN));
+    }
+
+    @Test
+    void testIsApplied_DoesNotClaimTheKey() {
+        UUID referenceId = UUID.randomUUID();
+
+        assertFalse(idempotencyService.isApplied(referenceId, TransactionType.DEPOSIT, WALLET_ID, TEN));
+
+        assertTrue(TransactionSynchronizationManager.getSynchronizations().isEmpty());
+        assertFalse(idempotencyService.isReplay(referenceId, TransactionType.DEPOSIT, WALLET_ID, TEN));
+    }
+
+    @Test
+    void testIsApplied_RecordedInDatabase() {
+        UUID referenceId = UUID.randomUUID();
+        when(transactionRepository.findRecordedOperation(referenceId, TransactionType.DEPOSIT))
+                .thenReturn(Optional.of(new RecordedOperation(referenceId, WALLET_ID, null, TEN)));
+
+        assertTrue(idempotencyService.isApplied(referenceId, TransactionType.DEPOSIT, WALLET_ID, TEN));
+        assertThrows(IdempotencyConflictException.class,
+                () -> idempotencyService.isApplied(referenceId, TransactionType.DEPOSIT, UUID.randomUUID(), TEN));
+    }
+
+    private static void completeTransaction(int status) {
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+    }
+}
@@ -0,0 +1,90 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JournalApplierTest {
+
+    @Mock
+    private DepositJournal journal;
+
+    @Mock
+    private WalletService walletService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final JournalEntry entry = new JournalEntry(1, UUID.randomUUID(), Money.ofMinor(100), UUID.randomUUID());
+
+    private JournalApplier applier;
+
+    @BeforeEach
+    void setUp() {
+        applier = new JournalApplier(journal, walletService, meterRegistry, 16, Duration.ofMillis(1));
+    }
+
+    @Test
+    void testApply_RetriesUntilTheDatabaseIsBack() throws Exception {
+        doThrow(new DataAccessResourceFailureException("down"))
+                .doThrow(new DataAccessResourceFailureException("down"))
+                .doNothing()
+                .when(walletService).applyJournaledDeposit(entry.walletId(), entry.amount(), entry.referenceId());
+
+        applier.apply(entry);
+
+        verify(walletService, times(3)).applyJournaledDeposit(entry.walletId(), entry.amount(), entry.referenceId());
+        assertEquals(0, meterRegistry.get("wallet.journal.rejected").counter().count());
+    }
+
+    @Test
+    void testApply_RejectsDepositToMissingWallet() throws Exception {
+        doThrow(new WalletNotFoundException("Wallet not found"))
+                .when(walletService).applyJournaledDeposit(entry.walletId(), entry.amount(), entry.referenceId());
+
+        applier.apply(entry);
+
+        verify(walletService, times(1)).applyJournaledDeposit(entry.walletId(), entry.amount(), entry.referenceId());
+        assertEquals(1, meterRegistry.get("wallet.journal.rejected").counter().count());
+    }
+
+    @Test
+    void testApply_RejectsPersistentReferenceConflict() throws Exception {
+        doThrow(new IdempotencyConflictException("conflict"))
+                .when(walletService).applyJournaledDeposit(entry.walletId(), entry.amount(), entry.referenceId());
+
+        applier.apply(entry);
+
+        verify(walletService, times(3)).applyJournaledDeposit(entry.walletId(), entry.amount(), entry.referenceId());
+        assertEquals(1, meterRegistry.get("wallet.journal.rejected").counter().count());
+    }
+
+    @Test
+    void testRun_RetriesBatchThatFailedToCheckpoint() throws Exception {
+        when(journal.take(16)).thenReturn(List.of(entry)).thenThrow(new InterruptedException());
+        doThrow(new IllegalStateException("disk full")).doNothing().when(journal).markApplied(List.of(entry));
+
+        applier.run();
+
+        // The applier returns once it is interrupted, and only then
+        assertTrue(Thread.interrupted());
+        verify(journal, times(2)).markApplied(List.of(entry));
+        verify(walletService, times(2)).applyJournaledDeposit(entry.walletId(), entry.amount(), entry.referenceId());
+        assertEquals(1, meterRegistry.get("wallet.journal.apply.failures").counter().count());
+    }
+}
@@ -0,0 +1,94 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Deposits through the {@link DepositJournal} of an application running on an embedded database,
+ * applied by its {@link JournalApplier} with the idempotency checks the service runs with.
+ */
+class JournaledDepositTest {
+
+    @TempDir
+    static Path journalDirectory;
+
+    private static ConfigurableApplicationContext context;
+    private static WalletService walletService;
+
+    @BeforeAll
+    static void start() {
+        context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:journal-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--wallet.journal.enabled=true",
+                        "--wallet.journal.directory=" + journalDirectory,
+                        "--wallet.journal.segment-size=1MB",
+                        "--logging.level.com.challenge.rp.wallet=ERROR");
+        walletService = context.getBean(WalletService.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    void testDeposit_AcceptedDepositIsApplied() throws InterruptedException {
+        UUID walletId = createWallet();
+
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.TEN), UUID.randomUUID());
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.ONE), UUID.randomUUID());
+
+        awaitBalance("11.00", walletId);
+    }
+
+    @Test
+    void testDeposit_RepeatedAfterItWasAppliedIsNotAppliedAgain() throws InterruptedException {
+        UUID walletId = createWallet();
+        UUID referenceId = UUID.randomUUID();
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.TEN), referenceId);
+        awaitBalance("10.00", walletId);
+
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.TEN), referenceId);
+        assertThrows(IdempotencyConflictException.class,
+                () -> walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.ONE), referenceId));
+
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.ONE), UUID.randomUUID());
+        awaitBalance("11.00", walletId);
+    }
+
+    private static UUID createWallet() {
+        return UUID.fromString(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+    }
+
+    private static void awaitBalance(String expected, UUID walletId) throws InterruptedException {
+        BigDecimal balance = null;
+        for (long deadline = System.nanoTime() + 10_000_000_000L; System.nanoTime() < deadline; Thread.sleep(20)) {
+            balance = walletService.getBalance(walletId).balance();
+            if (new BigDecimal(expected).compareTo(balance) == 0) {
+                return;
+            }
+        }
+        fail("Expected a balance of " + expected + " but it is still " + balance);
+    }
+}
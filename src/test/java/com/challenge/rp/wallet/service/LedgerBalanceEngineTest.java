@@ -0,0 +1,105 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.exception.InsufficientBalanceException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.LedgerTail;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerBalanceEngineTest {
+
+    private static final Money TEN = Money.ofMinor(1000);
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private LedgerProjector projector;
+
+    private LedgerBalanceEngine balanceEngine;
+
+    @BeforeEach
+    void setUp() {
+        balanceEngine = new LedgerBalanceEngine(walletRepository, transactionRepository, projector, Set.of());
+    }
+
+    @Test
+    void testDebit_CountsTransactionsNotYetProjected() {
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = wallet(walletId, 500, 4);
+        when(walletRepository.findReadOnlyById(walletId)).thenReturn(Optional.of(wallet));
+        // Two unprojected deposits bring the balance from 5.00 to 15.00
+        when(transactionRepository.findLedgerTail(walletId, 4)).thenReturn(new LedgerTail(Money.ofMinor(1000), 6));
+
+        Wallet result = balanceEngine.debit(walletId, TEN);
+
+        assertEquals(Money.ofMinor(500), result.getBalance());
+        assertEquals(7, result.getTransactionCount());
+        verify(projector).projectAfterCommit(walletId);
+        verify(walletRepository, never()).save(any(Wallet.class));
+    }
+
+    @Test
+    void testDebit_InsufficientBalance() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findReadOnlyById(walletId)).thenReturn(Optional.of(wallet(walletId, 1500, 2)));
+        when(transactionRepository.findLedgerTail(walletId, 2)).thenReturn(new LedgerTail(Money.ofMinor(-1000), 3));
+
+        assertThrows(InsufficientBalanceException.class, () -> balanceEngine.debit(walletId, TEN));
+        verifyNoInteractions(projector);
+    }
+
+    @Test
+    void testCredit_WalletNotFound() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findReadOnlyById(walletId)).thenReturn(Optional.empty());
+
+        assertThrows(WalletNotFoundException.class, () -> balanceEngine.credit(walletId, TEN));
+        verifyNoInteractions(transactionRepository, projector);
+    }
+
+    @Test
+    void testCatchUp_FoldsTailIntoLockedWallet() {
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = wallet(walletId, 0, 0);
+        when(transactionRepository.findLedgerTail(walletId, 0)).thenReturn(new LedgerTail(TEN, 3));
+
+        balanceEngine.catchUp(wallet);
+
+        assertEquals(TEN, wallet.getBalance());
+        assertEquals(3, wallet.getTransactionCount());
+    }
+
+    @Test
+    void testConstructor_RejectsHotWallets() {
+        assertThrows(IllegalStateException.class, () ->
+                new LedgerBalanceEngine(walletRepository, transactionRepository, projector, Set.of(UUID.randomUUID())));
+    }
+
+    private static Wallet wallet(UUID walletId, long minorUnits, long transactionCount) {
+        Wallet wallet = new Wallet();
+        wallet.setId(walletId);
+        wallet.setBalance(Money.ofMinor(minorUnits));
+        wallet.setTransactionCount(transactionCount);
+        return wallet;
+    }
+}
@@ -0,0 +1,127 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.ArchivedMonth;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.LedgerPosition;
+import com.challenge.rp.wallet.repository.LedgerTail;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerProjectorTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private TransactionArchive transactionArchive;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private LedgerProjector projector;
+
+    @BeforeEach
+    void setUp() {
+        projector = new LedgerProjector(walletRepository, transactionRepository,
+                new DatabaseShards(false, List.of(), false, false), transactionArchive, transactionManager, meterRegistry, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        projector.shutdown();
+    }
+
+    @Test
+    void testProject_AdvancesFromTheProjectedPosition() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet(walletId, 1000, 5)));
+        when(transactionRepository.findLedgerTail(walletId, 5)).thenReturn(new LedgerTail(Money.ofMinor(-300), 8));
+        when(walletRepository.advanceProjection(walletId, 5, 8, Money.ofMinor(700))).thenReturn(1);
+
+        assertTrue(projector.project(walletId));
+    }
+
+    @Test
+    void testProject_SkipsWalletWithoutNewTransactions() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet(walletId, 1000, 5)));
+        when(transactionRepository.findLedgerTail(walletId, 5)).thenReturn(new LedgerTail(Money.ZERO, 5));
+
+        assertFalse(projector.project(walletId));
+        verify(walletRepository, never()).advanceProjection(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void testProjectAfterCommit_ProjectsInBackground() {
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet(walletId, 0, 0)));
+        when(transactionRepository.findLedgerTail(walletId, 0)).thenReturn(new LedgerTail(Money.ofMinor(100), 1));
+
+        // No transaction is active, so the wallet is queued straight away
+        projector.projectAfterCommit(walletId);
+
+        verify(walletRepository, timeout(1000)).advanceProjection(walletId, 0, 1, Money.ofMinor(100));
+        assertEquals(0, meterRegistry.get("wallet.ledger.pending").gauge().value());
+    }
+
+    @Test
+    void testRebuild_ResetsEveryWalletFromItsLog() {
+        UUID walletA = UUID.randomUUID();
+        UUID walletB = UUID.randomUUID();
+        when(transactionRepository.findLedgerPositions(Instant.EPOCH)).thenReturn(List.of(
+                new LedgerPosition(walletA, Money.ofMinor(500), 3),
+                new LedgerPosition(walletB, Money.ZERO, 2)));
+
+        assertEquals(2, projector.rebuild());
+
+        verify(walletRepository).resetProjection(walletA, 3, Money.ofMinor(500));
+        verify(walletRepository).resetProjection(walletB, 2, Money.ZERO);
+    }
+
+    @Test
+    void testRebuild_AddsTheArchivedSums() {
+        UUID walletId = UUID.randomUUID();
+        ArchivedMonth january = new ArchivedMonth(YearMonth.of(2026, 1), "transactions-2026-01.seg", 10, 1);
+        when(transactionArchive.months(0)).thenReturn(List.of(january));
+        when(transactionArchive.sumBetween(walletId, null, null)).thenReturn(Money.ofMinor(1200));
+        when(transactionRepository.findLedgerPositions(january.getEnd())).thenReturn(List.of(
+                new LedgerPosition(walletId, Money.ofMinor(-200), 14)));
+
+        assertEquals(1, projector.rebuild());
+
+        verify(walletRepository).resetProjection(walletId, 14, Money.ofMinor(1000));
+    }
+
+    private static Wallet wallet(UUID walletId, long minorUnits, long transactionCount) {
+        Wallet wallet = new Wallet();
+        wallet.setId(walletId);
+        wallet.setBalance(Money.ofMinor(minorUnits));
+        wallet.setTransactionCount(transactionCount);
+        return wallet;
+    }
+}
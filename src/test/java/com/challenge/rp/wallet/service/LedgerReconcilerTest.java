@@ -0,0 +1,109 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.TransferRequest;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.dto.WithdrawRequest;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.ReconciliationMismatch;
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import com.challenge.rp.wallet.repository.ReconciliationMismatchRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reconciles wallets of an application running on an embedded database, in chunks smaller than the
+ * number of wallets.
+ */
+class LedgerReconcilerTest {
+
+    private static final UUIDBinaryConverter CONVERTER = new UUIDBinaryConverter();
+
+    private static ConfigurableApplicationContext context;
+    private static WalletService walletService;
+    private static LedgerReconciler ledgerReconciler;
+    private static ReconciliationMismatchRepository reconciliationMismatchRepository;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void start() {
+        context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:reconciliation-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--logging.level.com.challenge.rp.wallet=ERROR",
+                        "--wallet.reconciliation.parallelism=2",
+                        "--wallet.reconciliation.chunk-size=3");
+        walletService = context.getBean(WalletService.class);
+        ledgerReconciler = context.getBean(LedgerReconciler.class);
+        reconciliationMismatchRepository = context.getBean(ReconciliationMismatchRepository.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    void testReconcile_ReportsOnlyTheDriftedWallets() {
+        List<UUID> walletIds = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            UUID walletId = UUID.fromString(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+            walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.valueOf(100 + i)), UUID.randomUUID());
+            walletIds.add(walletId);
+        }
+        walletService.withdraw(walletIds.get(0).toString(), new WithdrawRequest(BigDecimal.valueOf(30)), UUID.randomUUID());
+        walletService.transfer(new TransferRequest(walletIds.get(1), walletIds.get(2), BigDecimal.valueOf(55)), UUID.randomUUID());
+        UUID drifted = walletIds.get(3);
+        UUID missingTransaction = walletIds.get(4);
+        transactionTemplate.executeWithoutResult(status -> {
+            // A balance changed without its transaction, and a transaction counted without reaching the balance
+            jdbcTemplate.update("UPDATE tb_wallet SET balance = balance + 1 WHERE id = ?", CONVERTER.convertToDatabaseColumn(drifted));
+            jdbcTemplate.update("UPDATE tb_wallet SET transaction_count = 0 WHERE id = ?",
+                    CONVERTER.convertToDatabaseColumn(missingTransaction));
+        });
+
+        LedgerReconciler.Result result = ledgerReconciler.reconcile();
+
+        assertEquals(40, result.wallets());
+        // Forty deposits, a withdrawal and both legs of the transfer, less the one beyond its wallet's count
+        assertEquals(42, result.transactions());
+        assertEquals(2, result.mismatches());
+        // The wallets were created within moments of each other, far less than the whole id space apart
+        assertTrue(result.rangesWithWallets() > 1);
+        List<ReconciliationMismatch> mismatches = reconciliationMismatchRepository.findByRunId(result.runId());
+        ReconciliationMismatch balanceDrift = mismatches.stream().filter(m -> m.getWalletId().equals(drifted)).findFirst().orElseThrow();
+        assertEquals(Money.ofMinor(10400), balanceDrift.getWalletBalance());
+        assertEquals(Money.ofMinor(10300), balanceDrift.getLedgerBalance());
+        ReconciliationMismatch countDrift = mismatches.stream().filter(m -> m.getWalletId().equals(missingTransaction)).findFirst().orElseThrow();
+        assertEquals(Money.ZERO, countDrift.getLedgerBalance());
+        assertEquals(0, countDrift.getTransactionCount());
+
+        MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+        assertEquals(1.0, meterRegistry.get("wallet.reconciliation.progress").gauge().value());
+        assertTrue(meterRegistry.get("wallet.reconciliation.throughput").gauge().value() > 0);
+    }
+}
@@ -0,0 +1,153 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.TransactionHistoryRequest;
+import com.challenge.rp.wallet.dto.TransactionResponse;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TimeOrderedUuidGenerator;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Archives and purges backdated transactions of an application running on an embedded database.
+ */
+class TransactionArchiverTest {
+
+    private static final UUIDBinaryConverter CONVERTER = new UUIDBinaryConverter();
+
+    @TempDir
+    private static Path directory;
+
+    private static ConfigurableApplicationContext context;
+    private static WalletService walletService;
+    private static TransactionArchiver transactionArchiver;
+    private static TransactionHistoryService transactionHistoryService;
+    private static BalanceSnapshotService balanceSnapshotService;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+
+    @BeforeAll
+    static void start() {
+        context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:archive-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--logging.level.com.challenge.rp.wallet=WARN",
+                        "--wallet.archive.directory=" + directory,
+                        "--wallet.archive.hot-months=3",
+                        "--wallet.archive.purge-delay=0s",
+                        "--wallet.archive.purge-batch-size=2");
+        walletService = context.getBean(WalletService.class);
+        transactionArchiver = context.getBean(TransactionArchiver.class);
+        transactionHistoryService = context.getBean(TransactionHistoryService.class);
+        balanceSnapshotService = context.getBean(BalanceSnapshotService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    void testArchive_OldMonthsAreReadFromSegmentsOncePurged() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        Instant sixMonthsAgo = current.minusMonths(6).atDay(10).atStartOfDay().toInstant(ZoneOffset.UTC);
+        Instant fiveMonthsAgo = current.minusMonths(5).atDay(20).atStartOfDay().toInstant(ZoneOffset.UTC);
+        UUID walletId = UUID.fromString(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+        UUID otherWalletId = UUID.fromString(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+        UUID firstReferenceId = UUID.randomUUID();
+        transactionTemplate.executeWithoutResult(status -> {
+            insert(walletId, 1, TransactionType.DEPOSIT, 10000, sixMonthsAgo, firstReferenceId);
+            insert(walletId, 2, TransactionType.WITHDRAW, 2500, sixMonthsAgo.plusSeconds(60));
+            insert(otherWalletId, 1, TransactionType.DEPOSIT, 700, sixMonthsAgo.plusSeconds(90));
+            insert(walletId, 3, TransactionType.DEPOSIT, 1000, fiveMonthsAgo);
+            jdbcTemplate.update("UPDATE tb_wallet SET balance = ?, transaction_count = ? WHERE id = ?",
+                    new BigDecimal("85.00"), 3, CONVERTER.convertToDatabaseColumn(walletId));
+        });
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.valueOf(5)), UUID.randomUUID());
+        List<TransactionResponse> before = export(walletId, new TransactionHistoryRequest(null, null, null));
+
+        // The four months from six months ago until the three hot ones, two of them empty
+        assertEquals(4, transactionArchiver.archive());
+        assertEquals(0, transactionArchiver.archive());
+        assertEquals(before, export(walletId, new TransactionHistoryRequest(null, null, null)));
+
+        assertEquals(4, transactionArchiver.purge());
+        Integer remaining = transactionTemplate.execute(status ->
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM tb_transaction", Integer.class));
+        assertEquals(1, remaining);
+
+        List<TransactionResponse> after = export(walletId, new TransactionHistoryRequest(null, null, null));
+        assertEquals(before, after);
+        assertEquals(List.of(new BigDecimal("100.00"), new BigDecimal("25.00"), new BigDecimal("10.00"), new BigDecimal("5.00")),
+                after.stream().map(TransactionResponse::amount).toList());
+        assertEquals(after.subList(2, 4), export(walletId, new TransactionHistoryRequest(after.get(1).createdAt(), after.get(1).id(), 5)));
+        assertEquals(after.subList(1, 3), export(walletId, new TransactionHistoryRequest(after.get(0).createdAt(), after.get(0).id(), 2)));
+
+        assertEquals(Money.ofMinor(10000), balanceSnapshotService.balanceAt(walletId, sixMonthsAgo.plusSeconds(30)));
+        assertEquals(Money.ofMinor(8500), balanceSnapshotService.balanceAt(walletId, fiveMonthsAgo));
+        assertEquals(Money.ofMinor(9000), balanceSnapshotService.balanceAt(walletId, Instant.now()));
+        assertEquals(Money.ofMinor(700), balanceSnapshotService.balanceAt(otherWalletId, Instant.now()));
+
+        // The reference id of a purged transaction is still recognized
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.valueOf(100)), firstReferenceId);
+        assertThrows(IdempotencyConflictException.class,
+                () -> walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.ONE), firstReferenceId));
+        assertEquals(0, new BigDecimal("90.00").compareTo(walletService.getBalance(walletId).balance()));
+    }
+
+    // Backdated, with an id generated at that time as the application would have
+    private static void insert(UUID walletId, long sequence, TransactionType type, long minorUnits, Instant createdAt) {
+        insert(walletId, sequence, type, minorUnits, createdAt, UUID.randomUUID());
+    }
+
+    private static void insert(UUID walletId, long sequence, TransactionType type, long minorUnits, Instant createdAt,
+                               UUID referenceId) {
+        UUID lowest = TimeOrderedUuidGenerator.lowestAt(createdAt);
+        UUID id = new UUID(lowest.getMostSignificantBits() | ThreadLocalRandom.current().nextInt(0x1000),
+                lowest.getLeastSignificantBits() | ThreadLocalRandom.current().nextLong() >>> 2);
+        jdbcTemplate.update("INSERT INTO tb_transaction (id, wallet_id, transaction_type, amount, reference_id, created_at, sequence_number) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                CONVERTER.convertToDatabaseColumn(id), CONVERTER.convertToDatabaseColumn(walletId), type.name(),
+                Money.ofMinor(minorUnits).toBigDecimal(), CONVERTER.convertToDatabaseColumn(referenceId),
+                Timestamp.from(createdAt), sequence);
+    }
+
+    private static List<TransactionResponse> export(UUID walletId, TransactionHistoryRequest request) {
+        List<TransactionResponse> exported = new ArrayList<>();
+        transactionHistoryService.export(walletId, request, exported::add);
+        return exported;
+    }
+}
@@ -0,0 +1,160 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.dto.TransactionHistoryRequest;
+import com.challenge.rp.wallet.dto.TransactionResponse;
+import com.challenge.rp.wallet.exception.TooManyExportsException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionHistoryServiceTest {
+
+    private static final UUID WALLET_ID = UUID.randomUUID();
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private TransactionArchive transactionArchive;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionHistoryService transactionHistoryService;
+
+    @BeforeEach
+    void setUp() {
+        BalanceCache balanceCache = new BalanceCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5), new SimpleMeterRegistry());
+        transactionHistoryService = new TransactionHistoryService(walletRepository, transactionRepository,
+                new ReplicaReads(transactionManager, balanceCache), new DatabaseShards(false, List.of(), false, false),
+                transactionArchive, 2, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void testValidate_WalletNotFound() {
+        when(walletRepository.existsById(WALLET_ID)).thenReturn(false);
+
+        assertThrows(WalletNotFoundException.class,
+                () -> transactionHistoryService.validate(WALLET_ID, new TransactionHistoryRequest(null, null, null)));
+    }
+
+    @Test
+    void testValidate_IncompleteCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> transactionHistoryService.validate(WALLET_ID, new TransactionHistoryRequest(Instant.now(), null, null)));
+        verifyNoInteractions(walletRepository);
+    }
+
+    @Test
+    void testExport_FromStart() {
+        AtomicBoolean closed = new AtomicBoolean();
+        List<TransactionResponse> rows = List.of(row(), row());
+        when(transactionRepository.streamByWallet(WALLET_ID, Limit.unlimited()))
+                .thenReturn(rows.stream().onClose(() -> closed.set(true)));
+
+        List<TransactionResponse> exported = new ArrayList<>();
+        long count = transactionHistoryService.export(WALLET_ID, new TransactionHistoryRequest(null, null, null), exported::add);
+
+        assertEquals(2, count);
+        assertEquals(rows, exported);
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void testExport_AfterCursor() {
+        TransactionResponse last = row();
+        when(transactionRepository.streamByWalletAfter(WALLET_ID, last.createdAt(), last.id(), Limit.of(10)))
+                .thenReturn(Stream.of(row()));
+
+        long count = transactionHistoryService.export(WALLET_ID,
+                new TransactionHistoryRequest(last.createdAt(), last.id(), 10), transaction -> {
+                });
+
+        assertEquals(1, count);
+        verify(transactionRepository, never()).streamByWallet(any(), any());
+    }
+
+    @Test
+    void testExport_ArchivedTransactionsFirst() {
+        Instant boundary = Instant.parse("2024-10-01T00:00:00Z");
+        when(transactionArchive.boundary(WALLET_ID)).thenReturn(boundary);
+        when(transactionArchive.export(eq(WALLET_ID), isNull(), isNull(), eq(3L), any())).thenAnswer(invocation -> {
+            Consumer<TransactionResponse> sink = invocation.getArgument(4);
+            sink.accept(row());
+            return 1L;
+        });
+        when(transactionRepository.streamByWalletAfter(WALLET_ID, boundary.minusNanos(1000), new UUID(-1L, -1L), Limit.of(2)))
+                .thenReturn(Stream.of(row(), row()));
+
+        List<TransactionResponse> exported = new ArrayList<>();
+        long count = transactionHistoryService.export(WALLET_ID, new TransactionHistoryRequest(null, null, 3), exported::add);
+
+        assertEquals(3, count);
+        assertEquals(3, exported.size());
+    }
+
+    @Test
+    void testReserveExport_RejectsBeyondTheLimitUntilOneEnds() {
+        TransactionHistoryService.ExportSlot first = transactionHistoryService.reserveExport();
+        TransactionHistoryService.ExportSlot second = transactionHistoryService.reserveExport();
+
+        assertThrows(TooManyExportsException.class, transactionHistoryService::reserveExport);
+
+        first.close();
+        first.close();
+        TransactionHistoryService.ExportSlot third = transactionHistoryService.reserveExport();
+        assertThrows(TooManyExportsException.class, transactionHistoryService::reserveExport);
+        second.close();
+        third.close();
+    }
+
+    @Test
+    void testExport_CutOffAfterMaxDuration() {
+        AtomicBoolean closed = new AtomicBoolean();
+        BalanceCache balanceCache = new BalanceCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5), new SimpleMeterRegistry());
+        TransactionHistoryService bounded = new TransactionHistoryService(walletRepository, transactionRepository,
+                new ReplicaReads(transactionManager, balanceCache), new DatabaseShards(false, List.of(), false, false),
+                transactionArchive, 2, Duration.ZERO);
+        when(transactionRepository.streamByWallet(WALLET_ID, Limit.unlimited()))
+                .thenReturn(Stream.of(row(), row()).onClose(() -> closed.set(true)));
+
+        List<TransactionResponse> exported = new ArrayList<>();
+        assertThrows(QueryTimeoutException.class,
+                () -> bounded.export(WALLET_ID, new TransactionHistoryRequest(null, null, null), exported::add));
+
+        assertTrue(exported.isEmpty());
+        assertTrue(closed.get());
+    }
+
+    private static TransactionResponse row() {
+        return new TransactionResponse(UUID.randomUUID(), TransactionType.DEPOSIT, BigDecimal.TEN, UUID.randomUUID(), Instant.now());
+    }
+}
@@ -0,0 +1,93 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.UUIDBinaryConverter;
+import com.challenge.rp.wallet.repository.LedgerEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionSegmentTest {
+
+    private static final Instant START = Instant.parse("2026-03-01T00:00:00Z");
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testWrite_RoundTripsEveryWalletThroughTheIndex() throws IOException {
+        List<UUID> walletIds = Stream.generate(UUID::randomUUID).limit(50).sorted(UUIDBinaryConverter.BINARY_ORDER).toList();
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (int w = 0; w < walletIds.size(); w++) {
+            for (int i = 1; i <= w % 7 + 1; i++) {
+                TransactionType type = i % 3 == 0 ? TransactionType.WITHDRAW : TransactionType.DEPOSIT;
+                entries.add(new LedgerEntry(UUID.randomUUID(), walletIds.get(w), 40 + i, type, Money.ofMinor(i * 125L),
+                        UUID.randomUUID(), START.plusSeconds(w * 60L + i).plusNanos(i * 1000L)));
+            }
+        }
+        Path file = directory.resolve("transactions-2026-03.seg");
+
+        TransactionSegment.Summary summary = TransactionSegment.write(file, entries.iterator());
+
+        assertEquals(new TransactionSegment.Summary(entries.size(), walletIds.size()), summary);
+        assertEquals(List.of(file), Files.list(directory).toList());
+        try (TransactionSegment segment = TransactionSegment.open(file)) {
+            assertEquals(entries.size(), segment.getTransactionCount());
+            assertEquals(START.plusSeconds(1).plusNanos(1000), segment.getMinCreatedAt());
+            assertEquals(entries.get(entries.size() - 1).createdAt(), segment.getMaxCreatedAt());
+            for (UUID walletId : walletIds) {
+                List<LedgerEntry> expected = entries.stream().filter(e -> e.walletId().equals(walletId)).toList();
+                TransactionSegment.Group group = segment.find(walletId);
+
+                assertEquals(expected, segment.read(group));
+                assertEquals(expected.stream().map(LedgerEntry::signedAmount).reduce(Money.ZERO, Money::plus), group.signedSum());
+                assertEquals(expected.get(expected.size() - 1).sequence(), group.lastSequence());
+            }
+            assertNull(segment.find(UUID.randomUUID()));
+        }
+    }
+
+    @Test
+    void testWrite_EmptyMonth() throws IOException {
+        Path file = directory.resolve("transactions-2026-04.seg");
+
+        assertEquals(new TransactionSegment.Summary(0, 0), TransactionSegment.write(file, List.<LedgerEntry>of().iterator()));
+
+        try (TransactionSegment segment = TransactionSegment.open(file)) {
+            assertEquals(0, segment.getWalletCount());
+            assertNull(segment.find(UUID.randomUUID()));
+        }
+    }
+
+    @Test
+    void testWrite_RejectsWalletsOutOfOrder() throws IOException {
+        List<LedgerEntry> entries = Stream.generate(UUID::randomUUID).limit(2)
+                .sorted(UUIDBinaryConverter.BINARY_ORDER.reversed())
+                .map(walletId -> new LedgerEntry(UUID.randomUUID(), walletId, 1, TransactionType.DEPOSIT, Money.ofMinor(100),
+                        UUID.randomUUID(), START))
+                .toList();
+        Path file = directory.resolve("transactions-2026-05.seg");
+
+        assertThrows(IllegalStateException.class, () -> TransactionSegment.write(file, entries.iterator()));
+        assertEquals(0, Files.list(directory).count());
+    }
+
+    @Test
+    void testMicros_RoundTripBeforeAndAfterTheEpoch() {
+        for (Instant instant : List.of(START.plusNanos(123_000), Instant.parse("1969-12-31T23:59:59.999999Z"))) {
+            assertEquals(instant, TransactionSegment.ofMicros(TransactionSegment.toMicros(instant)));
+        }
+        assertEquals(-1, TransactionSegment.toMicros(Instant.EPOCH.minusNanos(1000)));
+    }
+}
@@ -0,0 +1,154 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.TransferRequest;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs random cross-transfers between a small set of wallets from many threads against an
+ * embedded database, once per concurrency mode, and checks that money is neither created nor lost.
+ * With several databases most transfers cross database shards.
+ */
+@Slf4j
+class TransferStressTest {
+
+    private static final int WALLETS = 5;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 50;
+    private static final BigDecimal INITIAL_BALANCE = BigDecimal.valueOf(1000);
+    private static final long RECOVERY_INTERVAL_MILLIS = 200;
+
+    @ParameterizedTest(name = "{0} transfers, {1} engine, sharded: {2}, databases: {3}")
+    @CsvSource({
+            "optimistic, versioned, false, 1",
+            "optimistic, atomic, false, 1",
+            "pessimistic, versioned, false, 1",
+            "optimistic, ledger, false, 1",
+            "pessimistic, ledger, false, 1",
+            "optimistic, versioned, true, 1",
+            "optimistic, ledger, true, 1",
+            "optimistic, versioned, false, 3",
+            "pessimistic, versioned, false, 3",
+            "optimistic, ledger, false, 3"
+    })
+    void testRandomCrossTransfersConserveTotalBalance(String concurrencyMode, String balanceEngine, boolean sharded,
+                                                      int databases) throws Exception {
+        try (ConfigurableApplicationContext context = start(concurrencyMode, balanceEngine, sharded, databases)) {
+            WalletService walletService = context.getBean(WalletService.class);
+            WalletRepository walletRepository = context.getBean(WalletRepository.class);
+            DatabaseShards databaseShards = context.getBean(DatabaseShards.class);
+
+            List<UUID> walletIds = new ArrayList<>();
+            for (int i = 0; i < WALLETS; i++) {
+                String walletId = walletService.createWallet(new WalletCreateRequest(UUID.randomUUID()));
+                walletService.deposit(walletId, new DepositRequest(INITIAL_BALANCE), UUID.randomUUID());
+                walletIds.add(UUID.fromString(walletId));
+            }
+
+            AtomicInteger succeeded = new AtomicInteger();
+            Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            long start = System.nanoTime();
+
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                        int source = random.nextInt(WALLETS);
+                        int target = (source + 1 + random.nextInt(WALLETS - 1)) % WALLETS;
+                        TransferRequest request = new TransferRequest(walletIds.get(source), walletIds.get(target),
+                                BigDecimal.valueOf(random.nextInt(1, 50)));
+                        try {
+                            walletService.transfer(request, UUID.randomUUID());
+                            succeeded.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            failures.computeIfAbsent(e.getClass().getSimpleName(), k -> new AtomicInteger()).incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            executor.shutdown();
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            log.info("mode={} engine={} sharded={} databases={} threads={} succeeded={} failures={} elapsed={}s throughput={} transfers/s",
+                    concurrencyMode, balanceEngine, sharded, databases, THREADS, succeeded.get(), failures,
+                    String.format("%.2f", seconds), String.format("%.1f", succeeded.get() / seconds));
+
+            // A transfer between databases that gave up after its debit leaves the credit to recovery
+            if (databaseShards.isEnabled()) {
+                Thread.sleep(RECOVERY_INTERVAL_MILLIS * 2);
+                context.getBean(CrossShardTransfers.class).recover();
+            }
+
+            Money expected = Money.of(INITIAL_BALANCE.multiply(BigDecimal.valueOf(WALLETS)));
+            List<Money> balances = walletIds.stream().map(id -> Money.of(walletService.getBalance(id).balance())).toList();
+            assertEquals(expected, balances.stream().reduce(Money.ZERO, Money::plus));
+            assertTrue(balances.stream().allMatch(balance -> balance.signum() >= 0));
+            assertTrue(succeeded.get() > 0);
+
+            // In ledger mode the rows may lag the log until projected; rebuilt, they hold the same total
+            if (balanceEngine.equals("ledger")) {
+                context.getBean(LedgerProjector.class).rebuild();
+            }
+            List<Wallet> wallets = walletIds.stream()
+                    .map(id -> databaseShards.on(id, () -> walletRepository.findById(id).orElseThrow()))
+                    .toList();
+            assertEquals(expected, wallets.stream().map(Wallet::getBalance).reduce(Money.ZERO, Money::plus));
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String concurrencyMode, String balanceEngine, boolean sharded,
+                                                        int databases) {
+        List<String> shardUrls = new ArrayList<>();
+        for (int i = 1; i < databases; i++) {
+            shardUrls.add("jdbc:h2:mem:stress-shard-" + UUID.randomUUID() + ";MODE=MySQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1");
+        }
+        // Passed as command-line arguments so they take precedence over application.properties
+        return new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:stress-" + UUID.randomUUID() + ";MODE=MySQL;LOCK_TIMEOUT=10000;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.com.challenge.rp.wallet=WARN",
+                        "--logging.level.com.challenge.rp.wallet.service.TransferStressTest=INFO",
+                        "--wallet.transfer.concurrency-mode=" + concurrencyMode,
+                        "--wallet.balance-engine=" + balanceEngine,
+                        "--wallet.shards.enabled=" + sharded,
+                        "--wallet.shards.count=4",
+                        "--wallet.database-shards.enabled=" + (databases > 1),
+                        "--wallet.database-shards.urls=" + String.join(",", shardUrls),
+                        "--wallet.database-shards.recovery-interval=" + RECOVERY_INTERVAL_MILLIS + "ms");
+    }
+}
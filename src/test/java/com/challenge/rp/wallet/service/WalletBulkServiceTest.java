@@ -0,0 +1,105 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.dto.*;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.WalletBalance;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletBulkServiceTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private WalletDirectory walletDirectory;
+
+    private WalletBulkService walletBulkService;
+
+    @BeforeEach
+    void setUp() {
+        BalanceCache balanceCache = new BalanceCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5), new SimpleMeterRegistry());
+        walletBulkService = new WalletBulkService(walletRepository, new VersionedBalanceEngine(walletRepository),
+                balanceCache, new ReplicaReads(transactionManager, balanceCache),
+                new DatabaseShards(false, List.of(), false, false), walletDirectory, 10);
+    }
+
+    @Test
+    void testCreateWallets_RejectsTakenAndRepeatedUserIds() {
+        UUID fresh = UUID.randomUUID();
+        UUID taken = UUID.randomUUID();
+        when(walletRepository.findExistingUserIds(anySet())).thenReturn(Set.of(taken));
+        when(walletRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Wallet> wallets = invocation.getArgument(0);
+            wallets.forEach(wallet -> wallet.setId(UUID.randomUUID()));
+            return wallets;
+        });
+
+        WalletBulkCreateResponse response = walletBulkService.createWallets(new WalletBulkCreateRequest(List.of(
+                new WalletCreateRequest(fresh),
+                new WalletCreateRequest(taken),
+                new WalletCreateRequest(fresh),
+                new WalletCreateRequest(null))));
+
+        assertEquals(List.of(WalletBulkCreateStatus.CREATED, WalletBulkCreateStatus.REJECTED, WalletBulkCreateStatus.REJECTED,
+                WalletBulkCreateStatus.REJECTED), response.results().stream().map(WalletBulkCreateResult::status).toList());
+        assertNotNull(response.results().get(0).walletId());
+        assertNull(response.results().get(1).walletId());
+        verify(walletRepository).findExistingUserIds(Set.of(fresh, taken));
+        verify(walletRepository).saveAll(argThat((List<Wallet> wallets) -> wallets.size() == 1 && wallets.get(0).getUserId().equals(fresh)));
+    }
+
+    @Test
+    void testCreateWallets_RejectsOversizedRequest() {
+        WalletBulkCreateRequest request = new WalletBulkCreateRequest(IntStream.range(0, 11)
+                .mapToObj(i -> new WalletCreateRequest(UUID.randomUUID()))
+                .toList());
+
+        assertThrows(IllegalArgumentException.class, () -> walletBulkService.createWallets(request));
+        verifyNoInteractions(walletRepository);
+    }
+
+    @Test
+    void testGetBalances_ReadsMissesInOneQueryAndReportsUnknownWallets() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+        when(walletRepository.findBalances(Set.of(first, second, unknown))).thenReturn(List.of(
+                new WalletBalance(first, Money.ofMinor(1050)),
+                new WalletBalance(second, Money.ZERO)));
+
+        WalletBalancesRequest request = new WalletBalancesRequest(List.of(
+                new WalletBalanceRequest(first), new WalletBalanceRequest(unknown), new WalletBalanceRequest(second)));
+        WalletBalancesResponse response = walletBulkService.getBalances(request);
+
+        assertEquals(new WalletBalanceResult(first, new BigDecimal("10.50"), null), response.balances().get(0));
+        assertNull(response.balances().get(1).balance());
+        assertNotNull(response.balances().get(1).message());
+        assertEquals(new WalletBalanceResult(second, new BigDecimal("0.00"), null), response.balances().get(2));
+
+        // Found wallets are cached; only the unknown one is looked up again
+        walletBulkService.getBalances(request);
+        verify(walletRepository).findBalances(Set.of(unknown));
+    }
+}
@@ -0,0 +1,77 @@
+package com.challenge.rp.wallet.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalletConflictTrackerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testRecordConflict_SerializesWalletAfterRepeatedConflicts() {
+        WalletConflictTracker tracker = new WalletConflictTracker(3, Duration.ofMinutes(1), Duration.ofMinutes(1), meterRegistry);
+        UUID walletId = UUID.randomUUID();
+
+        tracker.recordConflict("deposit", walletId);
+        tracker.recordConflict("deposit", walletId);
+        assertFalse(tracker.isSerialized(walletId));
+        assertTrue(meterRegistry.find("wallet.conflicts.hot").functionCounters().isEmpty());
+
+        tracker.recordConflict("withdraw", walletId);
+        assertTrue(tracker.isSerialized(walletId));
+        assertEquals(3, meterRegistry.get("wallet.conflicts.hot").tag("wallet", walletId.toString()).functionCounter().count());
+        assertEquals(2, meterRegistry.get("wallet.conflicts").tag("operation", "deposit").counter().count());
+        assertEquals(1, meterRegistry.get("wallet.conflicts.serialized").gauge().value());
+    }
+
+    @Test
+    void testRecordConflict_IgnoresConflictsSpreadOverWindows() throws InterruptedException {
+        WalletConflictTracker tracker = new WalletConflictTracker(2, Duration.ofMillis(5), Duration.ofMinutes(1), meterRegistry);
+        UUID walletId = UUID.randomUUID();
+
+        tracker.recordConflict("deposit", walletId);
+        Thread.sleep(20);
+        tracker.recordConflict("deposit", walletId);
+
+        assertFalse(tracker.isSerialized(walletId));
+    }
+
+    @Test
+    void testIsSerialized_EndsAfterSerializePeriod() throws InterruptedException {
+        WalletConflictTracker tracker = new WalletConflictTracker(1, Duration.ofMinutes(1), Duration.ofMillis(20), meterRegistry);
+        UUID walletId = UUID.randomUUID();
+
+        tracker.recordConflict("deposit", walletId);
+        assertTrue(tracker.isSerialized(walletId));
+
+        Thread.sleep(50);
+        assertFalse(tracker.isSerialized(walletId));
+    }
+
+    @Test
+    void testEnter_WritersOfSerializedWalletTakeTurns() throws Exception {
+        WalletConflictTracker tracker = new WalletConflictTracker(1, Duration.ofMinutes(1), Duration.ofMinutes(1), meterRegistry);
+        UUID hotWalletId = UUID.randomUUID();
+        UUID otherWalletId = UUID.randomUUID();
+        tracker.recordConflict("deposit", hotWalletId);
+
+        CompletableFuture<Void> second;
+        try (WalletConflictTracker.Lanes lanes = tracker.enter(List.of(hotWalletId, otherWalletId))) {
+            // Wallets that are not serialized are not held
+            CompletableFuture.runAsync(() -> tracker.enter(List.of(otherWalletId)).close()).get(1, TimeUnit.SECONDS);
+
+            second = CompletableFuture.runAsync(() -> tracker.enter(List.of(hotWalletId)).close());
+            assertThrows(TimeoutException.class, () -> second.get(100, TimeUnit.MILLISECONDS));
+        }
+        second.get(1, TimeUnit.SECONDS);
+    }
+}
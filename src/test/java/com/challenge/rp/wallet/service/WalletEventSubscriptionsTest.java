@@ -0,0 +1,203 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.TransferRequest;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.dto.WalletEventResponse;
+import com.challenge.rp.wallet.dto.WithdrawRequest;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.model.WalletEvent;
+import com.challenge.rp.wallet.repository.WalletEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reads the event stream over HTTP from an application running on an embedded database.
+ */
+class WalletEventSubscriptionsTest {
+
+    private static ConfigurableApplicationContext context;
+    private static WalletService walletService;
+    private static ObjectMapper objectMapper;
+    private static String baseUrl;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void start() {
+        context = new SpringApplicationBuilder(WalletApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:events-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--logging.level.com.challenge.rp.wallet=WARN",
+                        "--logging.level.org.springframework.web=WARN",
+                        "--wallet.events.poll-interval=20ms",
+                        "--wallet.events.settle-window=200ms",
+                        "--wallet.events.catch-up-interval=100ms");
+        walletService = context.getBean(WalletService.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    void testSubscribe_StreamsChangesAfterTheLatestTransaction() throws Exception {
+        UUID walletId = createWallet();
+        deposit(walletId, 10);
+
+        try (InputStream stream = subscribe(walletId, null)) {
+            deposit(walletId, 5);
+            walletService.withdraw(walletId.toString(), new WithdrawRequest(BigDecimal.valueOf(3)), UUID.randomUUID());
+
+            List<WalletEventResponse> events = read(stream, 2);
+
+            assertEquals(List.of(2L, 3L), events.stream().map(WalletEventResponse::sequence).toList());
+            assertEquals(0, new BigDecimal("15.00").compareTo(events.get(0).balance()));
+            assertEquals(0, new BigDecimal("12.00").compareTo(events.get(1).balance()));
+        }
+    }
+
+    @Test
+    void testSubscribe_ResumesAfterLastEventId() throws Exception {
+        UUID walletId = createWallet();
+        deposit(walletId, 10);
+        deposit(walletId, 20);
+        deposit(walletId, 30);
+
+        try (InputStream stream = subscribe(walletId, 1L)) {
+            List<WalletEventResponse> events = read(stream, 2);
+
+            assertEquals(List.of(2L, 3L), events.stream().map(WalletEventResponse::sequence).toList());
+            assertEquals(0, new BigDecimal("60.00").compareTo(events.get(1).balance()));
+        }
+    }
+
+    @Test
+    void testSubscribe_ReceivesIncomingTransfer() throws Exception {
+        UUID source = createWallet();
+        UUID target = createWallet();
+        deposit(source, 100);
+
+        try (InputStream stream = subscribe(target, null)) {
+            walletService.transfer(new TransferRequest(source, target, BigDecimal.valueOf(40)), UUID.randomUUID());
+
+            WalletEventResponse event = read(stream, 1).get(0);
+
+            assertEquals(1, event.sequence());
+            assertEquals(0, new BigDecimal("40.00").compareTo(event.balance()));
+        }
+    }
+
+    @Test
+    void testSubscribe_ReceivesEventCommittedAfterTheSettleWindow() throws Exception {
+        UUID walletId = createWallet();
+
+        try (InputStream stream = subscribe(walletId, null)) {
+            deposit(walletId, 10);
+            assertEquals(1, read(stream, 1).get(0).sequence());
+
+            // Created long before it becomes visible, so the polls have moved past it
+            Wallet wallet = new Wallet();
+            wallet.setId(walletId);
+            Transaction late = new Transaction(wallet, TransactionType.DEPOSIT, Money.ofMinor(700), UUID.randomUUID(), 2);
+            late.setCreatedAt(Instant.now().minus(Duration.ofMinutes(1)));
+            context.getBean(TransactionTemplate.class).executeWithoutResult(status ->
+                    context.getBean(WalletEventRepository.class).save(new WalletEvent(late, Money.ofMinor(1700))));
+
+            WalletEventResponse event = read(stream, 1).get(0);
+
+            assertEquals(2, event.sequence());
+            assertEquals(0, new BigDecimal("17.00").compareTo(event.balance()));
+        }
+    }
+
+    @Test
+    void testPoll_ReadsOnlySubscribedWallets() throws Exception {
+        UUID subscribed = createWallet();
+        UUID other = createWallet();
+
+        try (InputStream stream = subscribe(subscribed, null)) {
+            // Lets the events of earlier tests, whose subscribers may still be open, leave the settle window
+            Thread.sleep(300);
+            deposit(other, 10);
+
+            assertEquals(0, context.getBean(WalletEventRelay.class).poll());
+        }
+    }
+
+    @Test
+    void testSubscribe_UnknownWalletIsNotStreamed() throws Exception {
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/wallets/" + UUID.randomUUID() + "/events"))
+                .build(), HttpResponse.BodyHandlers.discarding());
+
+        assertNotEquals(200, response.statusCode());
+    }
+
+    // The response starts once the subscription is registered, so later changes reach it through the relay
+    private InputStream subscribe(UUID walletId, Long lastEventId) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + "/wallets/" + walletId + "/events"));
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId.toString());
+        }
+        HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(200, response.statusCode());
+        return response.body();
+    }
+
+    private List<WalletEventResponse> read(InputStream stream, int count) {
+        return assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+            List<WalletEventResponse> events = new ArrayList<>();
+            String line;
+            while (events.size() < count && (line = reader.readLine()) != null) {
+                if (line.startsWith("data:")) {
+                    events.add(objectMapper.readValue(line.substring("data:".length()), WalletEventResponse.class));
+                }
+            }
+            return events;
+        });
+    }
+
+    private static UUID createWallet() {
+        return UUID.fromString(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+    }
+
+    private static void deposit(UUID walletId, int amount) {
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.valueOf(amount)), UUID.randomUUID());
+    }
+}
@@ -0,0 +1,127 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.dto.WithdrawRequest;
+import com.challenge.rp.wallet.exception.InsufficientBalanceException;
+import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
+import com.challenge.rp.wallet.model.Wallet;
+import com.challenge.rp.wallet.repository.TransactionRepository;
+import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletOperationMetricsTest {
+
+    @Mock
+    private WalletRepository walletRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private BalanceSnapshotService balanceSnapshotService;
+
+    @Mock
+    private HotWalletLedger hotWalletLedger;
+
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private DepositJournal depositJournal;
+
+    @Mock
+    private WalletDirectory walletDirectory;
+
+    @Mock
+    private CrossShardTransfers crossShardTransfers;
+
+    @Mock
+    private WalletEventOutbox walletEventOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final WalletOperationMetrics metrics = new WalletOperationMetrics(meterRegistry);
+
+    private WalletService walletService;
+
+    @BeforeEach
+    void setUp() {
+        BalanceCache balanceCache = new BalanceCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5), new SimpleMeterRegistry());
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new WalletService(walletRepository, transactionRepository,
+                new VersionedBalanceEngine(walletRepository), balanceSnapshotService, hotWalletLedger,
+                balanceCache, new ReplicaReads(transactionManager, balanceCache), idempotencyService, depositJournal,
+                new DatabaseShards(false, List.of(), false, false), walletDirectory, crossShardTransfers, walletEventOutbox, transactionManager,
+                TransferConcurrencyMode.OPTIMISTIC));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(metrics);
+        walletService = proxyFactory.getProxy();
+    }
+
+    @Test
+    void testTime_RecordsOperationAndRepositoryCalls() {
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet();
+        wallet.setBalance(Money.ofMinor(10000));
+        when(walletRepository.findById(walletId)).thenAnswer(invocation -> {
+            metrics.recordRepositoryCall(Duration.ofMillis(5).toNanos());
+            return Optional.of(wallet);
+        });
+
+        walletService.getBalance(walletId);
+
+        assertEquals(1, meterRegistry.get("wallet.operation").tags("operation", "getBalance", "exception", "none").timer().count());
+        assertEquals(5, meterRegistry.get("wallet.operation.db").tag("operation", "getBalance").timer().totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(1, meterRegistry.get("wallet.operation.db.calls").tag("operation", "getBalance").summary().totalAmount());
+    }
+
+    @Test
+    void testTime_TagsFailuresWithTheException() {
+        UUID walletId = UUID.randomUUID();
+        UUID missingWalletId = UUID.randomUUID();
+        Wallet wallet = new Wallet();
+        wallet.setBalance(Money.ofMinor(1000));
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
+        when(walletRepository.findById(missingWalletId)).thenReturn(Optional.empty());
+
+        assertThrows(InsufficientBalanceException.class,
+                () -> walletService.withdraw(walletId.toString(), new WithdrawRequest(BigDecimal.valueOf(50)), UUID.randomUUID()));
+        assertThrows(WalletNotFoundException.class,
+                () -> walletService.withdraw(missingWalletId.toString(), new WithdrawRequest(BigDecimal.ONE), UUID.randomUUID()));
+
+        assertEquals(1, meterRegistry.get("wallet.operation")
+                .tags("operation", "withdraw", "exception", "InsufficientBalanceException").timer().count());
+        assertEquals(1, meterRegistry.get("wallet.operation")
+                .tags("operation", "withdraw", "exception", "WalletNotFoundException").timer().count());
+    }
+
+    @Test
+    void testRecordRetryOutcome() {
+        metrics.recordRetryOutcome(2, null);
+        metrics.recordRetryOutcome(3, new ObjectOptimisticLockingFailureException(Wallet.class, UUID.randomUUID()));
+        metrics.recordRetryOutcome(1, new InsufficientBalanceException("Insufficient balance"));
+
+        assertEquals(4, meterRegistry.get("wallet.operation.retries").counter().count());
+        assertEquals(1, meterRegistry.get("wallet.operation.retries.exhausted").counter().count());
+    }
+}
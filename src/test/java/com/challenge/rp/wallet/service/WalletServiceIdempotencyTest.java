@@ -0,0 +1,115 @@
+package com.challenge.rp.wallet.service;
+
+import com.challenge.rp.wallet.WalletApplication;
+import com.challenge.rp.wallet.dto.DepositRequest;
+import com.challenge.rp.wallet.dto.TransferRequest;
+import com.challenge.rp.wallet.dto.WalletCreateRequest;
+import com.challenge.rp.wallet.dto.WithdrawRequest;
+import com.challenge.rp.wallet.exception.IdempotencyConflictException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reuses {@code Reference-id}s across operations of an application running on an embedded
+ * database, with the idempotency checks and unique keys the service runs with.
+ */
+class WalletServiceIdempotencyTest {
+
+    private static ConfigurableApplicationContext context;
+    private static WalletService walletService;
+
+    private UUID source;
+    private UUID target;
+    private UUID other;
+
+    @BeforeAll
+    static void start() {
+        context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:idempotency-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--logging.level.com.challenge.rp.wallet=ERROR");
+        walletService = context.getBean(WalletService.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        source = createWallet();
+        target = createWallet();
+        other = createWallet();
+        walletService.deposit(source.toString(), new DepositRequest(BigDecimal.valueOf(100)), UUID.randomUUID());
+    }
+
+    @Test
+    void testTransfer_RepeatedRequestIsAppliedOnce() {
+        UUID referenceId = UUID.randomUUID();
+
+        walletService.transfer(new TransferRequest(source, target, BigDecimal.TEN), referenceId);
+        walletService.transfer(new TransferRequest(source, target, BigDecimal.TEN), referenceId);
+
+        assertBalance("90.00", source);
+        assertBalance("10.00", target);
+    }
+
+    @Test
+    void testTransfer_SameReferenceIdToAnotherTargetConflicts() {
+        UUID referenceId = UUID.randomUUID();
+        walletService.transfer(new TransferRequest(source, target, BigDecimal.TEN), referenceId);
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> walletService.transfer(new TransferRequest(source, other, BigDecimal.TEN), referenceId));
+        assertBalance("90.00", source);
+        assertBalance("0.00", other);
+    }
+
+    @Test
+    void testTransfer_ReferenceIdOfAWithdrawalConflicts() {
+        UUID referenceId = UUID.randomUUID();
+        walletService.withdraw(source.toString(), new WithdrawRequest(BigDecimal.ONE), referenceId);
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> walletService.transfer(new TransferRequest(source, other, BigDecimal.ONE), referenceId));
+        assertBalance("99.00", source);
+        assertBalance("0.00", other);
+    }
+
+    @Test
+    void testWithdraw_ReferenceIdOfATransferConflicts() {
+        UUID referenceId = UUID.randomUUID();
+        walletService.transfer(new TransferRequest(source, other, BigDecimal.ONE), referenceId);
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> walletService.withdraw(source.toString(), new WithdrawRequest(BigDecimal.ONE), referenceId));
+        assertThrows(IdempotencyConflictException.class,
+                () -> walletService.deposit(other.toString(), new DepositRequest(BigDecimal.ONE), referenceId));
+        assertBalance("99.00", source);
+        assertBalance("1.00", other);
+    }
+
+    private static UUID createWallet() {
+        return UUID.fromString(walletService.createWallet(new WalletCreateRequest(UUID.randomUUID())));
+    }
+
+    private static void assertBalance(String expected, UUID walletId) {
+        assertEquals(0, new BigDecimal(expected).compareTo(walletService.getBalance(walletId).balance()));
+    }
+}
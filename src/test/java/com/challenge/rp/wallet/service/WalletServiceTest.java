@@ -3,18 +3,25 @@ package com.challenge.rp.wallet.service;
 import com.challenge.rp.wallet.dto.*;
 import com.challenge.rp.wallet.exception.InsufficientBalanceException;
 import com.challenge.rp.wallet.exception.WalletNotFoundException;
+import com.challenge.rp.wallet.model.Money;
 import com.challenge.rp.wallet.model.Transaction;
+import com.challenge.rp.wallet.model.TransactionType;
 import com.challenge.rp.wallet.model.Wallet;
 import com.challenge.rp.wallet.repository.TransactionRepository;
 import com.challenge.rp.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -31,10 +38,42 @@ class WalletServiceTest {
     @Mock
     private TransactionRepository transactionRepository;
 
-    @InjectMocks
-    private WalletService walletService;
+    @Mock
+    private BalanceSnapshotService balanceSnapshotService;
+
+    @Mock
+    private HotWalletLedger hotWalletLedger;
 
+    @Mock
+    private IdempotencyService idempotencyService;
 
+    @Mock
+    private DepositJournal depositJournal;
+
+    @Mock
+    private WalletDirectory walletDirectory;
+
+    @Mock
+    private CrossShardTransfers crossShardTransfers;
+
+    @Mock
+    private WalletEventOutbox walletEventOutbox;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private BalanceCache balanceCache;
+    private WalletService walletService;
+
+    @BeforeEach
+    void setUp() {
+        balanceCache = new BalanceCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5), new SimpleMeterRegistry());
+        walletService = new WalletService(walletRepository, transactionRepository,
+                new VersionedBalanceEngine(walletRepository), balanceSnapshotService, hotWalletLedger,
+                balanceCache, new ReplicaReads(transactionManager, balanceCache), idempotencyService, depositJournal,
+                new DatabaseShards(false, List.of(), false, false), walletDirectory, crossShardTransfers, walletEventOutbox, transactionManager,
+                TransferConcurrencyMode.OPTIMISTIC);
+    }
 
     @Test
     void testCreateWallet_Success() {
@@ -54,17 +93,36 @@ class WalletServiceTest {
     void testGetBalance_Success() {
         UUID walletId = UUID.randomUUID();
         Wallet wallet = new Wallet();
-        wallet.setBalance(BigDecimal.valueOf(100.00));
+        wallet.setBalance(Money.of(BigDecimal.valueOf(100.00)));
 
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
 
         WalletBalanceResponse response = walletService.getBalance(walletId);
 
         assertNotNull(response);
-        assertEquals(BigDecimal.valueOf(100.00), response.balance());
+        assertEquals(new BigDecimal("100.00"), response.balance());
         verify(walletRepository).findById(walletId);
     }
 
+    @Test
+    void testGetBalance_ServedFromCacheUntilWalletChanges() {
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet();
+        wallet.setBalance(Money.of(BigDecimal.valueOf(100.00)));
+
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
+
+        walletService.getBalance(walletId);
+        walletService.getBalance(walletId);
+        verify(walletRepository, times(1)).findById(walletId);
+
+        when(walletRepository.save(wallet)).thenReturn(wallet);
+        walletService.deposit(walletId.toString(), new DepositRequest(BigDecimal.valueOf(50.00)), UUID.randomUUID());
+
+        assertEquals(new BigDecimal("150.00"), walletService.getBalance(walletId).balance());
+        verify(walletRepository, times(3)).findById(walletId);
+    }
+
     @Test
     void testGetBalance_WalletNotFound() {
         UUID walletId = UUID.randomUUID();
@@ -79,20 +137,17 @@ class WalletServiceTest {
     void testGetHistoricalBalance_Success() {
         UUID walletId = UUID.randomUUID();
         HistoricalBalanceRequest request = new HistoricalBalanceRequest(LocalDateTime.now().minusDays(1), LocalDateTime.now());
-        Transaction transaction = new Transaction();
-        transaction.setWallet(new Wallet());
-        transaction.getWallet().setBalance(BigDecimal.valueOf(50.00));
+        Instant endInstant = request.endDateTime().toInstant(ZoneOffset.UTC);
 
         when(walletRepository.existsById(walletId)).thenReturn(true);
-        when(transactionRepository.findAllTransactionsBetween(walletId, request.beginDateTime(), request.endDateTime()))
-                .thenReturn(List.of(transaction));
+        when(balanceSnapshotService.balanceAt(walletId, endInstant)).thenReturn(Money.ofMinor(5000));
 
         WalletBalanceResponse response = walletService.getHistoricalBalance(walletId.toString(), request);
 
         assertNotNull(response);
-        assertEquals(BigDecimal.valueOf(50.00), response.balance());
+        assertEquals(new BigDecimal("50.00"), response.balance());
         verify(walletRepository).existsById(walletId);
-        verify(transactionRepository).findAllTransactionsBetween(walletId, request.beginDateTime(), request.endDateTime());
+        verify(balanceSnapshotService).balanceAt(walletId, endInstant);
     }
 
     @Test
@@ -111,7 +166,7 @@ class WalletServiceTest {
         UUID walletId = UUID.randomUUID();
         WithdrawRequest request = new WithdrawRequest(BigDecimal.valueOf(50.00));
         Wallet wallet = new Wallet();
-        wallet.setBalance(BigDecimal.valueOf(100.00));
+        wallet.setBalance(Money.of(BigDecimal.valueOf(100.00)));
 
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
         when(walletRepository.save(any(Wallet.class))).thenReturn(wallet);
@@ -121,6 +176,8 @@ class WalletServiceTest {
         verify(walletRepository).findById(walletId);
         verify(walletRepository).save(wallet);
         verify(transactionRepository).save(any(Transaction.class));
+        verify(balanceSnapshotService).onTransactions(eq(wallet), eq(1), any());
+        assertEquals(1, wallet.getTransactionCount());
     }
 
     @Test
@@ -128,7 +185,7 @@ class WalletServiceTest {
         UUID walletId = UUID.randomUUID();
         WithdrawRequest request = new WithdrawRequest(BigDecimal.valueOf(150.00));
         Wallet wallet = new Wallet();
-        wallet.setBalance(BigDecimal.valueOf(100.00));
+        wallet.setBalance(Money.of(BigDecimal.valueOf(100.00)));
 
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
 
@@ -141,7 +198,7 @@ class WalletServiceTest {
         UUID walletId = UUID.randomUUID();
         DepositRequest request = new DepositRequest(BigDecimal.valueOf(50.00));
         Wallet wallet = new Wallet();
-        wallet.setBalance(BigDecimal.valueOf(100.00));
+        wallet.setBalance(Money.of(BigDecimal.valueOf(100.00)));
 
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
         when(walletRepository.save(any(Wallet.class))).thenReturn(wallet);
@@ -151,6 +208,21 @@ class WalletServiceTest {
         verify(walletRepository).findById(walletId);
         verify(walletRepository).save(wallet);
         verify(transactionRepository).save(any(Transaction.class));
+        verify(balanceSnapshotService).onTransactions(eq(wallet), eq(1), any());
+        assertEquals(1, wallet.getTransactionCount());
+    }
+
+    @Test
+    void testDeposit_ReplayIsNotAppliedAgain() {
+        UUID walletId = UUID.randomUUID();
+        UUID referenceId = UUID.randomUUID();
+        DepositRequest request = new DepositRequest(BigDecimal.valueOf(50.00));
+
+        when(idempotencyService.isReplay(referenceId, TransactionType.DEPOSIT, walletId, Money.of(request.amount()))).thenReturn(true);
+
+        walletService.deposit(walletId.toString(), request, referenceId);
+
+        verifyNoInteractions(walletRepository, transactionRepository, balanceSnapshotService);
     }
 
     @Test
@@ -160,9 +232,9 @@ class WalletServiceTest {
         TransferRequest request = new TransferRequest(sourceWalletId, targetWalletId, BigDecimal.valueOf(50.00));
 
         Wallet sourceWallet = new Wallet();
-        sourceWallet.setBalance(BigDecimal.valueOf(100.00));
+        sourceWallet.setBalance(Money.of(BigDecimal.valueOf(100.00)));
         Wallet targetWallet = new Wallet();
-        targetWallet.setBalance(BigDecimal.valueOf(50.00));
+        targetWallet.setBalance(Money.of(BigDecimal.valueOf(50.00)));
 
         when(walletRepository.findById(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
         when(walletRepository.findById(targetWalletId)).thenReturn(Optional.of(targetWallet));
@@ -173,6 +245,112 @@ class WalletServiceTest {
         verify(walletRepository).findById(sourceWalletId);
         verify(walletRepository).findById(targetWalletId);
         verify(walletRepository, times(2)).save(any(Wallet.class));
-        verify(transactionRepository, times(2)).save(any(Transaction.class));
+        verify(transactionRepository).saveAll(argThat((List<Transaction> transactions) -> transactions.size() == 2));
+    }
+
+    @Test
+    void testDeposit_HotWallet() {
+        UUID walletId = UUID.randomUUID();
+        UUID referenceId = UUID.randomUUID();
+        DepositRequest request = new DepositRequest(BigDecimal.valueOf(50.00));
+
+        when(hotWalletLedger.isHot(walletId)).thenReturn(true);
+
+        walletService.deposit(walletId.toString(), request, referenceId);
+
+        verify(hotWalletLedger).deposit(walletId, Money.of(request.amount()), referenceId);
+        verifyNoInteractions(walletRepository, transactionRepository);
+    }
+
+    @Test
+    void testDeposit_JournaledIsNotAppliedInline() {
+        UUID walletId = UUID.randomUUID();
+        UUID referenceId = UUID.randomUUID();
+        DepositRequest request = new DepositRequest(BigDecimal.valueOf(50.00));
+
+        when(depositJournal.isEnabled()).thenReturn(true);
+        when(walletRepository.existsById(walletId)).thenReturn(true);
+
+        walletService.deposit(walletId.toString(), request, referenceId);
+
+        verify(depositJournal).deposit(walletId, Money.of(request.amount()), referenceId);
+        // The applier claims the reference id when it applies the deposit
+        verify(idempotencyService, never()).isReplay(any(), any(), any(), any());
+        verify(walletRepository, never()).findById(any());
+        verifyNoInteractions(transactionRepository, balanceSnapshotService);
+    }
+
+    @Test
+    void testDeposit_JournaledAlreadyAppliedIsNotJournaledAgain() {
+        UUID walletId = UUID.randomUUID();
+        UUID referenceId = UUID.randomUUID();
+        DepositRequest request = new DepositRequest(BigDecimal.valueOf(50.00));
+
+        when(depositJournal.isEnabled()).thenReturn(true);
+        when(idempotencyService.isApplied(referenceId, TransactionType.DEPOSIT, walletId, Money.of(request.amount()))).thenReturn(true);
+
+        walletService.deposit(walletId.toString(), request, referenceId);
+
+        verify(depositJournal, never()).deposit(any(), any(), any());
+    }
+
+    @Test
+    void testDeposit_JournaledRejectsMissingWallet() {
+        UUID walletId = UUID.randomUUID();
+        DepositRequest request = new DepositRequest(BigDecimal.valueOf(50.00));
+
+        when(depositJournal.isEnabled()).thenReturn(true);
+        when(walletRepository.existsById(walletId)).thenReturn(false);
+
+        assertThrows(WalletNotFoundException.class, () -> walletService.deposit(walletId.toString(), request, UUID.randomUUID()));
+        verify(depositJournal, never()).deposit(any(), any(), any());
+    }
+
+    @Test
+    void testTransfer_PessimisticLocksBothWalletsInOneQuery() {
+        WalletService pessimisticService = new WalletService(walletRepository, transactionRepository,
+                new VersionedBalanceEngine(walletRepository), balanceSnapshotService, hotWalletLedger,
+                balanceCache, new ReplicaReads(transactionManager, balanceCache), idempotencyService, depositJournal,
+                new DatabaseShards(false, List.of(), false, false), walletDirectory, crossShardTransfers, walletEventOutbox, transactionManager,
+                TransferConcurrencyMode.PESSIMISTIC);
+        Wallet sourceWallet = new Wallet();
+        sourceWallet.setId(UUID.randomUUID());
+        sourceWallet.setBalance(Money.of(BigDecimal.valueOf(100.00)));
+        Wallet targetWallet = new Wallet();
+        targetWallet.setId(UUID.randomUUID());
+        targetWallet.setBalance(Money.of(BigDecimal.valueOf(50.00)));
+        TransferRequest request = new TransferRequest(sourceWallet.getId(), targetWallet.getId(), BigDecimal.valueOf(30.00));
+
+        when(walletRepository.findAllByIdForUpdate(List.of(sourceWallet.getId(), targetWallet.getId())))
+                .thenReturn(List.of(targetWallet, sourceWallet));
+
+        pessimisticService.transfer(request, UUID.randomUUID());
+
+        assertEquals(Money.ofMinor(7000), sourceWallet.getBalance());
+        assertEquals(Money.ofMinor(8000), targetWallet.getBalance());
+        verify(walletRepository, never()).findById(any());
+        verify(walletRepository).saveAll(List.of(sourceWallet, targetWallet));
+    }
+
+    @Test
+    void testTransfer_PessimisticInsufficientBalance() {
+        WalletService pessimisticService = new WalletService(walletRepository, transactionRepository,
+                new VersionedBalanceEngine(walletRepository), balanceSnapshotService, hotWalletLedger,
+                balanceCache, new ReplicaReads(transactionManager, balanceCache), idempotencyService, depositJournal,
+                new DatabaseShards(false, List.of(), false, false), walletDirectory, crossShardTransfers, walletEventOutbox, transactionManager,
+                TransferConcurrencyMode.PESSIMISTIC);
+        Wallet sourceWallet = new Wallet();
+        sourceWallet.setId(UUID.randomUUID());
+        sourceWallet.setBalance(Money.of(BigDecimal.valueOf(10.00)));
+        Wallet targetWallet = new Wallet();
+        targetWallet.setId(UUID.randomUUID());
+        targetWallet.setBalance(Money.of(BigDecimal.valueOf(50.00)));
+        TransferRequest request = new TransferRequest(sourceWallet.getId(), targetWallet.getId(), BigDecimal.valueOf(30.00));
+
+        when(walletRepository.findAllByIdForUpdate(anyList())).thenReturn(List.of(sourceWallet, targetWallet));
+
+        assertThrows(InsufficientBalanceException.class, () -> pessimisticService.transfer(request, UUID.randomUUID()));
+        verify(walletRepository, never()).saveAll(anyList());
+        verifyNoInteractions(transactionRepository);
     }
 }
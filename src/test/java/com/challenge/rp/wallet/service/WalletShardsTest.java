@@ -0,0 +1,141 @@
+package com.challenge.rp.wallet.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletShardsTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private WalletShards shards;
+
+    @BeforeEach
+    void setUp() {
+        shards = new WalletShards(entityManager, transactionManager, new WalletOperationMetrics(meterRegistry), meterRegistry,
+                true, 4, 16, Set.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.shutdown();
+    }
+
+    @Test
+    void testExecute_RunsWritesOfAWalletOneAtATime() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch blocked = new CountDownLatch(1);
+
+        // The first write keeps the shard busy, so the next ones queue up behind it and share a commit
+        CompletableFuture<Object> first = CompletableFuture.supplyAsync(() -> call(() -> shards.execute(List.of(walletId), () -> {
+            blocked.await();
+            return applied.add(0);
+        })));
+        List<CompletableFuture<Object>> rest = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            int n = i;
+            rest.add(CompletableFuture.supplyAsync(() -> call(() -> shards.execute(List.of(walletId), () -> applied.add(n)))));
+        }
+        Thread.sleep(100);
+        assertEquals(List.of(), applied);
+
+        blocked.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        for (CompletableFuture<Object> write : rest) {
+            assertEquals(true, write.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(6, applied.size());
+        assertTrue(meterRegistry.get("wallet.shards.batch.size").summary().max() > 1);
+    }
+
+    @Test
+    void testExecute_FailedWriteInBatchOnlyFailsItsCaller() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CompletableFuture<Object> first = CompletableFuture.supplyAsync(() -> call(() -> shards.execute(List.of(walletId), () -> blocked.await(5, TimeUnit.SECONDS))));
+
+        CompletableFuture<Object> before = CompletableFuture.supplyAsync(() -> call(() -> shards.execute(List.of(walletId), () -> "before")));
+        Thread.sleep(50);
+        CompletableFuture<Object> failing = CompletableFuture.supplyAsync(() -> call(() -> shards.execute(List.of(walletId), () -> {
+            throw new IllegalArgumentException("rejected");
+        })));
+        Thread.sleep(50);
+        CompletableFuture<Object> after = CompletableFuture.supplyAsync(() -> call(() -> shards.execute(List.of(walletId), () -> "after")));
+        Thread.sleep(50);
+
+        blocked.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        assertEquals("before", before.get(1, TimeUnit.SECONDS));
+        assertEquals("after", after.get(1, TimeUnit.SECONDS));
+        Exception e = assertThrows(Exception.class, () -> failing.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        verify(transactionManager, atLeastOnce()).rollback(any());
+    }
+
+    @Test
+    void testExecute_WriteSpanningShardsPausesTheOtherShard() throws Exception {
+        UUID source = UUID.randomUUID();
+        UUID target = walletOnAnotherShard(source);
+        CountDownLatch blocked = new CountDownLatch(1);
+
+        CompletableFuture<Object> transfer = CompletableFuture.supplyAsync(() -> call(() -> shards.execute(List.of(source, target), () -> blocked.await(5, TimeUnit.SECONDS))));
+        Thread.sleep(50);
+        CompletableFuture<Object> deposit = CompletableFuture.supplyAsync(() -> call(() -> shards.execute(List.of(target), () -> "deposit")));
+
+        assertThrows(TimeoutException.class, () -> deposit.get(100, TimeUnit.MILLISECONDS));
+        blocked.countDown();
+        transfer.get(1, TimeUnit.SECONDS);
+        assertEquals("deposit", deposit.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testConstructor_RejectsHotWallets() {
+        assertThrows(IllegalStateException.class, () -> new WalletShards(entityManager, transactionManager,
+                new WalletOperationMetrics(meterRegistry), meterRegistry, true, 4, 16, Set.of(UUID.randomUUID())));
+    }
+
+    private UUID walletOnAnotherShard(UUID walletId) {
+        UUID other;
+        do {
+            other = UUID.randomUUID();
+        } while (shards.shardOf(other) == shards.shardOf(walletId));
+        return other;
+    }
+
+    private static Object call(WalletShards.Operation operation) {
+        try {
+            return operation.run();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}